@@ -24,6 +24,7 @@ import edu.stanford.nlp.objectbank.ObjectBank;
 import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.Index;
 import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.ObjectIntIndex;
 import edu.stanford.nlp.util.Pair;
 import edu.stanford.nlp.util.ScoredComparator;
 import edu.stanford.nlp.util.ScoredObject;
@@ -367,7 +368,7 @@ public class Dataset<L, F> extends GeneralDataset<L, F> {
   @Override
   protected final void initialize(int numDatums) {
     labelIndex = new HashIndex<L>();
-    featureIndex = new HashIndex<F>();
+    featureIndex = new ObjectIntIndex<F>();
     labels = new int[numDatums];
     data = new int[numDatums][];
     size = 0;
@@ -37,6 +37,8 @@ import edu.stanford.nlp.stats.ClassicCounter;
 import edu.stanford.nlp.stats.Counter;
 import edu.stanford.nlp.stats.Distribution;
 import edu.stanford.nlp.stats.Counters;
+import edu.stanford.nlp.stats.IntDoubleCounter;
+import edu.stanford.nlp.stats.ObjectDoubleCounter;
 import edu.stanford.nlp.util.logging.Logging;
 
 import java.io.*;
@@ -145,26 +147,162 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
         //Logging.logger(this.getClass()).info("FEATURE LESS THAN ZERO: " + f);
       }
     }
-    int[] activeFeatures = new int[i];
-    synchronized (System.class) {
-      System.arraycopy(features, 0, activeFeatures, 0, i);
-    }
-    Counter<L> scores = new ClassicCounter<L>();
-    for (L lab : labels()) {
-      scores.setCount(lab, scoreOf(activeFeatures, lab));
+    int[] activeFeatures = Arrays.copyOf(features, i);
+    return scoresOfActiveFeatures(activeFeatures);
+  }
+
+  /** Scores each label by index, without looking the labels back up in the labelIndex */
+  private Counter<L> scoresOfActiveFeatures(int[] features) {
+    int numLabels = labelIndex.size();
+    double[] labelScores = new double[numLabels];
+    addScores(features, labelScores, 0);
+    Counter<L> scores = new ObjectDoubleCounter<L>(numLabels);
+    for (int iLabel = 0; iLabel < numLabels; iLabel++) {
+      scores.setCount(labelIndex.get(iLabel), labelScores[iLabel]);
     }
     return scores;
   }
 
+  /**
+   * Writes the score of each label, by label index, for a datum given as the
+   * indices of its features into {@code scores[offset]} to
+   * {@code scores[offset + numLabels - 1]}.  Features with an index of -1,
+   * which the classifier has not seen, are skipped.
+   * <br>
+   * The weights of a feature for all the labels are adjacent, so this walks
+   * each feature's row once, rather than every feature once per label.
+   * The scores are summed in the same order as in {@link #scoreOf(int[], int)}.
+   */
+  private void addScores(int[] features, double[] scores, int offset) {
+    int numLabels = labelIndex.size();
+    Arrays.fill(scores, offset, offset + numLabels, 0.0);
+    for (int feat : features) {
+      if (feat < 0) {
+        continue;
+      }
+      double[] featureWeights = weights[feat];
+      for (int iLabel = 0; iLabel < numLabels; iLabel++) {
+        scores[offset + iLabel] += featureWeights[iLabel];
+      }
+    }
+    for (int iLabel = 0; iLabel < numLabels; iLabel++) {
+      scores[offset + iLabel] += thresholds[iLabel];
+    }
+  }
+
+  /** As {@link #addScores(int[], double[], int)}, for features with real values. */
+  private void addScores(int[] features, double[] values, double[] scores, int offset) {
+    int numLabels = labelIndex.size();
+    Arrays.fill(scores, offset, offset + numLabels, 0.0);
+    for (int i = 0; i < features.length; i++) {
+      int feat = features[i];
+      if (feat < 0) {
+        continue;
+      }
+      double[] featureWeights = weights[feat];
+      double value = values[i];
+      for (int iLabel = 0; iLabel < numLabels; iLabel++) {
+        scores[offset + iLabel] += featureWeights[iLabel] * value;
+      }
+    }
+    for (int iLabel = 0; iLabel < numLabels; iLabel++) {
+      scores[offset + iLabel] += thresholds[iLabel];
+    }
+  }
+
+  /**
+   * Scores a batch of data without making a Counter for each.  Each datum is
+   * given as the indices of its features in the {@link #featureIndex()}, as
+   * in {@link #scoresOf(int[])}.  The score of the label with index
+   * {@code l} for datum {@code d} is written into
+   * {@code scores[d * numLabels + l]}, where numLabels is the size of the
+   * {@link #labelIndex()}.
+   *
+   * @param data The features of each datum; only the first numData are scored
+   * @param numData The number of data to score
+   * @param scores Space for the scores, at least numData * numLabels long.
+   *               It may be reused across calls.
+   */
+  public void scoresOf(int[][] data, int numData, double[] scores) {
+    int numLabels = labelIndex.size();
+    for (int d = 0; d < numData; d++) {
+      addScores(data[d], scores, d * numLabels);
+    }
+  }
+
+  /**
+   * Scores a batch of real-valued data, as held by an {@link RVFDataset},
+   * without making a Counter for each.  The scores are laid out as by
+   * {@link #scoresOf(int[][], int, double[])}.
+   *
+   * @param data The features of each datum; only the first numData are scored
+   * @param values The value of each of the features in data
+   * @param numData The number of data to score
+   * @param scores Space for the scores, at least numData * numLabels long
+   */
+  public void scoresOf(int[][] data, double[][] values, int numData, double[] scores) {
+    int numLabels = labelIndex.size();
+    for (int d = 0; d < numData; d++) {
+      addScores(data[d], values[d], scores, d * numLabels);
+    }
+  }
+
+  /** The index of the highest of the numLabels scores from offset on; ties go to the lowest index. */
+  private static int argmax(double[] scores, int offset, int numLabels) {
+    int best = 0;
+    for (int iLabel = 1; iLabel < numLabels; iLabel++) {
+      if (scores[offset + iLabel] > scores[offset + best]) {
+        best = iLabel;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Returns the index in the {@link #labelIndex()} of the best scoring
+   * label for a datum given as the indices of its features.  If several
+   * labels have the best score, the one with the lowest index is returned.
+   */
+  public int argmaxOf(int[] features) {
+    int numLabels = labelIndex.size();
+    double[] scores = new double[numLabels];
+    addScores(features, scores, 0);
+    return argmax(scores, 0, numLabels);
+  }
+
+  /**
+   * Finds the best scoring label of each of a batch of data, as with
+   * {@link #argmaxOf(int[])}, writing its index into {@code labels[d]}.
+   *
+   * @param data The features of each datum; only the first numData are classified
+   * @param numData The number of data to classify
+   * @param labels Space for the label indices, at least numData long
+   */
+  public void argmaxOf(int[][] data, int numData, int[] labels) {
+    int numLabels = labelIndex.size();
+    double[] scores = new double[numLabels];
+    for (int d = 0; d < numData; d++) {
+      addScores(data[d], scores, 0);
+      labels[d] = argmax(scores, 0, numLabels);
+    }
+  }
+
+  /** As {@link #argmaxOf(int[][], int, int[])}, for real-valued data. */
+  public void argmaxOf(int[][] data, double[][] values, int numData, int[] labels) {
+    int numLabels = labelIndex.size();
+    double[] scores = new double[numLabels];
+    for (int d = 0; d < numData; d++) {
+      addScores(data[d], values[d], scores, 0);
+      labels[d] = argmax(scores, 0, numLabels);
+    }
+  }
+
   /** Given a datum's features, construct a counter with keys
    *  the labels and values the score (unnormalized log probability)
    *  for each class.
    */
   public Counter<L> scoresOf(int[] features) {
-    Counter<L> scores = new ClassicCounter<L>();
-    for (L label : labels())
-      scores.setCount(label, scoreOf(features, label));
-    return scores;
+    return scoresOfActiveFeatures(features);
   }
 
   /** Returns of the score of the Datum for the specified label.
@@ -200,16 +338,27 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
    *  for an RVFDatum.
    */
   private Counter<L> scoresOfRVFDatum(RVFDatum<L, F> example) {
-    Counter<L> scores = new ClassicCounter<L>();
+    int numLabels = labelIndex.size();
+    Counter<L> scores = new ObjectDoubleCounter<L>(numLabels);
     // Index the features in the datum
     Counter<F> asCounter = example.asFeaturesCounter();
-    Counter<Integer> asIndexedCounter = new ClassicCounter<>(asCounter.size());
+    IntDoubleCounter asIndexedCounter = new IntDoubleCounter(asCounter.size());
     for (Map.Entry<F, Double> entry : asCounter.entrySet()) {
-      asIndexedCounter.setCount(featureIndex.indexOf(entry.getKey()), entry.getValue());
+      asIndexedCounter.setCount(featureIndex.indexOf(entry.getKey()), entry.getValue().doubleValue());
+    }
+    // Set the scores appropriately, walking each feature's weights once
+    double[] labelScores = new double[numLabels];
+    for (int slot = 0, slots = asIndexedCounter.slots(); slot < slots; slot++) {
+      if (asIndexedCounter.isSlotUsed(slot) && asIndexedCounter.keyAt(slot) >= 0) {
+        double[] featureWeights = weights[asIndexedCounter.keyAt(slot)];
+        double value = asIndexedCounter.valueAt(slot);
+        for (int iLabel = 0; iLabel < numLabels; iLabel++) {
+          labelScores[iLabel] += featureWeights[iLabel] * value;
+        }
+      }
     }
-    // Set the scores appropriately
-    for (L l : labels()) {
-      scores.setCount(l, scoreOfRVFDatum(asIndexedCounter, l));
+    for (int iLabel = 0; iLabel < numLabels; iLabel++) {
+      scores.setCount(labelIndex.get(iLabel), labelScores[iLabel] + thresholds[iLabel]);
     }
     //System.out.println("Scores are: " + scores + "   (gold: " + example.label() + ")");
     return scores;
@@ -242,19 +391,6 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
     return score + thresholds[iLabel];
   }
 
-  /** Returns the score of the RVFDatum for the specified label.
-   *  Ignores the true label of the RVFDatum.
-   */
-  private double scoreOfRVFDatum(Counter<Integer> features, L label) {
-    int iLabel = labelIndex.indexOf(label);
-    double score = 0.0;
-    for (Map.Entry<Integer, Double> entry : features.entrySet()) {
-      score += weight(entry.getKey(), iLabel) * entry.getValue();
-    }
-    return score + thresholds[iLabel];
-  }
-
-
   /** Returns of the score of the Datum as internalized features for the
    *  specified label. Ignores the true label of the Datum.
    *  Doesn't consider a value for each feature.
@@ -262,6 +398,10 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
   private double scoreOf(int[] feats, L label) {
     int iLabel = labelIndex.indexOf(label);
     assert iLabel >= 0;
+    return scoreOf(feats, iLabel);
+  }
+
+  private double scoreOf(int[] feats, int iLabel) {
     double score = 0.0;
     for (int feat : feats) {
       score += weight(feat, iLabel);
@@ -1375,7 +1515,7 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
 
   public LinearClassifier(Counter<? extends Pair<F, L>> weightCounter, Counter<L> thresholdsC) {
     Collection<? extends Pair<F, L>> keys = weightCounter.keySet();
-    featureIndex = new HashIndex<F>();
+    featureIndex = new ObjectIntIndex<F>();
     labelIndex = new HashIndex<L>();
     for (Pair<F, L> p : keys) {
       featureIndex.add(p.first());
@@ -28,6 +28,7 @@ import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.Index;
 import edu.stanford.nlp.util.Pair;
 import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.ObjectIntIndex;
 import edu.stanford.nlp.util.logging.Logging;
 
 /**
@@ -505,7 +506,7 @@ public class RVFDataset<L, F> extends GeneralDataset<L, F> { // implements Itera
   @Override
   protected void initialize(int numDatums) {
     labelIndex = new HashIndex<L>();
-    featureIndex = new HashIndex<F>();
+    featureIndex = new ObjectIntIndex<F>();
     labels = new int[numDatums];
     data = new int[numDatums][];
     values = new double[numDatums][];
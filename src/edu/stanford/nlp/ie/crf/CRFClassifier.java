@@ -41,9 +41,13 @@ import edu.stanford.nlp.stats.ClassicCounter;
 import edu.stanford.nlp.stats.Counter;
 import edu.stanford.nlp.stats.TwoDimensionalCounter;
 import edu.stanford.nlp.util.*;
+import edu.stanford.nlp.util.concurrent.WorkspacePool;
 
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.*;
@@ -142,6 +146,13 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   /** Parameter weights of the classifier. */
   double[][] weights;
 
+  /**
+   * Parameter weights of a classifier loaded from a compact model file (see
+   * {@link #serializeCompactClassifier}), in which case weights is null.
+   * Such a classifier can only be used for testing.
+   */
+  CompactCRFWeights compactWeights;
+
   /** index the features of CRF */
   Index<String> featureIndex;
   /** caches the featureIndex */
@@ -168,6 +179,9 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   // Label dictionary for fast decoding
   LabelDictionary labelDictionary;
 
+  /** Reusable inference buffers for classifyMaxEnt, each used by one thread at a time */
+  private final WorkspacePool<CRFDecoder> decoders = new WorkspacePool<CRFDecoder>(() -> new CRFDecoder(labelIndices, classIndex.size()));
+
   // List selftraindatums = new ArrayList();
 
   protected CRFClassifier() {
@@ -191,7 +205,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     this.featureFactories = crf.featureFactories;
     this.pad = crf.pad;
     this.knownLCWords = (crf.knownLCWords != null) ? Generics.<String>newHashSet(crf.knownLCWords) : null;
-    this.featureIndex = (crf.featureIndex != null) ? new HashIndex<String>(crf.featureIndex.objectsList()) : null;
+    this.featureIndex = (crf.featureIndex != null) ? new ObjectIntIndex<String>(crf.featureIndex.objectsList()) : null;
     this.classIndex = (crf.classIndex != null) ? new HashIndex<String>(crf.classIndex.objectsList()) : null;
     if (crf.labelIndices != null) {
       this.labelIndices = new ArrayList<Index<CRFLabel>>(crf.labelIndices.size());
@@ -210,7 +224,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * @return number of weights
    */
   public int getNumWeights() {
-    if (weights == null) return 0;
+    if (weights == null) return (compactWeights == null) ? 0 : compactWeights.numWeights();
     int numWeights = 0;
     for (double[] wts : weights) {
       numWeights += wts.length;
@@ -390,7 +404,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   public void dropFeaturesBelowThreshold(double threshold) {
-    Index<String> newFeatureIndex = new HashIndex<String>();
+    Index<String> newFeatureIndex = new ObjectIntIndex<String>();
     for (int i = 0; i < weights.length; i++) {
       double smallest = weights[i][0];
       double biggest = weights[i][0];
@@ -562,9 +576,10 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
               // line.add(feature+"["+(-p)+"]");
               rowHeaders.add(feature + '[' + (-p) + ']');
               double[] values = new double[labelIndices.get(0).size()];
+              double[] featureWeights = weightsOf(index);
               for (CRFLabel label : labelIndices.get(k)) {
                 int[] l = label.getLabel();
-                double v = weights[index][labelIndices.get(k).indexOf(label)];
+                double v = featureWeights[labelIndices.get(k).indexOf(label)];
                 values[l[l.length - 1 - p]] += v;
               }
               for (double value : values) {
@@ -854,7 +869,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     }
     System.err.println("numFeatures = " + numFeatures);
 
-    featureIndex = new HashIndex<String>();
+    featureIndex = new ObjectIntIndex<String>(numFeatures);
     map = new int[numFeatures];
 
     if (flags.groupByFeatureTemplate) {
@@ -1194,7 +1209,11 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
 
   protected CliquePotentialFunction getCliquePotentialFunctionForTest() {
     if (cliquePotentialFunction == null) {
-      cliquePotentialFunction = new LinearCliquePotentialFunction(weights);
+      if (weights == null && compactWeights != null) {
+        cliquePotentialFunction = new CompactLinearCliquePotentialFunction(compactWeights);
+      } else {
+        cliquePotentialFunction = new LinearCliquePotentialFunction(weights);
+      }
     }
     return cliquePotentialFunction;
   }
@@ -1216,18 +1235,47 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       return document;
     }
 
-    SequenceModel model = getSequenceModel(document);
-    return classifyMaxEnt(document, model);
+    return classifyMaxEnt(document, documentToDataAndLabels(document));
   }
 
   private List<IN> classifyMaxEnt(List<IN> document, Triple<int[][][], int[], double[][][]> documentDataAndLabels) {
     if (document.isEmpty()) {
       return document;
     }
+
+    if (flags.inferenceType == null) {
+      flags.inferenceType = "Viterbi";
+    }
+
+    if (flags.inferenceType.equalsIgnoreCase("Viterbi") && labelDictionary == null) {
+      // Same answers as ExactBestSequenceFinder on the clique tree, without building it
+      CRFDecoder decoder = acquireDecoder();
+      int[] bestSequence;
+      try {
+        decoder.calibrate(documentDataAndLabels.first(), documentDataAndLabels.third(), getCliquePotentialFunctionForTest());
+        bestSequence = decoder.bestSequence(classIndex.indexOf(flags.backgroundSymbol));
+      } finally {
+        decoders.release(decoder);
+      }
+      return classifyMaxEnt(document, bestSequence);
+    }
+
     SequenceModel model = getSequenceModel(documentDataAndLabels, document);
     return classifyMaxEnt(document, model);
   }
 
+  /**
+   * Takes a decoder from the pool, making a new one if the labels have
+   * changed since the pooled one was made.  It must be released again.
+   */
+  private CRFDecoder acquireDecoder() {
+    CRFDecoder decoder = decoders.acquire();
+    if ( ! decoder.decodes(labelIndices, classIndex.size())) {
+      decoder = new CRFDecoder(labelIndices, classIndex.size());
+    }
+    return decoder;
+  }
+
   private List<IN> classifyMaxEnt(List<IN> document, SequenceModel model) {
     if (document.isEmpty()) {
       return document;
@@ -1247,7 +1295,14 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     }
 
     int[] bestSequence = tagInference.bestSequence(model);
+    return classifyMaxEnt(document, bestSequence);
+  }
 
+  /**
+   * Sets the answers of the document from a best sequence, which starts
+   * with windowSize - 1 positions of padding.
+   */
+  private List<IN> classifyMaxEnt(List<IN> document, int[] bestSequence) {
     if (flags.useReverse) {
       Collections.reverse(document);
     }
@@ -1775,7 +1830,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
 
     Index<Integer> newNodeFeatureIndex = new HashIndex<Integer>();
     Index<Integer> newEdgeFeatureIndex = new HashIndex<Integer>();
-    Index<String> newFeatureIndex = new HashIndex<String>();
+    Index<String> newFeatureIndex = new ObjectIntIndex<String>();
 
     for (int i = beginIndex; i < endIndex; i++) {
       int oldIndex = nodeFeatureOriginalIndices.get(i);
@@ -2221,7 +2276,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       throw new RuntimeException("format error");
     }
     int featureIndexSize = Integer.parseInt(toks[1]);
-    featureIndex = new HashIndex<String>();
+    featureIndex = new ObjectIntIndex<String>(featureIndexSize);
     count = 0;
     while (count < featureIndexSize) {
       line = br.readLine();
@@ -2396,6 +2451,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
 
     pw.printf("<windowSize> %d </windowSize>%n", windowSize);
 
+    double[][] weights = denseWeights();
     pw.printf("weights.length=\t%d%n", weights.length);
     for (double[] ws : weights) {
       ArrayList<Double> list = new ArrayList<Double>();
@@ -2470,7 +2526,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     ObjectOutputStream oos = null;
     try {
       oos = IOUtils.writeStreamFromString(serializePath);
-      oos.writeObject(weights);
+      oos.writeObject(denseWeights());
       System.err.println("done.");
     } catch (Exception e) {
       System.err.println("Failed");
@@ -2560,8 +2616,22 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * <br>
    * (Since the classifier is a processor, we don't want to serialize the
    * whole classifier but just the data that represents a classifier model.)
+   * <br>
+   * A classifier loaded from a compact model is written as an ordinary one:
+   * its weights are decoded into a {@code double[][]}, and its
+   * {@link edu.stanford.nlp.util.MappedStringIndex} of features is written
+   * as a HashIndex.
    */
   public void serializeClassifier(ObjectOutputStream oos) {
+    serializeClassifier(oos, featureIndex, denseWeights());
+  }
+
+  /**
+   * Serialize the classifier, with the given feature index and weights in
+   * place of its own.  The compact format writes null for both, and stores
+   * them separately.
+   */
+  private void serializeClassifier(ObjectOutputStream oos, Index<String> featureIndex, double[][] weights) {
     try {
       oos.writeObject(labelIndices);
       oos.writeObject(classIndex);
@@ -2590,6 +2660,174 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     }
   }
 
+  /** The weights, decoded from the compact weights if this classifier was loaded from a compact model */
+  private double[][] denseWeights() {
+    if (weights == null && compactWeights != null) {
+      return compactWeights.toArray();
+    }
+    return weights;
+  }
+
+  /** The weights of one feature, decoded from the compact weights if this classifier was loaded from a compact model */
+  private double[] weightsOf(int feature) {
+    if (weights == null && compactWeights != null) {
+      return compactWeights.row(feature);
+    }
+    return weights[feature];
+  }
+
+  /**
+   * Magic number at the start of a compact model file (the bytes "CRFC").
+   *
+   * @see #serializeCompactClassifier(String, CompactCRFWeights.Encoding)
+   */
+  private static final int COMPACT_MODEL_MAGIC = 0x43465243;
+
+  /**
+   * Version of the compact model format written by {@link #serializeCompactClassifier}.
+   */
+  private static final int COMPACT_MODEL_VERSION = 1;
+
+  /**
+   * Save the classifier in a compact format, in which the feature index and
+   * weights can be used straight from a memory-mapped file, rather than
+   * being deserialized onto the heap.  Several processes which load the
+   * same compact model then share one copy of it.  Such a classifier can
+   * be used for testing but not for further training.
+   * <p>
+   * All values are little-endian. The file consists of:
+   * <ol>
+   *   <li>the magic number, the format version and the length of the
+   *       serialized classifier;</li>
+   *   <li>the classifier, serialized as by {@link #serializeClassifier(ObjectOutputStream)}
+   *       but with null in place of the feature index and weights, padded
+   *       to a multiple of four bytes;</li>
+   *   <li>the feature index, as written by {@link MappedStringIndex#toBytes};</li>
+   *   <li>the weights, as written by {@link CompactCRFWeights#toBytes}.</li>
+   * </ol>
+   * Compact models are recognized automatically by the loadClassifier
+   * methods and {@link #getClassifier(String)}, and are memory-mapped when
+   * they are plain (not gzipped) files on disk.
+   *
+   * @param serializePath File to write the model to
+   * @param encoding How to store the weights; {@link CompactCRFWeights.Encoding#FLOAT32}
+   *                 keeps the accuracy of {@link CRFClassifierFloat}, while
+   *                 the other encodings trade some accuracy for size
+   */
+  public void serializeCompactClassifier(String serializePath, CompactCRFWeights.Encoding encoding) {
+    System.err.print("Serializing compact classifier to " + serializePath + "...");
+    try {
+      ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(metadata);
+      serializeClassifier(oos, null, null);
+      oos.close();
+      byte[] features = MappedStringIndex.toBytes(featureIndex.objectsList());
+      byte[] compact = CompactCRFWeights.toBytes(denseWeights(), encoding);
+
+      int padding = (4 - metadata.size() % 4) % 4;
+      ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(COMPACT_MODEL_MAGIC);
+      header.putInt(COMPACT_MODEL_VERSION);
+      header.putInt(metadata.size());
+      try (OutputStream output = IOUtils.getFileOutputStream(serializePath)) {
+        output.write(header.array());
+        metadata.writeTo(output);
+        output.write(new byte[padding]);
+        output.write(features);
+        output.write(compact);
+      }
+      System.err.println("done.");
+    } catch (IOException e) {
+      throw new RuntimeIOException("Failed to save compact classifier", e);
+    }
+  }
+
+  /**
+   * Loads a classifier from the file specified, which may be either a
+   * serialized classifier or a compact model written by
+   * {@link #serializeCompactClassifier}.  A compact model in a plain file is
+   * memory-mapped read-only rather than read onto the heap.
+   */
+  @Override
+  public void loadClassifier(File file, Properties props) throws ClassCastException, IOException,
+      ClassNotFoundException {
+    if ( ! file.getName().endsWith(".gz") && isCompactModel(file)) {
+      Timing.startDoing("Loading compact classifier from " + file.getAbsolutePath());
+      try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+           FileChannel channel = raf.getChannel()) {
+        loadCompactClassifier(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), props);
+      }
+      Timing.endDoing();
+    } else {
+      super.loadClassifier(file, props);
+    }
+  }
+
+  /**
+   * Loads a classifier from the given InputStream, which may be either a
+   * serialized classifier or a compact model written by
+   * {@link #serializeCompactClassifier}.  Compact models are read onto the
+   * heap, and are only recognized in streams which support mark and reset,
+   * such as the BufferedInputStreams used by the other loadClassifier methods.
+   */
+  @Override
+  public void loadClassifier(InputStream in, Properties props) throws IOException, ClassCastException,
+      ClassNotFoundException {
+    if (in.markSupported()) {
+      in.mark(4);
+      boolean compact;
+      try {
+        compact = Integer.reverseBytes(new DataInputStream(in).readInt()) == COMPACT_MODEL_MAGIC;
+      } catch (EOFException e) {
+        compact = false;
+      }
+      in.reset();
+      if (compact) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        IOUtils.writeStreamToStream(in, bytes);
+        loadCompactClassifier(ByteBuffer.wrap(bytes.toByteArray()), props);
+        return;
+      }
+    }
+    super.loadClassifier(in, props);
+  }
+
+  private static boolean isCompactModel(File file) throws IOException {
+    try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+      return Integer.reverseBytes(input.readInt()) == COMPACT_MODEL_MAGIC;
+    } catch (EOFException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Load a compact model from the given buffer, leaving the feature index
+   * and weights in the buffer.
+   */
+  private void loadCompactClassifier(ByteBuffer buffer, Properties props) throws IOException, ClassNotFoundException {
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    if (buffer.getInt() != COMPACT_MODEL_MAGIC) {
+      throw new RuntimeIOException("Not a compact CRF model");
+    }
+    int version = buffer.getInt();
+    if (version != COMPACT_MODEL_VERSION) {
+      throw new RuntimeIOException("Unsupported compact CRF model version " + version);
+    }
+    byte[] metadata = new byte[buffer.getInt()];
+    buffer.get(metadata);
+    buffer.position((buffer.position() + 3) & ~3);
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(metadata))) {
+      loadClassifier(ois, props);
+    }
+    featureIndex = new MappedStringIndex(buffer);
+    compactWeights = new CompactCRFWeights(buffer);
+    weights = null;
+    cliquePotentialFunction = null;
+    if (VERBOSE) {
+      System.err.println("Loaded " + featureIndex.size() + " features with " + compactWeights.encoding() + " weights");
+    }
+  }
+
   /**
    * Loads a classifier from the specified InputStream. This version works
    * quietly (unless VERBOSE is true). If props is non-null then any properties
@@ -2616,6 +2854,12 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     }
     classIndex = (Index<String>) ois.readObject();
     featureIndex = (Index<String>) ois.readObject();
+    if (featureIndex != null && ! (featureIndex instanceof ObjectIntIndex)) {
+      // the feature index is saved as a HashIndex, which older releases
+      // can read; featurizing looks up every feature of every token in
+      // this index, so convert it
+      featureIndex = new ObjectIntIndex<String>(featureIndex);
+    }
     flags = (SeqClassifierFlags) ois.readObject();
     if (flags.useEmbedding) {
       embeddings = (Map<String, double[]>) ois.readObject();
@@ -2767,7 +3011,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       int index = featureIndex.indexOf(feature);
       // line.add(feature+"["+(-p)+"]");
       // rowHeaders.add(feature + '[' + (-p) + ']');
-      double[] v = weights[index];
+      double[] v = weightsOf(index);
       Index<CRFLabel> l = this.labelIndices.get(0);
       p.println(feature + "\t\t");
       for (CRFLabel label : l) {
@@ -2784,7 +3028,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       int index = featureIndex.indexOf(feature);
       // line.add(feature+"["+(-p)+"]");
       // rowHeaders.add(feature + '[' + (-p) + ']');
-      double[] v = weights[index];
+      double[] v = weightsOf(index);
       Index<CRFLabel> l = this.labelIndices.get(0);
       for (CRFLabel label : l) {
         if(!w.containsKey(label.toString(classIndex)))
@@ -3022,6 +3266,11 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       crf.serializeTextClassifier(serializeToText);
     }
 
+    if (crf.flags.serializeToCompact != null) {
+      crf.serializeCompactClassifier(crf.flags.serializeToCompact,
+                                     CompactCRFWeights.Encoding.valueOf(crf.flags.compactWeightEncoding.toUpperCase()));
+    }
+
     if (testFile != null) {
       // todo: Change testFile to call testFiles with a singleton list
       DocumentReaderAndWriter<CoreLabel> readerAndWriter = crf.defaultReaderAndWriter();
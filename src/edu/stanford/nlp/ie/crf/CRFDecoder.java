@@ -0,0 +1,319 @@
+package edu.stanford.nlp.ie.crf;
+
+import edu.stanford.nlp.math.ArrayMath;
+import edu.stanford.nlp.util.Index;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test-time inference for a linear chain CRF, done on flat arrays which are
+ * reused from one document to the next.
+ * <br>
+ * {@link #calibrate} computes the clique potentials of each position and
+ * runs forward-backward message passing, exactly as
+ * {@link CRFCliqueTree#getCalibratedCliqueTree} does, but keeps the factor
+ * table of position i in a slice of a single array instead of building
+ * FactorTable objects and messages.  {@link #bestSequence} then does the
+ * same Viterbi search as {@link edu.stanford.nlp.sequences.ExactBestSequenceFinder}
+ * over a {@link TestSequenceModel}, scoring each label with its log
+ * probability conditioned on the previous labels.  Each conditional
+ * distribution is normalized once, rather than once per label, and no
+ * arrays are allocated per position.  The arithmetic is done in the same
+ * order as in those classes, so the results are identical.
+ * <br>
+ * A decoder holds the state of one document at a time, so each thread
+ * needs its own.
+ */
+public class CRFDecoder {
+
+  private final List<Index<CRFLabel>> labelIndices;
+  private final int numClasses;
+  /** The clique size */
+  private final int windowSize;
+  /** numClasses ^ windowSize: the size of one factor table */
+  private final int tableSize;
+  /** numClasses ^ (windowSize - 1): the number of assignments to the previous labels */
+  private final int contextSize;
+
+  /**
+   * For each clique size j+1, the position in a factor table of size
+   * numClasses ^ (j+1) of each label in labelIndices.get(j)
+   */
+  private final int[][] cliqueTableIndices;
+
+  private int length;
+  /** The calibrated factor table of position i, at i * tableSize */
+  private double[] tables = new double[0];
+  /** The forward message into position i+1, at i * contextSize */
+  private double[] messages = new double[0];
+  private double[] potentials;
+  private double[] smallerPotentials;
+  private double[] summedOut;
+
+  // Viterbi, indexed by padded position * tableSize + window assignment
+  private double[] windowScores = new double[0];
+  private double[] scores = new double[0];
+  private int[] traces = new int[0];
+
+  public CRFDecoder(List<Index<CRFLabel>> labelIndices, int numClasses) {
+    this.labelIndices = labelIndices;
+    this.numClasses = numClasses;
+    this.windowSize = labelIndices.size();
+    int size = 1;
+    cliqueTableIndices = new int[windowSize][];
+    for (int j = 0; j < windowSize; j++) {
+      size *= numClasses;
+      Index<CRFLabel> labelIndex = labelIndices.get(j);
+      cliqueTableIndices[j] = new int[labelIndex.size()];
+      for (int k = 0; k < cliqueTableIndices[j].length; k++) {
+        int index = 0;
+        for (int label : labelIndex.get(k).getLabel()) {
+          index = index * numClasses + label;
+        }
+        cliqueTableIndices[j][k] = index;
+      }
+    }
+    tableSize = size;
+    contextSize = size / numClasses;
+    potentials = new double[tableSize];
+    smallerPotentials = new double[tableSize];
+    summedOut = new double[contextSize];
+  }
+
+  /** Whether this decoder was built for the given labels */
+  public boolean decodes(List<Index<CRFLabel>> labelIndices, int numClasses) {
+    return this.labelIndices == labelIndices && this.numClasses == numClasses;
+  }
+
+  public int length() {
+    return length;
+  }
+
+  private static double[] ensureCapacity(double[] array, int size) {
+    return (array.length >= size) ? array : new double[Math.max(size, array.length * 2)];
+  }
+
+  private static int[] ensureCapacity(int[] array, int size) {
+    return (array.length >= size) ? array : new int[Math.max(size, array.length * 2)];
+  }
+
+  /**
+   * Computes the clique potentials of a document and calibrates them, as
+   * {@link CRFCliqueTree#getCalibratedCliqueTree(int[][][], List, int, Index, Object, CliquePotentialFunction, double[][][])}
+   * does.
+   *
+   * @param data The features of each clique at each position, as from
+   *             CRFClassifier.documentToDataAndLabels
+   * @param featureVals The feature values, or null if all are 1
+   * @param cliquePotentialFunc Gives the potential of each labeled clique
+   */
+  public void calibrate(int[][][] data, double[][][] featureVals, CliquePotentialFunction cliquePotentialFunc) {
+    length = data.length;
+    tables = ensureCapacity(tables, length * tableSize);
+    messages = ensureCapacity(messages, Math.max(length - 1, 0) * contextSize);
+
+    for (int i = 0; i < length; i++) {
+      computeFactorTable(i, data[i], (featureVals == null) ? null : featureVals[i], cliquePotentialFunc);
+      if (i > 0) {
+        // message = sumOutFront of the previous table; multiply it in front of this one
+        int previous = (i - 1) * tableSize;
+        int message = (i - 1) * contextSize;
+        for (int c = 0; c < contextSize; c++) {
+          messages[message + c] = ArrayMath.logSum(tables, previous + c, previous + tableSize, contextSize);
+        }
+        int table = i * tableSize;
+        for (int t = 0; t < tableSize; t++) {
+          tables[table + t] += messages[message + t / numClasses];
+        }
+      }
+    }
+
+    for (int i = length - 2; i >= 0; i--) {
+      // sumOutEnd of the next table, divided by the message, multiplied in the end of this one
+      int next = (i + 1) * tableSize;
+      int message = i * contextSize;
+      for (int c = 0; c < contextSize; c++) {
+        summedOut[c] = ArrayMath.logSum(tables, next + c * numClasses, next + (c + 1) * numClasses);
+        if (summedOut[c] != Double.NEGATIVE_INFINITY || messages[message + c] != Double.NEGATIVE_INFINITY) {
+          summedOut[c] -= messages[message + c];
+        }
+      }
+      int table = i * tableSize;
+      for (int t = 0; t < tableSize; t++) {
+        tables[table + t] += summedOut[t % contextSize];
+      }
+    }
+  }
+
+  /**
+   * Fills in the factor table of one position, as CRFCliqueTree.getFactorTable
+   * does: the table of each clique size has the potentials of that clique,
+   * plus the table of the next smaller clique size multiplied in its end.
+   */
+  private void computeFactorTable(int position, int[][] data, double[][] featureValByCliqueSize,
+                                  CliquePotentialFunction cliquePotentialFunc) {
+    int size = 1;
+    for (int j = 0; j < windowSize; j++) {
+      int smallerSize = size;
+      size *= numClasses;
+      boolean last = (j == windowSize - 1);
+      double[] table = last ? tables : potentials;
+      int offset = last ? position * tableSize : 0;
+      Arrays.fill(table, offset, offset + size, Double.NEGATIVE_INFINITY);
+      double[] featureVal = (featureValByCliqueSize == null) ? null : featureValByCliqueSize[j];
+      int[] tableIndices = cliqueTableIndices[j];
+      for (int k = 0; k < tableIndices.length; k++) {
+        table[offset + tableIndices[k]] = cliquePotentialFunc.computeCliquePotential(j + 1, k, data[j], featureVal, position);
+      }
+      if (j > 0) {
+        for (int t = 0; t < size; t++) {
+          table[offset + t] += smallerPotentials[t % smallerSize];
+        }
+      }
+      if ( ! last) {
+        double[] swap = smallerPotentials;
+        smallerPotentials = potentials;
+        potentials = swap;
+      }
+    }
+  }
+
+  /**
+   * The log marginal probability of the label at the position, as given by
+   * {@link CRFCliqueTree#logProb(int, int)}.
+   */
+  public double logProb(int position, int label) {
+    double z = ArrayMath.logSum(tables, 0, tableSize);
+    double u = ArrayMath.logSum(tables, position * tableSize + label, (position + 1) * tableSize, numClasses);
+    return u - z;
+  }
+
+  /**
+   * Finds the best label sequence for the calibrated document, as
+   * ExactBestSequenceFinder does for a TestSequenceModel of the CRFCliqueTree.
+   * As there, the result has windowSize - 1 positions of background padding
+   * before the labels of the document.
+   *
+   * @param backgroundIndex The label of positions before the start of the document
+   * @return The padded best sequence
+   */
+  public int[] bestSequence(int backgroundIndex) {
+    int leftWindow = windowSize - 1;
+    int padLength = length + leftWindow;
+    windowScores = ensureCapacity(windowScores, padLength * tableSize);
+    scores = ensureCapacity(scores, padLength * tableSize);
+    traces = ensureCapacity(traces, padLength * tableSize);
+
+    // Score each assignment to the window ending at each position by the
+    // conditional log probability of its last label given the others.  In
+    // the padding before the document only the background label is possible,
+    // so a window which reaches back into it has fewer assignments
+    for (int pos = leftWindow; pos < padLength; pos++) {
+      int table = (pos - leftWindow) * tableSize;
+      int productSize = productSize(pos, leftWindow);
+      int contexts = productSize / numClasses;
+      int base = pos * tableSize;
+      for (int product = 0; product < contexts; product++) {
+        int start = table + contextIndex(pos, product, leftWindow, backgroundIndex) * numClasses;
+        double z = ArrayMath.logSum(tables, start, start + numClasses);
+        for (int label = 0; label < numClasses; label++) {
+          windowScores[base + product * numClasses + label] = tables[start + label] - z;
+        }
+      }
+    }
+
+    // Viterbi over window assignments, trying each possible label for the
+    // position which falls out of the window
+    for (int pos = leftWindow; pos < padLength; pos++) {
+      int productSize = productSize(pos, leftWindow);
+      int base = pos * tableSize;
+      if (pos == leftWindow) {
+        for (int product = 0; product < productSize; product++) {
+          scores[base + product] = windowScores[base + product];
+          traces[base + product] = -1;
+        }
+        continue;
+      }
+      int predBase = base - tableSize;
+      int predTagNum = (pos - leftWindow - 1 < leftWindow) ? 1 : numClasses;
+      int factor = productSize / numClasses;
+      for (int product = 0; product < productSize; product++) {
+        double best = Double.NEGATIVE_INFINITY;
+        int trace = -1;
+        int sharedProduct = product / numClasses;
+        double windowScore = windowScores[base + product];
+        for (int newTagNum = 0; newTagNum < predTagNum; newTagNum++) {
+          int predProduct = newTagNum * factor + sharedProduct;
+          double predScore = scores[predBase + predProduct] + windowScore;
+          if (predScore > best) {
+            best = predScore;
+            trace = predProduct;
+          }
+        }
+        scores[base + product] = best;
+        traces[base + product] = trace;
+      }
+    }
+
+    // Follow the traces back from the best final window
+    int[] sequence = new int[padLength];
+    Arrays.fill(sequence, backgroundIndex);
+    int lastBase = (padLength - 1) * tableSize;
+    double bestFinalScore = Double.NEGATIVE_INFINITY;
+    int bestCurrentProduct = -1;
+    for (int product = 0, sz = productSize(padLength - 1, leftWindow); product < sz; product++) {
+      if (scores[lastBase + product] > bestFinalScore) {
+        bestCurrentProduct = product;
+        bestFinalScore = scores[lastBase + product];
+      }
+    }
+    int lastProduct = bestCurrentProduct;
+    for (int last = padLength - 1; last >= length - 1 && last >= 0; last--) {
+      if (last >= leftWindow) {
+        sequence[last] = lastProduct % numClasses;
+        lastProduct /= numClasses;
+      }
+    }
+    for (int pos = padLength - 2; pos >= leftWindow; pos--) {
+      int bestNextProduct = bestCurrentProduct;
+      bestCurrentProduct = traces[(pos + 1) * tableSize + bestNextProduct];
+      if (pos - leftWindow >= leftWindow) {
+        sequence[pos - leftWindow] = bestCurrentProduct / (productSize(pos, leftWindow) / numClasses);
+      }
+    }
+    return sequence;
+  }
+
+  /**
+   * The number of assignments to the window ending at the padded position:
+   * numClasses for each position of the window after the padding.
+   */
+  private int productSize(int pos, int leftWindow) {
+    int size = 1;
+    for (int p = Math.max(pos - leftWindow, leftWindow); p <= pos; p++) {
+      size *= numClasses;
+    }
+    return size;
+  }
+
+  /**
+   * The index of the previous labels in a factor table, given the index of
+   * their assignment among those the window ending at pos allows, with the
+   * padding positions set to the background label.
+   */
+  private int contextIndex(int pos, int product, int leftWindow, int backgroundIndex) {
+    int padded = leftWindow - Math.min(pos - leftWindow, leftWindow);
+    int index = 0;
+    for (int p = 0; p < padded; p++) {
+      index = index * numClasses + backgroundIndex;
+    }
+    int real = leftWindow - padded;
+    int scale = 1;
+    for (int p = 0; p < real; p++) {
+      scale *= numClasses;
+    }
+    return index * scale + product;
+  }
+
+}
@@ -0,0 +1,266 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * The weights of a linear CRF, stored in a {@link ByteBuffer} with fewer
+ * bits per weight than the {@code double[][]} which CRFClassifier trains.
+ * The buffer is typically a read-only memory-mapped region of a compact
+ * model file (see {@link CRFClassifier#serializeCompactClassifier}), so that
+ * the weights take no heap and are shared between processes which load
+ * the same model.
+ * <br>
+ * As in the {@code double[][]} form, each feature has a row with one weight
+ * per label assignment of its clique.  The rows are laid out one after the
+ * other, and may be encoded as
+ * <ul>
+ *   <li>{@link Encoding#FLOAT32}: 32 bit floats, which is as accurate as
+ *       {@link CRFClassifierFloat};</li>
+ *   <li>{@link Encoding#FLOAT16}: IEEE 754 half precision floats;</li>
+ *   <li>{@link Encoding#INT8}: signed bytes, scaled by a per-row float so
+ *       that the largest weight in each row is 127.</li>
+ * </ul>
+ */
+public class CompactCRFWeights {
+
+  public enum Encoding {
+    FLOAT32(4), FLOAT16(2), INT8(1);
+
+    final int bytesPerWeight;
+
+    Encoding(int bytesPerWeight) {
+      this.bytesPerWeight = bytesPerWeight;
+    }
+  }
+
+  private final Encoding encoding;
+
+  private final int numFeatures;
+
+  /** Position of the first weight of row i; there are numFeatures + 1 of them */
+  private final IntBuffer offsets;
+
+  /** The per-row scale of INT8 weights; null for the other encodings */
+  private final FloatBuffer scales;
+
+  private final FloatBuffer floats;
+  private final ShortBuffer halves;
+  private final ByteBuffer bytes;
+
+  /**
+   * Reads weights from the given buffer, starting at its current
+   * position, in the layout written by {@link #toBytes}.  The buffer's
+   * position is advanced past the weights.  The weights are not copied
+   * out of the buffer.
+   */
+  public CompactCRFWeights(ByteBuffer buffer) {
+    ByteBuffer in = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    int encodingId = in.getInt();
+    if (encodingId < 0 || encodingId >= Encoding.values().length) {
+      throw new IllegalArgumentException("Unknown CRF weight encoding " + encodingId);
+    }
+    encoding = Encoding.values()[encodingId];
+    numFeatures = in.getInt();
+    offsets = slice(in, 4 * (numFeatures + 1)).asIntBuffer();
+    int numWeights = offsets.get(numFeatures);
+    scales = (encoding == Encoding.INT8) ? slice(in, 4 * numFeatures).asFloatBuffer() : null;
+    ByteBuffer values = slice(in, encoding.bytesPerWeight * numWeights);
+    floats = (encoding == Encoding.FLOAT32) ? values.asFloatBuffer() : null;
+    halves = (encoding == Encoding.FLOAT16) ? values.asShortBuffer() : null;
+    bytes = (encoding == Encoding.INT8) ? values : null;
+    in.position(in.position() + padding(encoding.bytesPerWeight * numWeights));
+    buffer.position(buffer.position() + in.position());
+  }
+
+  private static ByteBuffer slice(ByteBuffer in, int length) {
+    ByteBuffer region = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+    region.limit(length);
+    in.position(in.position() + length);
+    return region;
+  }
+
+  private static int padding(long length) {
+    return (int) ((4 - length % 4) % 4);
+  }
+
+  /**
+   * Encodes the given weights in the little-endian layout read by
+   * {@link #CompactCRFWeights(ByteBuffer)}: the encoding and the number of
+   * rows, the row offsets, the INT8 row scales if needed, and the encoded
+   * weights, padded to a multiple of four bytes.
+   */
+  public static byte[] toBytes(double[][] weights, Encoding encoding) {
+    long numWeights = 0;
+    for (double[] row : weights) {
+      numWeights += row.length;
+    }
+    long length = 4 * (2 + weights.length + 1) + encoding.bytesPerWeight * numWeights + padding(encoding.bytesPerWeight * numWeights);
+    if (encoding == Encoding.INT8) {
+      length += 4 * weights.length;
+    }
+    if (length > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Too many weights for a compact CRF model: " + numWeights);
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(encoding.ordinal());
+    buffer.putInt(weights.length);
+    int offset = 0;
+    buffer.putInt(offset);
+    for (double[] row : weights) {
+      offset += row.length;
+      buffer.putInt(offset);
+    }
+    switch (encoding) {
+    case FLOAT32:
+      for (double[] row : weights)
+        for (double w : row)
+          buffer.putFloat((float) w);
+      break;
+    case FLOAT16:
+      for (double[] row : weights)
+        for (double w : row)
+          buffer.putShort(toHalf((float) w));
+      break;
+    case INT8:
+      float[] rowScales = new float[weights.length];
+      for (int i = 0; i < weights.length; ++i) {
+        double max = 0.0;
+        for (double w : weights[i]) {
+          max = Math.max(max, Math.abs(w));
+        }
+        rowScales[i] = (float) (max / 127.0);
+        buffer.putFloat(rowScales[i]);
+      }
+      for (int i = 0; i < weights.length; ++i) {
+        for (double w : weights[i]) {
+          buffer.put(rowScales[i] == 0.0f ? 0 : (byte) Math.round(w / rowScales[i]));
+        }
+      }
+      break;
+    default:
+      throw new IllegalArgumentException("Unknown encoding " + encoding);
+    }
+    return buffer.array();
+  }
+
+  public Encoding encoding() {
+    return encoding;
+  }
+
+  public int numFeatures() {
+    return numFeatures;
+  }
+
+  public int numWeights() {
+    return offsets.get(numFeatures);
+  }
+
+  /** The number of weights in the row of the given feature */
+  public int rowLength(int feature) {
+    return offsets.get(feature + 1) - offsets.get(feature);
+  }
+
+  /**
+   * The weight of the given feature for the given label assignment,
+   * equivalent to {@code weights[feature][labelIndex]}.
+   */
+  public double get(int feature, int labelIndex) {
+    int position = offsets.get(feature) + labelIndex;
+    switch (encoding) {
+    case FLOAT32:
+      return floats.get(position);
+    case FLOAT16:
+      return fromHalf(halves.get(position));
+    default:
+      return scales.get(feature) * bytes.get(position);
+    }
+  }
+
+  /** Decodes the weights of one feature into a new array */
+  public double[] row(int feature) {
+    double[] row = new double[rowLength(feature)];
+    for (int j = 0; j < row.length; ++j) {
+      row[j] = get(feature, j);
+    }
+    return row;
+  }
+
+  /** Decodes all the weights into a new {@code double[][]} */
+  public double[][] toArray() {
+    double[][] weights = new double[numFeatures][];
+    for (int i = 0; i < numFeatures; ++i) {
+      weights[i] = row(i);
+    }
+    return weights;
+  }
+
+  /**
+   * Converts a float to IEEE 754 half precision, rounding to the nearest
+   * even value.  Values too large for a half become infinite.
+   */
+  static short toHalf(float value) {
+    int bits = Float.floatToIntBits(value);
+    int sign = (bits >>> 16) & 0x8000;
+    int exponent = (bits >>> 23) & 0xff;
+    int mantissa = bits & 0x7fffff;
+    if (exponent == 0xff) {
+      // infinity or NaN
+      return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+    }
+    int halfExponent = exponent - 127 + 15;
+    if (halfExponent >= 0x1f) {
+      return (short) (sign | 0x7c00);
+    }
+    if (halfExponent <= 0) {
+      // subnormal half, or zero
+      if (halfExponent < -10) {
+        return (short) sign;
+      }
+      mantissa |= 0x800000;
+      int shift = 14 - halfExponent;
+      int half = mantissa >> shift;
+      int rest = mantissa & ((1 << shift) - 1);
+      int halfway = 1 << (shift - 1);
+      if (rest > halfway || (rest == halfway && (half & 1) != 0)) {
+        ++half;
+      }
+      return (short) (sign | half);
+    }
+    int half = (halfExponent << 10) | (mantissa >> 13);
+    int rest = mantissa & 0x1fff;
+    if (rest > 0x1000 || (rest == 0x1000 && (half & 1) != 0)) {
+      // may carry into the exponent, which is still the right answer
+      ++half;
+    }
+    return (short) (sign | half);
+  }
+
+  /** Converts an IEEE 754 half precision value to a float */
+  static float fromHalf(short half) {
+    int sign = (half & 0x8000) << 16;
+    int exponent = (half >>> 10) & 0x1f;
+    int mantissa = half & 0x3ff;
+    if (exponent == 0x1f) {
+      return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+    }
+    if (exponent == 0) {
+      if (mantissa == 0) {
+        return Float.intBitsToFloat(sign);
+      }
+      // subnormal: normalize it
+      exponent = 1;
+      while ((mantissa & 0x400) == 0) {
+        mantissa <<= 1;
+        --exponent;
+      }
+      mantissa &= 0x3ff;
+    }
+    return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+  }
+
+}
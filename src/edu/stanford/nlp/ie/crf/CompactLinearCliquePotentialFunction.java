@@ -0,0 +1,30 @@
+package edu.stanford.nlp.ie.crf;
+
+/**
+ * The same clique potentials as {@link LinearCliquePotentialFunction}, with
+ * the weights read from a {@link CompactCRFWeights} rather than a
+ * {@code double[][]}.
+ */
+public class CompactLinearCliquePotentialFunction implements CliquePotentialFunction {
+
+  private final CompactCRFWeights weights;
+
+  CompactLinearCliquePotentialFunction(CompactCRFWeights weights) {
+    this.weights = weights;
+  }
+
+  @Override
+  public double computeCliquePotential(int cliqueSize, int labelIndex,
+      int[] cliqueFeatures, double[] featureVal, int posInSent) {
+    double output = 0.0;
+    for (int m = 0; m < cliqueFeatures.length; m++) {
+      double dotProd = weights.get(cliqueFeatures[m], labelIndex);
+      if (featureVal != null) {
+        dotProd *= featureVal[m];
+      }
+      output += dotProd;
+    }
+    return output;
+  }
+
+}
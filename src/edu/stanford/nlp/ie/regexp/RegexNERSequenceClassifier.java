@@ -22,6 +22,9 @@ import edu.stanford.nlp.io.IOUtils;
 import edu.stanford.nlp.io.RuntimeIOException;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.tokensregex.matcher.AhoCorasickMatcher;
+import edu.stanford.nlp.ling.tokensregex.matcher.Match;
+import edu.stanford.nlp.ling.tokensregex.matcher.TrieMap;
 import edu.stanford.nlp.sequences.DocumentReaderAndWriter;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.Generics;
@@ -54,8 +57,10 @@ import edu.stanford.nlp.util.Generics;
  * already been tokenized.  So, for example, with our usual English tokenization, things like genitives
  * and commas at the end of words will be separated in the input and matched as a separate token.
  *
- * This class isn't implemented very efficiently, since every regex is evaluated at every token position.
- * So it can and does get quite slow if you have a lot of patterns in your NER rules.
+ * Entries which are sequences of plain words (letters and digits) are found all at once with an
+ * {@link AhoCorasickMatcher}, so they are cheap even in large numbers.  But every other regex is
+ * evaluated at every token position, so it can get quite slow if you have a lot of real regexes
+ * in your NER rules.
  * {@code TokensRegex} is a more general framework to provide the functionality of this class.
  * But at present we still use this class.
  *
@@ -65,6 +70,10 @@ import edu.stanford.nlp.util.Generics;
 public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreLabel> {
 
   private final List<Entry> entries;
+  /** Finds the entries which are sequences of plain words; the values are their indices in entries */
+  private final AhoCorasickMatcher<String,List<Integer>> literalMatcher;
+  /** The indices in entries of the other entries, in increasing order */
+  private final int[] regexEntries;
 
   private final Set<String> myLabels;
 
@@ -99,31 +108,7 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
    *                      (Note that this is a postfilter; using this will not speed up matching.)
    */
   public RegexNERSequenceClassifier(String mapping, boolean ignoreCase, boolean overwriteMyLabels, String validPosRegex) {
-    super(new Properties());
-    if (validPosRegex != null && !validPosRegex.equals("")) {
-      validPosPattern = Pattern.compile(validPosRegex);
-    } else {
-      validPosPattern = null;
-    }
-    BufferedReader rd = null;
-    try {
-      rd = IOUtils.readerFromString(mapping);
-      entries = readEntries(rd, ignoreCase);
-    } catch (IOException e) {
-      throw new RuntimeIOException("Couldn't read RegexNER from " + mapping, e);
-    } finally {
-      IOUtils.closeIgnoringExceptions(rd);
-    }
-
-    this.ignoreCase = ignoreCase;
-    myLabels = Generics.newHashSet();
-    // Can always override background or none.
-    myLabels.add(flags.backgroundSymbol);
-    myLabels.add(null);
-    if (overwriteMyLabels) {
-      for (Entry entry: entries) myLabels.add(entry.type);
-    }
-    // System.err.println("RegexNER using labels: " +  myLabels);
+    this(readEntries(mapping, ignoreCase), ignoreCase, overwriteMyLabels, validPosRegex);
   }
 
   /**
@@ -145,19 +130,41 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
                                     boolean ignoreCase,
                                     boolean overwriteMyLabels,
                                     String validPosRegex) {
+    this(readEntries(reader, ignoreCase, "reader"), ignoreCase, overwriteMyLabels, validPosRegex);
+  }
+
+  private RegexNERSequenceClassifier(List<Entry> entries,
+                                     boolean ignoreCase,
+                                     boolean overwriteMyLabels,
+                                     String validPosRegex) {
     super(new Properties());
     if (validPosRegex != null && !validPosRegex.equals("")) {
       validPosPattern = Pattern.compile(validPosRegex);
     } else {
       validPosPattern = null;
     }
-    try {
-      entries = readEntries(reader, ignoreCase);
-    } catch (IOException e) {
-      throw new RuntimeIOException("Couldn't read RegexNER from reader", e);
-    }
-
+    this.entries = entries;
     this.ignoreCase = ignoreCase;
+    TrieMap<String,List<Integer>> literals = new TrieMap<String,List<Integer>>();
+    List<Integer> regexEntries = new ArrayList<Integer>();
+    for (int i = 0; i < entries.size(); i++) {
+      List<String> key = literalKey(entries.get(i), ignoreCase);
+      if (key != null) {
+        List<Integer> indices = literals.get(key);
+        if (indices == null) {
+          indices = new ArrayList<Integer>(1);
+          literals.put(key, indices);
+        }
+        indices.add(i);
+      } else {
+        regexEntries.add(i);
+      }
+    }
+    literalMatcher = new AhoCorasickMatcher<String,List<Integer>>(literals);
+    this.regexEntries = new int[regexEntries.size()];
+    for (int i = 0; i < this.regexEntries.length; i++) {
+      this.regexEntries[i] = regexEntries.get(i);
+    }
     myLabels = Generics.newHashSet();
     // Can always override background or none.
     myLabels.add(flags.backgroundSymbol);
@@ -223,32 +230,114 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
     return false;
   }
 
+  /**
+   * The words of an entry which matches only sequences of plain words, normalized as by
+   * {@link #literalWord}, or null if the entry has real regexes.
+   */
+  private static List<String> literalKey(Entry entry, boolean ignoreCase) {
+    List<String> key = new ArrayList<String>(entry.exact.size());
+    for (String exact : entry.exact) {
+      if (exact == null) {
+        return null;
+      }
+      key.add(literalWord(exact, ignoreCase));
+    }
+    return key;
+  }
+
+  /**
+   * A plain word pattern matches a word if both the case insensitive regex and
+   * String.equalsIgnoreCase match it, which is to say if they are equal up to the case of ASCII letters.
+   */
+  private static String literalWord(String word, boolean ignoreCase) {
+    if (word == null || !ignoreCase) {
+      return word;
+    }
+    char[] chars = word.toCharArray();
+    for (int i = 0; i < chars.length; i++) {
+      if (chars[i] >= 'A' && chars[i] <= 'Z') {
+        chars[i] = (char) (chars[i] - 'A' + 'a');
+      }
+    }
+    return new String(chars);
+  }
+
   @Override
   public List<CoreLabel> classify(List<CoreLabel> document) {
-    // This is pretty deathly slow. It loops over each entry, and then loops over each document token for it.
-    // We could gain by compiling into disjunctions patterns for the same class with the same priorities and restrictions?
-    for (Entry entry : entries) {
-      int start = 0; // the index of the token from which we begin our search each iteration
-      while (true) {
-        // only search the part of the document that we haven't yet considered
-        // System.err.println("REGEX FIND MATCH FOR " + entry.regex.toString());
-        start = findStartIndex(entry, document, start, myLabels, this.ignoreCase);
-        if (start < 0) break; // no match found
-
-        // make sure we annotate only valid POS tags
-        if (containsValidPos(document, start, start + entry.regex.size())) {
-          // annotate each matching token
-          for (int i = start; i < start + entry.regex.size(); i++) {
-            CoreLabel token = document.get(i);
-            token.set(CoreAnnotations.AnswerAnnotation.class, entry.type);
-          }
+    // The entries are applied in order, each one from the start of the document to the end,
+    // as each match changes which later matches are allowed.  The plain word entries are only
+    // tried where the literalMatcher found them, and other entries everywhere.
+    List<Long> literalMatches = new ArrayList<Long>();
+    if (literalMatcher.size() > 0) {
+      List<String> words = new ArrayList<String>(document.size());
+      for (CoreLabel token : document) {
+        words.add(literalWord(token.word(), ignoreCase));
+      }
+      for (Match<String,List<Integer>> m : literalMatcher.findAllMatches(words)) {
+        for (int entry : m.getValue()) {
+          literalMatches.add(((long) entry << 32) | m.getBegin());
+        }
+      }
+      Collections.sort(literalMatches);
+    }
+
+    int next = 0;
+    for (int r = 0; r <= regexEntries.length; r++) {
+      int until = (r < regexEntries.length) ? regexEntries[r] : entries.size();
+      for (; next < literalMatches.size() && (int) (literalMatches.get(next) >>> 32) < until; next++) {
+        Entry entry = entries.get((int) (literalMatches.get(next) >>> 32));
+        int start = (int) (long) literalMatches.get(next);
+        if (matchesAt(entry, document, start, myLabels, ignoreCase)) {
+          annotate(entry, document, start);
+        }
+      }
+      if (r < regexEntries.length) {
+        Entry entry = entries.get(regexEntries[r]);
+        int start = 0; // the index of the token from which we begin our search each iteration
+        while (true) {
+          // only search the part of the document that we haven't yet considered
+          // System.err.println("REGEX FIND MATCH FOR " + entry.regex.toString());
+          start = findStartIndex(entry, document, start, myLabels, this.ignoreCase);
+          if (start < 0) break; // no match found
+          annotate(entry, document, start);
+          start++;
         }
-        start++;
       }
     }
     return document;
   }
 
+  private void annotate(Entry entry, List<CoreLabel> document, int start) {
+    // make sure we annotate only valid POS tags
+    if (containsValidPos(document, start, start + entry.regex.size())) {
+      // annotate each matching token
+      for (int i = start; i < start + entry.regex.size(); i++) {
+        CoreLabel token = document.get(i);
+        token.set(CoreAnnotations.AnswerAnnotation.class, entry.type);
+      }
+    }
+  }
+
+  private static List<Entry> readEntries(String mapping, boolean ignoreCase) {
+    BufferedReader rd = null;
+    try {
+      rd = IOUtils.readerFromString(mapping);
+      return readEntries(rd, ignoreCase);
+    } catch (IOException e) {
+      throw new RuntimeIOException("Couldn't read RegexNER from " + mapping, e);
+    } finally {
+      IOUtils.closeIgnoringExceptions(rd);
+    }
+  }
+
+  private static List<Entry> readEntries(BufferedReader reader, boolean ignoreCase, String source) {
+    try {
+      return readEntries(reader, ignoreCase);
+    } catch (IOException e) {
+      throw new RuntimeIOException("Couldn't read RegexNER from " + source, e);
+    }
+  }
+
   /**
    *  Creates a combined list of Entries using the provided mapping file, and sorts them by
    *  first by priority, then the number of tokens in the regex.
@@ -317,25 +406,7 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
     // System.err.println("REGEX FIND MATCH FOR " + regex.toString() + " length: " + rSize);
 
     for (int start = searchStart, end = document.size() - regex.size(); start <= end; start++) {
-      boolean failed = false;
-      for (int i = 0; i < rSize; i++) {
-        Pattern pattern = regex.get(i);
-        String exact = entry.exact.get(i);
-        CoreLabel token = document.get(start + i);
-        String NERType = token.get(CoreAnnotations.NamedEntityTagAnnotation.class);
-        String currentType = token.get(CoreAnnotations.AnswerAnnotation.class);
-
-        if (
-            currentType != null ||
-            (exact != null && ! (ignoreCase ? exact.equalsIgnoreCase(token.word()) : exact.equals(token.word()))) ||
-            ! (entry.overwritableTypes.contains(NERType) || myLabels.contains(NERType))  ||
-            ! pattern.matcher(token.word()).matches()  // last, as this is likely the expensive operation
-            ) {
-          failed = true;
-          break;
-        }
-      }
-      if (! failed) {
+      if (matchesAt(entry, document, start, myLabels, ignoreCase)) {
         // System.err.print("MATCHED REGEX:");
         // for(int i = start; i < start + regex.size(); i ++) System.err.print(" " + document.get(i).word());
         // System.err.println();
@@ -345,6 +416,32 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
     return -1;
   }
 
+  /**
+   * Checks if the entry's regex sequence matches the document at the given index, and that the
+   * tokens may be annotated, as for {@link #findStartIndex}.
+   */
+  private static boolean matchesAt(Entry entry, List<CoreLabel> document, int start, Set<String> myLabels, boolean ignoreCase) {
+    List<Pattern> regex = entry.regex;
+    int rSize = regex.size();
+    for (int i = 0; i < rSize; i++) {
+      Pattern pattern = regex.get(i);
+      String exact = entry.exact.get(i);
+      CoreLabel token = document.get(start + i);
+      String NERType = token.get(CoreAnnotations.NamedEntityTagAnnotation.class);
+      String currentType = token.get(CoreAnnotations.AnswerAnnotation.class);
+
+      if (
+          currentType != null ||
+          (exact != null && ! (ignoreCase ? exact.equalsIgnoreCase(token.word()) : exact.equals(token.word()))) ||
+          ! (entry.overwritableTypes.contains(NERType) || myLabels.contains(NERType))  ||
+          ! pattern.matcher(token.word()).matches()  // last, as this is likely the expensive operation
+          ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
 
   @Override
   public List<CoreLabel> classifyWithGlobalInformation(List<CoreLabel> tokenSeq, final CoreMap doc, final CoreMap sent) {
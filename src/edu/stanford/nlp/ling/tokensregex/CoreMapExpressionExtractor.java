@@ -1,6 +1,7 @@
 package edu.stanford.nlp.ling.tokensregex;
 
 import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.io.RuntimeIOException;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.tokensregex.parser.ParseException;
 import edu.stanford.nlp.ling.tokensregex.parser.TokenSequenceParseException;
@@ -13,7 +14,13 @@ import edu.stanford.nlp.util.*;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.function.Predicate;
 import java.util.logging.Level;
@@ -40,11 +47,13 @@ import java.util.logging.Logger;
  * @author Angel Chang
  * @see SequenceMatchRules
  */
-public class CoreMapExpressionExtractor<T extends MatchedExpression> {
+public class CoreMapExpressionExtractor<T extends MatchedExpression> implements Serializable {
 
   // TODO: Remove templating of MatchedExpressions<?>  (keep for now until TimeExpression rules can be decoupled)
 
-  private Logger logger = Logger.getLogger(CoreMapExpressionExtractor.class.getName());
+  private static final long serialVersionUID = 1L;
+
+  private transient Logger logger = Logger.getLogger(CoreMapExpressionExtractor.class.getName());
   private final Env env;
   /* Keeps temporary tags created by extractor */
   private boolean keepTags = false;
@@ -57,7 +66,7 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression> {
    * Describes one stage of extraction.
    * @param <T>
    */
-  public static class Stage<T> {
+  public static class Stage<T> implements Serializable {
     /** Whether to clear matched expressions from previous stages or not */
     boolean clearMatched = false;
     /**
@@ -93,11 +102,18 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression> {
 
     private void addCompositeRule(SequenceMatchRules.ExtractRule<List<? extends CoreMap>, T> rule)
     {
+      if (compositeExtractRule == null) {
+        compositeExtractRule = new SequenceMatchRules.TriggeredListExtractRule<List<? extends CoreMap>, T>();
+      }
       compositeExtractRule = addRule(compositeExtractRule, rule);
     }
 
     private void addBasicRule(SequenceMatchRules.ExtractRule<CoreMap, T> rule)
     {
+      if (basicExtractRule == null) {
+        // Token pattern rules are only applied when the tokens can trigger them
+        basicExtractRule = new SequenceMatchRules.TriggeredListExtractRule<CoreMap, T>();
+      }
       basicExtractRule = addRule(basicExtractRule, rule);
     }
 
@@ -252,6 +268,11 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression> {
     this.logger = logger;
   }
 
+  private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+    ois.defaultReadObject();
+    logger = Logger.getLogger(CoreMapExpressionExtractor.class.getName());
+  }
+
   public void setExtractRules(SequenceMatchRules.ExtractRule<CoreMap, T> basicExtractRule,
                               SequenceMatchRules.ExtractRule<List<? extends CoreMap>, T> compositeExtractRule,
                               Predicate<T> filterRule)
@@ -296,6 +317,44 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression> {
     return extractor;
   }
 
+  /**
+   * Returns a key which identifies the rules in the given files by their contents, together with
+   * a description of the rest of the configuration which the rules are compiled with
+   * (e.g., the properties used to set up the environment).
+   * Extractors created with the same key are equivalent, so callers can compile the rules once and share them,
+   * and a change to any of the rule files gives a new key.
+   * @param configuration Description of the environment the rules are compiled in
+   * @param filenames Files with the rules
+   * @throws RuntimeIOException if a file cannot be read
+   */
+  public static String rulesKey(String configuration, List<String> filenames) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    digest.update(configuration.getBytes(StandardCharsets.UTF_8));
+    byte[] buffer = new byte[8192];
+    for (String filename:filenames) {
+      digest.update((byte) 0);
+      digest.update(filename.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      try (InputStream is = IOUtils.getInputStreamFromURLOrClasspathOrFileSystem(filename)) {
+        for (int n; (n = is.read(buffer)) > 0; ) {
+          digest.update(buffer, 0, n);
+        }
+      } catch (IOException ex) {
+        throw new RuntimeIOException("Error reading file: " + filename, ex);
+      }
+    }
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(String.format("%02x", b & 0xff));
+    }
+    return hex.toString();
+  }
+
   /**
    * Creates an extractor using the specified environment, and reading the rules from the given filename.
    * @param env
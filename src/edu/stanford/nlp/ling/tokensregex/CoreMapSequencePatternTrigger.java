@@ -0,0 +1,322 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.util.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Trigger for sequence patterns over CoreMaps.  Allows for fast identification of which patterns
+ *  may match a sequence, without trying to match each of them.
+ *
+ * <p>For each pattern, conditions are found such that any match of the pattern has a token satisfying
+ *  one of them (see {@link SequencePattern#findRequiredConditions}).  The conditions are
+ *  string annotation values, which are looked up in an inverted index, and regular expressions over
+ *  annotation values.  Which patterns each distinct annotation value triggers is worked out once and cached,
+ *  so for most tokens finding the triggered patterns takes a single lookup.
+ *  Unlike {@link CoreMapNodePatternTrigger}, the trigger is conservative: a pattern which is not
+ *  triggered cannot match anywhere in the sequence.  Patterns with no such conditions are always triggered.</p>
+ */
+public class CoreMapSequencePatternTrigger implements MultiPatternMatcher.SequencePatternTrigger<CoreMap> {
+
+  /** Maximum number of distinct values of an annotation for which the triggered patterns are cached */
+  private static final int MAX_CACHED_VALUES = 100000;
+
+  private final List<? extends SequencePattern<CoreMap>> patterns;
+  /** Indices of the patterns with no conditions, which are always triggered */
+  private final BitSet alwaysTriggered = new BitSet();
+  /** The conditions of the patterns, by the annotation they are on */
+  private final Map<Class<?>, KeyTriggers> keyTriggers = new LinkedHashMap<Class<?>, KeyTriggers>();
+
+  public CoreMapSequencePatternTrigger(Collection<? extends SequencePattern<CoreMap>> patterns) {
+    this.patterns = new ArrayList<SequencePattern<CoreMap>>(patterns);
+    Function<NodePattern<CoreMap>, Collection<Condition>> nodeConditions = CoreMapSequencePatternTrigger::nodeConditions;
+    for (int i = 0; i < this.patterns.size(); i++) {
+      Collection<Condition> conditions = this.patterns.get(i).findRequiredConditions(nodeConditions, CONDITIONS_PREFERENCE);
+      if (conditions == null) {
+        alwaysTriggered.set(i);
+        continue;
+      }
+      for (Condition condition:conditions) {
+        Class<?> key = (condition instanceof ValueCondition)? ((ValueCondition) condition).match.key: ((RegexCondition) condition).key;
+        KeyTriggers triggers = keyTriggers.get(key);
+        if (triggers == null) {
+          keyTriggers.put(key, triggers = new KeyTriggers(key));
+        }
+        triggers.add(condition, i);
+      }
+    }
+  }
+
+  private static <K> void addIndex(Map<K, List<Integer>> index, K key, int i) {
+    List<Integer> indices = index.get(key);
+    if (indices == null) {
+      index.put(key, indices = new ArrayList<Integer>(1));
+    }
+    // A pattern may have the same condition twice (e.g., /a/ | /a/ /b/)
+    if (indices.isEmpty() || indices.get(indices.size() - 1) != i) {
+      indices.add(i);
+    }
+  }
+
+  /** The value of an annotation of the CoreMap, whatever its type */
+  @SuppressWarnings("unchecked")
+  static Object getValue(CoreMap map, Class<?> key) {
+    return map.get((Class<? extends TypesafeMap.Key<Object>>) key);
+  }
+
+  /** Returns the number of patterns which are always triggered */
+  public int getAlwaysTriggeredCount() {
+    return alwaysTriggered.cardinality();
+  }
+
+  /**
+   * Returns the indices (in the collection of patterns this trigger was created with) of the patterns
+   *  which may match somewhere in the given sequence.
+   */
+  public BitSet getTriggered(List<? extends CoreMap> elements) {
+    BitSet triggered = (BitSet) alwaysTriggered.clone();
+    for (KeyTriggers triggers:keyTriggers.values()) {
+      for (CoreMap element:elements) {
+        Object value = getValue(element, triggers.key);
+        if (value instanceof String) {
+          for (int i:triggers.getTriggered((String) value)) {
+            triggered.set(i);
+          }
+        }
+      }
+    }
+    return triggered;
+  }
+
+  @Override
+  public Collection<SequencePattern<CoreMap>> apply(List<? extends CoreMap> elements) {
+    BitSet triggered = getTriggered(elements);
+    List<SequencePattern<CoreMap>> triggeredPatterns = new ArrayList<SequencePattern<CoreMap>>(triggered.cardinality());
+    for (int i = triggered.nextSetBit(0); i >= 0; i = triggered.nextSetBit(i + 1)) {
+      triggeredPatterns.add(patterns.get(i));
+    }
+    return triggeredPatterns;
+  }
+
+  /**
+   * Conditions such that any token matched by the node pattern satisfies one of them, or null if there are none
+   */
+  private static Collection<Condition> nodeConditions(NodePattern<CoreMap> pattern) {
+    if (pattern instanceof CoreMapNodePattern) {
+      // Every annotation pattern has to match, so any of them will do
+      Collection<Condition> best = null;
+      for (Pair<?,?> p:((CoreMapNodePattern) pattern).getAnnotationPatterns()) {
+        Collection<Condition> conditions = annotationConditions((Class<?>) p.first, (NodePattern<?>) p.second);
+        if (conditions != null && (best == null || CONDITIONS_PREFERENCE.compare(conditions, best) < 0)) {
+          best = conditions;
+        }
+      }
+      return best;
+    } else if (pattern instanceof NodePattern.ConjNodePattern) {
+      Collection<Condition> best = null;
+      for (NodePattern<CoreMap> p:((NodePattern.ConjNodePattern<CoreMap>) pattern).nodePatterns) {
+        Collection<Condition> conditions = nodeConditions(p);
+        if (conditions != null && (best == null || CONDITIONS_PREFERENCE.compare(conditions, best) < 0)) {
+          best = conditions;
+        }
+      }
+      return best;
+    } else if (pattern instanceof NodePattern.DisjNodePattern) {
+      Set<Condition> all = new LinkedHashSet<Condition>();
+      for (NodePattern<CoreMap> p:((NodePattern.DisjNodePattern<CoreMap>) pattern).nodePatterns) {
+        Collection<Condition> conditions = nodeConditions(p);
+        if (conditions == null) return null;
+        all.addAll(conditions);
+      }
+      return all;
+    } else {
+      return null;
+    }
+  }
+
+  private static Collection<Condition> annotationConditions(Class<?> key, NodePattern<?> pattern) {
+    if (key == null) return null;
+    if (pattern instanceof CoreMapNodePattern.StringAnnotationPattern) {
+      CoreMapNodePattern.StringAnnotationPattern p = (CoreMapNodePattern.StringAnnotationPattern) pattern;
+      if (p.target == null) return null;
+      String value = (p.ignoreCase())? foldCase(p.target): p.target;
+      return Collections.<Condition>singletonList(new ValueCondition(new StringMatch(key, p), value));
+    } else if (pattern instanceof CoreMapNodePattern.StringInSetAnnotationPattern) {
+      CoreMapNodePattern.StringInSetAnnotationPattern p = (CoreMapNodePattern.StringInSetAnnotationPattern) pattern;
+      StringMatch match = new StringMatch(key, p);
+      List<Condition> conditions = new ArrayList<Condition>(p.targets.size());
+      for (String target:p.targets) {
+        conditions.add(new ValueCondition(match, target));
+      }
+      return conditions;
+    } else if (pattern instanceof CoreMapNodePattern.StringAnnotationRegexPattern) {
+      return Collections.<Condition>singletonList(
+          new RegexCondition(key, ((CoreMapNodePattern.StringAnnotationRegexPattern) pattern).pattern));
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Maps each code point to the same value as all the code points it is equal to ignoring case,
+   *  in the sense of {@link String#equalsIgnoreCase}
+   */
+  private static String foldCase(String str) {
+    StringBuilder sb = new StringBuilder(str.length());
+    for (int i = 0; i < str.length(); ) {
+      int c = str.codePointAt(i);
+      sb.appendCodePoint(Character.toLowerCase(Character.toUpperCase(c)));
+      i += Character.charCount(c);
+    }
+    return sb.toString();
+  }
+
+  /** Prefers conditions which are cheap to check (values rather than regular expressions), then fewer of them */
+  private static final Comparator<Collection<Condition>> CONDITIONS_PREFERENCE = (c1, c2) -> {
+    int r1 = 0, r2 = 0;
+    for (Condition c:c1) { if (c instanceof RegexCondition) r1++; }
+    for (Condition c:c2) { if (c instanceof RegexCondition) r2++; }
+    if (r1 != r2) return (r1 < r2)? -1:1;
+    return Integer.compare(c1.size(), c2.size());
+  };
+
+  /** The conditions on the values of one annotation, and the patterns they trigger */
+  private static class KeyTriggers {
+    final Class<?> key;
+    /** Indices of patterns by the values that trigger them, grouped by how values are compared */
+    final Map<StringMatch, Map<String, List<Integer>>> valueTriggers = new LinkedHashMap<StringMatch, Map<String, List<Integer>>>();
+    /** Indices of patterns by the regular expressions that trigger them */
+    final Map<RegexCondition, List<Integer>> regexTriggers = new LinkedHashMap<RegexCondition, List<Integer>>();
+    /** The patterns triggered by each value seen so far (up to MAX_CACHED_VALUES of them) */
+    final Map<String, int[]> cache = new ConcurrentHashMap<String, int[]>();
+
+    KeyTriggers(Class<?> key) {
+      this.key = key;
+    }
+
+    void add(Condition condition, int i) {
+      if (condition instanceof ValueCondition) {
+        ValueCondition c = (ValueCondition) condition;
+        Map<String, List<Integer>> index = valueTriggers.get(c.match);
+        if (index == null) {
+          valueTriggers.put(c.match, index = Generics.newHashMap());
+        }
+        addIndex(index, c.value, i);
+      } else {
+        addIndex(regexTriggers, (RegexCondition) condition, i);
+      }
+    }
+
+    int[] getTriggered(String value) {
+      int[] triggered = cache.get(value);
+      if (triggered == null) {
+        Set<Integer> indices = new TreeSet<Integer>();
+        for (Map.Entry<StringMatch, Map<String, List<Integer>>> entry:valueTriggers.entrySet()) {
+          List<Integer> matched = entry.getValue().get(entry.getKey().canonical(value));
+          if (matched != null) {
+            indices.addAll(matched);
+          }
+        }
+        for (Map.Entry<RegexCondition, List<Integer>> entry:regexTriggers.entrySet()) {
+          if (entry.getKey().regex.matcher(value).matches()) {
+            indices.addAll(entry.getValue());
+          }
+        }
+        triggered = ArrayUtils.asPrimitiveIntArray(indices);
+        if (cache.size() < MAX_CACHED_VALUES) {
+          cache.put(value, triggered);
+        }
+      }
+      return triggered;
+    }
+  }
+
+  private abstract static class Condition {}
+
+  /** How a string pattern compares the values of an annotation: by its class and flags */
+  private static class StringMatch {
+    final Class<?> key;
+    final CoreMapNodePattern.AbstractStringAnnotationPattern pattern;
+
+    StringMatch(Class<?> key, CoreMapNodePattern.AbstractStringAnnotationPattern pattern) {
+      this.key = key;
+      this.pattern = pattern;
+    }
+
+    /** The value the pattern compares with its target(s) */
+    String canonical(String value) {
+      if (pattern instanceof CoreMapNodePattern.StringInSetAnnotationPattern) {
+        return pattern.getNormalized(value);
+      }
+      if (pattern.normalize()) {
+        value = pattern.getNormalized(value);
+      }
+      return (pattern.ignoreCase())? foldCase(value): value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof StringMatch)) return false;
+      StringMatch that = (StringMatch) o;
+      return key.equals(that.key) && pattern.getClass().equals(that.pattern.getClass()) && pattern.flags == that.pattern.flags;
+    }
+
+    @Override
+    public int hashCode() {
+      return (key.hashCode() * 31 + pattern.getClass().hashCode()) * 31 + pattern.flags;
+    }
+  }
+
+  /** The annotation has the value, as compared by the string match */
+  private static class ValueCondition extends Condition {
+    final StringMatch match;
+    final String value;
+
+    ValueCondition(StringMatch match, String value) {
+      this.match = match;
+      this.value = value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof ValueCondition)) return false;
+      ValueCondition that = (ValueCondition) o;
+      return match.equals(that.match) && value.equals(that.value);
+    }
+
+    @Override
+    public int hashCode() {
+      return match.hashCode() * 31 + value.hashCode();
+    }
+  }
+
+  /** The annotation matches the regular expression */
+  private static class RegexCondition extends Condition {
+    final Class<?> key;
+    final Pattern regex;
+
+    RegexCondition(Class<?> key, Pattern regex) {
+      this.key = key;
+      this.regex = regex;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof RegexCondition)) return false;
+      RegexCondition that = (RegexCondition) o;
+      return key.equals(that.key) && regex.pattern().equals(that.regex.pattern()) && regex.flags() == that.regex.flags();
+    }
+
+    @Override
+    public int hashCode() {
+      return (key.hashCode() * 31 + regex.pattern().hashCode()) * 31 + regex.flags();
+    }
+  }
+
+}
@@ -6,6 +6,11 @@ import edu.stanford.nlp.pipeline.CoreMapAttributeAggregator;
 import java.util.function.Function;
 import edu.stanford.nlp.util.Pair;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -24,12 +29,16 @@ import java.util.regex.Pattern;
  * </ul>
  * </p>
  */
-public class Env {
+public class Env implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
   /**
    * Parser that converts a string into a SequencePattern.
+   * Not serialized: a new parser of the same class is created when the environment is read back.
    * @see edu.stanford.nlp.ling.tokensregex.parser.TokenSequenceParser
    */
-  SequencePattern.Parser parser;
+  transient SequencePattern.Parser parser;
   /**
    * Mapping of variable names to their values
    */
@@ -38,7 +47,7 @@ public class Env {
   /**
    * Mapping of per thread temporary variables to their values
    */
-  ThreadLocal<Map<String,Object>> threadLocalVariables = new ThreadLocal<Map<String,Object>>();
+  transient ThreadLocal<Map<String,Object>> threadLocalVariables = new ThreadLocal<Map<String,Object>>();
   /**
    * Mapping of variables that can be expanded in a regular expression for strings,
    *   to their regular expressions.
@@ -126,6 +135,24 @@ public class Env {
 
   public Env(SequencePattern.Parser p) { this.parser = p; }
 
+  private void writeObject(ObjectOutputStream oos) throws IOException {
+    oos.defaultWriteObject();
+    oos.writeObject((parser != null)? parser.getClass(): null);
+  }
+
+  private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+    ois.defaultReadObject();
+    Class<?> parserClass = (Class<?>) ois.readObject();
+    if (parserClass != null) {
+      try {
+        parser = (SequencePattern.Parser) parserClass.newInstance();
+      } catch (InstantiationException | IllegalAccessException ex) {
+        throw new InvalidObjectException("Cannot create parser " + parserClass.getName() + ": " + ex);
+      }
+    }
+    threadLocalVariables = new ThreadLocal<Map<String,Object>>();
+  }
+
   public void initDefaultBindings() {
     bind("FALSE", Expressions.FALSE);
     bind("TRUE", Expressions.TRUE);
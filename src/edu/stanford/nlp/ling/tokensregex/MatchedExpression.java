@@ -11,6 +11,7 @@ import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.Interval;
 import edu.stanford.nlp.util.IntervalTree;
 
+import java.io.Serializable;
 import java.util.*;
 
 /**
@@ -53,7 +54,7 @@ public class MatchedExpression {
    * Function that takes a CoreMap, applies a extraction function to it, to get a value
    * Also contains information on how to construct a final annotation.
    */
-  public static class SingleAnnotationExtractor implements Function<CoreMap,Value> {
+  public static class SingleAnnotationExtractor implements Function<CoreMap,Value>, Serializable {
     public String name;
     public double priority;      // Priority/Order in which this rule should be applied with respect to others
     public double weight;        // Weight given to the rule (how likely is this rule to fire)
@@ -695,7 +695,7 @@ public class SequenceMatchRules {
     }
   }
 
-  public static class StringMatchResultExtractor implements Function<MatchResult,Value> {
+  public static class StringMatchResultExtractor implements Function<MatchResult,Value>, Serializable {
     Env env;
     Expression action;
     Expression result;
@@ -723,7 +723,7 @@ public class SequenceMatchRules {
     }
   }
 
-  public static class SequenceMatchResultExtractor<T> implements Function<SequenceMatchResult<T>,Value> {
+  public static class SequenceMatchResultExtractor<T> implements Function<SequenceMatchResult<T>,Value>, Serializable {
     Env env;
     Expression action;
     Expression result;
@@ -765,7 +765,7 @@ public class SequenceMatchRules {
    * @param <I> input type
    * @param <O> output type
    */
-  public static class FilterExtractRule<I,O> implements ExtractRule<I,O>
+  public static class FilterExtractRule<I,O> implements ExtractRule<I,O>, Serializable
   {
     Predicate<I> filter;
     ExtractRule<I,O> rule;
@@ -795,7 +795,7 @@ public class SequenceMatchRules {
    * @param <I> input type
    * @param <O> output type
    */
-  public static class ListExtractRule<I,O> implements ExtractRule<I,O>
+  public static class ListExtractRule<I,O> implements ExtractRule<I,O>, Serializable
   {
     List<ExtractRule<I,O>> rules;
 
@@ -835,13 +835,141 @@ public class SequenceMatchRules {
     }
   }
 
+  /**
+   * Extraction rule that applies a list of rules in sequence, like {@link ListExtractRule},
+   *   but skips the token pattern rules which cannot match.
+   * The patterns of the rules are indexed by a {@link CoreMapSequencePatternTrigger} for each sequence
+   *   they are matched against (the input, or an annotation field of the input),
+   *   and for each input only the triggered rules are applied (in their original order).
+   * @param <I> input type
+   * @param <O> output type
+   */
+  public static class TriggeredListExtractRule<I,O> extends ListExtractRule<I,O>
+  {
+    /** Triggers for the rules, rebuilt when rules are added */
+    private transient volatile RuleTriggers triggers;
+
+    public TriggeredListExtractRule(Collection<ExtractRule<I,O>> rules)
+    {
+      super(rules);
+    }
+
+    @SafeVarargs
+    public TriggeredListExtractRule(ExtractRule<I,O>... rules)
+    {
+      super(Collections.<ExtractRule<I,O>>emptyList());
+      for (ExtractRule<I,O> rule:rules) {
+        this.rules.add(rule);
+      }
+    }
+
+    public boolean extract(I in, List<O> out) {
+      RuleTriggers t = triggers;
+      if (t == null || t.nRules != rules.size()) {
+        synchronized (this) {
+          t = triggers;
+          if (t == null || t.nRules != rules.size()) {
+            triggers = t = new RuleTriggers(rules);
+          }
+        }
+      }
+      BitSet skipped = t.getSkipped(in);
+      boolean extracted = false;
+      for (int i = 0; i < t.nRules; i++) {
+        if (!skipped.get(i) && rules.get(i).extract(in,out)) {
+          extracted = true;
+        }
+      }
+      return extracted;
+    }
+  }
+
+  /**
+   * Triggers for the token pattern rules in a list of rules, grouped by the sequence the rules are matched against:
+   *   an annotation field of the input, or the input itself (a null field)
+   */
+  private static class RuleTriggers {
+    final int nRules;
+    final List<Class<?>> fields = new ArrayList<Class<?>>();
+    final List<CoreMapSequencePatternTrigger> triggers = new ArrayList<CoreMapSequencePatternTrigger>();
+    /** For each field, the index in the list of rules of each of the patterns of its trigger */
+    final List<List<Integer>> ruleIndices = new ArrayList<List<Integer>>();
+
+    RuleTriggers(List<? extends ExtractRule<?,?>> rules) {
+      nRules = rules.size();
+      Map<Class<?>, List<SequencePattern<CoreMap>>> patterns = new LinkedHashMap<Class<?>, List<SequencePattern<CoreMap>>>();
+      Map<Class<?>, List<Integer>> indices = new LinkedHashMap<Class<?>, List<Integer>>();
+      for (int i = 0; i < nRules; i++) {
+        ExtractRule<?,?> rule = rules.get(i);
+        if (rule instanceof AnnotationExtractRule) {
+          rule = ((AnnotationExtractRule<?,?>) rule).extractRule;
+        }
+        Class<?> field = null;
+        if (rule instanceof CoreMapExtractRule) {
+          field = ((CoreMapExtractRule<?,?>) rule).annotationField;
+          if (field == null) continue;
+          rule = ((CoreMapExtractRule<?,?>) rule).extractRule;
+        }
+        if (rule instanceof SequencePatternExtractRule) {
+          if (!patterns.containsKey(field)) {
+            patterns.put(field, new ArrayList<SequencePattern<CoreMap>>());
+            indices.put(field, new ArrayList<Integer>());
+          }
+          // Token pattern rules are matched against sequences of CoreMaps
+          @SuppressWarnings("unchecked")
+          SequencePattern<CoreMap> pattern = (SequencePattern<CoreMap>) ((SequencePatternExtractRule<?,?>) rule).pattern;
+          patterns.get(field).add(pattern);
+          indices.get(field).add(i);
+        }
+      }
+      for (Class<?> field:patterns.keySet()) {
+        CoreMapSequencePatternTrigger trigger = new CoreMapSequencePatternTrigger(patterns.get(field));
+        if (trigger.getAlwaysTriggeredCount() < patterns.get(field).size()) {
+          fields.add(field);
+          triggers.add(trigger);
+          ruleIndices.add(indices.get(field));
+        }
+      }
+    }
+
+    /** Returns the indices of the rules which cannot match the input */
+    BitSet getSkipped(Object in) {
+      BitSet skipped = new BitSet(nRules);
+      for (int k = 0; k < fields.size(); k++) {
+        Class<?> field = fields.get(k);
+        Object elements;
+        if (field == null) {
+          elements = in;
+        } else if (in instanceof CoreMap) {
+          elements = CoreMapSequencePatternTrigger.getValue((CoreMap) in, field);
+        } else {
+          continue;
+        }
+        if (elements != null && !(elements instanceof List)) {
+          // Leave it to the rules to deal with
+          continue;
+        }
+        @SuppressWarnings("unchecked")
+        List<? extends CoreMap> list = (List<? extends CoreMap>) elements;
+        BitSet triggered = (list == null)? new BitSet(): triggers.get(k).getTriggered(list);
+        List<Integer> indices = ruleIndices.get(k);
+        for (int j = 0; j < indices.size(); j++) {
+          if (!triggered.get(j)) {
+            skipped.set(indices.get(j));
+          }
+        }
+      }
+      return skipped;
+    }
+  }
+
   /**
    * Extraction rule to apply a extraction rule on a particular CoreMap field
    * Input is of type CoreMap, output is templated type O.
    * @param <T> type of the annotation field
    * @param <O> output type
    */
-  public static class CoreMapExtractRule<T,O> implements ExtractRule<CoreMap, O>
+  public static class CoreMapExtractRule<T,O> implements ExtractRule<CoreMap, O>, Serializable
   {
     Env env;
     Class annotationField;
@@ -869,7 +997,7 @@ public class SequenceMatchRules {
    * Input is of type CoreMap, output is templated type O.
    * @param <O> output type
    */
-  public static class CoreMapToListExtractRule<O> implements ExtractRule<CoreMap, O>
+  public static class CoreMapToListExtractRule<O> implements ExtractRule<CoreMap, O>, Serializable
   {
     ExtractRule<List<? extends CoreMap>,O> extractRule;
 
@@ -886,7 +1014,7 @@ public class SequenceMatchRules {
    * Extraction rule
    * Input is of type CoreMap, output is MatchedExpression
    */
-  public static class BasicSequenceExtractRule implements ExtractRule< List<? extends CoreMap>, MatchedExpression>
+  public static class BasicSequenceExtractRule implements ExtractRule< List<? extends CoreMap>, MatchedExpression>, Serializable
   {
     MatchedExpression.SingleAnnotationExtractor extractor;
 
@@ -909,7 +1037,7 @@ public class SequenceMatchRules {
     }
   }
 
-  public static class SequencePatternExtractRule<T,O> implements ExtractRule< List<? extends T>, O>, Function<List<? extends T>, O>
+  public static class SequencePatternExtractRule<T,O> implements ExtractRule< List<? extends T>, O>, Function<List<? extends T>, O>, Serializable
   {
     SequencePattern<T> pattern;
     Function<SequenceMatchResult<T>, O> extractor;
@@ -961,7 +1089,7 @@ public class SequenceMatchRules {
     }
   }
 
-  public static class MultiSequencePatternExtractRule<T,O> implements ExtractRule< List<? extends T>, O>, Function<List<? extends T>, O>
+  public static class MultiSequencePatternExtractRule<T,O> implements ExtractRule< List<? extends T>, O>, Function<List<? extends T>, O>, Serializable
   {
     MultiPatternMatcher<T> matcher;
     Function<SequenceMatchResult<T>, O> extractor;
@@ -993,7 +1121,7 @@ public class SequenceMatchRules {
     }
   }
 
-  public static class StringPatternExtractRule<O> implements ExtractRule<String, O>, Function<String, O>
+  public static class StringPatternExtractRule<O> implements ExtractRule<String, O>, Function<String, O>, Serializable
   {
     Pattern pattern;
     Function<MatchResult, O> extractor;
@@ -1045,7 +1173,7 @@ public class SequenceMatchRules {
 
   }
 
-  public static class StringMatchedExpressionExtractor implements Function<MatchResult, MatchedExpression>
+  public static class StringMatchedExpressionExtractor implements Function<MatchResult, MatchedExpression>, Serializable
   {
     MatchedExpression.SingleAnnotationExtractor extractor;
     int group = 0;
@@ -1061,7 +1189,7 @@ public class SequenceMatchRules {
     }
   }
 
-  public static class SequenceMatchedExpressionExtractor implements Function<SequenceMatchResult<CoreMap>, MatchedExpression>
+  public static class SequenceMatchedExpressionExtractor implements Function<SequenceMatchResult<CoreMap>, MatchedExpression>, Serializable
   {
     MatchedExpression.SingleAnnotationExtractor extractor;
     int group = 0;
@@ -1082,7 +1210,7 @@ public class SequenceMatchRules {
     }
   }
 
-  public static class CoreMapFunctionApplier<T,O> implements Function<CoreMap, O>
+  public static class CoreMapFunctionApplier<T,O> implements Function<CoreMap, O>, Serializable
   {
     Env env;
     Class annotationField;
@@ -1106,7 +1234,7 @@ public class SequenceMatchRules {
     }
   }
 
-  public static class CoreMapToListFunctionApplier<O> implements Function<CoreMap, O>
+  public static class CoreMapToListFunctionApplier<O> implements Function<CoreMap, O>, Serializable
   {
     Env env;
     Function<List<? extends CoreMap>,O> func;
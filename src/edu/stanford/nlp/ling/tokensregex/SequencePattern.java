@@ -2,6 +2,7 @@ package edu.stanford.nlp.ling.tokensregex;
 
 import edu.stanford.nlp.util.*;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -250,6 +251,66 @@ public class SequencePattern<T> implements Serializable {
     }
     return outList;
   }
+
+  /**
+   * Finds conditions on the elements of a sequence such that any subsequence matched by this pattern
+   * has an element satisfying at least one of them.
+   * A sequence with no such element can be skipped without trying to match the pattern.
+   *
+   * @param nodeConditions Returns conditions such that any element matched by a node pattern satisfies one of them,
+   *                       or null if there are none
+   * @param preference Orders alternative sets of conditions, with the ones to pick first
+   *                   (e.g., the most selective ones) first
+   * @return Conditions, or null if none can be found (e.g., the pattern can match an empty sequence)
+   */
+  public <C> Collection<C> findRequiredConditions(Function<NodePattern<T>, Collection<C>> nodeConditions,
+                                                  Comparator<Collection<C>> preference) {
+    if (patternExpr == null) return null;
+    return findRequiredConditions(patternExpr, nodeConditions, preference);
+  }
+
+  private static <T,C> Collection<C> findRequiredConditions(PatternExpr expr,
+                                                            Function<NodePattern<T>, Collection<C>> nodeConditions,
+                                                            Comparator<Collection<C>> preference) {
+    if (expr instanceof NodePatternExpr) {
+      // The node patterns of a SequencePattern<T> are all NodePattern<T>s
+      @SuppressWarnings("unchecked")
+      NodePattern<T> nodePattern = (NodePattern<T>) ((NodePatternExpr) expr).nodePattern;
+      return nodeConditions.apply(nodePattern);
+    } else if (expr instanceof GroupPatternExpr) {
+      return findRequiredConditions(((GroupPatternExpr) expr).pattern, nodeConditions, preference);
+    } else if (expr instanceof ValuePatternExpr) {
+      return findRequiredConditions(((ValuePatternExpr) expr).expr, nodeConditions, preference);
+    } else if (expr instanceof RepeatPatternExpr) {
+      RepeatPatternExpr repeat = (RepeatPatternExpr) expr;
+      return (repeat.minMatch > 0)? findRequiredConditions(repeat.pattern, nodeConditions, preference): null;
+    } else if (expr instanceof SequencePatternExpr || expr instanceof AndPatternExpr) {
+      // Every part has to match, so any part's conditions will do
+      List<PatternExpr> parts = (expr instanceof SequencePatternExpr)?
+          ((SequencePatternExpr) expr).patterns: ((AndPatternExpr) expr).patterns;
+      Collection<C> best = null;
+      for (PatternExpr part:parts) {
+        Collection<C> conditions = findRequiredConditions(part, nodeConditions, preference);
+        if (conditions != null && (best == null || preference.compare(conditions, best) < 0)) {
+          best = conditions;
+        }
+      }
+      return best;
+    } else if (expr instanceof OrPatternExpr) {
+      // One of the alternatives has to match, so we need conditions for all of them
+      Set<C> all = new LinkedHashSet<C>();
+      for (PatternExpr part:((OrPatternExpr) expr).patterns) {
+        Collection<C> conditions = findRequiredConditions(part, nodeConditions, preference);
+        if (conditions == null) return null;
+        all.addAll(conditions);
+      }
+      return all;
+    } else {
+      // Multiple node patterns, back references and special nodes may match anything (or nothing)
+      return null;
+    }
+  }
+
   // Parses string to PatternExpr
   public static interface Parser<T> {
     public SequencePattern.PatternExpr parseSequence(Env env, String s) throws Exception;
@@ -1782,15 +1843,21 @@ public class SequencePattern<T> implements Serializable {
     //this.patternStr = patternStr;
     //this.patternExpr = nodeSequencePattern;
     action = (SequenceMatchAction) ois.readObject();
+    try {
+      priority = ois.readDouble();
+      weight = ois.readDouble();
+    } catch (EOFException ex) {
+      // Written before the priority and weight were kept
+    }
 
-    patternExpr = new GroupPatternExpr(patternExpr, true);
-    patternExpr = patternExpr.optimize();
-    this.totalGroups = patternExpr.assignGroupIds(0);
-    Frag f = patternExpr.build();
+    PatternExpr nodeSequencePattern = new GroupPatternExpr(patternExpr, true);
+    nodeSequencePattern = nodeSequencePattern.optimize();
+    this.totalGroups = nodeSequencePattern.assignGroupIds(0);
+    Frag f = nodeSequencePattern.build();
     f.connect(MATCH_STATE);
     this.root = f.start;
     varGroupBindings = new VarGroupBindings(totalGroups+1);
-    patternExpr.updateBindings(varGroupBindings);
+    nodeSequencePattern.updateBindings(varGroupBindings);
   }
 
 
@@ -1799,7 +1866,8 @@ public class SequencePattern<T> implements Serializable {
     oos.writeObject(toString());
     oos.writeObject(this.getPatternExpr());
     oos.writeObject(this.getAction());
-
+    oos.writeDouble(priority);
+    oos.writeDouble(weight);
   }  //  public void writeObject()
 
   // States for matching conjunctions
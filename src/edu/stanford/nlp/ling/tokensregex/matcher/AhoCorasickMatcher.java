@@ -0,0 +1,194 @@
+package edu.stanford.nlp.ling.tokensregex.matcher;
+
+import edu.stanford.nlp.util.Generics;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * A compiled, read only form of a {@link TrieMap}, for finding all the keys of the trie
+ * in a sequence in one pass over it (the Aho-Corasick algorithm).
+ * Finding the matches takes time linear in the length of the sequence and the number of matches,
+ * no matter how many keys there are.
+ *
+ * The trie is stored in a few flat int arrays, with the nodes numbered in breadth first order,
+ * so it uses much less memory than the TrieMap it was built from, and it serializes quickly.
+ * This makes it suitable for big gazetteers, which can be compiled once and then loaded.
+ *
+ * @param <K> Key of the elements of the trie
+ * @param <V> The value
+ */
+public class AhoCorasickMatcher<K, V> implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** The distinct elements of the keys, by id */
+  private final List<K> elements;
+  /** The values of the keys, indexed by {@link #valueIndex} */
+  private final List<V> values;
+
+  /** The children of the root, by element id (the root has a child for most elements) */
+  private final int[] rootChild;
+  /** The children of node n are firstChild[n] .. firstChild[n+1]-1 in childElement and childNode */
+  private final int[] firstChild;
+  /** The element ids of the children of each node, in increasing order */
+  private final int[] childElement;
+  private final int[] childNode;
+  /** The node of the longest proper suffix of each node's key which is a prefix of some key */
+  private final int[] fail;
+  /** The nearest node on the fail chain of each node which has a value, or -1 */
+  private final int[] outputLink;
+  /** The index of each node's value in values, or -1 if the node has none */
+  private final int[] valueIndex;
+  /** The length of the key of each node */
+  private final int[] depth;
+
+  private transient Map<K, Integer> elementIds;
+
+  public AhoCorasickMatcher(TrieMap<K, V> trie) {
+    elements = new ArrayList<>();
+    values = new ArrayList<>();
+    elementIds = Generics.newHashMap();
+
+    // Number the nodes in breadth first order, with the children of a node in order of their element id
+    List<TrieMap<K, V>> nodes = new ArrayList<>();
+    nodes.add(trie);
+    for (int n = 0; n < nodes.size(); n++) {
+      for (Map.Entry<K, TrieMap<K, V>> child : sortedChildren(nodes.get(n), true)) {
+        nodes.add(child.getValue());
+      }
+    }
+
+    int size = nodes.size();
+    firstChild = new int[size + 1];
+    childElement = new int[size - 1];
+    childNode = new int[size - 1];
+    fail = new int[size];
+    outputLink = new int[size];
+    valueIndex = new int[size];
+    depth = new int[size];
+    rootChild = new int[elements.size()];
+    Arrays.fill(rootChild, -1);
+
+    int next = 1;
+    for (int n = 0; n < size; n++) {
+      TrieMap<K, V> node = nodes.get(n);
+      // the empty key never matches
+      if (n > 0 && node.getValue() != null) {
+        valueIndex[n] = values.size();
+        values.add(node.getValue());
+      } else {
+        valueIndex[n] = -1;
+      }
+      firstChild[n] = next - 1;
+      for (Map.Entry<K, TrieMap<K, V>> child : sortedChildren(node, false)) {
+        int element = elementIds.get(child.getKey());
+        childElement[next - 1] = element;
+        childNode[next - 1] = next;
+        depth[next] = depth[n] + 1;
+        if (n == 0) {
+          rootChild[element] = next;
+        }
+        next++;
+      }
+    }
+    firstChild[size] = size - 1;
+    nodes = null;
+
+    // Failure links, in breadth first order so that each node's parent is done before it
+    outputLink[0] = -1;
+    for (int n = 0; n < size; n++) {
+      for (int c = firstChild[n]; c < firstChild[n + 1]; c++) {
+        int child = childNode[c];
+        int target = 0;
+        if (n != 0) {
+          int f = fail[n];
+          int element = childElement[c];
+          int g;
+          while ((g = child(f, element)) < 0 && f != 0) {
+            f = fail[f];
+          }
+          if (g >= 0) {
+            target = g;
+          }
+        }
+        fail[child] = target;
+        outputLink[child] = (valueIndex[target] >= 0) ? target : outputLink[target];
+      }
+    }
+  }
+
+  private List<Map.Entry<K, TrieMap<K, V>>> sortedChildren(TrieMap<K, V> node, boolean addElements) {
+    Map<K, TrieMap<K, V>> children = node.getChildren();
+    if (children == null || children.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<Map.Entry<K, TrieMap<K, V>>> sorted = new ArrayList<>(children.entrySet());
+    if (addElements) {
+      for (Map.Entry<K, TrieMap<K, V>> child : sorted) {
+        if (!elementIds.containsKey(child.getKey())) {
+          elementIds.put(child.getKey(), elements.size());
+          elements.add(child.getKey());
+        }
+      }
+    }
+    sorted.sort((c1, c2) -> Integer.compare(elementIds.get(c1.getKey()), elementIds.get(c2.getKey())));
+    return sorted;
+  }
+
+  /** The child of the node for the element, or -1 if there is none */
+  private int child(int node, int element) {
+    if (node == 0) {
+      return rootChild[element];
+    }
+    int i = Arrays.binarySearch(childElement, firstChild[node], firstChild[node + 1], element);
+    return (i >= 0) ? childNode[i] : -1;
+  }
+
+  /** The number of keys */
+  public int size() {
+    return values.size();
+  }
+
+  /**
+   * Finds all the keys which occur in the sequence, including overlapping ones.
+   * The matches are in order of their end, and then longest first.
+   * Null elements, and elements which occur in no key, are never part of a match.
+   *
+   * @param list Sequence to search through
+   * @return List of matches
+   */
+  public List<Match<K,V>> findAllMatches(List<K> list) {
+    List<Match<K,V>> matches = new ArrayList<>();
+    int node = 0;
+    for (int i = 0; i < list.size(); i++) {
+      K k = list.get(i);
+      Integer element = (k == null) ? null : elementIds.get(k);
+      if (element == null) {
+        node = 0;
+        continue;
+      }
+      int next;
+      while ((next = child(node, element)) < 0 && node != 0) {
+        node = fail[node];
+      }
+      node = Math.max(next, 0);
+      for (int n = (valueIndex[node] >= 0) ? node : outputLink[node]; n >= 0; n = outputLink[n]) {
+        int begin = i + 1 - depth[n];
+        matches.add(new Match<>(list.subList(begin, i + 1), values.get(valueIndex[n]), begin, i + 1));
+      }
+    }
+    return matches;
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    elementIds = Generics.newHashMap(elements.size());
+    for (int i = 0; i < elements.size(); i++) {
+      elementIds.put(elements.get(i), i);
+    }
+  }
+
+}
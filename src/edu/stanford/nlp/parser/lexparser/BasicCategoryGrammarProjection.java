@@ -0,0 +1,130 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.List;
+import java.util.Map;
+
+import edu.stanford.nlp.trees.TreebankLanguagePack;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+
+/** Projects a PCFG onto the basic categories of its states, so that, for
+ *  instance, NP^S and NP-TMP^VP both become NP, and @NP|JJ_NN becomes @NP.
+ *  Each rule of the target grammar scores the best of the source rules that
+ *  project onto it, so the best target inside and outside scores of a
+ *  span and state are upper bounds on those of every source state that
+ *  projects onto it.  This is what CoarseToFinePCFGParser prunes with.
+ *
+ *  @see CoarseToFinePCFGParser
+ */
+class BasicCategoryGrammarProjection implements GrammarProjection {
+
+  private final BinaryGrammar sourceBG;
+  private final UnaryGrammar sourceUG;
+  private final BinaryGrammar targetBG;
+  private final UnaryGrammar targetUG;
+  private final Index<String> targetIndex;
+  private final int[] projection;
+  private final BinaryRule[][] targetRulesWithLC;
+  private final BinaryRule[][] targetRulesWithParent;
+
+  BasicCategoryGrammarProjection(BinaryGrammar bg, UnaryGrammar ug, Index<String> stateIndex, TreebankLanguagePack tlp) {
+    sourceBG = bg;
+    sourceUG = ug;
+
+    int numStates = stateIndex.size();
+    targetIndex = new HashIndex<String>();
+    projection = new int[numStates];
+    for (int state = 0; state < numStates; state++) {
+      String category = tlp.basicCategory(stateIndex.get(state));
+      projection[state] = targetIndex.addToIndex(category.isEmpty() ? stateIndex.get(state) : category);
+    }
+
+    Map<BinaryRule,BinaryRule> binaryRules = Generics.newHashMap();
+    for (BinaryRule br : bg) {
+      BinaryRule target = new BinaryRule(projection[br.parent], projection[br.leftChild], projection[br.rightChild], br.score);
+      BinaryRule best = binaryRules.get(target);
+      if (best == null) {
+        binaryRules.put(target, target);
+      } else if (best.score < target.score) {
+        best.score = target.score;
+      }
+    }
+    targetBG = new BinaryGrammar(targetIndex);
+    for (BinaryRule br : binaryRules.keySet()) {
+      targetBG.addRule(br);
+    }
+    targetBG.splitRules();
+    int numTargetStates = targetIndex.size();
+    targetRulesWithLC = new BinaryRule[numTargetStates][];
+    targetRulesWithParent = new BinaryRule[numTargetStates][];
+    for (int state = 0; state < numTargetStates; state++) {
+      List<BinaryRule> rules = targetBG.ruleListByLeftChild(state);
+      targetRulesWithLC[state] = rules.toArray(new BinaryRule[rules.size()]);
+      rules = targetBG.ruleListByParent(state);
+      targetRulesWithParent[state] = rules.toArray(new BinaryRule[rules.size()]);
+    }
+
+    // projecting the source's core rules, and closing them again, gives a
+    // target closure at least as good as the projection of the source closure
+    Map<UnaryRule,UnaryRule> unaryRules = Generics.newHashMap();
+    for (UnaryRule ur : ug.rules()) {
+      UnaryRule target = new UnaryRule(projection[ur.parent], projection[ur.child], ur.score);
+      if (target.parent == target.child) {
+        continue;
+      }
+      UnaryRule best = unaryRules.get(target);
+      if (best == null) {
+        unaryRules.put(target, target);
+      } else if (best.score < target.score) {
+        best.score = target.score;
+      }
+    }
+    targetUG = new UnaryGrammar(targetIndex);
+    for (UnaryRule ur : unaryRules.keySet()) {
+      targetUG.addRule(ur);
+    }
+    targetUG.purgeRules();
+  }
+
+  @Override
+  public int project(int state) {
+    return projection[state];
+  }
+
+  /** The number of states of the target grammar. */
+  public int numTargetStates() {
+    return targetIndex.size();
+  }
+
+  /** All the binary rules of the target grammar with the given left child. */
+  public BinaryRule[] targetRulesWithLC(int state) {
+    return targetRulesWithLC[state];
+  }
+
+  /** All the binary rules of the target grammar with the given parent. */
+  public BinaryRule[] targetRulesWithParent(int state) {
+    return targetRulesWithParent[state];
+  }
+
+  @Override
+  public UnaryGrammar sourceUG() {
+    return sourceUG;
+  }
+
+  @Override
+  public BinaryGrammar sourceBG() {
+    return sourceBG;
+  }
+
+  @Override
+  public UnaryGrammar targetUG() {
+    return targetUG;
+  }
+
+  @Override
+  public BinaryGrammar targetBG() {
+    return targetBG;
+  }
+
+}
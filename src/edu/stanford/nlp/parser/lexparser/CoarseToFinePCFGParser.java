@@ -0,0 +1,242 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.Arrays;
+
+import edu.stanford.nlp.util.Index;
+
+/** Prunes the chart of the exhaustive PCFG parser with a first pass over
+ *  a coarse projection of the grammar, in the manner of Charniak et al.
+ *  (2006) and Petrov and Klein (2007).  The coarse pass computes Viterbi
+ *  inside and outside scores over the basic categories; a state is then
+ *  only built over a span when its category's inside plus outside score
+ *  is within <code>op.testOptions.coarseToFineThreshold</code> of the
+ *  best coarse parse, and spans with no such category are skipped
+ *  entirely.  As the coarse rules score the best of the rules that
+ *  project onto them, the coarse scores bound the fine ones, and a
+ *  threshold of negative infinity prunes nothing.  If the pruned chart
+ *  has no parse, the rest of the chart is filled in, so a parse is found
+ *  whenever the unpruned parser would have found one.
+ *
+ *  Pruning is turned off for sentences with constraints and with
+ *  length normalization.
+ */
+public class CoarseToFinePCFGParser extends ExhaustivePCFGParser {
+
+  private final BasicCategoryGrammarProjection projection;
+  private final int numCoarseStates;
+
+  private float[][][] coarseIScore; // start idx, end idx, coarse state -> logProb
+  private float[][][] coarseOScore; // start idx, end idx, coarse state -> logProb
+  private boolean[][][] allowedStorage; // reused by allowedStates between sentences
+  private boolean[] coarseAllowed;
+
+  CoarseToFinePCFGParser(BinaryGrammar bg, UnaryGrammar ug, Lexicon lex, Options op, Index<String> stateIndex, Index<String> wordIndex, Index<String> tagIndex, BasicCategoryGrammarProjection projection) {
+    super(bg, ug, lex, op, stateIndex, wordIndex, tagIndex);
+    this.projection = projection;
+    this.numCoarseStates = projection.numTargetStates();
+  }
+
+  @Override
+  protected void createArrays(int length) {
+    coarseIScore = coarseOScore = null;
+    allowedStorage = null;
+    super.createArrays(length);
+    coarseIScore = new float[length][length + 1][];
+    coarseOScore = new float[length][length + 1][];
+    for (int start = 0; start < length; start++) {
+      for (int end = start + 1; end <= length; end++) {
+        coarseIScore[start][end] = new float[numCoarseStates];
+        coarseOScore[start][end] = new float[numCoarseStates];
+      }
+    }
+    allowedStorage = new boolean[length][length + 1][];
+    coarseAllowed = new boolean[numCoarseStates];
+  }
+
+  @Override
+  void doInsideScores() {
+    allowedStates = null;
+    if (getConstraints() == null && ! op.testOptions.lengthNormalization && pruneChart()) {
+      super.doInsideScores();
+      if (iScore[0][length][stateIndex.indexOf(goalStr)] > Float.NEGATIVE_INFINITY) {
+        return;
+      }
+      // All the scores in the pruned chart are those of real derivations,
+      // so filling in the rest of it gives the same scores as not pruning
+      if (op.testOptions.verbose) {
+        System.err.println("Coarse-to-fine: no parse in pruned chart, parsing without pruning");
+      }
+      allowedStates = null;
+    }
+    super.doInsideScores();
+  }
+
+  /** Parses with the coarse grammar and sets allowedStates from the coarse
+   *  inside and outside scores.
+   *
+   *  @return false if the coarse grammar has no parse, so there is nothing to prune with
+   */
+  private boolean pruneChart() {
+    // the coarse scores of the spans initializeChart() filled in are the
+    // best scores of the fine states projecting onto each coarse state
+    for (int start = 0; start < length; start++) {
+      for (int end = start + 1; end <= length; end++) {
+        float[] iScore_start_end = iScore[start][end];
+        float[] coarseIScore_start_end = coarseIScore[start][end];
+        Arrays.fill(coarseIScore_start_end, Float.NEGATIVE_INFINITY);
+        Arrays.fill(coarseOScore[start][end], Float.NEGATIVE_INFINITY);
+        for (int state = 0; state < numStates; state++) {
+          float iS = iScore_start_end[state];
+          int coarseState = projection.project(state);
+          if (iS > coarseIScore_start_end[coarseState]) {
+            coarseIScore_start_end[coarseState] = iS;
+          }
+        }
+      }
+    }
+
+    // the spans visited are those visited by ExhaustivePCFGParser.doInsideScores()
+    for (int diff = 2; diff <= length; diff++) {
+      for (int start = 0; start < ((diff == length) ? 1: length - diff); start++) {
+        doCoarseInsideChartCell(start, start + diff);
+      }
+    }
+    int coarseGoal = projection.project(stateIndex.indexOf(goalStr));
+    float bestCoarseScore = coarseIScore[0][length][coarseGoal];
+    if (bestCoarseScore == Float.NEGATIVE_INFINITY) {
+      return false;
+    }
+    coarseOScore[0][length][coarseGoal] = 0.0f;
+    float cutoff = bestCoarseScore + (float) op.testOptions.coarseToFineThreshold;
+    for (int diff = length; diff >= 2; diff--) {
+      for (int start = 0; start < ((diff == length) ? 1: length - diff); start++) {
+        doCoarseOutsideChartCell(start, start + diff, cutoff);
+      }
+    }
+
+    int numCells = 0;
+    int numAllowedCells = 0;
+    allowedStates = allowedStorage;
+    for (int diff = 2; diff <= length; diff++) {
+      for (int start = 0; start < ((diff == length) ? 1: length - diff); start++) {
+        int end = start + diff;
+        float[] coarseIScore_start_end = coarseIScore[start][end];
+        float[] coarseOScore_start_end = coarseOScore[start][end];
+        boolean anyAllowed = false;
+        for (int coarseState = 0; coarseState < numCoarseStates; coarseState++) {
+          coarseAllowed[coarseState] = coarseIScore_start_end[coarseState] + coarseOScore_start_end[coarseState] >= cutoff;
+          anyAllowed |= coarseAllowed[coarseState];
+        }
+        numCells++;
+        if ( ! anyAllowed) {
+          allowedStates[start][end] = null;
+          continue;
+        }
+        numAllowedCells++;
+        boolean[] allowed = allowedStates[start][end];
+        if (allowed == null) {
+          // the cells are only allocated when needed, as they are as large as those of iScore
+          allowed = new boolean[numStates];
+          allowedStates[start][end] = allowed;
+        }
+        for (int state = 0; state < numStates; state++) {
+          allowed[state] = coarseAllowed[projection.project(state)];
+        }
+      }
+    }
+    if (op.testOptions.verbose) {
+      System.err.println("Coarse-to-fine: kept " + numAllowedCells + " of " + numCells + " spans");
+    }
+    return true;
+  }
+
+  private void doCoarseInsideChartCell(int start, int end) {
+    UnaryGrammar coarseUG = projection.targetUG();
+    float[] coarseIScore_start_end = coarseIScore[start][end];
+    for (int split = start + 1; split < end; split++) {
+      float[] leftScores = coarseIScore[start][split];
+      float[] rightScores = coarseIScore[split][end];
+      for (int leftState = 0; leftState < numCoarseStates; leftState++) {
+        float lS = leftScores[leftState];
+        if (lS == Float.NEGATIVE_INFINITY) {
+          continue;
+        }
+        for (BinaryRule rule : projection.targetRulesWithLC(leftState)) {
+          float rS = rightScores[rule.rightChild];
+          if (rS == Float.NEGATIVE_INFINITY) {
+            continue;
+          }
+          float tot = rule.score + lS + rS;
+          if (tot > coarseIScore_start_end[rule.parent]) {
+            coarseIScore_start_end[rule.parent] = tot;
+          }
+        }
+      }
+    }
+    for (int state = 0; state < numCoarseStates; state++) {
+      float iS = coarseIScore_start_end[state];
+      if (iS == Float.NEGATIVE_INFINITY) {
+        continue;
+      }
+      for (UnaryRule ur : coarseUG.closedRulesByChild(state)) {
+        float tot = iS + ur.score;
+        if (tot > coarseIScore_start_end[ur.parent]) {
+          coarseIScore_start_end[ur.parent] = tot;
+        }
+      }
+    }
+  }
+
+  /** Passes the outside scores of the coarse states over [start, end) down
+   *  to their children.  A state whose inside plus outside score is below
+   *  the cutoff is skipped, as it can give its children no better score.
+   */
+  private void doCoarseOutsideChartCell(int start, int end, float cutoff) {
+    UnaryGrammar coarseUG = projection.targetUG();
+    float[] coarseIScore_start_end = coarseIScore[start][end];
+    float[] coarseOScore_start_end = coarseOScore[start][end];
+    for (int state = 0; state < numCoarseStates; state++) {
+      float oS = coarseOScore_start_end[state];
+      if (oS == Float.NEGATIVE_INFINITY || oS + coarseIScore_start_end[state] < cutoff) {
+        continue;
+      }
+      for (UnaryRule ur : coarseUG.closedRulesByParent(state)) {
+        float tot = oS + ur.score;
+        if (tot > coarseOScore_start_end[ur.child]) {
+          coarseOScore_start_end[ur.child] = tot;
+        }
+      }
+    }
+    for (int split = start + 1; split < end; split++) {
+      float[] leftIScores = coarseIScore[start][split];
+      float[] rightIScores = coarseIScore[split][end];
+      float[] leftOScores = coarseOScore[start][split];
+      float[] rightOScores = coarseOScore[split][end];
+      for (int parentState = 0; parentState < numCoarseStates; parentState++) {
+        float oS = coarseOScore_start_end[parentState];
+        if (oS == Float.NEGATIVE_INFINITY || coarseIScore_start_end[parentState] == Float.NEGATIVE_INFINITY ||
+            oS + coarseIScore_start_end[parentState] < cutoff) {
+          continue;
+        }
+        for (BinaryRule rule : projection.targetRulesWithParent(parentState)) {
+          float lS = leftIScores[rule.leftChild];
+          if (lS == Float.NEGATIVE_INFINITY) {
+            continue;
+          }
+          float rS = rightIScores[rule.rightChild];
+          if (rS == Float.NEGATIVE_INFINITY) {
+            continue;
+          }
+          float pS = oS + rule.score;
+          if (pS + rS > leftOScores[rule.leftChild]) {
+            leftOScores[rule.leftChild] = pS + rS;
+          }
+          if (pS + lS > rightOScores[rule.rightChild]) {
+            rightOScores[rule.rightChild] = pS + lS;
+          }
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,324 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.MappedStringIndex;
+import edu.stanford.nlp.util.ReflectionLoading;
+import edu.stanford.nlp.util.Timing;
+
+/**
+ * Reads and writes LexicalizedParser models in a compact binary format,
+ * which loads without Java serialization and whose string tables are used
+ * in place from a memory-mapped file.
+ * <p>
+ * All values are little-endian. The file consists of:
+ * <ol>
+ *   <li>the magic number, the format version and the length of the
+ *       serialized Options;</li>
+ *   <li>the Options, Java-serialized, padded to a multiple of four bytes;</li>
+ *   <li>the state, word and tag indices, each as written by
+ *       {@link MappedStringIndex#toBytes};</li>
+ *   <li>the class name of the unknown word model, as an int byte count and
+ *       UTF-8 bytes (none for no model), padded to a multiple of four bytes;</li>
+ *   <li>the lexicon: the number of smoothing parameters and their doubles,
+ *       then the seen and the unseen taggings, each as a count n followed by
+ *       n word numbers, n tag numbers and n double counts;</li>
+ *   <li>the unary grammar: a count n, then n parents, n children and n
+ *       float scores;</li>
+ *   <li>the binary grammar: a count n, then n parents, n left children, n
+ *       right children and n float scores;</li>
+ *   <li>the dependency grammar as an int byte count and the UTF-8 text
+ *       written by {@link DependencyGrammar#writeData}, or -1 if there is
+ *       none.</li>
+ * </ol>
+ * The rules are kept in the grammars' own order, so that a parser loaded
+ * from this format breaks ties between parses exactly as the original did.
+ * <p>
+ * When a compact model is a plain file on disk it is memory-mapped, and
+ * the parser's indices are {@link MappedStringIndex}es over the mapping,
+ * so several processes which load the same model share one copy of its
+ * strings.  The word index numbers words which are not in the model after
+ * the model's own, as a serialized parser's does (see
+ * {@link CompactWordIndex}).  The grammars and lexicon are rebuilt from
+ * their columns, as the parser needs them as objects.  As with the text
+ * format, only a {@link BaseLexicon} and an {@link MLEDependencyGrammar}
+ * can be stored, and the unknown word model is rebuilt from its unseen
+ * counts.  The state and tag indices of a loaded parser are read-only, so
+ * it can be used for parsing and saved in the compact or text formats,
+ * but not serialized or trained.
+ *
+ * @see LexicalizedParser#saveParserToCompactFile(String)
+ */
+class CompactParserModel {
+
+  /** Magic number at the start of a compact parser model (the bytes "LPCM"). */
+  private static final int COMPACT_MODEL_MAGIC = 0x4D43504C;
+
+  /** Version of the format written by {@link #save}. */
+  private static final int COMPACT_MODEL_VERSION = 1;
+
+  private CompactParserModel() {} // static methods only
+
+  /** Writes the given parser to the given file in the compact format. */
+  static void save(LexicalizedParser lp, String filename) throws IOException {
+    if (lp.reranker != null) {
+      throw new UnsupportedOperationException("Parsers with rerankers cannot be saved in the compact format");
+    }
+    if (lp.lex.getClass() != BaseLexicon.class) {
+      throw new UnsupportedOperationException("The compact format cannot store a " + lp.lex.getClass().getName());
+    }
+    if (lp.dg != null && lp.dg.getClass() != MLEDependencyGrammar.class) {
+      throw new UnsupportedOperationException("The compact format cannot store a " + lp.dg.getClass().getName());
+    }
+    BaseLexicon lex = (BaseLexicon) lp.lex;
+
+    ByteArrayOutputStream options = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(options);
+    oos.writeObject(lp.getOp());
+    oos.close();
+
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(IOUtils.getFileOutputStream(filename)))) {
+      writeInt(out, COMPACT_MODEL_MAGIC);
+      writeInt(out, COMPACT_MODEL_VERSION);
+      writeInt(out, options.size());
+      options.writeTo(out);
+      out.write(new byte[padding(options.size())]);
+
+      out.write(MappedStringIndex.toBytes(lp.stateIndex.objectsList()));
+      out.write(MappedStringIndex.toBytes(lp.wordIndex.objectsList()));
+      out.write(MappedStringIndex.toBytes(lp.tagIndex.objectsList()));
+
+      UnknownWordModel uwm = lex.getUnknownWordModel();
+      byte[] uwmClass = (uwm == null) ? new byte[0] : uwm.getClass().getName().getBytes(StandardCharsets.UTF_8);
+      writeInt(out, uwmClass.length);
+      out.write(uwmClass);
+      out.write(new byte[padding(uwmClass.length)]);
+
+      writeInt(out, lex.smooth.length);
+      for (double smooth : lex.smooth) {
+        writeDouble(out, smooth);
+      }
+      writeTaggings(out, lex.seenCounter);
+      writeTaggings(out, (uwm == null) ? new ClassicCounter<IntTaggedWord>() : uwm.unSeenCounter());
+
+      List<UnaryRule> unaryRules = lp.ug.rules();
+      writeInt(out, unaryRules.size());
+      for (UnaryRule ur : unaryRules) {
+        writeInt(out, ur.parent);
+      }
+      for (UnaryRule ur : unaryRules) {
+        writeInt(out, ur.child);
+      }
+      for (UnaryRule ur : unaryRules) {
+        writeFloat(out, ur.score);
+      }
+
+      List<BinaryRule> binaryRules = lp.bg.rules();
+      writeInt(out, binaryRules.size());
+      for (BinaryRule br : binaryRules) {
+        writeInt(out, br.parent);
+      }
+      for (BinaryRule br : binaryRules) {
+        writeInt(out, br.leftChild);
+      }
+      for (BinaryRule br : binaryRules) {
+        writeInt(out, br.rightChild);
+      }
+      for (BinaryRule br : binaryRules) {
+        writeFloat(out, br.score);
+      }
+
+      if (lp.dg == null) {
+        writeInt(out, -1);
+      } else {
+        StringWriter dgText = new StringWriter();
+        PrintWriter pw = new PrintWriter(dgText);
+        lp.dg.writeData(pw);
+        pw.flush();
+        byte[] bytes = dgText.toString().getBytes(StandardCharsets.UTF_8);
+        writeInt(out, bytes.length);
+        out.write(bytes);
+      }
+    }
+  }
+
+  private static void writeTaggings(DataOutputStream out, Counter<IntTaggedWord> counter) throws IOException {
+    List<IntTaggedWord> taggings = new ArrayList<IntTaggedWord>(counter.keySet());
+    writeInt(out, taggings.size());
+    for (IntTaggedWord itw : taggings) {
+      writeInt(out, itw.word());
+    }
+    for (IntTaggedWord itw : taggings) {
+      writeInt(out, itw.tag());
+    }
+    for (IntTaggedWord itw : taggings) {
+      writeDouble(out, counter.getCount(itw));
+    }
+  }
+
+  private static void writeInt(DataOutputStream out, int value) throws IOException {
+    out.writeInt(Integer.reverseBytes(value));
+  }
+
+  private static void writeFloat(DataOutputStream out, float value) throws IOException {
+    writeInt(out, Float.floatToIntBits(value));
+  }
+
+  private static void writeDouble(DataOutputStream out, double value) throws IOException {
+    out.writeLong(Long.reverseBytes(Double.doubleToLongBits(value)));
+  }
+
+  private static int padding(int length) {
+    return (4 - length % 4) % 4;
+  }
+
+  /**
+   * Checks whether the given file, URL or classpath resource is a compact
+   * parser model, by looking for its magic number.
+   */
+  static boolean isCompactModel(String filename) {
+    try (DataInputStream input = new DataInputStream(IOUtils.getInputStreamFromURLOrClasspathOrFileSystem(filename))) {
+      return Integer.reverseBytes(input.readInt()) == COMPACT_MODEL_MAGIC;
+    } catch (IOException e) {
+      // too short to be a compact model, or not there at all; let the other loaders complain
+      return false;
+    }
+  }
+
+  /**
+   * Gets the contents of a compact model as a little-endian buffer.  Plain
+   * files on disk are memory-mapped read-only; anything else (e.g., models
+   * in jars or gzipped files) is read onto the heap.
+   */
+  private static ByteBuffer readModelBuffer(String filename) throws IOException {
+    File file = new File(filename);
+    if (file.isFile() && ! filename.endsWith(".gz")) {
+      try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+           FileChannel channel = raf.getChannel()) {
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+      }
+    }
+    try (InputStream input = IOUtils.getInputStreamFromURLOrClasspathOrFileSystem(filename)) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      IOUtils.writeStreamToStream(input, bytes);
+      return ByteBuffer.wrap(bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+  }
+
+  /** Loads a parser written by {@link #save}. */
+  static LexicalizedParser load(String filename) throws IOException, ClassNotFoundException {
+    Timing tim = new Timing();
+    System.err.print("Loading parser from compact file " + filename + " ... ");
+    ByteBuffer buffer = readModelBuffer(filename);
+    if (buffer.getInt() != COMPACT_MODEL_MAGIC) {
+      throw new RuntimeIOException("Not a compact parser model: " + filename);
+    }
+    int version = buffer.getInt();
+    if (version != COMPACT_MODEL_VERSION) {
+      throw new RuntimeIOException("Unsupported compact parser model version " + version + ": " + filename);
+    }
+
+    byte[] options = new byte[buffer.getInt()];
+    buffer.get(options);
+    buffer.position(buffer.position() + padding(options.length));
+    Options op;
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(options))) {
+      op = (Options) ois.readObject();
+    }
+
+    Index<String> stateIndex = new MappedStringIndex(buffer);
+    Index<String> wordIndex = new CompactWordIndex(new MappedStringIndex(buffer));
+    Index<String> tagIndex = new MappedStringIndex(buffer);
+
+    byte[] uwmClass = new byte[buffer.getInt()];
+    buffer.get(uwmClass);
+    buffer.position(buffer.position() + padding(uwmClass.length));
+    Lexicon lexicon = op.tlpParams.lex(op, wordIndex, tagIndex);
+    if (lexicon.getClass() != BaseLexicon.class) {
+      throw new RuntimeIOException("Compact parser models need a BaseLexicon, but the parser params make a " +
+                                   lexicon.getClass().getName());
+    }
+    BaseLexicon lex = (BaseLexicon) lexicon;
+    if (uwmClass.length > 0) {
+      UnknownWordModel model = ReflectionLoading.loadByReflection(new String(uwmClass, StandardCharsets.UTF_8), op, lex, wordIndex, tagIndex);
+      lex.setUnknownWordModel(model);
+    }
+    int numSmooth = buffer.getInt();
+    for (int i = 0; i < numSmooth; i++) {
+      lex.smooth[i] = buffer.getDouble();
+    }
+    readTaggings(buffer, lex, true);
+    readTaggings(buffer, lex, false);
+    lex.initRulesWithWord();
+
+    UnaryGrammar ug = new UnaryGrammar(stateIndex);
+    int numUnaryRules = buffer.getInt();
+    int[] parents = readInts(buffer, numUnaryRules);
+    int[] children = readInts(buffer, numUnaryRules);
+    float[] scores = readFloats(buffer, numUnaryRules);
+    for (int i = 0; i < numUnaryRules; i++) {
+      ug.addRule(new UnaryRule(parents[i], children[i], scores[i]));
+    }
+    ug.purgeRules();
+
+    BinaryGrammar bg = new BinaryGrammar(stateIndex);
+    int numBinaryRules = buffer.getInt();
+    parents = readInts(buffer, numBinaryRules);
+    int[] leftChildren = readInts(buffer, numBinaryRules);
+    int[] rightChildren = readInts(buffer, numBinaryRules);
+    scores = readFloats(buffer, numBinaryRules);
+    for (int i = 0; i < numBinaryRules; i++) {
+      bg.addRule(new BinaryRule(parents[i], leftChildren[i], rightChildren[i], scores[i]));
+    }
+    bg.splitRules();
+
+    DependencyGrammar dg = null;
+    int dgLength = buffer.getInt();
+    if (dgLength >= 0) {
+      byte[] dgText = new byte[dgLength];
+      buffer.get(dgText);
+      dg = new MLEDependencyGrammar(op.tlpParams, op.directional, op.distance, op.coarseDistance, op.trainOptions.basicCategoryTagsInDependencyGrammar, op, wordIndex, tagIndex);
+      dg.readData(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(dgText), StandardCharsets.UTF_8)));
+    }
+
+    System.err.println("done [" + tim.toSecondsString() + " sec].");
+    return new LexicalizedParser(lex, bg, ug, dg, stateIndex, wordIndex, tagIndex, op);
+  }
+
+  private static void readTaggings(ByteBuffer buffer, BaseLexicon lex, boolean seen) {
+    int numTaggings = buffer.getInt();
+    int[] words = readInts(buffer, numTaggings);
+    int[] tags = readInts(buffer, numTaggings);
+    for (int i = 0; i < numTaggings; i++) {
+      lex.addTagging(seen, new IntTaggedWord(words[i], tags[i]), buffer.getDouble());
+    }
+  }
+
+  /** Reads n ints from the buffer with one bulk read, and skips them */
+  private static int[] readInts(ByteBuffer buffer, int n) {
+    int[] values = new int[n];
+    buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(values);
+    buffer.position(buffer.position() + 4 * n);
+    return values;
+  }
+
+  /** Reads n floats from the buffer with one bulk read, and skips them */
+  private static float[] readFloats(ByteBuffer buffer, int n) {
+    float[] values = new float[n];
+    buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(values);
+    buffer.position(buffer.position() + 4 * n);
+    return values;
+  }
+
+}
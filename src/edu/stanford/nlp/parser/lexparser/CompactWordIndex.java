@@ -0,0 +1,218 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.io.*;
+import java.util.*;
+
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.MappedStringIndex;
+
+/**
+ * The word index of a parser read from a {@link CompactParserModel}: the
+ * words of the model, in a read-only {@link MappedStringIndex}, followed by
+ * any words added while parsing.
+ * <br>
+ * The parsers give each word of a sentence a number with
+ * {@link #addToIndex}, and the lexicon tells unknown words by their
+ * numbers being outside the words it was trained on.  A locked index
+ * would give every unknown word -1, which the lexicon takes for the
+ * totals over all words, so new words are numbered after the mapped ones
+ * here, just as the HashIndex of a serialized parser numbers them.
+ */
+class CompactWordIndex extends AbstractCollection<String> implements Index<String>, RandomAccess {
+
+  private static final long serialVersionUID = 1L;
+
+  private final MappedStringIndex mapped;
+  private final int mappedSize;
+
+  /** The words added after the mapped ones, in the order they were added */
+  private final List<String> added = new ArrayList<String>();
+  private final Map<String, Integer> addedIndices = Generics.newHashMap();
+
+  private volatile boolean locked; // = false
+
+  CompactWordIndex(MappedStringIndex mapped) {
+    this.mapped = mapped;
+    this.mappedSize = mapped.size();
+  }
+
+  @Override
+  public synchronized int size() {
+    return mappedSize + added.size();
+  }
+
+  @Override
+  public String get(int i) {
+    if (i < mappedSize) {
+      return mapped.get(i);
+    }
+    synchronized (this) {
+      if (i - mappedSize >= added.size())
+        throw new ArrayIndexOutOfBoundsException("Index " + i +
+                                                 " outside the bounds [0," +
+                                                 size() + ")");
+      return added.get(i - mappedSize);
+    }
+  }
+
+  @Override
+  public int indexOf(String o) {
+    int index = mapped.indexOf(o);
+    if (index >= 0 || o == null) {
+      return index;
+    }
+    synchronized (this) {
+      Integer addedIndex = addedIndices.get(o);
+      return (addedIndex == null) ? -1 : addedIndex;
+    }
+  }
+
+  @Override
+  public int addToIndex(String o) {
+    int index = mapped.indexOf(o);
+    if (index >= 0 || o == null) {
+      return index;
+    }
+    synchronized (this) {
+      Integer addedIndex = addedIndices.get(o);
+      if (addedIndex != null) {
+        return addedIndex;
+      }
+      if (locked) {
+        return -1;
+      }
+      index = mappedSize + added.size();
+      added.add(o);
+      addedIndices.put(o, index);
+      return index;
+    }
+  }
+
+  @Override
+  @Deprecated
+  public int indexOf(String o, boolean add) {
+    return add ? addToIndex(o) : indexOf(o);
+  }
+
+  @Override
+  public boolean add(String o) {
+    int before = size();
+    addToIndex(o);
+    return size() != before;
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends String> c) {
+    boolean changed = false;
+    for (String s : c) {
+      changed |= add(s);
+    }
+    return changed;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return (o instanceof String) && indexOf((String) o) >= 0;
+  }
+
+  /** The mapped words cannot be removed, so this only forgets the added ones */
+  @Override
+  public synchronized void clear() {
+    added.clear();
+    addedIndices.clear();
+  }
+
+  @Override
+  public List<String> objectsList() {
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        return CompactWordIndex.this.get(index);
+      }
+
+      @Override
+      public int size() {
+        return CompactWordIndex.this.size();
+      }
+    };
+  }
+
+  @Override
+  public Collection<String> objects(final int[] indices) {
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        return CompactWordIndex.this.get(indices[index]);
+      }
+
+      @Override
+      public int size() {
+        return indices.length;
+      }
+    };
+  }
+
+  @Override
+  public boolean isLocked() {
+    return locked;
+  }
+
+  @Override
+  public void lock() {
+    locked = true;
+  }
+
+  @Override
+  public void unlock() {
+    locked = false;
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return objectsList().iterator();
+  }
+
+  @Override
+  public void saveToWriter(Writer bw) throws IOException {
+    for (int i = 0, size = size(); i < size; i++) {
+      bw.write(i + "=" + get(i) + '\n');
+    }
+  }
+
+  @Override
+  public void saveToFilename(String file) {
+    try (Writer bw = new BufferedWriter(new FileWriter(file))) {
+      saveToWriter(bw);
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
+  /**
+   * Serializes the words, mapped and added, as a {@link HashIndex} in the
+   * same order, so a parser read from a compact file can be saved with
+   * {@link LexicalizedParser#saveParserToSerialized}.
+   */
+  private Object writeReplace() throws ObjectStreamException {
+    HashIndex<String> index = new HashIndex<String>(objectsList());
+    if (locked) {
+      index.lock();
+    }
+    return index;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder buff = new StringBuilder("[");
+    for (int i = 0, size = size(); i < size; i++) {
+      if (i > 0) buff.append(',');
+      buff.append(i).append('=').append(get(i));
+    }
+    buff.append(']');
+    return buff.toString();
+  }
+
+}
@@ -80,6 +80,11 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser {
   protected float[][][] iScore;  // start idx, end idx, state -> logProb (ragged; null for end <= start)
   // outside scores
   protected float[][][] oScore;  // start idx, end idx, state -> logProb
+
+  // [start][end][state]: if not null, the states that doInsideScores() may build with
+  // binary rules over each span of two or more words; a null span may not be built at all.
+  // Unary rules are not pruned, as extractBestParse() needs the states in unary chains
+  protected boolean[][][] allowedStates;
   protected float bestScore;
 
   protected int[][][] wordsInSpan; // number of words in span with this state
@@ -865,6 +870,11 @@ oScore[split][end][br.rightChild] = totR;
       }
     }
 
+    final boolean[] allowed = (allowedStates == null) ? null : allowedStates[start][end];
+    if (allowedStates != null && allowed == null) {
+      return;
+    }
+
     // 2011-11-26 jdk1.6: caching/hoisting a bunch of variables gives you about 15% speed up!
     // caching this saves a bit of time in the inner loop, maybe 1.8%
     int[] narrowRExtent_start = narrowRExtent[start];
@@ -874,6 +884,8 @@ oScore[split][end][br.rightChild] = totR;
     int[] wideLExtent_end = wideLExtent[end];
     float[][] iScore_start = iScore[start];
     float[] iScore_start_end = iScore_start[end];
+    // the extents are updated below without assuming that shorter spans are
+    // built first, as CoarseToFinePCFGParser may fill in a pruned chart again
 
     for (int leftState = 0; leftState < numStates; leftState++) {
       int narrowR = narrowRExtent_start[leftState];
@@ -883,6 +895,9 @@ oScore[split][end][br.rightChild] = totR;
       BinaryRule[] leftRules = bg.splitRulesWithLC(leftState);
       //      if (spillGuts) System.out.println("Found " + leftRules.length + " left rules for state " + stateIndex.get(leftState));
       for (BinaryRule rule : leftRules) {
+        if (allowed != null && ! allowed[rule.parent]) {
+          continue;
+        }
         int rightChild = rule.rightChild;
         int narrowL = narrowLExtent_end[rightChild];
         if (narrowL < narrowR) { // can this right constituent fit next to the left constituent?
@@ -989,13 +1004,15 @@ oScore[split][end][br.rightChild] = totR;
           if (spillGuts) System.err.println("Could build " + stateIndex.get(parentState) + " from " + start + " to " + end + " score " + bestIScore);
           if (oldIScore == Float.NEGATIVE_INFINITY) {
             if (start > narrowLExtent_end[parentState]) {
-              narrowLExtent_end[parentState] = wideLExtent_end[parentState] = start;
-            } else if (start < wideLExtent_end[parentState]) {
+              narrowLExtent_end[parentState] = start;
+            }
+            if (start < wideLExtent_end[parentState]) {
               wideLExtent_end[parentState] = start;
             }
             if (end < narrowRExtent_start[parentState]) {
-              narrowRExtent_start[parentState] = wideRExtent_start[parentState] = end;
-            } else if (end > wideRExtent_start[parentState]) {
+              narrowRExtent_start[parentState] = end;
+            }
+            if (end > wideRExtent_start[parentState]) {
               wideRExtent_start[parentState] = end;
             }
           }
@@ -1012,6 +1029,9 @@ oScore[split][end][br.rightChild] = totR;
       //      if (spillGuts) System.out.println("Found " + rightRules.length + " right rules for state " + stateIndex.get(rightState));
       for (BinaryRule rule : rightRules) {
         //      if (spillGuts) System.out.println("Considering rule for " + start + " to " + end + ": " + rightRules[i]);
+        if (allowed != null && ! allowed[rule.parent]) {
+          continue;
+        }
 
         int leftChild = rule.leftChild;
         int narrowR = narrowRExtent_start[leftChild];
@@ -1119,13 +1139,15 @@ oScore[split][end][br.rightChild] = totR;
           if (spillGuts) System.err.println("Could build " + stateIndex.get(parentState) + " from " + start + " to " + end + " with score " + bestIScore);
           if (oldIScore == Float.NEGATIVE_INFINITY) {
             if (start > narrowLExtent_end[parentState]) {
-              narrowLExtent_end[parentState] = wideLExtent_end[parentState] = start;
-            } else if (start < wideLExtent_end[parentState]) {
+              narrowLExtent_end[parentState] = start;
+            }
+            if (start < wideLExtent_end[parentState]) {
               wideLExtent_end[parentState] = start;
             }
             if (end < narrowRExtent_start[parentState]) {
-              narrowRExtent_start[parentState] = wideRExtent_start[parentState] = end;
-            } else if (end > wideRExtent_start[parentState]) {
+              narrowRExtent_start[parentState] = end;
+            }
+            if (end > wideRExtent_start[parentState]) {
               wideRExtent_start[parentState] = end;
             }
           }
@@ -1185,13 +1207,15 @@ oScore[split][end][br.rightChild] = totR;
           iScore_start_end[parentState] = tot;
           if (cur == Float.NEGATIVE_INFINITY) {
             if (start > narrowLExtent_end[parentState]) {
-              narrowLExtent_end[parentState] = wideLExtent_end[parentState] = start;
-            } else if (start < wideLExtent_end[parentState]) {
+              narrowLExtent_end[parentState] = start;
+            }
+            if (start < wideLExtent_end[parentState]) {
               wideLExtent_end[parentState] = start;
             }
             if (end < narrowRExtent_start[parentState]) {
-              narrowRExtent_start[parentState] = wideRExtent_start[parentState] = end;
-            } else if (end > wideRExtent_start[parentState]) {
+              narrowRExtent_start[parentState] = end;
+            }
+            if (end > wideRExtent_start[parentState]) {
               wideRExtent_start[parentState] = end;
             }
           }
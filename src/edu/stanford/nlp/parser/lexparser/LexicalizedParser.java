@@ -102,6 +102,16 @@ public class LexicalizedParser extends ParserGrammar implements Serializable {
 
   public Reranker reranker; // = null;
 
+  private transient BasicCategoryGrammarProjection coarseProjection; // = null; built on first use
+
+  /** The projection of the PCFG used by CoarseToFinePCFGParser, which is shared by all its parser queries. */
+  synchronized BasicCategoryGrammarProjection coarseProjection() {
+    if (coarseProjection == null) {
+      coarseProjection = new BasicCategoryGrammarProjection(bg, ug, stateIndex, treebankLanguagePack());
+    }
+    return coarseProjection;
+  }
+
   @Override
   public TreebankLangParserParams getTLPParams() { return op.tlpParams; }
 
@@ -395,6 +405,9 @@ public class LexicalizedParser extends ParserGrammar implements Serializable {
   }
 
   public static LexicalizedParser getParserFromFile(String parserFileOrUrl, Options op) {
+    if (CompactParserModel.isCompactModel(parserFileOrUrl)) {
+      return getParserFromCompactFile(parserFileOrUrl);
+    }
     LexicalizedParser pd = getParserFromSerializedFile(parserFileOrUrl);
     if (pd == null) {
       pd = getParserFromTextFile(parserFileOrUrl, op);
@@ -522,6 +535,41 @@ public class LexicalizedParser extends ParserGrammar implements Serializable {
     }
   }
 
+  /**
+   * Saves the parser in the compact binary format of {@link CompactParserModel},
+   * which loads without Java serialization, and whose string tables are
+   * memory-mapped and shared between processes when the file is on disk.
+   * Only parsers with a BaseLexicon, no reranker and no dependency grammar
+   * other than an MLEDependencyGrammar can be saved this way.
+   * If there is an error, a RuntimeIOException is thrown.
+   */
+  public void saveParserToCompactFile(String filename) {
+    try {
+      System.err.print("Writing parser in compact format to file " + filename + ' ');
+      CompactParserModel.save(this, filename);
+      System.err.println("done.");
+    } catch (IOException ioe) {
+      throw new RuntimeIOException(ioe);
+    }
+  }
+
+  /**
+   * Loads a parser saved by {@link #saveParserToCompactFile(String)}.
+   * {@link #getParserFromFile} and the loadModel methods recognize
+   * compact models automatically.  The indices of such a parser are
+   * read-only, so it can be used to parse and saved again in the text or
+   * compact formats, but not serialized.
+   */
+  public static LexicalizedParser getParserFromCompactFile(String compactFileOrUrl) {
+    try {
+      return CompactParserModel.load(compactFileOrUrl);
+    } catch (IOException e) {
+      throw new RuntimeIOException("Failed to load compact parser " + compactFileOrUrl, e);
+    } catch (ClassNotFoundException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   private static void confirmBeginBlock(String file, String line) {
     if (line == null) {
       throw new RuntimeException(file + ": expecting BEGIN block; got end of file.");
@@ -1053,7 +1101,7 @@ public class LexicalizedParser extends ParserGrammar implements Serializable {
    * java edu.stanford.nlp.parser.lexparser.LexicalizedParser
    * [-v] -train
    * trainFilesPath [fileRange] [-saveToSerializedFile grammarPath]
-   * [-saveToTextFile grammarPath]
+   * [-saveToTextFile grammarPath] [-saveToCompactFile grammarPath]
    * </code></blockquote>
    *
    * <p>
@@ -1187,6 +1235,7 @@ public class LexicalizedParser extends ParserGrammar implements Serializable {
     boolean train = false;
     boolean saveToSerializedFile = false;
     boolean saveToTextFile = false;
+    String compactOutputFileOrUrl = null;
     String serializedInputFileOrUrl = null;
     String textInputFileOrUrl = null;
     String serializedOutputFileOrUrl = null;
@@ -1314,6 +1363,10 @@ public class LexicalizedParser extends ParserGrammar implements Serializable {
         saveToTextFile = true;
         textOutputFileOrUrl = args[argIndex + 1];
         argIndex += 2;
+      } else if (args[argIndex].equalsIgnoreCase("-saveToCompactFile")) {
+        // save the parser in the compact binary format
+        compactOutputFileOrUrl = args[argIndex + 1];
+        argIndex += 2;
       } else if (args[argIndex].equalsIgnoreCase("-saveTrainTrees")) {
         // save the training trees to a binary file
         op.trainOptions.trainTreeFile = args[argIndex + 1];
@@ -1473,10 +1526,13 @@ public class LexicalizedParser extends ParserGrammar implements Serializable {
         System.err.println("Usage: must specify a text grammar output path");
       }
     }
+    if (compactOutputFileOrUrl != null) {
+      lp.saveParserToCompactFile(compactOutputFileOrUrl);
+    }
     if (saveToSerializedFile) {
       if (serializedOutputFileOrUrl != null) {
         lp.saveParserToSerialized(serializedOutputFileOrUrl);
-      } else if (textOutputFileOrUrl == null && testTreebank == null) {
+      } else if (textOutputFileOrUrl == null && compactOutputFileOrUrl == null && testTreebank == null) {
         // no saving/parsing request has been specified
         System.err.println("usage: " + "java edu.stanford.nlp.parser.lexparser.LexicalizedParser " + "-train trainFilesPath [fileRange] -saveToSerializedFile serializedParserFilename");
       }
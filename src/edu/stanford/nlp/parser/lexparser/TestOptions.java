@@ -65,6 +65,20 @@ public class TestOptions implements Serializable {
   /** If true, use faster iterative deepening CKY algorithm. */
   public boolean iterativeCKY = false;
 
+  /**
+   * If true, prune the PCFG chart with a first pass over the basic
+   * categories of the grammar.  See CoarseToFinePCFGParser.
+   */
+  public boolean coarseToFine = false;
+
+  /**
+   * With coarseToFine, the log probability, relative to the best coarse
+   * parse, below which a basic category is pruned from a span.  Lower
+   * values prune less: negative infinity finds the same parses as no
+   * pruning.
+   */
+  public double coarseToFineThreshold = -10.0;
+
   /**
    * The maximum sentence length (including punctuation, etc.) to parse.
    */
@@ -5,11 +5,10 @@ import edu.stanford.nlp.util.Pair;
 import edu.stanford.nlp.util.concurrent.MulticoreWrapper;
 import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
 
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.IntStream;
@@ -30,6 +29,9 @@ import java.util.stream.IntStream;
  * be sure to call {@link #finalizeTraining()} in order to allow the
  * classifier to clean up resources used during training.
  *
+ * Parsing is done with a {@link FloatClassifier} copy of the trained
+ * weights.
+ *
  * @author Danqi Chen
  * @author Jon Gauthier
  */
@@ -60,11 +62,17 @@ public class Classifier {
   private double[][] saved;
 
   /**
-   * Describes features which should be precomputed. Each entry maps a
-   * feature ID to its destined index in the saved hidden unit
-   * activation data (see {@link #saved}).
+   * Describes features which should be precomputed. For each feature
+   * ID, holds its destined index in the saved hidden unit activation
+   * data (see {@link #saved}), or -1 if it is not precomputed.
    */
-  private final Map<Integer, Integer> preMap;
+  private final int[] preMap;
+
+  /**
+   * The feature IDs which may be precomputed, in the order of their
+   * indices in {@link #saved}.
+   */
+  private final int[] preComputedIDs;
 
   /**
    * Initial training state is dependent on how the classifier is
@@ -137,9 +145,14 @@ public class Classifier {
 
     numLabels = W2.length;
 
-    preMap = new HashMap<>();
-    for (int i = 0; i < preComputed.size() && i < config.numPreComputed; ++i)
-      preMap.put(preComputed.get(i), i);
+    preMap = new int[E.length * config.numTokens];
+    Arrays.fill(preMap, -1);
+    int numPreComputed = Math.min(preComputed.size(), config.numPreComputed);
+    preComputedIDs = new int[numPreComputed];
+    for (int i = 0; i < numPreComputed; ++i) {
+      preComputedIDs[i] = preComputed.get(i);
+      preMap[preComputedIDs[i]] = i;
+    }
 
     isTraining = dataset != null;
     if (isTraining)
@@ -205,11 +218,10 @@ public class Classifier {
           int tok = feature.get(j);
           int index = tok * config.numTokens + j;
 
-          if (preMap.containsKey(index)) {
+          int id = preMap[index];
+          if (id >= 0) {
             // Unit activations for this input feature value have been
             // precomputed
-            int id = preMap.get(index);
-
             // Only extract activations for those nodes which are still
             // activated (`ls`)
             for (int nodeIndex : ls)
@@ -276,8 +288,8 @@ public class Classifier {
         for (int j = 0; j < config.numTokens; ++j) {
           int tok = feature.get(j);
           int index = tok * config.numTokens + j;
-          if (preMap.containsKey(index)) {
-            int id = preMap.get(index);
+          int id = preMap[index];
+          if (id >= 0) {
             for (int nodeIndex : ls)
               gradSaved[id][nodeIndex] += gradHidden[nodeIndex];
           } else {
@@ -392,7 +404,7 @@ public class Classifier {
      */
     private void backpropSaved(Set<Integer> featuresSeen) {
       for (int x : featuresSeen) {
-        int mapX = preMap.get(x);
+        int mapX = preMap[x];
         int tok = x / config.numTokens;
         int offset = (x % config.numTokens) * config.embeddingSize;
         for (int j = 0; j < config.hiddenSize; ++j) {
@@ -475,7 +487,7 @@ public class Classifier {
       for (int j = 0; j < config.numTokens; j++) {
         int tok = feature.get(j);
         int index = tok * config.numTokens + j;
-        if (preMap.containsKey(index))
+        if (preMap[index] >= 0)
           featureIDs.add(index);
       }
     }
@@ -519,7 +531,7 @@ public class Classifier {
     FeedforwardParams params = new FeedforwardParams(batchSize, dropOutProb);
 
     // Zero out saved-embedding gradients
-    gradSaved = new double[preMap.size()][config.hiddenSize];
+    gradSaved = new double[preComputedIDs.length][config.hiddenSize];
 
     int numChunks = config.trainingThreads;
     List<List<Example>> chunks = CollectionUtils.partitionIntoFolds(examples, numChunks);
@@ -634,7 +646,10 @@ public class Classifier {
    * @see #preCompute(java.util.Set)
    */
   public void preCompute() {
-    preCompute(preMap.keySet());
+    Set<Integer> toPreCompute = new HashSet<>();
+    for (int x : preComputedIDs)
+      toPreCompute.add(x);
+    preCompute(toPreCompute);
   }
 
   /**
@@ -652,10 +667,10 @@ public class Classifier {
     // `preMap` indices to map into this denser array. But this
     // actually hurt training performance! (See experiments with
     // "smallMap.")
-    saved = new double[preMap.size()][config.hiddenSize];
+    saved = new double[preComputedIDs.length][config.hiddenSize];
 
     for (int x : toPreCompute) {
-      int mapX = preMap.get(x);
+      int mapX = preMap[x];
       int tok = x / config.numTokens;
       int pos = x % config.numTokens;
       for (int j = 0; j < config.hiddenSize; ++j)
@@ -666,45 +681,6 @@ public class Classifier {
         .currentTimeMillis() - startTime) / 1000.0 + " (s)");
   }
 
-  double[] computeScores(int[] feature) {
-    return computeScores(feature, preMap);
-  }
-
-  /**
-   * Feed a feature vector forward through the network. Returns the
-   * values of the output layer.
-   */
-  private double[] computeScores(int[] feature, Map<Integer, Integer> preMap) {
-    double[] hidden = new double[config.hiddenSize];
-    int offset = 0;
-    for (int j = 0; j < feature.length; ++j) {
-      int tok = feature[j];
-      int index = tok * config.numTokens + j;
-
-      if (preMap.containsKey(index)) {
-        int id = preMap.get(index);
-        for (int i = 0; i < config.hiddenSize; ++i)
-          hidden[i] += saved[id][i];
-      } else {
-        for (int i = 0; i < config.hiddenSize; ++i)
-          for (int k = 0; k < config.embeddingSize; ++k)
-            hidden[i] += W1[i][offset + k] * E[tok][k];
-      }
-      offset += config.embeddingSize;
-    }
-
-    for (int i = 0; i < config.hiddenSize; ++i) {
-      hidden[i] += b1[i];
-      hidden[i] = hidden[i] * hidden[i] * hidden[i];  // cube nonlinearity
-    }
-
-    double[] scores = new double[numLabels];
-    for (int i = 0; i < numLabels; ++i)
-      for (int j = 0; j < config.hiddenSize; ++j)
-        scores[i] += W2[i][j] * hidden[j];
-    return scores;
-  }
-
   public double[][] getW1() {
     return W1;
   }
@@ -127,7 +127,9 @@ public class Config
 
   /**
    * Number of input tokens for which we should compute hidden-layer
-   * unit activations.
+   * unit activations. These are the most frequent tokens (at each
+   * position) in the training data, so this is a budget for the size of
+   * the table of activations, which goes to the tokens seen most often.
    *
    * If zero, the parser will skip the pre-computation step.
    */
@@ -202,6 +204,15 @@ public class Config
    */
   public String tagger = MaxentTagger.DEFAULT_JAR_PATH;
 
+  /**
+   * Number of sentences to parse together in lock-step at test time.
+   * At each step, the next transition for all of these sentences is
+   * scored with a single batched pass through the classifier.
+   *
+   * If 1, sentences are parsed one at a time.
+   */
+  public int testBatchSize = 64;
+
   public Config(Properties properties) {
     setProperties(properties);
   }
@@ -229,6 +240,7 @@ public class Config
     // Runtime parsing options
     sentenceDelimiter = PropertiesUtils.getString(props, "sentenceDelimiter", sentenceDelimiter);
     tagger = PropertiesUtils.getString(props, "tagger.model", tagger);
+    testBatchSize = Math.max(1, PropertiesUtils.getInt(props, "testBatchSize", testBatchSize));
 
     String escaperClass = props.getProperty("escaper");
     escaper = escaperClass != null ? ReflectionLoading.loadByReflection(escaperClass) : null;
@@ -30,10 +30,23 @@ import edu.stanford.nlp.util.StringUtils;
 import edu.stanford.nlp.util.Timing;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
 import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -41,8 +54,6 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
 
-import static java.util.stream.Collectors.toList;
-
 /**
  * This class defines a transition-based dependency parser which makes
  * use of a classifier powered by a neural network. The neural network
@@ -93,13 +104,66 @@ public class DependencyParser {
   private List<Integer> preComputed;
 
   /**
-   * Given a particular parser configuration, this classifier will
-   * predict the best transition to make next.
-   *
-   * The {@link edu.stanford.nlp.parser.nndep.Classifier} class
-   * handles both training and inference.
+   * The classifier being trained, which learns to predict the best
+   * transition to make next from a particular parser configuration.
+   * This is null in a parser whose model was loaded from a file.
    */
   private Classifier classifier;
+
+  /**
+   * The classifier which parsing is done with: an immutable copy of the
+   * weights of a loaded model, which may be shared with other parsers,
+   * or of those of {@link #classifier} as trained so far.
+   */
+  private FloatClassifier parsingClassifier;
+
+  /**
+   * The parts of a loaded model which don't depend on any of the parser's
+   * properties but the precomputation budget. Parsers loaded from the
+   * same file share one of these, rather than each keeping its own copy
+   * of the dictionaries and weights.
+   */
+  private static class LoadedModel {
+    private final List<String> knownWords, knownPos, knownLabels;
+    private final Map<String, Integer> wordIDs, posIDs, labelIDs;
+    private final List<Integer> preComputed;
+    private final FloatClassifier classifier;
+
+    private LoadedModel(DependencyParser parser) {
+      knownWords = parser.knownWords;
+      knownPos = parser.knownPos;
+      knownLabels = parser.knownLabels;
+      wordIDs = parser.wordIDs;
+      posIDs = parser.posIDs;
+      labelIDs = parser.labelIDs;
+      preComputed = parser.preComputed;
+      classifier = parser.parsingClassifier;
+    }
+
+    private void shareWith(DependencyParser parser) {
+      parser.knownWords = knownWords;
+      parser.knownPos = knownPos;
+      parser.knownLabels = knownLabels;
+      parser.wordIDs = wordIDs;
+      parser.posIDs = posIDs;
+      parser.labelIDs = labelIDs;
+      parser.preComputed = preComputed;
+      parser.classifier = null;
+      parser.parsingClassifier = classifier;
+      parser.loadedModel = this;
+    }
+  }
+
+  /**
+   * Models loaded so far, keyed by file and precomputation budget. The
+   * models are only weakly referenced from here, so that one is dropped
+   * once no parser is using it.
+   */
+  private static final Map<String, WeakReference<LoadedModel>> loadedModels = new HashMap<>();
+
+  /** The model this parser was loaded with, if any; keeps it in {@link #loadedModels} */
+  private LoadedModel loadedModel;
+
   private ParsingSystem system;
 
   private final Config config;
@@ -380,12 +444,21 @@ public class DependencyParser {
     System.err.println("#Label: " + knownLabels.size());
   }
 
+  /**
+   * Save the current model in the text format read by
+   * {@link #loadModelFile(String)}.
+   * <p>
+   * While training, the weights written are those of the training
+   * classifier, in full precision. A loaded model only keeps its weights as
+   * 32-bit floats, so saving it again writes the rounded values, and the
+   * file is not the same as the one the model was read from.
+   */
   public void writeModelFile(String modelFile) {
     try {
-      double[][] W1 = classifier.getW1();
-      double[] b1 = classifier.getb1();
-      double[][] W2 = classifier.getW2();
-      double[][] E = classifier.getE();
+      double[][] W1 = (classifier != null) ? classifier.getW1() : parsingClassifier.getW1();
+      double[] b1 = (classifier != null) ? classifier.getb1() : parsingClassifier.getb1();
+      double[][] W2 = (classifier != null) ? classifier.getW2() : parsingClassifier.getW2();
+      double[][] E = (classifier != null) ? classifier.getE() : parsingClassifier.getE();
 
       Writer output = IOUtils.getPrintWriter(modelFile);
 
@@ -462,6 +535,99 @@ public class DependencyParser {
     }
   }
 
+  /**
+   * Magic number at the start of a binary model file (the bytes "NNDP").
+   *
+   * @see #writeBinaryModelFile(String)
+   */
+  private static final int BINARY_MODEL_MAGIC = 0x4E4E4450;
+
+  /**
+   * Version of the binary model format written by {@link #writeBinaryModelFile(String)}.
+   */
+  private static final int BINARY_MODEL_VERSION = 1;
+
+  /**
+   * Save the current model in a binary format which loads much faster than
+   * the text format written by {@link #writeModelFile(String)}.
+   * <p>
+   * All values are little-endian. The file consists of:
+   * <ol>
+   *   <li>a header of ints: magic number, format version, number of words,
+   *       POS tags and labels, embedding size, hidden size, number of tokens,
+   *       number of precomputed features and number of rows of W2;</li>
+   *   <li>the word, POS and label string tables, each string written as an
+   *       int byte count followed by its UTF-8 bytes;</li>
+   *   <li>padding up to a multiple of four bytes;</li>
+   *   <li>the matrices E, W1, b1 and W2 as contiguous row-major float32 values;</li>
+   *   <li>the precomputed feature IDs, as ints.</li>
+   * </ol>
+   * Weights are stored as 32-bit floats, so a model converted from the text
+   * format may score transitions very slightly differently.
+   * <p>
+   * Binary models are recognized automatically by {@link #loadModelFile(String)}.
+   * When they are plain files on disk they are memory-mapped, and the parser
+   * scores with the weights in the mapping, without copying them. This saves
+   * the heap and lets processes share the weights, at some cost in speed:
+   * reading the mapping is slower than reading arrays, which matters for the
+   * features whose activations were not precomputed.
+   */
+  public void writeBinaryModelFile(String modelFile) {
+    double[][] W1 = (classifier != null) ? classifier.getW1() : parsingClassifier.getW1();
+    double[] b1 = (classifier != null) ? classifier.getb1() : parsingClassifier.getb1();
+    double[][] W2 = (classifier != null) ? classifier.getW2() : parsingClassifier.getW2();
+    double[][] E = (classifier != null) ? classifier.getE() : parsingClassifier.getE();
+
+    ByteArrayOutputStream strings = new ByteArrayOutputStream();
+    for (List<String> table : Arrays.asList(knownWords, knownPos, knownLabels)) {
+      for (String str : table) {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        strings.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(bytes.length).array(), 0, 4);
+        strings.write(bytes, 0, bytes.length);
+      }
+    }
+
+    int headerSize = 4 * 10;
+    int padding = (4 - (headerSize + strings.size()) % 4) % 4;
+    int numFloats = E.length * E[0].length + W1.length * W1[0].length + b1.length + W2.length * W2[0].length;
+    ByteBuffer buffer = ByteBuffer.allocate(headerSize + strings.size() + padding + 4 * numFloats + 4 * preComputed.size())
+        .order(ByteOrder.LITTLE_ENDIAN);
+
+    buffer.putInt(BINARY_MODEL_MAGIC);
+    buffer.putInt(BINARY_MODEL_VERSION);
+    buffer.putInt(knownWords.size());
+    buffer.putInt(knownPos.size());
+    buffer.putInt(knownLabels.size());
+    buffer.putInt(E[0].length);
+    buffer.putInt(b1.length);
+    buffer.putInt(W1[0].length / E[0].length);
+    buffer.putInt(preComputed.size());
+    buffer.putInt(W2.length);
+    buffer.put(strings.toByteArray());
+    for (int i = 0; i < padding; ++i)
+      buffer.put((byte) 0);
+
+    for (double[] row : E)
+      for (double x : row)
+        buffer.putFloat((float) x);
+    for (double[] row : W1)
+      for (double x : row)
+        buffer.putFloat((float) x);
+    for (double x : b1)
+      buffer.putFloat((float) x);
+    for (double[] row : W2)
+      for (double x : row)
+        buffer.putFloat((float) x);
+    for (int feature : preComputed)
+      buffer.putInt(feature);
+
+    try (OutputStream output = IOUtils.getFileOutputStream(modelFile)) {
+      output.write(buffer.array());
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
   /**
    * Convenience method; see {@link #loadFromModelFile(String, java.util.Properties)}.
    *
@@ -473,6 +639,10 @@ public class DependencyParser {
 
   /**
    * Load a saved parser model.
+   * <p>
+   * Parsers loaded from the same file, with the same number of
+   * precomputed features, share one immutable copy of its dictionaries
+   * and weights, which they may all use from any number of threads.
    *
    * @param modelFile       Path to serialized model (may be GZipped)
    * @param extraProperties Extra test-time properties not already associated with model (may be null)
@@ -495,6 +665,33 @@ public class DependencyParser {
 
   private void loadModelFile(String modelFile, boolean verbose) {
     Timing t = new Timing();
+    String key = modelFile + ' ' + new File(modelFile).lastModified() + ' ' + config.numPreComputed;
+    synchronized (loadedModels) {
+      WeakReference<LoadedModel> ref = loadedModels.get(key);
+      LoadedModel model = (ref == null) ? null : ref.get();
+      if (model != null) {
+        System.err.println("Using depparse model already loaded from " + modelFile);
+        model.shareWith(this);
+      } else {
+        if (isBinaryModelFile(modelFile)) {
+          loadBinaryModelFile(modelFile);
+        } else {
+          loadTextModelFile(modelFile);
+        }
+        loadedModel = new LoadedModel(this);
+        loadedModels.put(key, new WeakReference<>(loadedModel));
+      }
+    }
+
+    // initialize the loaded parser
+    initialize(verbose);
+    t.done("Initializing dependency parser");
+  }
+
+  /**
+   * Load a model in the text format written by {@link #writeModelFile(String)}.
+   */
+  private void loadTextModelFile(String modelFile) {
     try {
 
       System.err.println("Loading depparse model file: " + modelFile + " ... ");
@@ -580,14 +777,123 @@ public class DependencyParser {
         }
       }
       input.close();
-      classifier = new Classifier(config, E, W1, b1, W2, preComputed);
+      classifier = null;
+      parsingClassifier = new FloatClassifier(config, E, W1, b1, W2, preComputed);
     } catch (IOException e) {
       throw new RuntimeIOException(e);
     }
+  }
 
-    // initialize the loaded parser
-    initialize(verbose);
-    t.done("Initializing dependency parser");
+  /**
+   * Check whether the given model file is in the binary format written by
+   * {@link #writeBinaryModelFile(String)}, by looking for its magic number.
+   */
+  private static boolean isBinaryModelFile(String modelFile) {
+    try (DataInputStream input = new DataInputStream(IOUtils.getInputStreamFromURLOrClasspathOrFileSystem(modelFile))) {
+      return Integer.reverseBytes(input.readInt()) == BINARY_MODEL_MAGIC;
+    } catch (IOException e) {
+      // Too short to be a binary model, or not there at all; let the text loader complain
+      return false;
+    }
+  }
+
+  /**
+   * Get the contents of a binary model file as a little-endian buffer.
+   * Plain files on disk are memory-mapped read-only, so that the operating
+   * system can share their pages between processes; anything else (e.g.,
+   * models in jars or gzipped files) is read into memory. The mapping
+   * stays open for as long as a classifier holds views of it.
+   */
+  static ByteBuffer readBinaryModelBuffer(String modelFile) throws IOException {
+    File file = new File(modelFile);
+    if (file.isFile() && !modelFile.endsWith(".gz")) {
+      try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+           FileChannel channel = raf.getChannel()) {
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+      }
+    }
+    try (InputStream input = IOUtils.getInputStreamFromURLOrClasspathOrFileSystem(modelFile)) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      IOUtils.writeStreamToStream(input, bytes);
+      return ByteBuffer.wrap(bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+  }
+
+  private static List<String> readStringTable(ByteBuffer buffer, int size) {
+    List<String> table = new ArrayList<>(size);
+    for (int k = 0; k < size; ++k) {
+      byte[] bytes = new byte[buffer.getInt()];
+      buffer.get(bytes);
+      table.add(new String(bytes, StandardCharsets.UTF_8));
+    }
+    return table;
+  }
+
+  /**
+   * Read a matrix of {@code rows x cols} float32 values from the buffer.
+   * If the buffer is a memory mapping, the matrix is a view of the mapped
+   * values, which are used where they lie; otherwise the values are copied
+   * into an array with one bulk read, as single reads from a heap byte
+   * buffer are slow.
+   */
+  private static FloatBuffer readMatrix(FloatBuffer floats, int rows, int cols) {
+    int size = rows * cols;
+    if (floats.isDirect()) {
+      FloatBuffer matrix = floats.slice();
+      matrix.limit(size);
+      floats.position(floats.position() + size);
+      return matrix;
+    }
+    float[] matrix = new float[size];
+    floats.get(matrix);
+    return FloatBuffer.wrap(matrix);
+  }
+
+  /**
+   * Load a model in the binary format written by {@link #writeBinaryModelFile(String)}.
+   */
+  private void loadBinaryModelFile(String modelFile) {
+    System.err.println("Loading binary depparse model file: " + modelFile + " ... ");
+    ByteBuffer buffer;
+    try {
+      buffer = readBinaryModelBuffer(modelFile);
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+
+    if (buffer.getInt() != BINARY_MODEL_MAGIC)
+      throw new RuntimeIOException("Not a binary depparse model: " + modelFile);
+    int version = buffer.getInt();
+    if (version != BINARY_MODEL_VERSION)
+      throw new RuntimeIOException("Unsupported binary depparse model version " + version + ": " + modelFile);
+    int nDict = buffer.getInt();
+    int nPOS = buffer.getInt();
+    int nLabel = buffer.getInt();
+    int eSize = buffer.getInt();
+    int hSize = buffer.getInt();
+    int nTokens = buffer.getInt();
+    int nPreComputed = buffer.getInt();
+    int nW2Rows = buffer.getInt();
+
+    knownWords = readStringTable(buffer, nDict);
+    knownPos = readStringTable(buffer, nPOS);
+    knownLabels = readStringTable(buffer, nLabel);
+    generateIDs();
+    buffer.position((buffer.position() + 3) & ~3);
+
+    FloatBuffer floats = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    FloatBuffer E = readMatrix(floats, nDict + nPOS + nLabel, eSize);
+    FloatBuffer W1 = readMatrix(floats, hSize, eSize * nTokens);
+    FloatBuffer b1 = readMatrix(floats, 1, hSize);
+    FloatBuffer W2 = readMatrix(floats, nW2Rows, hSize);
+
+    buffer.position(buffer.position() + 4 * floats.position());
+    preComputed = new ArrayList<>(nPreComputed);
+    for (int i = 0; i < nPreComputed; ++i)
+      preComputed.add(buffer.getInt());
+
+    classifier = null;
+    parsingClassifier = new FloatClassifier(config, E, W1, b1, W2, eSize, preComputed);
   }
 
   // TODO this should be a function which returns the embeddings array + embedID
@@ -690,12 +996,12 @@ public class DependencyParser {
 
       // UAS evaluation
       if (devFile != null && iter % config.evalPerIter == 0) {
-        // Redo precomputation with updated weights. This is only
-        // necessary because we're updating weights -- for normal
-        // prediction, we just do this once in #initialize
-        classifier.preCompute();
+        // Parse with the updated weights, redoing the precomputation.
+        // This is only necessary because we're updating weights -- for
+        // normal prediction, this is done once when the model is loaded
+        copyTrainedWeights();
 
-        List<DependencyTree> predicted = devSents.stream().map(this::predictInner).collect(toList());
+        List<DependencyTree> predicted = predictInner(devSents);
 
         double uas = config.noPunc ? system.getUASnoPunc(devSents, predicted, devTrees) : system.getUAS(devSents, predicted, devTrees);
         System.err.println("UAS: " + uas);
@@ -716,11 +1022,12 @@ public class DependencyParser {
     }
 
     classifier.finalizeTraining();
+    copyTrainedWeights();
 
     if (devFile != null) {
       // Do final UAS evaluation and save if final model beats the
       // best intermediate one
-      List<DependencyTree> predicted = devSents.stream().map(this::predictInner).collect(toList());
+      List<DependencyTree> predicted = predictInner(devSents);
       double uas = config.noPunc ? system.getUASnoPunc(devSents, predicted, devTrees) : system.getUAS(devSents, predicted, devTrees);
 
       if (uas > bestUAS) {
@@ -755,6 +1062,15 @@ public class DependencyParser {
     train(trainFile, null, modelFile);
   }
 
+  /**
+   * Copy the weights of the classifier being trained into the one which
+   * parsing is done with.
+   */
+  private void copyTrainedWeights() {
+    parsingClassifier = new FloatClassifier(config, classifier.getE(), classifier.getW1(), classifier.getb1(),
+        classifier.getW2(), preComputed);
+  }
+
   /**
    * Prepare a classifier for training with the given dataset.
    */
@@ -906,7 +1222,7 @@ public class DependencyParser {
 
     Configuration c = system.initialConfiguration(sentence);
     while (!system.isTerminal(c)) {
-      double[] scores = classifier.computeScores(getFeatureArray(c));
+      double[] scores = parsingClassifier.computeScores(getFeatureArray(c));
 
       double optScore = Double.NEGATIVE_INFINITY;
       String optTrans = null;
@@ -922,6 +1238,68 @@ public class DependencyParser {
     return c.tree;
   }
 
+  /**
+   * Determine the dependency parses of several sentences at once.
+   * <p>
+   * The sentences are advanced in lock-step, up to {@link Config#testBatchSize}
+   * at a time: at each step, the features of every unfinished sentence are
+   * scored by the classifier in a single batch. The parses returned are the
+   * same as those of {@link #predictInner(CoreMap)}.
+   */
+  private List<DependencyTree> predictInner(List<? extends CoreMap> sentences) {
+    int numTrans = system.numTransitions();
+    int batchSize = Math.min(config.testBatchSize, sentences.size());
+
+    List<DependencyTree> result = new ArrayList<>(sentences.size());
+    if (batchSize == 0)
+      return result;
+
+    int[][] features = new int[batchSize][];
+    double[][] hidden = new double[batchSize][parsingClassifier.hiddenSize()];
+    double[][] scores = new double[batchSize][parsingClassifier.numLabels()];
+    Configuration[] active = new Configuration[batchSize];
+
+    for (int start = 0; start < sentences.size(); start += batchSize) {
+      int end = Math.min(start + batchSize, sentences.size());
+      Configuration[] configurations = new Configuration[end - start];
+      for (int i = start; i < end; ++i)
+        configurations[i - start] = system.initialConfiguration(sentences.get(i));
+
+      while (true) {
+        int numActive = 0;
+        for (Configuration c : configurations) {
+          if (!system.isTerminal(c)) {
+            active[numActive] = c;
+            features[numActive] = getFeatureArray(c);
+            numActive++;
+          }
+        }
+        if (numActive == 0)
+          break;
+
+        parsingClassifier.computeScores(features, numActive, hidden, scores);
+
+        for (int b = 0; b < numActive; ++b) {
+          Configuration c = active[b];
+          double optScore = Double.NEGATIVE_INFINITY;
+          String optTrans = null;
+
+          for (int j = 0; j < numTrans; ++j) {
+            if (scores[b][j] > optScore && system.canApply(c, system.transitions.get(j))) {
+              optScore = scores[b][j];
+              optTrans = system.transitions.get(j);
+            }
+          }
+          system.apply(c, optTrans);
+        }
+      }
+
+      for (Configuration c : configurations)
+        result.add(c.tree);
+    }
+    return result;
+  }
+
   /**
    * Determine the dependency parse of the given sentence using the loaded model.
    * You must first load a parser before calling this method.
@@ -935,11 +1313,35 @@ public class DependencyParser {
           "loaded and initialized; first load a model.");
 
     DependencyTree result = predictInner(sentence);
+    return makeGrammaticalStructure(sentence, result);
+  }
 
-    // The rest of this method is just busy-work to convert the
-    // package-local representation into a CoreNLP-standard
-    // GrammaticalStructure.
+  /**
+   * Determine the dependency parses of the given sentences using the loaded model.
+   * This is faster than calling {@link #predict(edu.stanford.nlp.util.CoreMap)} on
+   * each sentence in turn, as the classifier scores many sentences at once.
+   * You must first load a parser before calling this method.
+   *
+   * @throws java.lang.IllegalStateException If parser has not yet been loaded and initialized
+   *         (see {@link #initialize(boolean)}
+   */
+  public List<GrammaticalStructure> predictAll(List<? extends CoreMap> sentences) {
+    if (system == null)
+      throw new IllegalStateException("Parser has not been  " +
+          "loaded and initialized; first load a model.");
+
+    List<DependencyTree> results = predictInner(sentences);
+    List<GrammaticalStructure> structures = new ArrayList<>(results.size());
+    for (int i = 0; i < results.size(); ++i)
+      structures.add(makeGrammaticalStructure(sentences.get(i), results.get(i)));
+    return structures;
+  }
 
+  /**
+   * Convert the package-local parse representation into a
+   * CoreNLP-standard GrammaticalStructure.
+   */
+  private GrammaticalStructure makeGrammaticalStructure(CoreMap sentence, DependencyTree result) {
     List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
     List<TypedDependency> dependencies = new ArrayList<>();
 
@@ -1074,7 +1476,7 @@ public class DependencyParser {
     }
     System.err.printf("OOV Words: %d / %d = %.2f%%\n", numOOVWords, numWords, numOOVWords * 100.0 / numWords);
 
-    List<DependencyTree> predicted = testSents.stream().map(this::predictInner).collect(toList());
+    List<DependencyTree> predicted = predictInner(testSents);
     Map<String, Double> result = system.evaluate(testSents, predicted, testTrees);
 
     double uas = config.noPunc ? result.get("UASnoPunc") : result.get("UAS");
@@ -1144,11 +1546,6 @@ public class DependencyParser {
     lDict.remove(0);
 
     system = new ArcStandard(config.tlp, lDict, verbose);
-
-    // Pre-compute matrix multiplications
-    if (config.numPreComputed > 0) {
-      classifier.preCompute();
-    }
   }
 
   /**
@@ -1159,6 +1556,7 @@ public class DependencyParser {
   static {
     numArgs.put("textFile", 1);
     numArgs.put("outFile", 1);
+    numArgs.put("binaryModel", 1);
   }
 
   /**
@@ -1180,6 +1578,10 @@ public class DependencyParser {
    *     <code>java edu.stanford.nlp.parser.nndep.DependencyParser -model modelOutputFile.txt.gz -textFile rawTextToParse -outFile dependenciesOutputFile.txt</code>
    *   </li>
    *   <li>
+   *     <strong>Convert a model to the binary format, which loads much faster:</strong>
+   *     <code>java edu.stanford.nlp.parser.nndep.DependencyParser -model modelOutputFile.txt.gz -binaryModel modelOutputFile.bin</code>
+   *   </li>
+   *   <li>
    *     <strong>Parse raw text from standard input, writing to standard output:</strong>
    *     <code>java edu.stanford.nlp.parser.nndep.DependencyParser -model modelOutputFile.txt.gz -textFile - -outFile -</code>
    *   </li>
@@ -1194,7 +1596,8 @@ public class DependencyParser {
    *   <tr><th>Option</th><th>Required for training</th><th>Required for testing / parsing</th><th>Description</th></tr>
    *   <tr><td><tt>&#8209;devFile</tt></td><td>Optional</td><td>No</td><td>Path to a development-set treebank in <a href="http://ilk.uvt.nl/conll/#dataformat">CoNLL-X format</a>. If provided, the </td></tr>
    *   <tr><td><tt>&#8209;embedFile</tt></td><td>Optional (highly recommended!)</td><td>No</td><td>A word embedding file, containing distributed representations of English words. Each line of the provided file should contain a single word followed by the elements of the corresponding word embedding (space-delimited). It is not absolutely necessary that all words in the treebank be covered by this embedding file, though the parser's performance will generally improve if you are able to provide better embeddings for more words.</td></tr>
-   *   <tr><td><tt>&#8209;model</tt></td><td>Yes</td><td>Yes</td><td>Path to a model file. If the path ends in <tt>.gz</tt>, the model will be read as a Gzipped model file. During training, we write to this path; at test time we read a pre-trained model from this path.</td></tr>
+   *   <tr><td><tt>&#8209;binaryModel</tt></td><td>No</td><td>No</td><td>If provided, write the loaded model to this path in the binary format (see {@link #writeBinaryModelFile(String)}). Binary models can then be given as the <tt>-model</tt>.</td></tr>
+   *   <tr><td><tt>&#8209;model</tt></td><td>Yes</td><td>Yes</td><td>Path to a model file. If the path ends in <tt>.gz</tt>, the model will be read as a Gzipped model file. Models in the binary format are recognized automatically. During training, we write to this path; at test time we read a pre-trained model from this path.</td></tr>
    *   <tr><td><tt>&#8209;textFile</tt></td><td>No</td><td>Yes (or <tt>testFile</tt>)</td><td>Path to a plaintext file containing sentences to be parsed.</td></tr>
    *   <tr><td><tt>&#8209;testFile</tt></td><td>No</td><td>Yes (or <tt>textFile</tt>)</td><td>Path to a test-set treebank in <a href="http://ilk.uvt.nl/conll/#dataformat">CoNLL-X format</a> for final evaluation of the parser.</td></tr>
    *   <tr><td><tt>&#8209;trainFile</tt></td><td>Yes</td><td>No</td><td>Path to a training treebank in <a href="http://ilk.uvt.nl/conll/#dataformat">CoNLL-X format</a></td></tr>
@@ -1226,6 +1629,7 @@ public class DependencyParser {
    *   <tr><td><tt>&#8209;escaper</tt></td><td>N/A</td><td>Only applicable for testing with <tt>-textFile</tt>. If provided, use this word-escaper when parsing raw sentences. (Should be a fully-qualified class name like <tt>edu.stanford.nlp.trees.international.arabic.ATBEscaper</tt>.)</td></tr>
    *   <tr><td><tt>&#8209;numPreComputed</tt></td><td>100000</td><td>The parser pre-computes hidden-layer unit activations for particular inputs words at both training and testing time in order to speed up feedforward computation in the neural network. This parameter determines how many words for which we should compute hidden-layer activations.</td></tr>
    *   <tr><td><tt>&#8209;sentenceDelimiter</tt></td><td>N/A</td><td>Only applicable for testing with <tt>-textFile</tt>.  If provided, assume that the given <tt>textFile</tt> has already been sentence-split, and that sentences are separated by this delimiter.</td></tr>
+   *   <tr><td><tt>&#8209;testBatchSize</tt></td><td>64</td><td>Number of sentences parsed together in lock-step at test time. At each step the classifier scores the next transition of all of these sentences in one batch. If 1, sentences are parsed one at a time.</td></tr>
    *   <tr><td><tt>&#8209;tagger.model</tt></td><td>edu/stanford/nlp/models/pos-tagger/english-left3words/english-left3words-distsim.tagger</td><td>Only applicable for testing with <tt>-textFile</tt>. Path to a part-of-speech tagger to use to pre-tag the raw sentences before parsing.</td></tr>
    * </table>
    */
@@ -1246,6 +1650,15 @@ public class DependencyParser {
       parser.testCoNLL(props.getProperty("testFile"), props.getProperty("outFile"));
     }
 
+    // Convert a model to the binary format
+    if (props.containsKey("binaryModel")) {
+      if (!loaded) {
+        parser.loadModelFile(props.getProperty("model"));
+        loaded = true;
+      }
+      parser.writeBinaryModelFile(props.getProperty("binaryModel"));
+    }
+
     // Parse raw text data
     if (props.containsKey("textFile")) {
       if (!loaded) {
@@ -0,0 +1,296 @@
+package edu.stanford.nlp.parser.nndep;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable copy of the weights of a {@link Classifier}, which is what
+ * the parser scores transitions with once a model has been loaded or
+ * trained.
+ * <p>
+ * The weights are kept as flat, row-major buffers of floats, which take
+ * half the memory of the training classifier's arrays of doubles. When a
+ * binary model is memory-mapped, the buffers are views of the mapping
+ * itself, so the weights are read where they lie in the file, are not
+ * copied onto the heap, and their pages are shared by every process which
+ * maps the same file. Otherwise they wrap arrays of floats. The table of
+ * precomputed hidden layer activations is always an array. The
+ * activations are still summed in doubles. Which features are precomputed is looked up in a
+ * dense array indexed by feature ID rather than in a map, so scoring
+ * boxes nothing.
+ * <p>
+ * As nothing in it changes after it is built, one instance may be shared
+ * by any number of parsers and threads.
+ *
+ * @see DependencyParser#loadFromModelFile(String, java.util.Properties)
+ */
+final class FloatClassifier {
+
+  private final int embeddingSize;
+  private final int hiddenSize;
+  private final int numTokens;
+  private final int numLabels;
+
+  // Row-major weight matrices, with the same shapes as those of Classifier;
+  // always read with absolute gets, so their positions never change
+  private final FloatBuffer E, W1, b1, W2;
+
+  // The arrays behind E, W1 and W2 when they have them, or null for views of
+  // a mapping. Scoring reads these when it can, as a FloatBuffer's gets are
+  // noticeably slower than array reads in the innermost loops.
+  private final float[] Earray, W1array, W2array;
+
+  /**
+   * Pre-computed hidden layer activations, {@code hiddenSize} values for
+   * each precomputed feature, in the order of {@link #preMap}'s indices.
+   */
+  private final float[] saved;
+
+  /**
+   * For each feature ID ({@code token * numTokens + position}), its row
+   * in {@link #saved}, or -1 if it was not precomputed.
+   */
+  private final int[] preMap;
+
+  /**
+   * Copy the given weights, and precompute the hidden layer activations of
+   * the first {@code config.numPreComputed} of the given features. These
+   * are kept in frequency order by the trainer and in the model files, so
+   * the budget goes to the most frequent features, and their rows of the
+   * table are the ones most often read.
+   */
+  FloatClassifier(Config config, double[][] E, double[][] W1, double[] b1, double[][] W2, List<Integer> preComputed) {
+    this(config, FloatBuffer.wrap(toFloats(E)), FloatBuffer.wrap(toFloats(W1)),
+        FloatBuffer.wrap(toFloats(new double[][] { b1 })), FloatBuffer.wrap(toFloats(W2)),
+        E[0].length, preComputed, E, W1);
+  }
+
+  /**
+   * Use the given row-major weights as they are, without copying them,
+   * and precompute activations as above. The buffers are used from their
+   * current positions to their limits, and must not change afterwards.
+   */
+  FloatClassifier(Config config, FloatBuffer E, FloatBuffer W1, FloatBuffer b1, FloatBuffer W2, int embeddingSize,
+                  List<Integer> preComputed) {
+    this(config, E, W1, b1, W2, embeddingSize, preComputed, null, null);
+  }
+
+  /**
+   * @param doubleE  The double weights E was rounded from, or null; the
+   *                 precomputed activations are summed from these if given
+   * @param doubleW1 Likewise for W1
+   */
+  private FloatClassifier(Config config, FloatBuffer E, FloatBuffer W1, FloatBuffer b1, FloatBuffer W2,
+                          int embeddingSize, List<Integer> preComputed, double[][] doubleE, double[][] doubleW1) {
+    this.E = E.slice();
+    this.W1 = W1.slice();
+    this.b1 = b1.slice();
+    this.W2 = W2.slice();
+    Earray = array(this.E);
+    W1array = array(this.W1);
+    W2array = array(this.W2);
+    this.embeddingSize = embeddingSize;
+    hiddenSize = this.b1.remaining();
+    numTokens = this.W1.remaining() / hiddenSize / embeddingSize;
+    numLabels = this.W2.remaining() / hiddenSize;
+    int numEmbeddings = this.E.remaining() / embeddingSize;
+    int W1cols = embeddingSize * numTokens;
+
+    long startTime = System.currentTimeMillis();
+    preMap = new int[numEmbeddings * numTokens];
+    Arrays.fill(preMap, -1);
+    int numPreComputed = 0;
+    for (int i = 0; i < preComputed.size() && i < config.numPreComputed; ++i) {
+      int x = preComputed.get(i);
+      if (x >= 0 && x < preMap.length && preMap[x] < 0)
+        preMap[x] = numPreComputed++;
+    }
+
+    saved = new float[numPreComputed * hiddenSize];
+    for (int x = 0; x < preMap.length; ++x) {
+      if (preMap[x] < 0)
+        continue;
+      int tok = x / numTokens;
+      int pos = x % numTokens;
+      int base = preMap[x] * hiddenSize;
+      for (int j = 0; j < hiddenSize; ++j) {
+        // Sum in the original precision before rounding the activation
+        double sum = 0.0;
+        if (doubleW1 != null) {
+          for (int k = 0; k < embeddingSize; ++k)
+            sum += doubleW1[j][pos * embeddingSize + k] * doubleE[tok][k];
+        } else {
+          int W1base = j * W1cols + pos * embeddingSize;
+          int Ebase = tok * embeddingSize;
+          for (int k = 0; k < embeddingSize; ++k)
+            sum += (double) this.W1.get(W1base + k) * this.E.get(Ebase + k);
+        }
+        saved[base + j] = (float) sum;
+      }
+    }
+    if (numPreComputed > 0) {
+      System.err.println("PreComputed " + numPreComputed + ", Elapsed Time: " + (System
+          .currentTimeMillis() - startTime) / 1000.0 + " (s)");
+    }
+  }
+
+  /** The buffer's backing array, if it has one which holds just its values */
+  private static float[] array(FloatBuffer buffer) {
+    if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.array().length == buffer.remaining())
+      return buffer.array();
+    return null;
+  }
+
+  private static float[] toFloats(double[][] matrix) {
+    int cols = matrix[0].length;
+    float[] flat = new float[matrix.length * cols];
+    for (int i = 0; i < matrix.length; ++i)
+      for (int j = 0; j < cols; ++j)
+        flat[i * cols + j] = (float) matrix[i][j];
+    return flat;
+  }
+
+  private static double[][] toDoubles(FloatBuffer flat, int rows, int cols) {
+    double[][] matrix = new double[rows][cols];
+    for (int i = 0; i < rows; ++i)
+      for (int j = 0; j < cols; ++j)
+        matrix[i][j] = flat.get(i * cols + j);
+    return matrix;
+  }
+
+  /**
+   * Feed a feature vector forward through the network. Returns the
+   * values of the output layer.
+   */
+  double[] computeScores(int[] feature) {
+    double[][] scores = new double[1][numLabels];
+    computeScores(new int[][] { feature }, 1, new double[1][hiddenSize], scores);
+    return scores[0];
+  }
+
+  /**
+   * Feed a batch of feature vectors forward through the network at once,
+   * writing the values of the output layer for the {@code b}-th example
+   * into {@code scores[b]}.
+   *
+   * Each weight row is loaded once per batch rather than once per example,
+   * and no per-example arrays are allocated: {@code hidden} and
+   * {@code scores} are caller-provided scratch space which may be reused
+   * across calls.
+   *
+   * @param features  Feature vectors; only the first {@code batchSize} are used
+   * @param batchSize Number of examples in this batch
+   * @param hidden    Scratch space for hidden layer activations, at least
+   *                  {@code batchSize x hiddenSize}
+   * @param scores    Output space, at least {@code batchSize x numLabels}
+   */
+  void computeScores(int[][] features, int batchSize, double[][] hidden, double[][] scores) {
+    int numFeatures = features[0].length;
+    int W1cols = embeddingSize * numTokens;
+
+    for (int b = 0; b < batchSize; ++b)
+      Arrays.fill(hidden[b], 0, hiddenSize, 0.0);
+
+    // Examples in this batch whose feature at the current position was
+    // not precomputed; these share a pass over the slice of W1
+    int[] notPrecomputed = new int[batchSize];
+
+    int offset = 0;
+    for (int j = 0; j < numFeatures; ++j) {
+      int numNotPrecomputed = 0;
+      for (int b = 0; b < batchSize; ++b) {
+        int id = preMap[features[b][j] * numTokens + j];
+        if (id >= 0) {
+          int base = id * hiddenSize;
+          double[] hiddenRow = hidden[b];
+          for (int i = 0; i < hiddenSize; ++i)
+            hiddenRow[i] += saved[base + i];
+        } else {
+          notPrecomputed[numNotPrecomputed++] = b;
+        }
+      }
+
+      if (numNotPrecomputed > 0) {
+        for (int i = 0; i < hiddenSize; ++i) {
+          int W1base = i * W1cols + offset;
+          for (int n = 0; n < numNotPrecomputed; ++n) {
+            int b = notPrecomputed[n];
+            int Ebase = features[b][j] * embeddingSize;
+            double sum = hidden[b][i];
+            if (W1array != null && Earray != null) {
+              for (int k = 0; k < embeddingSize; ++k)
+                sum += (double) W1array[W1base + k] * Earray[Ebase + k];
+            } else {
+              for (int k = 0; k < embeddingSize; ++k)
+                sum += (double) W1.get(W1base + k) * E.get(Ebase + k);
+            }
+            hidden[b][i] = sum;
+          }
+        }
+      }
+      offset += embeddingSize;
+    }
+
+    for (int b = 0; b < batchSize; ++b) {
+      double[] hiddenRow = hidden[b];
+      for (int i = 0; i < hiddenSize; ++i) {
+        hiddenRow[i] += b1.get(i);
+        hiddenRow[i] = hiddenRow[i] * hiddenRow[i] * hiddenRow[i];  // cube nonlinearity
+      }
+    }
+
+    for (int i = 0; i < numLabels; ++i) {
+      int W2base = i * hiddenSize;
+      for (int b = 0; b < batchSize; ++b) {
+        double[] hiddenRow = hidden[b];
+        double score = 0.0;
+        if (W2array != null) {
+          for (int j = 0; j < hiddenSize; ++j)
+            score += W2array[W2base + j] * hiddenRow[j];
+        } else {
+          for (int j = 0; j < hiddenSize; ++j)
+            score += W2.get(W2base + j) * hiddenRow[j];
+        }
+        scores[b][i] = score;
+      }
+    }
+  }
+
+  /**
+   * The number of labels (transitions) this classifier chooses between;
+   * i.e., the length of a row of scores.
+   */
+  int numLabels() {
+    return numLabels;
+  }
+
+  /**
+   * The size of the hidden layer, which is that of the weights this was
+   * built from and not necessarily {@link Config#hiddenSize}; i.e., the
+   * length of a row of the {@code hidden} scratch space.
+   */
+  int hiddenSize() {
+    return hiddenSize;
+  }
+
+  // The weights, as new arrays of doubles, for writing out a model. They
+  // hold the float values kept here, not the doubles this was built from.
+
+  double[][] getW1() {
+    return toDoubles(W1, hiddenSize, embeddingSize * numTokens);
+  }
+
+  double[] getb1() {
+    return toDoubles(b1, 1, hiddenSize)[0];
+  }
+
+  double[][] getW2() {
+    return toDoubles(W2, numLabels, hiddenSize);
+  }
+
+  double[][] getE() {
+    return toDoubles(E, E.remaining() / embeddingSize, embeddingSize);
+  }
+
+}
@@ -1,6 +1,7 @@
 package edu.stanford.nlp.parser.shiftreduce;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -116,6 +117,24 @@ public abstract class BaseModel implements Serializable {
 
   public abstract Collection<ScoredObject<Integer>> findHighestScoringTransitions(State state, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints);
 
+  /**
+   * Fills in the score of every transition for the given state,
+   * whether or not the transition is legal.  <code>scores</code>
+   * must be the same size as the transitionIndex.  Lets beam search
+   * decide which transitions are worth checking and applying without
+   * building a queue of candidates for each state.
+   * <br>
+   * The default implementation goes through
+   * findHighestScoringTransitions; models which can score the
+   * transitions directly should override it.
+   */
+  public void scoreTransitions(State state, float[] scores) {
+    Arrays.fill(scores, Float.NEGATIVE_INFINITY);
+    for (ScoredObject<Integer> transition : findHighestScoringTransitions(state, false, scores.length, null)) {
+      scores[transition.object()] = (float) transition.score();
+    }
+  }
+
   /**
    * Train a new model.  This is the method to override for new models
    * such that the ShiftReduceParser will fill in the model.  Given a
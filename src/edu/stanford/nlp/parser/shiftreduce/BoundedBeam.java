@@ -0,0 +1,147 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.Arrays;
+import java.util.List;
+
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.Scored;
+
+/**
+ * A fixed capacity beam which keeps the highest scoring items added
+ * to it.  The items are kept in a min-heap over a preallocated array,
+ * so the lowest scoring item is always the one pushed out, and
+ * neither adding nor clearing allocates anything.  Beam search can
+ * keep two of these and swap them at each step instead of building a
+ * new PriorityQueue every time.
+ * <br>
+ * Not threadsafe.
+ */
+class BoundedBeam<T extends Scored> {
+  private final Scored[] heap;
+  private int size;
+
+  BoundedBeam(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Beam capacity must be at least 1, got " + capacity);
+    }
+    heap = new Scored[capacity];
+    size = 0;
+  }
+
+  int size() {
+    return size;
+  }
+
+  int capacity() {
+    return heap.length;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  boolean isFull() {
+    return size == heap.length;
+  }
+
+  /** Items are in heap order, not score order */
+  @SuppressWarnings("unchecked")
+  T get(int i) {
+    if (i >= size) {
+      throw new ArrayIndexOutOfBoundsException(i);
+    }
+    return (T) heap[i];
+  }
+
+  /**
+   * Whether an item with this score would make it onto the beam.
+   * Lets the caller skip building items which would be discarded.
+   */
+  boolean accepts(double score) {
+    return size < heap.length || score > heap[0].score();
+  }
+
+  /**
+   * Adds the item if there is room or if it beats the current lowest
+   * scoring item, which is then dropped.  Returns whether the item was kept.
+   */
+  boolean add(T item) {
+    if (size < heap.length) {
+      heap[size] = item;
+      siftUp(size);
+      ++size;
+      return true;
+    }
+    if (item.score() <= heap[0].score()) {
+      return false;
+    }
+    heap[0] = item;
+    siftDown(0);
+    return true;
+  }
+
+  /**
+   * Removes every item scoring below the threshold.
+   */
+  void removeBelow(double threshold) {
+    int kept = 0;
+    for (int i = 0; i < size; ++i) {
+      if (heap[i].score() >= threshold) {
+        heap[kept++] = heap[i];
+      }
+    }
+    Arrays.fill(heap, kept, size, null);
+    size = kept;
+    for (int i = size / 2 - 1; i >= 0; --i) {
+      siftDown(i);
+    }
+  }
+
+  void clear() {
+    Arrays.fill(heap, 0, size, null);
+    size = 0;
+  }
+
+  /** Returns the items from highest to lowest score */
+  @SuppressWarnings("unchecked")
+  List<T> sortedDescending() {
+    Scored[] items = Arrays.copyOf(heap, size);
+    Arrays.sort(items, (x, y) -> Double.compare(y.score(), x.score()));
+    List<T> result = Generics.newArrayList(size);
+    for (Scored item : items) {
+      result.add((T) item);
+    }
+    return result;
+  }
+
+  private void siftUp(int i) {
+    Scored item = heap[i];
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (heap[parent].score() <= item.score()) {
+        break;
+      }
+      heap[i] = heap[parent];
+      i = parent;
+    }
+    heap[i] = item;
+  }
+
+  private void siftDown(int i) {
+    Scored item = heap[i];
+    int half = size >>> 1;
+    while (i < half) {
+      int child = 2 * i + 1;
+      int right = child + 1;
+      if (right < size && heap[right].score() < heap[child].score()) {
+        child = right;
+      }
+      if (item.score() <= heap[child].score()) {
+        break;
+      }
+      heap[i] = heap[child];
+      i = child;
+    }
+    heap[i] = item;
+  }
+}
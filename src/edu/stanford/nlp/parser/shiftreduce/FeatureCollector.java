@@ -0,0 +1,41 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+/**
+ * Receives the features produced by a {@link FeatureFactory}.
+ * <br>
+ * The multiple argument versions of <code>add</code> add the
+ * concatenation of their arguments as a single feature.  This lets a
+ * collector which only needs a hash of each feature, such as
+ * {@link HashedFeatures}, skip building the feature Strings entirely.
+ */
+public abstract class FeatureCollector {
+  public abstract void add(String feature);
+
+  public void add(String s1, String s2) {
+    add(s1 + s2);
+  }
+
+  public void add(String s1, String s2, String s3) {
+    add(s1 + s2 + s3);
+  }
+
+  public void add(String s1, String s2, String s3, String s4) {
+    add(s1 + s2 + s3 + s4);
+  }
+
+  public void add(String s1, String s2, String s3, String s4, String s5) {
+    add(s1 + s2 + s3 + s4 + s5);
+  }
+
+  public void add(String s1, String s2, String s3, String s4, String s5, String s6) {
+    add(s1 + s2 + s3 + s4 + s5 + s6);
+  }
+
+  public void add(String s1, String s2, String s3, String s4, String s5, String s6, String s7) {
+    add(s1 + s2 + s3 + s4 + s5 + s6 + s7);
+  }
+
+  public void add(String s1, String s2, String s3, String s4, String s5, String s6, String s7, String s8) {
+    add(s1 + s2 + s3 + s4 + s5 + s6 + s7 + s8);
+  }
+}
@@ -14,7 +14,22 @@ public abstract class FeatureFactory implements Serializable {
     return featurize(state, Generics.<String>newArrayList(200));
   }
 
-  abstract public List<String> featurize(State state, List<String> features);
+  public List<String> featurize(State state, List<String> features) {
+    featurize(state, new StringFeatureCollector(features));
+    return features;
+  }
+
+  /**
+   * Returns the features of the state as 64 bit hashes, without
+   * building the feature Strings.  Used by models with hashed features.
+   */
+  public HashedFeatures featurizeHashed(State state) {
+    HashedFeatures features = new HashedFeatures(200);
+    featurize(state, features);
+    return features;
+  }
+
+  abstract public void featurize(State state, FeatureCollector features);
 
   enum Transition {
     LEFT, RIGHT, UNARY
@@ -0,0 +1,119 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.Arrays;
+
+/**
+ * Collects features as 64 bit hashes instead of Strings.  The pieces
+ * passed to the various <code>add</code> methods are hashed in place,
+ * so no feature String is ever built, and the hash of the pieces is
+ * the same as the hash of their concatenation.  This means
+ * {@link #hash(String)} can be used to convert an existing string
+ * keyed model.
+ * <br>
+ * The hash is 64 bit FNV-1a over the chars of the feature.  With a
+ * few million features in a model, the chance of any collision at
+ * all is well under one in a million.
+ */
+public class HashedFeatures extends FeatureCollector {
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private long[] hashes;
+  private int size;
+
+  public HashedFeatures() {
+    this(200);
+  }
+
+  public HashedFeatures(int capacity) {
+    hashes = new long[Math.max(capacity, 1)];
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public long get(int i) {
+    if (i >= size) {
+      throw new ArrayIndexOutOfBoundsException(i);
+    }
+    return hashes[i];
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  private void append(long hash) {
+    if (size == hashes.length) {
+      hashes = Arrays.copyOf(hashes, size * 2);
+    }
+    hashes[size++] = finish(hash);
+  }
+
+  private static long update(long hash, String s) {
+    if (s == null) {
+      // matches what concatenating the pieces would have produced
+      s = "null";
+    }
+    for (int i = 0, len = s.length(); i < len; ++i) {
+      hash ^= s.charAt(i);
+      hash *= FNV_PRIME;
+    }
+    return hash;
+  }
+
+  /**
+   * 0 is used as the empty key by {@link HashedWeights}, so it is
+   * never returned as a hash.
+   */
+  private static long finish(long hash) {
+    return (hash == 0) ? FNV_OFFSET : hash;
+  }
+
+  /** The hash {@link HashedFeatures} would use for the given feature */
+  public static long hash(String feature) {
+    return finish(update(FNV_OFFSET, feature));
+  }
+
+  @Override
+  public void add(String feature) {
+    append(update(FNV_OFFSET, feature));
+  }
+
+  @Override
+  public void add(String s1, String s2) {
+    append(update(update(FNV_OFFSET, s1), s2));
+  }
+
+  @Override
+  public void add(String s1, String s2, String s3) {
+    append(update(update(update(FNV_OFFSET, s1), s2), s3));
+  }
+
+  @Override
+  public void add(String s1, String s2, String s3, String s4) {
+    append(update(update(update(update(FNV_OFFSET, s1), s2), s3), s4));
+  }
+
+  @Override
+  public void add(String s1, String s2, String s3, String s4, String s5) {
+    append(update(update(update(update(update(FNV_OFFSET, s1), s2), s3), s4), s5));
+  }
+
+  @Override
+  public void add(String s1, String s2, String s3, String s4, String s5, String s6) {
+    append(update(update(update(update(update(update(FNV_OFFSET, s1), s2), s3), s4), s5), s6));
+  }
+
+  @Override
+  public void add(String s1, String s2, String s3, String s4, String s5, String s6, String s7) {
+    append(update(update(update(update(update(update(update(FNV_OFFSET, s1), s2), s3), s4), s5), s6), s7));
+  }
+
+  @Override
+  public void add(String s1, String s2, String s3, String s4, String s5, String s6, String s7, String s8) {
+    append(update(update(update(update(update(update(update(update(FNV_OFFSET, s1), s2), s3), s4), s5), s6), s7), s8));
+  }
+}
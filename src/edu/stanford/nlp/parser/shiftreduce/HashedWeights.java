@@ -0,0 +1,172 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.io.Serializable;
+import java.util.function.LongPredicate;
+
+/**
+ * An open addressing map from feature hashes (see
+ * {@link HashedFeatures}) to the {@link Weight} row of that feature.
+ * Keys and rows are kept in parallel arrays with linear probing, so a
+ * lookup touches no Strings, Entry objects or boxed keys.
+ * <br>
+ * The key 0 marks an empty slot; {@link HashedFeatures} never produces it.
+ */
+public class HashedWeights implements Serializable {
+  private static final float LOAD_FACTOR = 0.5f;
+
+  private long[] keys;
+  private Weight[] values;
+  private int size;
+  private int mask;
+
+  public HashedWeights() {
+    this(1024);
+  }
+
+  public HashedWeights(int expectedSize) {
+    int capacity = 16;
+    while (capacity * LOAD_FACTOR < expectedSize) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+  public HashedWeights(HashedWeights other) {
+    this(other.size);
+    for (int i = 0; i < other.keys.length; ++i) {
+      if (other.keys[i] != 0) {
+        put(other.keys[i], new Weight(other.values[i]));
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new Weight[capacity];
+    mask = capacity - 1;
+    size = 0;
+  }
+
+  /** The murmur3 finalizer, which spreads the hash over the low bits we index with */
+  private static int slot(long key, int mask) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return (int) key & mask;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public Weight get(long key) {
+    for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+      long k = keys[i];
+      if (k == key) {
+        return values[i];
+      }
+      if (k == 0) {
+        return null;
+      }
+    }
+  }
+
+  public void put(long key, Weight weight) {
+    if (key == 0) {
+      throw new IllegalArgumentException("0 is not a legal feature hash");
+    }
+    if (weight == null) {
+      throw new IllegalArgumentException("Cannot store null weights");
+    }
+    int i = slot(key, mask);
+    while (keys[i] != 0) {
+      if (keys[i] == key) {
+        values[i] = weight;
+        return;
+      }
+      i = (i + 1) & mask;
+    }
+    keys[i] = key;
+    values[i] = weight;
+    ++size;
+    if (size > keys.length * LOAD_FACTOR) {
+      rehash(keys.length * 2);
+    }
+  }
+
+  /** Returns the weights for key, adding an empty row if there are none yet */
+  public Weight getOrCreate(long key) {
+    Weight weight = get(key);
+    if (weight == null) {
+      weight = new Weight();
+      put(key, weight);
+    }
+    return weight;
+  }
+
+  public boolean containsKey(long key) {
+    return get(key) != null;
+  }
+
+  /** Returns the keys currently in the table, in no particular order */
+  public long[] keys() {
+    long[] result = new long[size];
+    int next = 0;
+    for (long key : keys) {
+      if (key != 0) {
+        result[next++] = key;
+      }
+    }
+    return result;
+  }
+
+  /** Removes every feature whose hash does not pass the filter */
+  public void retainAll(LongPredicate filter) {
+    for (int i = 0; i < keys.length; ++i) {
+      if (keys[i] != 0 && !filter.test(keys[i])) {
+        values[i] = null;
+      }
+    }
+    rehash(keys.length);
+  }
+
+  /** Condenses each row and removes the rows left with no weights */
+  public void condense() {
+    for (int i = 0; i < keys.length; ++i) {
+      if (keys[i] != 0) {
+        values[i].condense();
+        if (values[i].size() == 0) {
+          values[i] = null;
+        }
+      }
+    }
+    rehash(keys.length);
+  }
+
+  /**
+   * Rebuilds the table at the given capacity, dropping any slot whose
+   * row has been cleared.  Removal has to be done this way, as simply
+   * emptying slots would break the probe sequences.
+   */
+  private void rehash(int capacity) {
+    long[] oldKeys = keys;
+    Weight[] oldValues = values;
+    allocate(capacity);
+    for (int i = 0; i < oldKeys.length; ++i) {
+      if (oldKeys[i] == 0 || oldValues[i] == null) {
+        continue;
+      }
+      int j = slot(oldKeys[i], mask);
+      while (keys[j] != 0) {
+        j = (j + 1) & mask;
+      }
+      keys[j] = oldKeys[i];
+      values[j] = oldValues[i];
+      ++size;
+    }
+  }
+
+  private static final long serialVersionUID = 1;
+}
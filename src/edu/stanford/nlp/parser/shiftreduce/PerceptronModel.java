@@ -2,6 +2,7 @@ package edu.stanford.nlp.parser.shiftreduce;
 
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -13,6 +14,7 @@ import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import edu.stanford.nlp.ling.TaggedWord;
 import edu.stanford.nlp.parser.common.ParserConstraint;
 import edu.stanford.nlp.parser.lexparser.EvaluateTreebank;
 import edu.stanford.nlp.stats.IntCounter;
@@ -35,10 +37,26 @@ public class PerceptronModel extends BaseModel { // Serializable
   Map<String, Weight> featureWeights;
   final FeatureFactory featureFactory;
 
+  /**
+   * If not null, the model is keyed by feature hashes instead of
+   * feature Strings, and featureWeights is unused.  Models serialized
+   * before this existed load with this field null.
+   */
+  HashedWeights hashedWeights;
+
+  /**
+   * The tag set of a hashed model, which can't be recovered by
+   * decoding the features the way tagSet() does for string models
+   */
+  Set<String> hashedTagSet;
+
   public PerceptronModel(ShiftReduceOptions op, Index<Transition> transitionIndex,
                          Set<String> knownStates, Set<String> rootStates, Set<String> rootOnlyStates) {
     super(op, transitionIndex, knownStates, rootStates, rootOnlyStates);
     this.featureWeights = Generics.newHashMap();
+    if (op.trainOptions().hashFeatures) {
+      this.hashedWeights = new HashedWeights();
+    }
 
     String[] classes = op.featureFactoryClass.split(";");
     if (classes.length == 1) {
@@ -66,6 +84,10 @@ public class PerceptronModel extends BaseModel { // Serializable
     for (String feature : other.featureWeights.keySet()) {
       featureWeights.put(feature, new Weight(other.featureWeights.get(feature)));
     }
+    if (other.hashedWeights != null) {
+      this.hashedWeights = new HashedWeights(other.hashedWeights);
+      this.hashedTagSet = other.hashedTagSet;
+    }
   }
 
   private static final NumberFormat NF = new DecimalFormat("0.00");
@@ -91,6 +113,11 @@ public class PerceptronModel extends BaseModel { // Serializable
       throw new IllegalArgumentException("Cannot average empty models");
     }
 
+    if (hashedWeights != null) {
+      averageHashedModels(models);
+      return;
+    }
+
     Set<String> features = Generics.newHashSet();
     for (PerceptronModel model : models) {
       for (String feature : model.featureWeights.keySet()) {
@@ -114,12 +141,30 @@ public class PerceptronModel extends BaseModel { // Serializable
     }
   }
 
+  private void averageHashedModels(Collection<PerceptronModel> models) {
+    HashedWeights averaged = new HashedWeights(hashedWeights.size());
+    float scale = 1.0f / models.size();
+    for (PerceptronModel model : models) {
+      if (model.hashedWeights == null) {
+        throw new IllegalArgumentException("Cannot average string keyed and hashed models together");
+      }
+      for (long feature : model.hashedWeights.keys()) {
+        averaged.getOrCreate(feature).addScaled(model.hashedWeights.get(feature), scale);
+      }
+    }
+    hashedWeights = averaged;
+  }
+
   /**
    * Iterate over the feature weight map.
    * For each feature, remove all transitions with score of 0.
    * Any feature with no transitions left is then removed
    */
   void condenseFeatures() {
+    if (hashedWeights != null) {
+      hashedWeights.condense();
+      return;
+    }
     Iterator<String> featureIt = featureWeights.keySet().iterator();
     while (featureIt.hasNext()) {
       String feature = featureIt.next();
@@ -140,11 +185,63 @@ public class PerceptronModel extends BaseModel { // Serializable
     }
   }
 
+  void filterHashedFeatures(Set<Long> keep) {
+    hashedWeights.retainAll(keep::contains);
+  }
+
+  /**
+   * Converts a string keyed model to one keyed by 64 bit feature
+   * hashes.  Scoring a hashed model never builds the feature Strings,
+   * and the model no longer needs to keep them in memory.  Features
+   * whose hashes collide have their weights summed, which is what
+   * scoring the string model would have done had both features fired.
+   */
+  public void convertToHashedFeatures() {
+    if (hashedWeights != null) {
+      return;
+    }
+    Set<String> tags = tagSet();
+    HashedWeights hashed = new HashedWeights(featureWeights.size());
+    int collisions = 0;
+    for (Map.Entry<String, Weight> entry : featureWeights.entrySet()) {
+      long hash = HashedFeatures.hash(entry.getKey());
+      Weight existing = hashed.get(hash);
+      if (existing == null) {
+        hashed.put(hash, entry.getValue());
+      } else {
+        existing.addScaled(entry.getValue(), 1.0f);
+        ++collisions;
+      }
+    }
+    if (collisions > 0) {
+      System.err.println("Merged " + collisions + " colliding feature hashes");
+    }
+    hashedTagSet = tags;
+    hashedWeights = hashed;
+    featureWeights = Generics.newHashMap();
+  }
+
+  /** Whether this model looks up its weights by feature hash */
+  public boolean hasHashedFeatures() {
+    return hashedWeights != null;
+  }
+
 
   /**
    * Output some random facts about the model
    */
   public void outputStats() {
+    if (hashedWeights != null) {
+      System.err.println("Number of known hashed features: " + hashedWeights.size());
+      int numWeights = 0;
+      for (long feature : hashedWeights.keys()) {
+        numWeights += hashedWeights.get(feature).size();
+      }
+      System.err.println("Number of non-zero weights: " + numWeights);
+      System.err.println("Number of transitions: " + transitionIndex.size());
+      return;
+    }
+
     System.err.println("Number of known features: " + featureWeights.size());
     int numWeights = 0;
     for (Map.Entry<String, Weight> stringWeightEntry : featureWeights.entrySet()) {
@@ -166,6 +263,9 @@ public class PerceptronModel extends BaseModel { // Serializable
    */
   @Override
   Set<String> tagSet() {
+    if (hashedWeights != null) {
+      return Generics.newHashSet(hashedTagSet);
+    }
     Set<String> tags = Generics.newHashSet();
     Pattern p1 = Pattern.compile("Q0TQ1T-([^-]+)-.*");
     Pattern p2 = Pattern.compile("S0T-(.*)");
@@ -187,7 +287,7 @@ public class PerceptronModel extends BaseModel { // Serializable
   }
 
   /** Convenience method: returns one highest scoring transition, without any ParserConstraints */
-  private ScoredObject<Integer> findHighestScoringTransition(State state, List<String> features, boolean requireLegal) {
+  private ScoredObject<Integer> findHighestScoringTransition(State state, FeatureCollector features, boolean requireLegal) {
     Collection<ScoredObject<Integer>> transitions = findHighestScoringTransitions(state, features, requireLegal, 1, null);
     if (transitions.isEmpty()) {
       return null;
@@ -197,20 +297,52 @@ public class PerceptronModel extends BaseModel { // Serializable
 
   @Override
   public Collection<ScoredObject<Integer>> findHighestScoringTransitions(State state, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints) {
-    List<String> features = featureFactory.featurize(state);
+    FeatureCollector features = featurize(state);
     return findHighestScoringTransitions(state, features, requireLegal, numTransitions, constraints);
   }
 
-  private Collection<ScoredObject<Integer>> findHighestScoringTransitions(State state, List<String> features, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints) {
-    float[] scores = new float[transitionIndex.size()];
-    for (String feature : features) {
-      Weight weight = featureWeights.get(feature);
-      if (weight == null) {
-        // Features not in our index are ignored
-        continue;
+  /**
+   * Featurizes the state the way this model looks up its weights:
+   * as hashes for a hashed model, as Strings otherwise.
+   */
+  private FeatureCollector featurize(State state) {
+    if (hashedWeights != null) {
+      return featureFactory.featurizeHashed(state);
+    }
+    return new StringFeatureCollector(featureFactory.featurize(state));
+  }
+
+  @Override
+  public void scoreTransitions(State state, float[] scores) {
+    Arrays.fill(scores, 0.0f);
+    scoreFeatures(featurize(state), scores);
+  }
+
+  private void scoreFeatures(FeatureCollector features, float[] scores) {
+    if (hashedWeights != null) {
+      HashedFeatures hashed = (HashedFeatures) features;
+      for (int i = 0, size = hashed.size(); i < size; ++i) {
+        Weight weight = hashedWeights.get(hashed.get(i));
+        if (weight == null) {
+          continue;
+        }
+        weight.score(scores);
+      }
+    } else {
+      for (String feature : ((StringFeatureCollector) features).features()) {
+        Weight weight = featureWeights.get(feature);
+        if (weight == null) {
+          // Features not in our index are ignored
+          continue;
+        }
+        weight.score(scores);
       }
-      weight.score(scores);
     }
+  }
+
+  private Collection<ScoredObject<Integer>> findHighestScoringTransitions(State state, FeatureCollector features, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints) {
+    float[] scores = new float[transitionIndex.size()];
+    scoreFeatures(features, scores);
 
     PriorityQueue<ScoredObject<Integer>> queue = new PriorityQueue<ScoredObject<Integer>>(numTransitions + 1, ScoredComparator.ASCENDING_COMPARATOR);
     for (int i = 0; i < scores.length; ++i) {
@@ -226,12 +358,12 @@ public class PerceptronModel extends BaseModel { // Serializable
   }
 
   private static class Update {
-    final List<String> features;
+    final FeatureCollector features;
     final int goldTransition;
     final int predictedTransition;
     final float delta;
 
-    Update(List<String> features, int goldTransition, int predictedTransition, float delta) {
+    Update(FeatureCollector features, int goldTransition, int predictedTransition, float delta) {
       this.features = features;
       this.goldTransition = goldTransition;
       this.predictedTransition = predictedTransition;
@@ -260,7 +392,7 @@ public class PerceptronModel extends BaseModel { // Serializable
     if (op.trainOptions().trainingMethod == ShiftReduceTrainOptions.TrainingMethod.ORACLE) {
       State state = ShiftReduceParser.initialStateFromGoldTagTree(tree);
       while (!state.isFinished()) {
-        List<String> features = featureFactory.featurize(state);
+        FeatureCollector features = featurize(state);
         ScoredObject<Integer> prediction = findHighestScoringTransition(state, features, true);
         if (prediction == null) {
           throw new AssertionError("Did not find a legal transition");
@@ -314,7 +446,7 @@ public class PerceptronModel extends BaseModel { // Serializable
           boolean isGoldState = (op.trainOptions().trainingMethod == ShiftReduceTrainOptions.TrainingMethod.REORDER_BEAM &&
                                  goldState.areTransitionsEqual(currentState));
 
-          List<String> features = featureFactory.featurize(currentState);
+          FeatureCollector features = featurize(currentState);
           Collection<ScoredObject<Integer>> stateTransitions = findHighestScoringTransitions(currentState, features, true, op.trainOptions().beamSize, null);
           for (ScoredObject<Integer> transition : stateTransitions) {
             State newState = transitionIndex.get(transition.object()).apply(currentState, transition.score());
@@ -349,9 +481,9 @@ public class PerceptronModel extends BaseModel { // Serializable
         // otherwise, down the last transition, up the correct
         if (!newGoldState.areTransitionsEqual(highestScoringState)) {
           ++numWrong;
-          List<String> goldFeatures = featureFactory.featurize(goldState);
+          FeatureCollector goldFeatures = featurize(goldState);
           int lastTransition = transitionIndex.indexOf(highestScoringState.transitions.peek());
-          updates.add(new Update(featureFactory.featurize(highestCurrentState), -1, lastTransition, 1.0f));
+          updates.add(new Update(featurize(highestCurrentState), -1, lastTransition, 1.0f));
           updates.add(new Update(goldFeatures, transitionIndex.indexOf(goldTransition), -1, 1.0f));
 
           if (op.trainOptions().trainingMethod == ShiftReduceTrainOptions.TrainingMethod.BEAM) {
@@ -392,7 +524,7 @@ public class PerceptronModel extends BaseModel { // Serializable
       while (transitions.size() > 0 && keepGoing) {
         Transition transition = transitions.get(0);
         int transitionNum = transitionIndex.indexOf(transition);
-        List<String> features = featureFactory.featurize(state);
+        FeatureCollector features = featurize(state);
         int predictedNum = findHighestScoringTransition(state, features, false).object();
         Transition predicted = transitionIndex.get(predictedNum);
         if (transitionNum == predictedNum) {
@@ -485,7 +617,7 @@ public class PerceptronModel extends BaseModel { // Serializable
   }
 
 
-  private void trainModel(String serializedPath, Tagger tagger, Random random, List<Tree> binarizedTrees, List<List<Transition>> transitionLists, Treebank devTreebank, int nThreads, Set<String> allowedFeatures) {
+  private void trainModel(String serializedPath, Tagger tagger, Random random, List<Tree> binarizedTrees, List<List<Transition>> transitionLists, Treebank devTreebank, int nThreads, Set<String> allowedFeatures, Set<Long> allowedHashes) {
     double bestScore = 0.0;
     int bestIteration = 0;
     PriorityQueue<ScoredObject<PerceptronModel>> bestModels = null;
@@ -511,8 +643,13 @@ public class PerceptronModel extends BaseModel { // Serializable
     }
 
     IntCounter<String> featureFrequencies = null;
+    IntCounter<Long> hashFrequencies = null;
     if (op.trainOptions().featureFrequencyCutoff > 1) {
-      featureFrequencies = new IntCounter<String>();
+      if (hashedWeights != null) {
+        hashFrequencies = new IntCounter<Long>();
+      } else {
+        featureFrequencies = new IntCounter<String>();
+      }
     }
 
     for (int iteration = 1; iteration <= op.trainOptions.trainingIterations; ++iteration) {
@@ -528,7 +665,24 @@ public class PerceptronModel extends BaseModel { // Serializable
         numWrong += result.third;
 
         for (Update update : result.first) {
-          for (String feature : update.features) {
+          if (hashedWeights != null) {
+            HashedFeatures features = (HashedFeatures) update.features;
+            for (int i = 0; i < features.size(); ++i) {
+              long feature = features.get(i);
+              if (allowedHashes != null && !allowedHashes.contains(feature)) {
+                continue;
+              }
+              Weight weights = hashedWeights.getOrCreate(feature);
+              weights.updateWeight(update.goldTransition, update.delta);
+              weights.updateWeight(update.predictedTransition, -update.delta);
+
+              if (hashFrequencies != null) {
+                hashFrequencies.incrementCount(feature, (update.goldTransition >= 0 && update.predictedTransition >= 0) ? 2 : 1);
+              }
+            }
+            continue;
+          }
+          for (String feature : ((StringFeatureCollector) update.features).features()) {
             if (allowedFeatures != null && !allowedFeatures.contains(feature)) {
               continue;
             }
@@ -628,6 +782,9 @@ public class PerceptronModel extends BaseModel { // Serializable
     if (featureFrequencies != null) {
       filterFeatures(featureFrequencies.keysAbove(op.trainOptions().featureFrequencyCutoff));
     }
+    if (hashFrequencies != null) {
+      filterHashedFeatures(hashFrequencies.keysAbove(op.trainOptions().featureFrequencyCutoff));
+    }
 
     condenseFeatures();
   }
@@ -639,16 +796,35 @@ public class PerceptronModel extends BaseModel { // Serializable
    * after the first time through on a limited set of features.
    */
   public void trainModel(String serializedPath, Tagger tagger, Random random, List<Tree> binarizedTrees, List<List<Transition>> transitionLists, Treebank devTreebank, int nThreads) {
+    if (hashedWeights != null) {
+      hashedTagSet = Generics.newHashSet();
+      for (Tree tree : binarizedTrees) {
+        for (TaggedWord word : tree.taggedYield()) {
+          hashedTagSet.add(word.tag());
+        }
+      }
+      hashedTagSet.add(Tagger.EOS_TAG);
+    }
+
     if (op.trainOptions().retrainAfterCutoff && op.trainOptions().featureFrequencyCutoff > 0) {
       String tempName = serializedPath.substring(0, serializedPath.length() - 7) + "-" + "temp.ser.gz";
-      trainModel(tempName, tagger, random, binarizedTrees, transitionLists, devTreebank, nThreads, null);
+      trainModel(tempName, tagger, random, binarizedTrees, transitionLists, devTreebank, nThreads, null, null);
       ShiftReduceParser temp = new ShiftReduceParser(op, this);
       temp.saveModel(tempName);
-      Set<String> features = featureWeights.keySet();
-      featureWeights = Generics.newHashMap();
-      trainModel(serializedPath, tagger, random, binarizedTrees, transitionLists, devTreebank, nThreads, features);
+      if (hashedWeights != null) {
+        Set<Long> hashes = Generics.newHashSet();
+        for (long feature : hashedWeights.keys()) {
+          hashes.add(feature);
+        }
+        hashedWeights = new HashedWeights();
+        trainModel(serializedPath, tagger, random, binarizedTrees, transitionLists, devTreebank, nThreads, null, hashes);
+      } else {
+        Set<String> features = featureWeights.keySet();
+        featureWeights = Generics.newHashMap();
+        trainModel(serializedPath, tagger, random, binarizedTrees, transitionLists, devTreebank, nThreads, features, null);
+      }
     } else {
-      trainModel(serializedPath, tagger, random, binarizedTrees, transitionLists, devTreebank, nThreads, null);
+      trainModel(serializedPath, tagger, random, binarizedTrees, transitionLists, devTreebank, nThreads, null, null);
     }
   }
 
@@ -36,6 +36,9 @@ public class ShiftReduceOptions extends Options {
     if (args[i].equalsIgnoreCase("-beamSize")) {
       testOptions().beamSize = Integer.valueOf(args[i + 1]);
       i += 2;
+    } else if (args[i].equalsIgnoreCase("-beamMargin")) {
+      testOptions().beamMargin = Double.valueOf(args[i + 1]);
+      i += 2;
     } else if (args[i].equalsIgnoreCase("-trainBeamSize")) {
       trainOptions().beamSize = Integer.valueOf(args[i + 1]);
       i += 2;
@@ -90,6 +93,12 @@ public class ShiftReduceOptions extends Options {
     } else if (args[i].equalsIgnoreCase("-oracleBinaryToShift")) {
       trainOptions().oracleBinaryToShift = true;
       i++;
+    } else if (args[i].equalsIgnoreCase("-hashFeatures")) {
+      trainOptions().hashFeatures = true;
+      i++;
+    } else if (args[i].equalsIgnoreCase("-nohashFeatures")) {
+      trainOptions().hashFeatures = false;
+      i++;
     } else if (args[i].equalsIgnoreCase("-recordBinarized")) {
       testOptions().recordBinarized = args[i + 1];
       i += 2;
@@ -499,6 +499,8 @@ public class ShiftReduceParser extends ParserGrammar implements Serializable {
 
     String continueTraining = null;
 
+    String hashedModelPath = null;
+
     for (int argIndex = 0; argIndex < args.length; ) {
       if (args[argIndex].equalsIgnoreCase("-trainTreebank")) {
         if (trainTreebankPath == null) {
@@ -521,6 +523,9 @@ public class ShiftReduceParser extends ParserGrammar implements Serializable {
       } else if (args[argIndex].equalsIgnoreCase("-continueTraining")) {
         continueTraining = args[argIndex + 1];
         argIndex += 2;
+      } else if (args[argIndex].equalsIgnoreCase("-saveHashedModel")) {
+        hashedModelPath = args[argIndex + 1];
+        argIndex += 2;
       } else {
         remainingArgs.add(args[argIndex]);
         ++argIndex;
@@ -554,6 +559,14 @@ public class ShiftReduceParser extends ParserGrammar implements Serializable {
       parser = ShiftReduceParser.loadModel(serializedPath, ArrayUtils.concatenate(FORCE_TAGS, newArgs));
     }
 
+    if (hashedModelPath != null) {
+      if (!(parser.model instanceof PerceptronModel)) {
+        throw new IllegalArgumentException("Only PerceptronModels can be converted to hashed features");
+      }
+      ((PerceptronModel) parser.model).convertToHashedFeatures();
+      parser.saveModel(hashedModelPath);
+    }
+
     //parser.outputStats();
 
     if (testTreebankPath != null) {
@@ -2,11 +2,9 @@ package edu.stanford.nlp.parser.shiftreduce;
 
 
 import java.io.PrintWriter;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.PriorityQueue;
 
 import edu.stanford.nlp.ling.HasWord;
 import edu.stanford.nlp.ling.Label;
@@ -19,8 +17,6 @@ import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.trees.tregex.TregexPattern;
 import edu.stanford.nlp.trees.tregex.tsurgeon.Tsurgeon;
 import edu.stanford.nlp.trees.tregex.tsurgeon.TsurgeonPattern;
-import edu.stanford.nlp.util.Generics;
-import edu.stanford.nlp.util.ScoredComparator;
 import edu.stanford.nlp.util.ScoredObject;
 
 public class ShiftReduceParserQuery implements ParserQuery {
@@ -66,36 +62,49 @@ public class ShiftReduceParserQuery implements ParserQuery {
 
   private boolean parseInternal() {
     final int maxBeamSize = Math.max(parser.op.testOptions().beamSize, 1);
+    final double beamMargin = parser.op.testOptions().beamMargin;
 
     success = true;
     unparsable = false;
-    PriorityQueue<State> beam = new PriorityQueue<State>(maxBeamSize + 1, ScoredComparator.ASCENDING_COMPARATOR);
+    // Two beams which trade places at each step, so that the search
+    // itself doesn't allocate anything.  States share their stacks
+    // with the state they came from, so each new State is small.
+    BoundedBeam<State> beam = new BoundedBeam<State>(maxBeamSize);
+    BoundedBeam<State> oldBeam = new BoundedBeam<State>(maxBeamSize);
+    float[] scores = new float[parser.model.transitionIndex.size()];
     beam.add(initialState);
-    // TODO: don't construct as many PriorityQueues
-    while (beam.size() > 0) {
+    while (!beam.isEmpty()) {
       // System.err.println("================================================");
       // System.err.println("Current beam:");
       // System.err.println(beam);
-      PriorityQueue<State> oldBeam = beam;
-      beam = new PriorityQueue<State>(maxBeamSize + 1, ScoredComparator.ASCENDING_COMPARATOR);
+      BoundedBeam<State> swap = oldBeam;
+      oldBeam = beam;
+      beam = swap;
+      beam.clear();
       State bestState = null;
-      for (State state : oldBeam) {
-        Collection<ScoredObject<Integer>> predictedTransitions = parser.model.findHighestScoringTransitions(state, true, maxBeamSize, constraints);
+      for (int i = 0; i < oldBeam.size(); ++i) {
+        State state = oldBeam.get(i);
+        parser.model.scoreTransitions(state, scores);
         // System.err.println("Examining state: " + state);
-        for (ScoredObject<Integer> predictedTransition : predictedTransitions) {
-          Transition transition = parser.model.transitionIndex.get(predictedTransition.object());
-          State newState = transition.apply(state, predictedTransition.score());
-          // System.err.println("  Transition: " + transition + " (" + predictedTransition.score() + ")");
+        for (int transitionNum = 0; transitionNum < scores.length; ++transitionNum) {
+          // Checking the score first means we neither test the
+          // legality of nor build states which can't make the beam
+          if (!beam.accepts(state.score() + scores[transitionNum])) {
+            continue;
+          }
+          Transition transition = parser.model.transitionIndex.get(transitionNum);
+          if (!transition.isLegal(state, constraints)) {
+            continue;
+          }
+          State newState = transition.apply(state, scores[transitionNum]);
+          // System.err.println("  Transition: " + transition + " (" + scores[transitionNum] + ")");
           if (bestState == null || bestState.score() < newState.score()) {
             bestState = newState;
           }
           beam.add(newState);
-          if (beam.size() > maxBeamSize) {
-            beam.poll();
-          }
         }
       }
-      if (beam.size() == 0) {
+      if (beam.isEmpty()) {
         // Oops, time for some fallback plan
         // This can happen with the set of constraints given by the original paper
         // For example, one particular French model had a situation where it would reach
@@ -103,7 +112,8 @@ public class ShiftReduceParserQuery implements ParserQuery {
         // without a left(Ssub) transition, so finishing the parse was impossible.
         // This will probably result in a bad parse, but at least it
         // will result in some sort of parse.
-        for (State state : oldBeam) {
+        for (int i = 0; i < oldBeam.size(); ++i) {
+          State state = oldBeam.get(i);
           Transition transition = parser.model.findEmergencyTransition(state, constraints);
           if (transition != null) {
             State newState = transition.apply(state);
@@ -120,8 +130,12 @@ public class ShiftReduceParserQuery implements ParserQuery {
       if (bestState == null || bestState.isFinished()) {
         break;
       }
+
+      if (beamMargin > 0.0) {
+        beam.removeBelow(bestState.score() - beamMargin);
+      }
     }
-    if (beam.size() == 0) {
+    if (beam.isEmpty()) {
       success = false;
       unparsable = true;
       debinarized = null;
@@ -129,9 +143,7 @@ public class ShiftReduceParserQuery implements ParserQuery {
       bestParses = Collections.emptyList();
     } else {
       // TODO: filter out beam elements that aren't finished
-      bestParses = Generics.newArrayList(beam);
-      Collections.sort(bestParses, beam.comparator());
-      Collections.reverse(bestParses);
+      bestParses = beam.sortedDescending();
       finalState = bestParses.get(0);
       debinarized = debinarizer.transformTree(finalState.stack.peek());
       debinarized = Tsurgeon.processPattern(rearrangeFinalPunctuationTregex, rearrangeFinalPunctuationTsurgeon, debinarized);
@@ -8,4 +8,16 @@ public class ShiftReduceTestOptions extends TestOptions {
   public String recordDebinarized = null;
 
   public int beamSize = 0;
+
+  /**
+   * If positive, states on the beam which score more than this much
+   * below the best state are dropped at each step.  Once a parse
+   * pulls clearly ahead, the beam shrinks and the rest of the search
+   * costs about the same as a greedy parse.
+   */
+  public double beamMargin = 0.0;
+
+  // the value computed for the class before it had any explicit id,
+  // so that existing serialized models still load
+  private static final long serialVersionUID = 8510025869993799309L;
 }
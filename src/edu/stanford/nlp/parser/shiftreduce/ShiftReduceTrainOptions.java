@@ -40,6 +40,13 @@ public class ShiftReduceTrainOptions extends TrainOptions {
   /** Does help, but makes the models much bigger for a miniscule gain */
   public boolean oracleBinaryToShift = false;
 
+  /**
+   * Key the model by 64 bit feature hashes instead of feature Strings.
+   * Featurizing and scoring a state then never builds the feature
+   * Strings, and the model doesn't need to keep them in memory.
+   */
+  public boolean hashFeatures = false;
+
   // version id randomly chosen by forgetting to set the version id when serializing models
   private static final long serialVersionUID = -8158249539308373819L;
 }
@@ -0,0 +1,24 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.List;
+
+/**
+ * Collects features as Strings in a List, which is how string keyed
+ * {@link PerceptronModel}s look up their weights.
+ */
+public class StringFeatureCollector extends FeatureCollector {
+  private final List<String> features;
+
+  public StringFeatureCollector(List<String> features) {
+    this.features = features;
+  }
+
+  @Override
+  public void add(String feature) {
+    features.add(feature);
+  }
+
+  public List<String> features() {
+    return features;
+  }
+}
@@ -0,0 +1,348 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.TypesafeMap;
+
+/**
+ * A cache of annotated documents, so that text which has been annotated
+ * before by the same pipeline does not have to be annotated again.
+ * Documents are keyed on a hash of their text (and the document metadata
+ * which annotators may use, such as the document date) together with the
+ * signature of the pipeline, which lists its annotators and the properties
+ * they were created with.  The annotated documents are stored serialized
+ * with the {@link ProtobufAnnotationSerializer}.
+ * <br>
+ * There are two tiers: a small in-memory tier holding the most recently
+ * used documents, and a directory on disk, with one file per document,
+ * bounded in total size.  Both evict the least recently used documents
+ * first; the disk tier uses the files' modification times to remember its
+ * order across runs.  Use {@link #open} to get the cache for a directory,
+ * so that all pipelines using the same directory share one cache.
+ * <br>
+ * Only documents which are plain text (with optional document metadata) to
+ * start with, and which the protobuf serializer can store without loss,
+ * are cached; other documents are simply annotated.  Model files are not
+ * part of the pipeline signature, so the cache directory should be cleared
+ * when the models change.
+ */
+public class AnnotationCache {
+
+  /** Changing this invalidates every stored document */
+  private static final String FORMAT_VERSION = "1";
+
+  private static final String SUFFIX = ".pb";
+
+  /** The document level keys which may be set before annotation, and which are part of the cache key */
+  private static final List<Class<?>> INPUT_KEYS = Collections.unmodifiableList(Arrays.asList(
+      CoreAnnotations.TextAnnotation.class,
+      CoreAnnotations.DocIDAnnotation.class,
+      CoreAnnotations.DocDateAnnotation.class,
+      CoreAnnotations.DocTypeAnnotation.class,
+      CoreAnnotations.DocSourceTypeAnnotation.class,
+      CoreAnnotations.CalendarAnnotation.class));
+
+  private static final Map<File, AnnotationCache> caches = Generics.newHashMap();
+
+  private final File directory;
+  private final long maxDiskBytes;
+  private final int maxMemoryEntries;
+
+  /** The documents held in memory, in least recently used order.  Guarded by this. */
+  private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+  /** The size of each document on disk, in least recently used order.  Guarded by this. */
+  private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+  private long diskBytes = 0;
+
+  private final ProtobufAnnotationSerializer serializer = new ProtobufAnnotationSerializer();
+
+  public final AtomicLong memoryHits = new AtomicLong(0);
+  public final AtomicLong diskHits = new AtomicLong(0);
+  public final AtomicLong misses = new AtomicLong(0);
+  /** Documents which were annotated without the cache, as they could not be keyed or stored */
+  public final AtomicLong uncacheable = new AtomicLong(0);
+  /** Stored documents which could not be read back, and were removed */
+  public final AtomicLong unreadable = new AtomicLong(0);
+  public final AtomicLong evictions = new AtomicLong(0);
+
+  /**
+   * Creates a cache in the given directory, which is created if need be.
+   * Documents already in the directory are kept, as long as they fit.
+   *
+   * @param directory The directory for the disk tier
+   * @param maxDiskBytes The maximum total size of the documents on disk
+   * @param maxMemoryEntries The maximum number of documents to keep in memory
+   */
+  public AnnotationCache(File directory, long maxDiskBytes, int maxMemoryEntries) {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new RuntimeIOException("Could not create annotation cache directory " + directory);
+    }
+    this.directory = directory;
+    this.maxDiskBytes = maxDiskBytes;
+    this.maxMemoryEntries = Math.max(0, maxMemoryEntries);
+
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+    if (files != null) {
+      Arrays.sort(files, (f1, f2) -> Long.compare(f1.lastModified(), f2.lastModified()));
+      for (File file : files) {
+        String name = file.getName();
+        disk.put(name.substring(0, name.length() - SUFFIX.length()), file.length());
+        diskBytes += file.length();
+      }
+    }
+    synchronized (this) {
+      evictFromDisk();
+    }
+  }
+
+  /**
+   * Returns the cache for the given directory, creating it the first time.
+   * The limits only apply when the cache is created.
+   */
+  public static AnnotationCache open(File directory, long maxDiskBytes, int maxMemoryEntries) {
+    File canonical;
+    try {
+      canonical = directory.getCanonicalFile();
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+    synchronized (caches) {
+      AnnotationCache cache = caches.get(canonical);
+      if (cache == null) {
+        cache = new AnnotationCache(canonical, maxDiskBytes, maxMemoryEntries);
+        caches.put(canonical, cache);
+      }
+      return cache;
+    }
+  }
+
+  /**
+   * The key of a document for a pipeline with the given signature, or null
+   * if the document has annotations other than its text and metadata, and
+   * so cannot be cached.
+   */
+  public static String key(String signature, Annotation document) {
+    if (document.get(CoreAnnotations.TextAnnotation.class) == null) {
+      return null;
+    }
+    for (Class<?> key : document.keySet()) {
+      if (!INPUT_KEYS.contains(key)) {
+        return null;
+      }
+    }
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    update(digest, FORMAT_VERSION);
+    update(digest, signature);
+    for (Class<?> key : INPUT_KEYS) {
+      Object value = document.get(typesafeKey(key));
+      if (value instanceof Calendar) {
+        value = ((Calendar) value).getTimeInMillis() + " " + ((Calendar) value).getTimeZone().getID();
+      }
+      update(digest, key.getName() + '=' + value);
+    }
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(String.format("%02x", b & 0xff));
+    }
+    return hex.toString();
+  }
+
+  /** A key of a CoreMap, as the key of a value of any type */
+  @SuppressWarnings("unchecked")
+  private static Class<? extends TypesafeMap.Key<Object>> typesafeKey(Class<?> key) {
+    return (Class<? extends TypesafeMap.Key<Object>>) key;
+  }
+
+  /** Adds a string to the digest, with its length so that the boundaries between strings matter */
+  private static void update(MessageDigest digest, String s) {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    digest.update((bytes.length + ":").getBytes(StandardCharsets.UTF_8));
+    digest.update(bytes);
+  }
+
+  /**
+   * Annotates the document, from the cache if possible.  Otherwise the
+   * document is annotated with the given function, and the result is
+   * stored in the cache.
+   *
+   * @param document The document to annotate, in place
+   * @param signature The signature of the pipeline which annotates it
+   * @param pipeline Runs the pipeline on a document
+   */
+  public void annotate(Annotation document, String signature, Consumer<Annotation> pipeline) {
+    String key = key(signature, document);
+    if (key == null) {
+      uncacheable.incrementAndGet();
+      pipeline.accept(document);
+      return;
+    }
+
+    byte[] stored = get(key);
+    if (stored != null) {
+      try {
+        Annotation cached = serializer.read(new ByteArrayInputStream(stored)).first;
+        for (Class<?> annotationKey : cached.keySet()) {
+          document.set(typesafeKey(annotationKey), cached.get(typesafeKey(annotationKey)));
+        }
+        return;
+      } catch (IOException | ClassNotFoundException | RuntimeException e) {
+        // annotate it again, and store the result in its place
+        unreadable.incrementAndGet();
+        remove(key);
+      }
+    }
+
+    misses.incrementAndGet();
+    pipeline.accept(document);
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try {
+      serializer.write(document, os);
+    } catch (ProtobufAnnotationSerializer.LossySerializationException e) {
+      uncacheable.incrementAndGet();
+      return;
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+    put(key, os.toByteArray());
+  }
+
+  /**
+   * Returns the stored document with this key, or null if there is none.
+   * A document found in memory is also marked as used on disk, so that
+   * the disk tier does not evict the documents used most.
+   */
+  public byte[] get(String key) {
+    File file = file(key);
+    byte[] inMemory;
+    synchronized (this) {
+      // Every document in memory is also on disk; the lookup there
+      // moves it to the most recently used end of the disk tier too
+      if (disk.get(key) == null) {
+        return null;
+      }
+      inMemory = memory.get(key);
+    }
+    // Remember the use across runs
+    file.setLastModified(System.currentTimeMillis());
+    if (inMemory != null) {
+      memoryHits.incrementAndGet();
+      return inMemory;
+    }
+    byte[] bytes;
+    try {
+      bytes = Files.readAllBytes(file.toPath());
+    } catch (IOException e) {
+      // evicted, or removed by someone else
+      synchronized (this) {
+        Long size = disk.remove(key);
+        if (size != null) {
+          diskBytes -= size;
+        }
+      }
+      return null;
+    }
+    diskHits.incrementAndGet();
+    synchronized (this) {
+      putInMemory(key, bytes);
+    }
+    return bytes;
+  }
+
+  /** Stores a document in both tiers */
+  public void put(String key, byte[] bytes) {
+    File file = file(key);
+    File temp = new File(directory, key + ".tmp" + Thread.currentThread().getId());
+    try (OutputStream os = new FileOutputStream(temp)) {
+      os.write(bytes);
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+    synchronized (this) {
+      if (!temp.renameTo(file)) {
+        temp.delete();
+        return;
+      }
+      Long old = disk.put(key, (long) bytes.length);
+      diskBytes += bytes.length - (old == null ? 0 : old);
+      evictFromDisk();
+      putInMemory(key, bytes);
+    }
+  }
+
+  private synchronized void remove(String key) {
+    memory.remove(key);
+    Long size = disk.remove(key);
+    if (size != null) {
+      diskBytes -= size;
+      file(key).delete();
+    }
+  }
+
+  private File file(String key) {
+    return new File(directory, key + SUFFIX);
+  }
+
+  private void putInMemory(String key, byte[] bytes) {
+    if (maxMemoryEntries == 0) {
+      return;
+    }
+    memory.put(key, bytes);
+    Iterator<String> keys = memory.keySet().iterator();
+    while (memory.size() > maxMemoryEntries && keys.hasNext()) {
+      keys.next();
+      keys.remove();
+    }
+  }
+
+  private void evictFromDisk() {
+    Iterator<Map.Entry<String, Long>> entries = disk.entrySet().iterator();
+    while (diskBytes > maxDiskBytes && entries.hasNext()) {
+      Map.Entry<String, Long> entry = entries.next();
+      entries.remove();
+      diskBytes -= entry.getValue();
+      file(entry.getKey()).delete();
+      memory.remove(entry.getKey());
+      evictions.incrementAndGet();
+    }
+  }
+
+  /** The number of documents on disk */
+  public synchronized int size() {
+    return disk.size();
+  }
+
+  /** The total size of the documents on disk, in bytes */
+  public synchronized long diskBytes() {
+    return diskBytes;
+  }
+
+  /** The fraction of cacheable documents which were found in the cache */
+  public double hitRate() {
+    long hits = memoryHits.get() + diskHits.get();
+    long total = hits + misses.get();
+    return total == 0 ? 0.0 : ((double) hits) / total;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Annotation cache %s: %d documents, %.1f MB on disk; hit rate %.1f%% (%d memory hits, %d disk hits, %d misses, %d uncacheable, %d unreadable, %d evictions)",
+        directory, size(), diskBytes() / (1024.0 * 1024.0), 100.0 * hitRate(),
+        memoryHits.get(), diskHits.get(), misses.get(), uncacheable.get(), unreadable.get(), evictions.get());
+  }
+
+}
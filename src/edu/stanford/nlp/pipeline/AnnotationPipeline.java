@@ -7,6 +7,8 @@ import edu.stanford.nlp.util.logging.Redwood;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.Consumer;
 
 
@@ -29,6 +31,10 @@ public class AnnotationPipeline implements Annotator {
   private final List<Annotator> annotators;
   private List<MutableLong> accumulatedTime;
 
+  /** The number of threads on which to annotate the sentences of one document */
+  private int sentenceThreads = 1;
+  private ForkJoinPool sentencePool;
+
   public AnnotationPipeline(List<Annotator> annotators) {
     this.annotators = annotators;
     if (TIME) {
@@ -44,6 +50,11 @@ public class AnnotationPipeline implements Annotator {
     this(new ArrayList<Annotator>());
   }
 
+  /** The annotators of this pipeline, in the order they are run */
+  List<Annotator> annotators() {
+    return Collections.unmodifiableList(annotators);
+  }
+
   public void addAnnotator(Annotator annotator) {
     annotators.add(annotator);
     if (TIME) {
@@ -51,6 +62,56 @@ public class AnnotationPipeline implements Annotator {
     }
   }
 
+  /**
+   * Sets the number of threads on which to annotate the sentences of a
+   * single document.  If this is more than one, then once a document has
+   * been split into sentences, each consecutive run of thread safe
+   * {@link SentenceAnnotator}s in the pipeline is applied to every sentence
+   * as a separate task on a shared work-stealing pool, so that one
+   * sentence can be parsed while the next is still being tagged.  Any
+   * other annotator acts as a barrier: it runs on the whole document once
+   * all of the sentences have been through the annotators before it.
+   * <br>
+   * Sentence annotators which are not {@link SentenceAnnotator#isThreadSafe},
+   * such as the parsers, or which have a timeout, as the timeout applies
+   * per annotator, are still run on the whole document.
+   *
+   * @param sentenceThreads The number of threads, or 1 to annotate each
+   *                        document on the calling thread
+   */
+  public void setSentenceThreads(int sentenceThreads) {
+    if (sentenceThreads < 1) {
+      throw new IllegalArgumentException("sentenceThreads must be at least 1: " + sentenceThreads);
+    }
+    synchronized (this) {
+      if (sentencePool != null && sentenceThreads != this.sentenceThreads) {
+        sentencePool.shutdown();
+        sentencePool = null;
+      }
+      this.sentenceThreads = sentenceThreads;
+    }
+  }
+
+  public int getSentenceThreads() {
+    return sentenceThreads;
+  }
+
+  private synchronized ForkJoinPool sentencePool() {
+    if (sentencePool == null) {
+      sentencePool = new ForkJoinPool(sentenceThreads);
+    }
+    return sentencePool;
+  }
+
+  /** Whether the sentences of a document can go through this annotator independently */
+  private static boolean annotatesBySentence(Annotator annotator) {
+    if ( ! (annotator instanceof SentenceAnnotator)) {
+      return false;
+    }
+    SentenceAnnotator sentenceAnnotator = (SentenceAnnotator) annotator;
+    return sentenceAnnotator.isThreadSafe() && sentenceAnnotator.maxTime() <= 0;
+  }
+
   /**
    * Run the pipeline on an input annotation.
    * The annotation is modified in place.
@@ -59,17 +120,88 @@ public class AnnotationPipeline implements Annotator {
    */
   @Override
   public void annotate(Annotation annotation) {
-    Iterator<MutableLong> it = accumulatedTime.iterator();
+    annotateFrom(annotation, 0);
+  }
+
+  /**
+   * Runs the annotators of this pipeline from the given one onwards, on an
+   * annotation which the annotators before it (or equivalent ones, e.g.,
+   * those of a pipeline which only tokenizes and splits sentences) have
+   * already been run on.
+   *
+   * @param annotation The annotation, which is modified in place
+   * @param first The index of the first annotator to run
+   */
+  void annotateFrom(Annotation annotation, int first) {
     Timing t = new Timing();
-    for (Annotator annotator : annotators) {
+    for (int i = first, num = annotators.size(); i < num; ) {
+      int end = i;
+      if (sentenceThreads > 1 && annotation.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
+        while (end < num && annotatesBySentence(annotators.get(end))) {
+          end++;
+        }
+      }
+      if (end > i) {
+        annotateSentences(annotation, i, end);
+        i = end;
+        continue;
+      }
+      Annotator annotator = annotators.get(i);
       if (TIME) {
         t.start();
       }
       annotator.annotate(annotation);
       if (TIME) {
         long elapsed = t.stop();
-        MutableLong m = it.next();
-        m.incValue(elapsed);
+        MutableLong m = accumulatedTime.get(i);
+        synchronized (m) {
+          m.incValue(elapsed);
+        }
+      }
+      i++;
+    }
+  }
+
+  /**
+   * Runs the sentence annotators from start to end on each sentence of the
+   * document, in order, with one task per sentence on the sentence pool.
+   * The time recorded for each annotator is the sum of its time on each
+   * sentence, across all threads.
+   */
+  private void annotateSentences(final Annotation annotation, int start, int end) {
+    final List<SentenceAnnotator> run = new ArrayList<>(end - start);
+    for (int i = start; i < end; i++) {
+      run.add((SentenceAnnotator) annotators.get(i));
+    }
+    final long[] nanos = new long[run.size()];
+    ForkJoinPool pool = sentencePool();
+    List<ForkJoinTask<?>> tasks = new ArrayList<>();
+    for (final CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
+      tasks.add(pool.submit(() -> {
+        for (int k = 0; k < run.size(); k++) {
+          long begin = System.nanoTime();
+          run.get(k).doOneSentence(annotation, sentence);
+          if (TIME) {
+            long elapsed = System.nanoTime() - begin;
+            synchronized (nanos) {
+              nanos[k] += elapsed;
+            }
+          }
+        }
+      }));
+    }
+    // join rethrows any exception thrown while annotating a sentence
+    for (ForkJoinTask<?> task : tasks) {
+      task.join();
+    }
+    for (int k = 0; k < run.size(); k++) {
+      long begin = System.nanoTime();
+      run.get(k).finishDocument(annotation);
+      if (TIME) {
+        MutableLong m = accumulatedTime.get(start + k);
+        synchronized (m) {
+          m.incValue((nanos[k] + System.nanoTime() - begin) / 1000000);
+        }
       }
     }
   }
@@ -527,7 +527,7 @@ public class AnnotatorFactories {
 
       @Override
       public String additionalSignature() {
-        return "sentiment.model=" + properties.get("sentiment.model");
+        return SentimentAnnotator.signature(StanfordCoreNLP.STANFORD_SENTIMENT, properties);
       }
     };
   }
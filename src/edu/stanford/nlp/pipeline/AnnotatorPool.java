@@ -1,5 +1,7 @@
 package edu.stanford.nlp.pipeline;
 
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
 import java.util.Map;
 
 import edu.stanford.nlp.util.Generics;
@@ -13,12 +15,22 @@ import edu.stanford.nlp.util.Generics;
  * Instead, an AnnotatorPool will only create one Annotator and allow both
  * pipelines to share it.
  *
+ * Annotators are also remembered by their signature: if an annotator is
+ * re-registered with a signature which some still-live pipeline is using,
+ * that instance is handed out again rather than being reloaded.
+ *
  * @author bethard
  */
 public class AnnotatorPool {
 
   private final Map<String, Annotator> annotators;
   private final Map<String, AnnotatorFactory> factories;
+  /**
+   * Every annotator this pool has created, keyed by name and signature.
+   * These are only weakly held, so that an annotator which has been replaced
+   * can still be garbage collected once no pipeline is using it.
+   */
+  private final Map<String, WeakReference<Annotator>> annotatorsBySignature;
 
   /**
    * Create an empty AnnotatorPool.
@@ -26,6 +38,7 @@ public class AnnotatorPool {
   public AnnotatorPool() {
     this.annotators = Generics.newHashMap();
     this.factories = Generics.newHashMap();
+    this.annotatorsBySignature = Generics.newHashMap();
   }
 
   /**
@@ -39,7 +52,7 @@ public class AnnotatorPool {
    * @param factory A factory that creates an instance of the desired Annotator.
    * @return true if a new annotator was created; false if we reuse an existing one
    */
-  public boolean register(String name, AnnotatorFactory factory) {
+  public synchronized boolean register(String name, AnnotatorFactory factory) {
     boolean newAnnotator = false;
     if (this.factories.containsKey(name)) {
       AnnotatorFactory oldFactory = this.factories.get(name);
@@ -59,6 +72,7 @@ public class AnnotatorPool {
         // those are all gone, then the old annotator will be garbage
         // collected and memory will be freed up
         annotators.remove(name);
+        clearCollectedAnnotators();
       }
       // nothing to do if an annotator with same name and signature already exists
     } else {
@@ -82,9 +96,58 @@ public class AnnotatorPool {
       if (factory == null) {
         throw new IllegalArgumentException("No annotator named " + name);
       }
-      this.annotators.put(name, factory.create());
+      // Reuse an annotator with this signature, if some pipeline is still holding on to one
+      String key = name + '\n' + factory.signature();
+      WeakReference<Annotator> ref = this.annotatorsBySignature.get(key);
+      Annotator annotator = ref == null ? null : ref.get();
+      if (annotator == null) {
+        annotator = factory.create();
+        this.annotatorsBySignature.put(key, new WeakReference<>(annotator));
+      }
+      this.annotators.put(name, annotator);
     }
     return this.annotators.get(name);
   }
 
+  /**
+   * The signature of the annotator registered under this name, which
+   * identifies the properties it is created with.
+   *
+   * @param name The annotator's name
+   * @return The signature of its factory
+   * @throws IllegalArgumentException If no such annotator is registered
+   */
+  public synchronized String signature(String name) {
+    AnnotatorFactory factory = this.factories.get(name);
+    if (factory == null) {
+      throw new IllegalArgumentException("No annotator named " + name);
+    }
+    return factory.signature();
+  }
+
+  /**
+   * Stop holding on to this annotator.  Pipelines which use it keep it
+   * alive, and {@link #get} still hands it out while any of them do; once
+   * none do, it can be garbage collected, and will be created again if it
+   * is needed.
+   *
+   * @param annotator An annotator from this pool
+   */
+  public synchronized void release(Annotator annotator) {
+    annotators.values().removeIf(a -> a == annotator);
+    clearCollectedAnnotators();
+  }
+
+  /**
+   * Drop the entries for annotators which have been garbage collected.
+   */
+  private void clearCollectedAnnotators() {
+    Iterator<WeakReference<Annotator>> iter = annotatorsBySignature.values().iterator();
+    while (iter.hasNext()) {
+      if (iter.next().get() == null) {
+        iter.remove();
+      }
+    }
+  }
+
 }
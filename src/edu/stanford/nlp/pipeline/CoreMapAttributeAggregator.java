@@ -7,6 +7,7 @@ import edu.stanford.nlp.util.ArrayMap;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.Generics;
 
+import java.io.Serializable;
 import java.util.*;
 
 /**
@@ -14,7 +15,7 @@ import java.util.*;
 *
 * @author Angel Chang
 */
-public abstract class CoreMapAttributeAggregator
+public abstract class CoreMapAttributeAggregator implements Serializable
 {
   public static Map<Class, CoreMapAttributeAggregator> getDefaultAggregators()
   {
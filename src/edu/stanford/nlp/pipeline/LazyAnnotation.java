@@ -0,0 +1,204 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.ObjectStreamException;
+import java.util.*;
+import java.util.function.Supplier;
+
+import edu.stanford.nlp.util.logging.Redwood.RedwoodChannels;
+
+/**
+ * An Annotation some of whose values are only computed the first time
+ * they are asked for.  A value is given as a {@link Supplier} with
+ * {@link #setLazily}; the key then behaves as if it were set (it is in the
+ * {@link #keySet}, and {@link #containsKey} is true), but the supplier is
+ * only called, once, on the first {@link #get} of the key.
+ * <br>
+ * This is used by {@link ProtobufAnnotationSerializer#fromProtoLazily} so
+ * that reading a document does not build trees, dependency graphs and
+ * coreference chains which nobody looks at.
+ * <br>
+ * Getting a lazy value may set it, so unlike other CoreMaps the
+ * materialization is synchronized; several threads may read the same
+ * LazyAnnotation as they could a fully built one.  Operations which look
+ * at every value, such as {@link #equals} and {@link #keySet}, compute all
+ * the pending values first.  ArrayCoreMap.equals on a different map does
+ * not know about pending values, so call {@link #materialize} before
+ * comparing a LazyAnnotation against a plain map.
+ */
+public class LazyAnnotation extends Annotation {
+
+  private static final long serialVersionUID = 1L;
+
+  /** The values not computed yet, or null once there are none.  Guarded by this for writes. */
+  private transient volatile Map<Class<?>, Supplier<?>> pending;
+
+  public LazyAnnotation(String text) {
+    super(text);
+  }
+
+  /** An annotation with no text, such as a sentence which takes its text from the document */
+  @SuppressWarnings("deprecation")
+  public LazyAnnotation() {
+    super();
+  }
+
+  /**
+   * Sets the value of the key to whatever the supplier returns, when the key
+   * is first asked for.
+   */
+  public synchronized <VALUE> void setLazily(Class<? extends Key<VALUE>> key, Supplier<? extends VALUE> value) {
+    super.remove(key);
+    if (pending == null) {
+      pending = new LinkedHashMap<>(4);
+    }
+    pending.put(key, value);
+  }
+
+  /** Whether the value of the key is set, but has not been computed yet */
+  public boolean isPending(Class<?> key) {
+    Map<Class<?>, Supplier<?>> pending = this.pending;
+    return pending != null && pending.containsKey(key);
+  }
+
+  /**
+   * Computes the value of the key, if it is pending.  Must hold the lock.
+   * The supplier stays pending until its value is set, so that readers
+   * which do not take the lock never see a key missing; a supplier may get
+   * other keys of this map, but not its own.
+   */
+  private void materialize(Class<?> key) {
+    Map<Class<?>, Supplier<?>> pending = this.pending;
+    if (pending == null) {
+      return;
+    }
+    Supplier<?> value = pending.get(key);
+    if (value == null) {
+      return;
+    }
+    super.set(objectKey(key), value.get());
+    pending.remove(key);
+    if (pending.isEmpty()) {
+      this.pending = null;
+    }
+  }
+
+  /**
+   * A key as the key of an Object value.  The values of a key are only
+   * handed on under that same key, so their types always match.
+   */
+  @SuppressWarnings("unchecked")
+  private static Class<? extends Key<Object>> objectKey(Class<?> key) {
+    return (Class<? extends Key<Object>>) key;
+  }
+
+  /** Computes all the pending values */
+  public synchronized void materialize() {
+    while (pending != null) {
+      materialize(pending.keySet().iterator().next());
+    }
+  }
+
+  @Override
+  public <VALUE> VALUE get(Class<? extends Key<VALUE>> key) {
+    if (pending == null) {
+      return super.get(key);
+    }
+    synchronized (this) {
+      materialize(key);
+      return super.get(key);
+    }
+  }
+
+  @Override
+  public <VALUE> boolean has(Class<? extends Key<VALUE>> key) {
+    if (pending == null) {
+      return super.has(key);
+    }
+    synchronized (this) {
+      return isPending(key) || super.has(key);
+    }
+  }
+
+  @Override
+  public <VALUE> boolean containsKey(Class<? extends Key<VALUE>> key) {
+    if (pending == null) {
+      return super.containsKey(key);
+    }
+    synchronized (this) {
+      return isPending(key) || super.containsKey(key);
+    }
+  }
+
+  @Override
+  public synchronized <VALUE> VALUE set(Class<? extends Key<VALUE>> key, VALUE value) {
+    materialize(key);
+    return super.set(key, value);
+  }
+
+  @Override
+  public synchronized <VALUE> VALUE remove(Class<? extends Key<VALUE>> key) {
+    materialize(key);
+    return super.remove(key);
+  }
+
+  @Override
+  public Set<Class<?>> keySet() {
+    materialize();
+    return super.keySet();
+  }
+
+  @Override
+  public synchronized int size() {
+    return super.size() + (pending == null ? 0 : pending.size());
+  }
+
+  @Override
+  public LazyAnnotation copy() {
+    materialize();
+    LazyAnnotation copy = new LazyAnnotation();
+    for (Class<?> key : keySet()) {
+      copy.set(objectKey(key), get(objectKey(key)));
+    }
+    return copy;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    materialize();
+    if (obj instanceof LazyAnnotation) {
+      ((LazyAnnotation) obj).materialize();
+    }
+    return super.equals(obj);
+  }
+
+  @Override
+  public int hashCode() {
+    materialize();
+    return super.hashCode();
+  }
+
+  @Override
+  public String toShorterString(String... what) {
+    materialize();
+    return super.toShorterString(what);
+  }
+
+  @Override
+  public String toShortString(char separator, String... what) {
+    materialize();
+    return super.toShortString(separator, what);
+  }
+
+  @Override
+  public void prettyLog(RedwoodChannels channels, String description) {
+    materialize();
+    super.prettyLog(channels, description);
+  }
+
+  /** Pending values are computed before the annotation is serialized */
+  private Object writeReplace() throws ObjectStreamException {
+    materialize();
+    return this;
+  }
+
+}
@@ -22,7 +22,7 @@ import java.util.Set;
  *
  * @author Jenny Finkel
  */
-public class MorphaAnnotator implements Annotator{
+public class MorphaAnnotator extends SentenceAnnotator {
 
   private boolean VERBOSE = false;
 
@@ -30,6 +30,9 @@ public class MorphaAnnotator implements Annotator{
   private static final String[] prep = {"abroad", "across", "after", "ahead", "along", "aside", "away", "around", "back", "down", "forward", "in", "off", "on", "over", "out", "round", "together", "through", "up"};
   private static final List<String> particles = Arrays.asList(prep);
 
+  /** Morphology is not threadsafe, so each thread which lemmatizes sentences gets its own */
+  private final ThreadLocal<Morphology> morphology = ThreadLocal.withInitial(Morphology::new);
+
   public MorphaAnnotator() {
     this(true);
   }
@@ -38,27 +41,52 @@ public class MorphaAnnotator implements Annotator{
     VERBOSE = verbose;
   }
 
+  @Override
   public void annotate(Annotation annotation) {
     if (VERBOSE) {
       System.err.print("Finding lemmas ...");
     }
-    Morphology morphology = new Morphology();
     if (annotation.has(CoreAnnotations.SentencesAnnotation.class)) {
-      for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
-        List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
-        //System.err.println("Lemmatizing sentence: " + tokens);
-        for (CoreLabel token : tokens) {
-          String text = token.get(CoreAnnotations.TextAnnotation.class);
-          String posTag = token.get(CoreAnnotations.PartOfSpeechAnnotation.class);
-          addLemma(morphology, CoreAnnotations.LemmaAnnotation.class, token, text, posTag);
-        }
-      }
+      super.annotate(annotation);
     } else {
       throw new RuntimeException("Unable to find words/tokens in: " +
                                  annotation);
     }
   }
 
+  @Override
+  protected int nThreads() {
+    return 1;
+  }
+
+  @Override
+  protected long maxTime() {
+    return -1;
+  }
+
+  @Override
+  protected boolean isThreadSafe() {
+    // each thread lemmatizes with its own Morphology
+    return true;
+  }
+
+  @Override
+  protected void doOneSentence(Annotation annotation, CoreMap sentence) {
+    Morphology morphology = this.morphology.get();
+    List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+    //System.err.println("Lemmatizing sentence: " + tokens);
+    for (CoreLabel token : tokens) {
+      String text = token.get(CoreAnnotations.TextAnnotation.class);
+      String posTag = token.get(CoreAnnotations.PartOfSpeechAnnotation.class);
+      addLemma(morphology, CoreAnnotations.LemmaAnnotation.class, token, text, posTag);
+    }
+  }
+
+  @Override
+  protected void doOneFailedSentence(Annotation annotation, CoreMap sentence) {
+    doOneSentence(annotation, sentence);
+  }
+
 
   private static void addLemma(Morphology morpha,
                         Class<? extends CoreAnnotation<String>> ann,
@@ -91,13 +91,17 @@ public class NERCombinerAnnotator extends SentenceAnnotator {
     }
 
     super.annotate(annotation);
-    this.ner.finalizeAnnotation(annotation);
 
     if (VERBOSE) {
       System.err.println("done.");
     }
   }
 
+  @Override
+  protected void finishDocument(Annotation annotation) {
+    this.ner.finalizeAnnotation(annotation);
+  }
+
   @Override
   public void doOneSentence(Annotation annotation, CoreMap sentence) {
     List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
@@ -13,15 +13,13 @@ import edu.stanford.nlp.tagger.maxent.MaxentTagger;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.PropertiesUtils;
 import edu.stanford.nlp.util.Timing;
-import edu.stanford.nlp.util.concurrent.MulticoreWrapper;
-import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
 
 /**
  * Wrapper for the maxent part of speech tagger.
  *
  * @author Anna Rafferty
  */
-public class POSTaggerAnnotator implements Annotator {
+public class POSTaggerAnnotator extends SentenceAnnotator {
 
   private final MaxentTagger pos;
 
@@ -102,44 +100,23 @@ public class POSTaggerAnnotator implements Annotator {
   }
 
   @Override
-  public void annotate(Annotation annotation) {
-    // turn the annotation into a sentence
-    if (annotation.has(CoreAnnotations.SentencesAnnotation.class)) {
-      if (nThreads == 1) {
-        for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
-          doOneSentence(sentence);
-        }
-      } else {
-        MulticoreWrapper<CoreMap, CoreMap> wrapper = new MulticoreWrapper<CoreMap, CoreMap>(nThreads, new POSTaggerProcessor());
-        for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
-          wrapper.put(sentence);
-          while (wrapper.peek()) {
-            wrapper.poll();
-          }
-        }
-        wrapper.join();
-        while (wrapper.peek()) {
-          wrapper.poll();
-        }
-      }
-    } else {
-      throw new RuntimeException("unable to find words/tokens in: " + annotation);
-    }
+  protected int nThreads() {
+    return nThreads;
   }
 
-  private class POSTaggerProcessor implements ThreadsafeProcessor<CoreMap, CoreMap> {
-    @Override
-    public CoreMap process(CoreMap sentence) {
-      return doOneSentence(sentence);
-    }
+  @Override
+  protected long maxTime() {
+    return -1;
+  }
 
-    @Override
-    public ThreadsafeProcessor<CoreMap, CoreMap> newInstance() {
-      return this;
-    }
+  @Override
+  protected boolean isThreadSafe() {
+    // the tagger tags each sentence with a TestSentence of its own
+    return true;
   }
 
-  private CoreMap doOneSentence(CoreMap sentence) {
+  @Override
+  protected void doOneSentence(Annotation annotation, CoreMap sentence) {
     List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
     List<TaggedWord> tagged = null;
     if (tokens.size() <= maxSentenceLength) {
@@ -157,11 +134,15 @@ public class POSTaggerAnnotator implements Annotator {
         tokens.get(i).set(CoreAnnotations.PartOfSpeechAnnotation.class, tagged.get(i).tag());
       }
     } else {
-      for (int i = 0, sz = tokens.size(); i < sz; i++) {
-        tokens.get(i).set(CoreAnnotations.PartOfSpeechAnnotation.class, "X");
-      }
+      doOneFailedSentence(annotation, sentence);
+    }
+  }
+
+  @Override
+  protected void doOneFailedSentence(Annotation annotation, CoreMap sentence) {
+    for (CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class)) {
+      token.set(CoreAnnotations.PartOfSpeechAnnotation.class, "X");
     }
-    return sentence;
   }
 
   @Override
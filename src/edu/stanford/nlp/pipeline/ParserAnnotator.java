@@ -17,6 +17,7 @@ import edu.stanford.nlp.parser.lexparser.LexicalizedParser;
 import edu.stanford.nlp.parser.lexparser.TreeBinarizer;
 import edu.stanford.nlp.trees.*;
 import edu.stanford.nlp.util.*;
+import edu.stanford.nlp.util.concurrent.WorkspacePool;
 
 import java.util.function.Function;
 
@@ -62,6 +63,19 @@ public class ParserAnnotator extends SentenceAnnotator {
   private final boolean noSquash;
   private final GrammaticalStructure.Extras extraDependencies;
 
+  /**
+   * Parser queries, which keep their charts from one sentence to the next,
+   * so that they needn't be allocated again for each sentence
+   */
+  private final WorkspacePool<ParserQuery> parserQueries;
+
+  /**
+   * Queries which have parsed longer sentences than this are not reused,
+   * as their charts, which grow with the square of the sentence length,
+   * would be kept for good
+   */
+  private static final int MAX_REUSED_QUERY_LENGTH = 50;
+
   public ParserAnnotator(boolean verbose, int maxSent) {
     this(System.getProperty("parse.model", LexicalizedParser.DEFAULT_PARSER_LOC), verbose, maxSent, StringUtils.EMPTY_STRING_ARRAY);
   }
@@ -81,6 +95,7 @@ public class ParserAnnotator extends SentenceAnnotator {
     VERBOSE = verbose;
     this.BUILD_GRAPHS = parser.getTLPParams().supportsBasicDependencies();
     this.parser = parser;
+    this.parserQueries = new WorkspacePool<ParserQuery>(parser::parserQuery);
     this.maxSentenceLength = maxSent;
     this.treeMap = treeMap;
     this.maxParseTime = 0;
@@ -108,6 +123,7 @@ public class ParserAnnotator extends SentenceAnnotator {
 
     String[] flags = convertFlagsToArray(props.getProperty(annotatorName + ".flags"));
     this.parser = loadModel(model, VERBOSE, flags);
+    this.parserQueries = new WorkspacePool<ParserQuery>(parser::parserQuery);
     this.maxSentenceLength = PropertiesUtils.getInt(props, annotatorName + ".maxlen", -1);
 
     String treeMapClass = props.getProperty(annotatorName + ".treemap");
@@ -289,11 +305,12 @@ public class ParserAnnotator extends SentenceAnnotator {
 
   private List<Tree> doOneSentence(List<ParserConstraint> constraints,
                              List<CoreLabel> words) {
-    ParserQuery pq = parser.parserQuery();
+    ParserQuery pq = parserQueries.acquire();
     pq.setConstraints(constraints);
     pq.parse(words);
     List<ScoredObject<Tree>> scoredObjects = null;
     List<Tree> trees = Generics.newLinkedList();
+    boolean reuseQuery = words.size() <= MAX_REUSED_QUERY_LENGTH;
     try {
       scoredObjects = pq.getKBestPCFGParses(this.kBest);
       if (scoredObjects == null || scoredObjects.size() < 1) {
@@ -309,6 +326,7 @@ public class ParserAnnotator extends SentenceAnnotator {
         }
       }
     } catch (OutOfMemoryError e) {
+      reuseQuery = false;
       System.err.println("WARNING: Parsing of sentence ran out of memory.  " +
               "Will ignore and continue: " +
               Sentence.listToString(words));
@@ -317,6 +335,10 @@ public class ParserAnnotator extends SentenceAnnotator {
               "Will ignore and continue: " +
               Sentence.listToString(words));
     }
+    // a query whose parse was interrupted never gets here, and so is not reused either
+    if (reuseQuery) {
+      parserQueries.release(pq);
+    }
     return trees;
   }
 
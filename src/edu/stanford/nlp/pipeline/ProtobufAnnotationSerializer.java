@@ -31,6 +31,7 @@ import edu.stanford.nlp.time.TimeAnnotations.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.function.Supplier;
 
 /**
  * <p>
@@ -183,6 +184,19 @@ public class ProtobufAnnotationSerializer extends AnnotationSerializer {
     return Pair.makePair(fromProto(doc), is);
   }
 
+  /**
+   * Like {@link ProtobufAnnotationSerializer#read(InputStream)}, but the document read is a
+   * {@link LazyAnnotation}, which only builds its trees, dependency graphs, coreference chains and so on
+   * when they are first asked for.
+   * This is much faster for readers which only look at some of the annotations of a document.
+   *
+   * @see ProtobufAnnotationSerializer#fromProtoLazily(CoreNLPProtos.Document)
+   */
+  public Pair<Annotation, InputStream> readLazily(InputStream is) throws IOException {
+    CoreNLPProtos.Document doc = CoreNLPProtos.Document.parseDelimitedFrom(is);
+    return Pair.makePair(fromProtoLazily(doc), is);
+  }
+
   /**
    * Read a single protocol buffer, which constitutes the entire stream.
    * This is in contrast to the default, where mutliple buffers may come out of the stream,
@@ -838,7 +852,14 @@ public class ProtobufAnnotationSerializer extends AnnotationSerializer {
    * @return A CoreMap, representing a sentence as stored in the protocol buffer (and therefore missing some fields)
    */
   protected CoreMap fromProtoNoTokens(CoreNLPProtos.Sentence proto) {
-    CoreMap sentence = new ArrayCoreMap();
+    return fromProtoNoTokens(proto, new ArrayCoreMap());
+  }
+
+  /**
+   * As {@link ProtobufAnnotationSerializer#fromProtoNoTokens(CoreNLPProtos.Sentence)}, but filling in the given map.
+   * If the map is a {@link LazyAnnotation}, the trees and mentions are only read when they are asked for.
+   */
+  private CoreMap fromProtoNoTokens(CoreNLPProtos.Sentence proto, CoreMap sentence) {
     // Required fields
     sentence.set(TokenBeginAnnotation.class, proto.getTokenOffsetBegin());
     sentence.set(TokenEndAnnotation.class, proto.getTokenOffsetEnd());
@@ -846,30 +867,48 @@ public class ProtobufAnnotationSerializer extends AnnotationSerializer {
     if (proto.hasSentenceIndex()) { sentence.set(SentenceIndexAnnotation.class, proto.getSentenceIndex()); }
     if (proto.hasCharacterOffsetBegin()) { sentence.set(CharacterOffsetBeginAnnotation.class, proto.getCharacterOffsetBegin()); }
     if (proto.hasCharacterOffsetEnd()) { sentence.set(CharacterOffsetEndAnnotation.class, proto.getCharacterOffsetEnd()); }
-    if (proto.hasParseTree()) { sentence.set(TreeAnnotation.class, fromProto(proto.getParseTree())); }
-    if (proto.hasBinarizedParseTree()) { sentence.set(BinarizedTreeAnnotation.class, fromProto(proto.getBinarizedParseTree())); }
+    if (proto.hasParseTree()) { setFromProto(sentence, TreeAnnotation.class, () -> fromProto(proto.getParseTree())); }
+    if (proto.hasBinarizedParseTree()) { setFromProto(sentence, BinarizedTreeAnnotation.class, () -> fromProto(proto.getBinarizedParseTree())); }
     if (proto.getKBestParseTreesCount() > 0) {
-      List<Tree> trees = new LinkedList<>();
-      for (CoreNLPProtos.ParseTree protoTree : proto.getKBestParseTreesList()) {trees.add(fromProto(protoTree));}
-      sentence.set(KBestTreesAnnotation.class, trees);
+      setFromProto(sentence, KBestTreesAnnotation.class, () -> {
+        List<Tree> trees = new LinkedList<>();
+        for (CoreNLPProtos.ParseTree protoTree : proto.getKBestParseTreesList()) {trees.add(fromProto(protoTree));}
+        return trees;
+      });
     }
-    if (proto.hasAnnotatedParseTree()) { sentence.set(SentimentCoreAnnotations.SentimentAnnotatedTree.class, fromProto(proto.getAnnotatedParseTree())); }
+    if (proto.hasAnnotatedParseTree()) { setFromProto(sentence, SentimentCoreAnnotations.SentimentAnnotatedTree.class, () -> fromProto(proto.getAnnotatedParseTree())); }
     if (proto.hasSentiment()) { sentence.set(SentimentCoreAnnotations.SentimentClass.class, proto.getSentiment()); }
     // Non-default fields
     if (proto.hasHasRelationAnnotations() && proto.getHasRelationAnnotations()) {
       // set entities
-      List<EntityMention> entities = new ArrayList<EntityMention>();
-      for (CoreNLPProtos.Entity entity : proto.getEntityList()) { entities.add(fromProto(entity, sentence)); }
-      sentence.set(EntityMentionsAnnotation.class, entities);
+      setFromProto(sentence, EntityMentionsAnnotation.class, () -> {
+        List<EntityMention> entities = new ArrayList<EntityMention>();
+        for (CoreNLPProtos.Entity entity : proto.getEntityList()) { entities.add(fromProto(entity, sentence)); }
+        return entities;
+      });
       // set relations
-      List<RelationMention> relations = new ArrayList<RelationMention>();
-      for (CoreNLPProtos.Relation relation : proto.getRelationList()) { relations.add(fromProto(relation, sentence)); }
-      sentence.set(RelationMentionsAnnotation.class, relations);
+      setFromProto(sentence, RelationMentionsAnnotation.class, () -> {
+        List<RelationMention> relations = new ArrayList<RelationMention>();
+        for (CoreNLPProtos.Relation relation : proto.getRelationList()) { relations.add(fromProto(relation, sentence)); }
+        return relations;
+      });
     }
     // Return
     return sentence;
   }
 
+  /**
+   * Sets a value which is expensive to read from a protobuf: only once it is asked for, if the map
+   * is a {@link LazyAnnotation}, and right away otherwise.
+   */
+  private static <E> void setFromProto(CoreMap map, Class<? extends CoreAnnotation<E>> key, Supplier<E> value) {
+    if (map instanceof LazyAnnotation) {
+      ((LazyAnnotation) map).setLazily(key, value);
+    } else {
+      map.set(key, value.get());
+    }
+  }
+
   /**
    * Returns a complete document, intended to mimic a document passes as input to
    * {@link ProtobufAnnotationSerializer#toProto(Annotation)} as closely as possible.
@@ -880,8 +919,28 @@ public class ProtobufAnnotationSerializer extends AnnotationSerializer {
    * @return An Annotation corresponding to the read protobuf.
    */
   public Annotation fromProto(CoreNLPProtos.Document proto) {
+    return fromProto(proto, false);
+  }
+
+  /**
+   * Returns a document which reads its tokens and sentences from the protocol buffer right away,
+   * but the more expensive structures -- parse trees, dependency graphs, OpenIE triples, entity
+   * and relation mentions, coreference chains and quotes -- only when they are first asked for.
+   * The document and its sentences are {@link LazyAnnotation}s, which keep the parts of the
+   * protocol buffer they have not read yet.
+   * Otherwise, the result is the same as that of
+   * {@link ProtobufAnnotationSerializer#fromProto(CoreNLPProtos.Document)}.
+   *
+   * @param proto The protocol buffer to read the document from.
+   * @return A lazily read Annotation corresponding to the protobuf.
+   */
+  public LazyAnnotation fromProtoLazily(CoreNLPProtos.Document proto) {
+    return (LazyAnnotation) fromProto(proto, true);
+  }
+
+  private Annotation fromProto(CoreNLPProtos.Document proto, boolean lazily) {
     // Set text
-    Annotation ann = new Annotation(proto.getText());
+    Annotation ann = lazily ? new LazyAnnotation(proto.getText()) : new Annotation(proto.getText());
 
     // Add tokens
     List<CoreLabel> tokens = new ArrayList<CoreLabel>();
@@ -928,7 +987,7 @@ public class ProtobufAnnotationSerializer extends AnnotationSerializer {
     List<CoreMap> sentences = new ArrayList<CoreMap>(proto.getSentenceCount());
     for (int sentIndex = 0; sentIndex < proto.getSentenceCount(); ++sentIndex) {
       CoreNLPProtos.Sentence sentence = proto.getSentence(sentIndex);
-      CoreMap map = fromProtoNoTokens(sentence);
+      CoreMap map = fromProtoNoTokens(sentence, lazily ? new LazyAnnotation() : new ArrayCoreMap());
       if (!tokens.isEmpty() && sentence.hasTokenOffsetBegin() && sentence.hasTokenOffsetEnd() &&
           map.get(TokensAnnotation.class) == null) {
         // Set tokens for sentence
@@ -967,38 +1026,45 @@ public class ProtobufAnnotationSerializer extends AnnotationSerializer {
     }
 
     // Set coref chain
-    Map<Integer, CorefChain> corefChains = new HashMap<Integer, CorefChain>();
-    for (CoreNLPProtos.CorefChain chainProto : proto.getCorefChainList()) {
-      CorefChain chain = fromProto(chainProto, ann);
-      corefChains.put(chain.getChainID(), chain);
+    if (proto.getCorefChainCount() > 0) {
+      setFromProto(ann, CorefChainAnnotation.class, () -> {
+        Map<Integer, CorefChain> corefChains = new HashMap<Integer, CorefChain>();
+        for (CoreNLPProtos.CorefChain chainProto : proto.getCorefChainList()) {
+          CorefChain chain = fromProto(chainProto, ann);
+          corefChains.put(chain.getChainID(), chain);
+        }
+        return corefChains;
+      });
     }
-    if (!corefChains.isEmpty()) { ann.set(CorefChainAnnotation.class, corefChains); }
 
     // Set things in the sentence that need a document context.
+    final String docidForGraphs = docid;
     for (int i = 0; i < proto.getSentenceCount(); ++i) {
       CoreNLPProtos.Sentence sentence = proto.getSentenceList().get(i);
       CoreMap map = sentences.get(i);
       List<CoreLabel> sentenceTokens = map.get(TokensAnnotation.class);
       // Set dependency graphs
       if (sentence.hasBasicDependencies()) {
-        map.set(BasicDependenciesAnnotation.class, fromProto(sentence.getBasicDependencies(), sentenceTokens, docid));
+        setFromProto(map, BasicDependenciesAnnotation.class, () -> fromProto(sentence.getBasicDependencies(), sentenceTokens, docidForGraphs));
       }
       if (sentence.hasCollapsedDependencies()) {
-        map.set(CollapsedDependenciesAnnotation.class, fromProto(sentence.getCollapsedDependencies(), sentenceTokens, docid));
+        setFromProto(map, CollapsedDependenciesAnnotation.class, () -> fromProto(sentence.getCollapsedDependencies(), sentenceTokens, docidForGraphs));
       }
       if (sentence.hasCollapsedCCProcessedDependencies()) {
-        map.set(CollapsedCCProcessedDependenciesAnnotation.class, fromProto(sentence.getCollapsedCCProcessedDependencies(), sentenceTokens, docid));
+        setFromProto(map, CollapsedCCProcessedDependenciesAnnotation.class, () -> fromProto(sentence.getCollapsedCCProcessedDependencies(), sentenceTokens, docidForGraphs));
       }
       if (sentence.hasAlternativeDependencies()) {
-        map.set(AlternativeDependenciesAnnotation.class, fromProto(sentence.getAlternativeDependencies(), sentenceTokens, docid));
+        setFromProto(map, AlternativeDependenciesAnnotation.class, () -> fromProto(sentence.getAlternativeDependencies(), sentenceTokens, docidForGraphs));
       }
       // Set relation triples
       if (sentence.getOpenieTripleCount() > 0) {
-        List<RelationTriple> triples = new ArrayList<>();
-        for (CoreNLPProtos.OpenIETriple triple : sentence.getOpenieTripleList()) {
-          triples.add(fromProto(triple, sentenceTokens, docid));
-        }
-        map.set(NaturalLogicAnnotations.RelationTriplesAnnotation.class, triples);
+        setFromProto(map, NaturalLogicAnnotations.RelationTriplesAnnotation.class, () -> {
+          List<RelationTriple> triples = new ArrayList<>();
+          for (CoreNLPProtos.OpenIETriple triple : sentence.getOpenieTripleList()) {
+            triples.add(fromProto(triple, sentenceTokens, docidForGraphs));
+          }
+          return triples;
+        });
       }
       // Redo some light annotation
       if ( map.containsKey(TokensAnnotation.class) &&
@@ -1008,12 +1074,14 @@ public class ProtobufAnnotationSerializer extends AnnotationSerializer {
     }
 
     // Set quotes
-    List<CoreMap> quotes = new ArrayList<>();
-    for (CoreNLPProtos.Quote quote : proto.getQuoteList()) {
-      quotes.add(fromProto(quote, tokens));
-    }
-    if (!quotes.isEmpty()) {
-      ann.set(QuotationsAnnotation.class, quotes);
+    if (proto.getQuoteCount() > 0) {
+      setFromProto(ann, QuotationsAnnotation.class, () -> {
+        List<CoreMap> quotes = new ArrayList<>();
+        for (CoreNLPProtos.Quote quote : proto.getQuoteList()) {
+          quotes.add(fromProto(quote, tokens));
+        }
+        return quotes;
+      });
     }
 
     // Return
@@ -11,8 +11,14 @@ import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
 /**
  * A parent class for annotators which might want to analyze one
  * sentence at a time, possibly in a multithreaded manner.
- *
- * TODO: also factor out the POS
+ * <br>
+ * An {@link AnnotationPipeline} with sentenceThreads set may skip
+ * {@link #annotate} for an annotator which is {@link #isThreadSafe} and
+ * instead call {@link #doOneSentence} for each sentence from its own
+ * threads, interleaved with the other sentence annotators of the
+ * pipeline, and then {@link #finishDocument}.  Work which
+ * needs the whole document after the sentences are done therefore belongs
+ * in {@link #finishDocument} rather than in an override of annotate.
  *
  * @author John Bauer
  */
@@ -96,6 +102,7 @@ public abstract class SentenceAnnotator implements Annotator {
           doOneSentence(annotation, sentence);
         }
       }
+      finishDocument(annotation);
     } else {
       throw new RuntimeException("unable to find sentences in: " + annotation);
     }
@@ -103,6 +110,18 @@ public abstract class SentenceAnnotator implements Annotator {
 
   protected abstract int nThreads();
 
+  /**
+   * Whether {@link #doOneSentence} may be called for different sentences
+   * of a document from several threads at once, by an
+   * {@link AnnotationPipeline} with sentenceThreads set.  Annotators which
+   * keep state of their own while annotating a sentence, or which do
+   * better on the whole document at once, should leave this false, and
+   * are then always run through {@link #annotate}.
+   */
+  protected boolean isThreadSafe() {
+    return false;
+  }
+
   protected abstract long maxTime();
 
   /** annotation is included in case there is global information we care about */
@@ -113,5 +132,13 @@ public abstract class SentenceAnnotator implements Annotator {
    * failed or timed out.  Not supposed to do major processing.
    */
   protected abstract void doOneFailedSentence(Annotation annotation, CoreMap sentence);
+
+  /**
+   * Called once all the sentences of the document have been annotated,
+   * for any processing which needs the whole document.  Does nothing by
+   * default.
+   */
+  protected void finishDocument(Annotation annotation) {
+  }
 }
 
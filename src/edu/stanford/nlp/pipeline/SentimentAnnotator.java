@@ -10,8 +10,8 @@ import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.neural.rnn.RNNCoreAnnotations;
 import edu.stanford.nlp.sentiment.CollapseUnaryTransformer;
+import edu.stanford.nlp.sentiment.FlatSentimentModel;
 import edu.stanford.nlp.sentiment.SentimentCoreAnnotations;
-import edu.stanford.nlp.sentiment.SentimentCostAndGradient;
 import edu.stanford.nlp.sentiment.SentimentModel;
 import edu.stanford.nlp.sentiment.SentimentUtils;
 import edu.stanford.nlp.trees.Tree;
@@ -19,6 +19,7 @@ import edu.stanford.nlp.trees.TreeCoreAnnotations;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.IntPair;
+import edu.stanford.nlp.util.PropertiesUtils;
 
 /**
  * This annotator attaches a binarized tree with sentiment annotations
@@ -35,16 +36,23 @@ import edu.stanford.nlp.util.IntPair;
  * ParserAnnotator is because it may require specific options set in
  * the parser.  An alternative would be to do the binarization here,
  * which would require at a minimum the HeadFinder used in the parser.
+ * <br>
+ * The sentences of a document are independent, so with
+ * <code>sentiment.nthreads</code> (or <code>nthreads</code>) set to more
+ * than one, they are scored in parallel, all sharing the one model.
  *
  * @author John Bauer
  */
-public class SentimentAnnotator implements Annotator {
+public class SentimentAnnotator extends SentenceAnnotator {
 
   private static final String DEFAULT_MODEL = "edu/stanford/nlp/models/sentiment/sentiment.ser.gz";
 
   private final String modelPath;
   private final SentimentModel model;
+  /** The model's weights in the form used for labelling trees */
+  private final FlatSentimentModel flatModel;
   private final CollapseUnaryTransformer transformer = new CollapseUnaryTransformer();
+  private final int nThreads;
 
   public SentimentAnnotator(String name, Properties props) {
     this.modelPath = props.getProperty(name + ".model", DEFAULT_MODEL);
@@ -52,6 +60,13 @@ public class SentimentAnnotator implements Annotator {
       throw new IllegalArgumentException("No model specified for Sentiment annotator");
     }
     this.model = SentimentModel.loadSerialized(modelPath);
+    this.flatModel = new FlatSentimentModel(model);
+    this.nThreads = PropertiesUtils.getInt(props, name + ".nthreads", PropertiesUtils.getInt(props, "nthreads", 1));
+  }
+
+  public static String signature(String annotatorName, Properties props) {
+    return annotatorName + ".model=" + props.getProperty(annotatorName + ".model") + ';' +
+        annotatorName + ".nthreads=" + props.getProperty(annotatorName + ".nthreads", props.getProperty("nthreads", ""));
   }
 
   @Override
@@ -65,53 +80,65 @@ public class SentimentAnnotator implements Annotator {
   }
 
   @Override
-  public void annotate(Annotation annotation) {
-    if (annotation.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
-      // TODO: parallelize
-      List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
-      for (CoreMap sentence : sentences) {
-        Tree binarized = sentence.get(TreeCoreAnnotations.BinarizedTreeAnnotation.class);
-        if (binarized == null) {
-          throw new AssertionError("Binarized sentences not built by parser");
+  protected int nThreads() {
+    return nThreads;
+  }
+
+  @Override
+  protected long maxTime() {
+    return -1;
+  }
+
+  @Override
+  protected boolean isThreadSafe() {
+    // the flat model is only read while labelling a tree
+    return true;
+  }
+
+  @Override
+  protected void doOneSentence(Annotation annotation, CoreMap sentence) {
+    Tree binarized = sentence.get(TreeCoreAnnotations.BinarizedTreeAnnotation.class);
+    if (binarized == null) {
+      throw new AssertionError("Binarized sentences not built by parser");
+    }
+    Tree collapsedUnary = transformer.transformTree(binarized);
+    flatModel.forwardPropagateTree(collapsedUnary);
+    sentence.set(SentimentCoreAnnotations.SentimentAnnotatedTree.class, collapsedUnary);
+    int sentiment = RNNCoreAnnotations.getPredictedClass(collapsedUnary);
+    sentence.set(SentimentCoreAnnotations.SentimentClass.class, SentimentUtils.sentimentString(model, sentiment));
+    Tree tree = sentence.get(TreeCoreAnnotations.TreeAnnotation.class);
+    if (tree != null) {
+      collapsedUnary.setSpans();
+      // map the sentiment annotations onto the tree
+      Map<IntPair,String> spanSentiment = Generics.newHashMap();
+      for (Tree bt : collapsedUnary) {
+        IntPair p = bt.getSpan();
+        int sen = RNNCoreAnnotations.getPredictedClass(bt);
+        String sentStr = SentimentUtils.sentimentString(model, sen);
+        if ( ! spanSentiment.containsKey(p)) {
+          // we'll take the first = highest one discovered
+          spanSentiment.put(p, sentStr);
         }
-        Tree collapsedUnary = transformer.transformTree(binarized);
-        SentimentCostAndGradient scorer = new SentimentCostAndGradient(model, null);
-        scorer.forwardPropagateTree(collapsedUnary);
-        sentence.set(SentimentCoreAnnotations.SentimentAnnotatedTree.class, collapsedUnary);
-        int sentiment = RNNCoreAnnotations.getPredictedClass(collapsedUnary);
-        sentence.set(SentimentCoreAnnotations.SentimentClass.class, SentimentUtils.sentimentString(model, sentiment));
-        Tree tree = sentence.get(TreeCoreAnnotations.TreeAnnotation.class);
-        if (tree != null) {
-          collapsedUnary.setSpans();
-          // map the sentiment annotations onto the tree
-          Map<IntPair,String> spanSentiment = Generics.newHashMap();
-          for (Tree bt : collapsedUnary) {
-            IntPair p = bt.getSpan();
-            int sen = RNNCoreAnnotations.getPredictedClass(bt);
-            String sentStr = SentimentUtils.sentimentString(model, sen);
-            if ( ! spanSentiment.containsKey(p)) {
-              // we'll take the first = highest one discovered
-              spanSentiment.put(p, sentStr);
-            }
-          }
-          if (((CoreLabel) tree.label()).containsKey(CoreAnnotations.SpanAnnotation.class)) {
-            throw new IllegalStateException("This code assumes you don't have SpanAnnotation");
-          }
-          tree.setSpans();
-          for (Tree t : tree) {
-            IntPair p = t.getSpan();
-            String str = spanSentiment.get(p);
-            if (str != null) {
-              CoreLabel cl = (CoreLabel) t.label();
-              cl.set(SentimentCoreAnnotations.SentimentClass.class, str);
-              cl.remove(CoreAnnotations.SpanAnnotation.class);
-            }
-          }
+      }
+      if (((CoreLabel) tree.label()).containsKey(CoreAnnotations.SpanAnnotation.class)) {
+        throw new IllegalStateException("This code assumes you don't have SpanAnnotation");
+      }
+      tree.setSpans();
+      for (Tree t : tree) {
+        IntPair p = t.getSpan();
+        String str = spanSentiment.get(p);
+        if (str != null) {
+          CoreLabel cl = (CoreLabel) t.label();
+          cl.set(SentimentCoreAnnotations.SentimentClass.class, str);
+          cl.remove(CoreAnnotations.SpanAnnotation.class);
         }
       }
-    } else {
-      throw new RuntimeException("unable to find sentences in: " + annotation);
     }
   }
 
+  @Override
+  protected void doOneFailedSentence(Annotation annotation, CoreMap sentence) {
+    // a sentence without a sentiment is simply left unannotated
+  }
+
 }
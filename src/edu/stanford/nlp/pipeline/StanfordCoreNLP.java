@@ -109,6 +109,12 @@ public class StanfordCoreNLP extends AnnotationPipeline {
 
   private Semaphore availableProcessors;
 
+  /** Annotated documents, if the annotationCache.dir property is set; otherwise null */
+  private AnnotationCache annotationCache;
+
+  /** The annotators of this pipeline and the signatures of their factories, for keying the annotation cache */
+  private String signature;
+
 
   /**
    * Constructs a pipeline using as properties the properties file found in the classpath
@@ -345,10 +351,12 @@ public class StanfordCoreNLP extends AnnotationPipeline {
     } else {
       this.availableProcessors = new Semaphore(1);
     }
+    setSentenceThreads(PropertiesUtils.getInt(this.properties, "sentenceThreads", 1));
 
     // now construct the annotators from the given properties in the given order
     List<String> annoNames = Arrays.asList(getRequiredProperty(props, "annotators").split("[, \t]+"));
     Set<String> alreadyAddedAnnoNames = Generics.newHashSet();
+    StringBuilder pipelineSignature = new StringBuilder();
     Set<Requirement> requirementsSatisfied = Generics.newHashSet();
     for (String name : annoNames) {
       name = name.trim();
@@ -371,6 +379,15 @@ public class StanfordCoreNLP extends AnnotationPipeline {
 
 
       alreadyAddedAnnoNames.add(name);
+      pipelineSignature.append(name).append('\n').append(pool.signature(name)).append('\n');
+    }
+    this.signature = pipelineSignature.toString();
+
+    String cacheDir = props.getProperty("annotationCache.dir");
+    if (cacheDir != null) {
+      long maxBytes = PropertiesUtils.getLong(props, "annotationCache.maxMB", 1024) * 1024 * 1024;
+      int memoryEntries = PropertiesUtils.getInt(props, "annotationCache.memoryEntries", 1000);
+      this.annotationCache = AnnotationCache.open(new File(cacheDir), maxBytes, memoryEntries);
     }
 
     // Sanity check
@@ -387,6 +404,19 @@ public class StanfordCoreNLP extends AnnotationPipeline {
     pool = null;
   }
 
+  /**
+   * Call this when a pipeline is no longer used, so that the annotator
+   * pool does not keep its annotators in memory for later pipelines.
+   * Annotators which other pipelines use are kept, and still shared.
+   */
+  public static synchronized void releaseAnnotators(AnnotationPipeline pipeline) {
+    if (pool != null) {
+      for (Annotator annotator : pipeline.annotators()) {
+        pool.release(annotator);
+      }
+    }
+  }
+
   /**
    * Construct the default annotator pool from the passed properties, and overwriting annotations which have changed
    * since the last
@@ -476,9 +506,18 @@ public class StanfordCoreNLP extends AnnotationPipeline {
     }
   }
 
+  /**
+   * {@inheritDoc}
+   * If the annotationCache.dir property is set, documents which this
+   * pipeline has annotated before are read from the cache instead.
+   */
   @Override
   public void annotate(Annotation annotation) {
-    super.annotate(annotation);
+    if (annotationCache != null) {
+      annotationCache.annotate(annotation, signature, super::annotate);
+    } else {
+      super.annotate(annotation);
+    }
     List<CoreLabel> words = annotation.get(CoreAnnotations.TokensAnnotation.class);
     if (words != null) {
       numWords += words.size();
@@ -723,6 +762,10 @@ public class StanfordCoreNLP extends AnnotationPipeline {
     os.println("\t\"replaceExtension\" - flag to chop off the last extension before adding outputExtension to file");
     os.println("\t\"noClobber\" - don't automatically override (clobber) output files that already exist");
 		os.println("\t\"threads\" - multithread on this number of threads");
+    os.println("\t\"sentenceThreads\" - run the sentences of each document through the thread safe sentence level annotators (pos, lemma, sentiment) on this number of threads");
+    os.println("\t\"annotationCache.dir\" - cache annotated documents in this directory, and reuse them when the same text is annotated again");
+    os.println("\t\"annotationCache.maxMB\" - the maximum size of the annotation cache on disk (default 1024)");
+    os.println("\t\"annotationCache.memoryEntries\" - the number of cached documents to also keep in memory (default 1000)");
     os.println();
     os.println("If none of the above are present, run the pipeline in an interactive shell (default properties will be loaded from the classpath).");
     os.println("The shell accepts input from stdin and displays the output at stdout.");
@@ -746,6 +789,9 @@ public class StanfordCoreNLP extends AnnotationPipeline {
       sb.append(String.format("%.1f", numWords / (((double) total)/1000)));
       sb.append( " tokens/sec.");
     }
+    if (annotationCache != null) {
+      sb.append('\n').append(annotationCache);
+    }
     return sb.toString();
   }
 
@@ -4,7 +4,12 @@ import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.ling.CoreAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.Execution;
 import edu.stanford.nlp.util.MetaClass;
 import edu.stanford.nlp.util.Pair;
 import edu.stanford.nlp.util.StringUtils;
@@ -14,28 +19,101 @@ import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URLDecoder;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import static edu.stanford.nlp.util.logging.Redwood.Util.*;
 
 /**
  * This class creates a server that runs a new Java annotator in each thread.
  *
+ * <p>
+ *   Annotation requests are run on a fixed pool of worker threads
+ *   (<code>-threads</code>), fed from a bounded queue (<code>-queueSize</code>).
+ *   Requests which arrive when the queue is full are rejected immediately with a
+ *   503, rather than piling up behind slow documents; requests which take longer
+ *   than <code>-timeout</code> milliseconds are interrupted and return an error.
+ *   Queue and latency statistics are served from <code>/stats</code>.
+ * </p>
+ *
+ * <p>
+ *   Very large plain text documents can be posted to <code>/stream</code> instead,
+ *   which reads the request a chunk at a time and writes each annotated sentence as soon
+ *   as its chunk is done; see {@link StreamingAnnotateHandler}.
+ * </p>
+ *
  */
 public class StanfordCoreNLPServer implements Runnable {
   protected static int DEFAULT_PORT = 9000;
 
   protected HttpServer server;
-  protected int serverPort;
+  @Execution.Option(name="port", gloss="The port to run the server on")
+  protected int serverPort = DEFAULT_PORT;
+  @Execution.Option(name="threads", gloss="The number of worker threads annotating documents concurrently")
+  protected int serverThreads = Runtime.getRuntime().availableProcessors();
+  @Execution.Option(name="queueSize", gloss="The number of requests which may wait for a worker thread before new requests are rejected")
+  protected int maxQueueSize = 64;
+  @Execution.Option(name="timeout", gloss="The maximum time in milliseconds to spend annotating a request; 0 or less means no limit")
+  protected long timeoutMilliseconds = 60000;
+  @Execution.Option(name="retryAfter", gloss="The number of seconds a client is told to wait before retrying a request which was rejected or timed out")
+  protected int retryAfterSeconds = 1;
+  @Execution.Option(name="pipelineCacheSize", gloss="The maximum number of distinct pipelines to keep loaded")
+  protected int pipelineCacheSize = 8;
+  @Execution.Option(name="preload", gloss="Annotator lists to load at startup, separated by semicolons (e.g., 'tokenize,ssplit,pos;tokenize,ssplit,pos,lemma,ner'), or 'default' for the default pipeline")
+  protected String preloadAnnotators = "";
+  @Execution.Option(name="streamChunkSize", gloss="The approximate number of characters of a /stream request to annotate at a time")
+  protected int streamChunkSize = 64 * 1024;
   protected final FileHandler staticPageHandle;
 
+  /**
+   * The pool of workers which actually run annotation requests.
+   * This is created when the server is started.
+   */
+  protected ThreadPoolExecutor annotationExecutor;
+  /** Request counters and timings, reported by the /stats endpoint. */
+  protected final ServerStats stats = new ServerStats();
+  /** The pipelines this server has loaded, shared between all handlers. */
+  protected final PipelineCache pipelineCache;
+  /**
+   * The pipelines which split streamed text into sentences (see {@link #splitterProperties}).
+   * These are kept apart from the requested pipelines, so that streaming does not evict them.
+   */
+  protected final PipelineCache splitterCache;
+
   public static int HTTP_OK = 200;
   public static int HTTP_BAD_INPUT = 400;
   public static int HTTP_ERR = 500;
+  public static int HTTP_UNAVAILABLE = 503;
   public final Properties defaultProps;
 
 
   public StanfordCoreNLPServer(int port) throws IOException {
+    this(new Properties());
     serverPort = port;
+  }
+
+  /**
+   * Create a new server, reading its configuration (port, threads, queueSize, timeout)
+   * from the given properties.
+   *
+   * @param serverProperties The options for the server itself -- not the default pipeline properties.
+   * @throws IOException Thrown if the static demo page could not be loaded.
+   */
+  public StanfordCoreNLPServer(Properties serverProperties) throws IOException {
+    Execution.fillOptions(this, serverProperties);
+    if (serverThreads < 1) {
+      throw new IllegalArgumentException("Server must have at least one worker thread: " + serverThreads);
+    }
+    if (maxQueueSize < 1) {
+      throw new IllegalArgumentException("Server queue size must be positive: " + maxQueueSize);
+    }
+    if (streamChunkSize < 1) {
+      throw new IllegalArgumentException("Stream chunk size must be positive: " + streamChunkSize);
+    }
+    this.pipelineCache = new PipelineCache(pipelineCacheSize);
+    this.splitterCache = new PipelineCache(pipelineCacheSize);
 
     defaultProps = new Properties();
     defaultProps.setProperty("annotators", "tokenize, ssplit, pos, lemma, ner, parse, depparse, natlog, openie, dcoref");
@@ -78,42 +156,203 @@ public class StanfordCoreNLPServer implements Runnable {
   }
 
   /**
-   * The main handler for taking an annotation request, and annotating it.
+   * Counters for the requests this server has handled, and how long they took.
+   * All fields are safe to update from multiple threads.
    */
-  protected class SimpleAnnotateHandler implements HttpHandler {
+  protected static class ServerStats {
+    /** The number of annotation requests which completed successfully. */
+    public final AtomicLong served = new AtomicLong(0);
+    /** The number of requests turned away because the queue was full. */
+    public final AtomicLong rejected = new AtomicLong(0);
+    /** The number of requests which exceeded the annotation timeout. */
+    public final AtomicLong timedOut = new AtomicLong(0);
+    /** The number of requests which failed with an exception. */
+    public final AtomicLong failed = new AtomicLong(0);
+    /** The number of requests currently waiting for, or running on, a worker. */
+    public final AtomicInteger inFlight = new AtomicInteger(0);
+    /** The total time successful requests spent waiting in the queue, in nanoseconds. */
+    public final AtomicLong totalQueueNanos = new AtomicLong(0);
+    /** The total time successful requests spent from admission to response, in nanoseconds. */
+    public final AtomicLong totalLatencyNanos = new AtomicLong(0);
+    /** The longest time any successful request took from admission to response, in nanoseconds. */
+    public final AtomicLong maxLatencyNanos = new AtomicLong(0);
+
+    /** Record a request which completed successfully. */
+    public void recordServed(long queueNanos, long latencyNanos) {
+      served.incrementAndGet();
+      totalQueueNanos.addAndGet(queueNanos);
+      totalLatencyNanos.addAndGet(latencyNanos);
+      long max = maxLatencyNanos.get();
+      while (latencyNanos > max && !maxLatencyNanos.compareAndSet(max, latencyNanos)) {
+        max = maxLatencyNanos.get();
+      }
+    }
+  }
+
+  /**
+   * A cache of loaded pipelines, keyed on a canonical signature of the properties they were
+   * created with (see {@link PipelineCache#signature(Properties)}), rather than on the identity of
+   * a per-request Properties object.
+   * Pipelines are evicted least-recently-used first, once there are more than the maximum number.
+   * Annotators common to several pipelines are shared through the {@link AnnotatorPool}; when a
+   * pipeline is evicted, the pool lets go of its annotators too, so that those which no other
+   * pipeline uses can be garbage collected once any requests still using them finish.
+   */
+  protected static class PipelineCache {
     /**
-     * The default properties to use in the absence of anything sent by the client.
+     * Properties which only affect how a request is read or written, and so should not force
+     * a new pipeline to be created.
      */
-    public final Properties defaultProps;
+    private static final Set<String> TRANSPORT_PROPERTIES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+        "inputFormat", "outputFormat", "serializer", "inputSerializer", "outputSerializer")));
+
+    private final int maxPipelines;
+    /** The loaded pipelines, in least-recently-used order. Guarded by itself. */
+    private final LinkedHashMap<String, StanfordCoreNLP> pipelines = new LinkedHashMap<>(16, 0.75f, true);
     /**
-     * To prevent grossly wasteful over-creation of pipeline objects, cache the last
-     * few we created, until the garbage collector decides we can kill them.
+     * Pipelines are constructed one at a time, even by different caches: the annotator pool
+     * is static and shared, and loading a model twice in parallel would only waste memory.
      */
-    private final WeakHashMap<Properties, StanfordCoreNLP> pipelineCache = new WeakHashMap<>();
+    private static final Object constructionLock = new Object();
+
+    public final AtomicLong hits = new AtomicLong(0);
+    public final AtomicLong misses = new AtomicLong(0);
+    public final AtomicLong evictions = new AtomicLong(0);
 
     /**
-     * Create a handler for accepting annotation requests.
-     * @param props The properties file to use as the default if none were sent by the client.
+     * @param maxPipelines The maximum number of pipelines to keep loaded.
      */
-    public SimpleAnnotateHandler(Properties props) {
-      defaultProps = props;
+    public PipelineCache(int maxPipelines) {
+      this.maxPipelines = Math.max(1, maxPipelines);
+    }
+
+    /**
+     * The canonical signature of a set of pipeline properties: the normalized annotator list,
+     * followed by every other property which could affect annotation, in sorted order.
+     */
+    public static String signature(Properties props) {
+      StringBuilder signature = new StringBuilder();
+      String annotators = props.getProperty("annotators", "");
+      signature.append("annotators=").append(StanfordCoreNLP.ensurePrerequisiteAnnotators(annotators.trim().split("[, \t]+"))).append('\n');
+      for (String key : new TreeSet<>(props.stringPropertyNames())) {
+        if (!key.equals("annotators") && !TRANSPORT_PROPERTIES.contains(key)) {
+          signature.append(key).append('=').append(props.getProperty(key)).append('\n');
+        }
+      }
+      return signature.toString();
     }
 
     /**
-     * Create (or retrieve) a StanfordCoreNLP object corresponding to these properties.
-     * @param props The properties to create the object with.
+     * Create (or retrieve) a pipeline corresponding to these properties.
+     * @param props The properties to create the pipeline with.
      * @return A pipeline parameterized by these properties.
      */
-    private StanfordCoreNLP mkStanfordCoreNLP(Properties props) {
-      StanfordCoreNLP impl;
-      synchronized (pipelineCache) {
-        impl = pipelineCache.get(props);
-        if (impl == null) {
-          impl = new StanfordCoreNLP(props);
-          pipelineCache.put(props, impl);
+    public StanfordCoreNLP get(Properties props) {
+      String signature = signature(props);
+      synchronized (pipelines) {
+        StanfordCoreNLP impl = pipelines.get(signature);
+        if (impl != null) {
+          hits.incrementAndGet();
+          return impl;
         }
       }
-      return impl;
+      synchronized (constructionLock) {
+        // Someone may have loaded this pipeline while we were waiting
+        synchronized (pipelines) {
+          StanfordCoreNLP impl = pipelines.get(signature);
+          if (impl != null) {
+            hits.incrementAndGet();
+            return impl;
+          }
+        }
+        misses.incrementAndGet();
+        StanfordCoreNLP impl = new StanfordCoreNLP(props);
+        List<StanfordCoreNLP> evicted;
+        synchronized (pipelines) {
+          pipelines.put(signature, impl);
+          evicted = evict();
+        }
+        for (StanfordCoreNLP pipeline : evicted) {
+          StanfordCoreNLP.releaseAnnotators(pipeline);
+        }
+        return impl;
+      }
+    }
+
+    /**
+     * Evict least-recently-used pipelines until we are within our limit.
+     * The pipeline just added is the most recently used, and is never evicted.
+     * @return The evicted pipelines
+     */
+    private List<StanfordCoreNLP> evict() {
+      List<StanfordCoreNLP> evicted = new ArrayList<>();
+      Iterator<StanfordCoreNLP> iter = pipelines.values().iterator();
+      while (pipelines.size() > maxPipelines) {
+        evicted.add(iter.next());
+        iter.remove();
+        evictions.incrementAndGet();
+      }
+      return evicted;
+    }
+
+    /** The number of pipelines currently loaded. */
+    public int size() {
+      synchronized (pipelines) {
+        return pipelines.size();
+      }
+    }
+  }
+
+  /**
+   * Report the state of the worker pool, along with request counts and latencies, as JSON.
+   */
+  protected class StatsHandler implements HttpHandler {
+    @Override
+    public void handle(HttpExchange httpExchange) throws IOException {
+      long served = stats.served.get();
+      ThreadPoolExecutor executor = annotationExecutor;
+      StringBuilder b = new StringBuilder();
+      b.append("{\n");
+      b.append("  \"threads\": ").append(serverThreads).append(",\n");
+      b.append("  \"activeThreads\": ").append(executor == null ? 0 : executor.getActiveCount()).append(",\n");
+      b.append("  \"queueDepth\": ").append(executor == null ? 0 : executor.getQueue().size()).append(",\n");
+      b.append("  \"queueCapacity\": ").append(maxQueueSize).append(",\n");
+      b.append("  \"inFlight\": ").append(stats.inFlight.get()).append(",\n");
+      b.append("  \"served\": ").append(served).append(",\n");
+      b.append("  \"rejected\": ").append(stats.rejected.get()).append(",\n");
+      b.append("  \"timedOut\": ").append(stats.timedOut.get()).append(",\n");
+      b.append("  \"failed\": ").append(stats.failed.get()).append(",\n");
+      b.append("  \"meanQueueMillis\": ").append(served == 0 ? 0.0 : stats.totalQueueNanos.get() / 1e6 / served).append(",\n");
+      b.append("  \"meanLatencyMillis\": ").append(served == 0 ? 0.0 : stats.totalLatencyNanos.get() / 1e6 / served).append(",\n");
+      b.append("  \"maxLatencyMillis\": ").append(stats.maxLatencyNanos.get() / 1e6).append(",\n");
+      b.append("  \"pipelinesLoaded\": ").append(pipelineCache.size()).append(",\n");
+      b.append("  \"pipelineCacheHits\": ").append(pipelineCache.hits.get()).append(",\n");
+      b.append("  \"pipelineCacheMisses\": ").append(pipelineCache.misses.get()).append(",\n");
+      b.append("  \"pipelineCacheEvictions\": ").append(pipelineCache.evictions.get()).append("\n");
+      b.append("}\n");
+      byte[] response = b.toString().getBytes("UTF-8");
+      httpExchange.getResponseHeaders().set("Content-Type", "text/json");
+      httpExchange.sendResponseHeaders(HTTP_OK, response.length);
+      httpExchange.getResponseBody().write(response);
+      httpExchange.close();
+    }
+  }
+
+  /**
+   * The main handler for taking an annotation request, and annotating it.
+   */
+  protected class SimpleAnnotateHandler implements HttpHandler {
+    /**
+     * The default properties to use in the absence of anything sent by the client.
+     */
+    public final Properties defaultProps;
+
+    /**
+     * Create a handler for accepting annotation requests.
+     * @param props The properties file to use as the default if none were sent by the client.
+     */
+    public SimpleAnnotateHandler(Properties props) {
+      defaultProps = props;
     }
 
     public String getContentType(Properties props, StanfordCoreNLP.OutputFormat of) {
@@ -168,33 +407,78 @@ public class StanfordCoreNLPServer implements Runnable {
         return;
       }
 
+      // Annotate on a worker thread, so that a slow document does not block other clients
+      final Properties requestProps = props;
+      final Annotation document = ann;
+      final long admittedAt = System.nanoTime();
+      final long[] startedAt = new long[]{ admittedAt };
+      Future<byte[]> result;
+      stats.inFlight.incrementAndGet();
       try {
-        // Annotate
-        StanfordCoreNLP pipeline = mkStanfordCoreNLP(props);
-        pipeline.annotate(ann);
+        result = annotationExecutor.submit(() -> {
+          startedAt[0] = System.nanoTime();
+          StanfordCoreNLP pipeline = pipelineCache.get(requestProps);
+          pipeline.annotate(document);
+          // Get output
+          ByteArrayOutputStream os = new ByteArrayOutputStream();
+          StanfordCoreNLP.createOutputter(requestProps, AnnotationOutputter.getOptions(pipeline)).accept(document, os);
+          os.close();
+          return os.toByteArray();
+        });
+      } catch (RejectedExecutionException e) {
+        stats.inFlight.decrementAndGet();
+        stats.rejected.incrementAndGet();
+        log("[" + httpExchange.getRemoteAddress() + "] Rejected: server is overloaded");
+        respondUnavailable(httpExchange, "CoreNLP server is overloaded; try again later\n");
+        return;
+      }
 
-        // Get output
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        StanfordCoreNLP.createOutputter(props, AnnotationOutputter.getOptions(pipeline)).accept(ann, os);
-        os.close();
-        byte[] response = os.toByteArray();
+      try {
+        byte[] response = timeoutMilliseconds > 0 ? result.get(timeoutMilliseconds, TimeUnit.MILLISECONDS) : result.get();
+        stats.recordServed(startedAt[0] - admittedAt, System.nanoTime() - admittedAt);
 
         httpExchange.getResponseHeaders().add("Content-Type", getContentType(props, of));
         httpExchange.getResponseHeaders().add("Content-Length", Integer.toString(response.length));
         httpExchange.sendResponseHeaders(HTTP_OK, response.length);
         httpExchange.getResponseBody().write(response);
         httpExchange.close();
+      } catch (TimeoutException e) {
+        // Interrupt the worker; annotators which check for interrupts will stop early
+        result.cancel(true);
+        stats.timedOut.incrementAndGet();
+        log("[" + httpExchange.getRemoteAddress() + "] Timed out after " + timeoutMilliseconds + "ms");
+        respondUnavailable(httpExchange, "CoreNLP request timed out after " + timeoutMilliseconds + "ms\n");
       } catch (Exception e) {
         // Return error message.
-        e.printStackTrace();
-        String response = e.getMessage();
-        httpExchange.getResponseHeaders().add("Content-Type", "text/plain");
-        httpExchange.sendResponseHeaders(HTTP_ERR, response.length());
-        httpExchange.getResponseBody().write(response.getBytes());
-        httpExchange.close();
+        Throwable cause = (e instanceof ExecutionException && e.getCause() != null) ? e.getCause() : e;
+        cause.printStackTrace();
+        stats.failed.incrementAndGet();
+        respondError(httpExchange, HTTP_ERR, String.valueOf(cause.getMessage()));
+      } finally {
+        stats.inFlight.decrementAndGet();
       }
     }
 
+    /**
+     * Send a plain text error message to the client, and close the exchange.
+     */
+    protected void respondError(HttpExchange httpExchange, int status, String message) throws IOException {
+      byte[] response = message.getBytes("UTF-8");
+      httpExchange.getResponseHeaders().add("Content-Type", "text/plain");
+      httpExchange.sendResponseHeaders(status, response.length);
+      httpExchange.getResponseBody().write(response);
+      httpExchange.close();
+    }
+
+    /**
+     * Tell the client that the server cannot annotate its request right now,
+     * and how long to wait before trying again.
+     */
+    protected void respondUnavailable(HttpExchange httpExchange, String message) throws IOException {
+      httpExchange.getResponseHeaders().add("Retry-After", Integer.toString(retryAfterSeconds));
+      respondError(httpExchange, HTTP_UNAVAILABLE, message);
+    }
+
     Map<String, String> getURLParams(URI uri) {
       if (uri.getQuery() != null) {
         Map<String, String> urlParams = new HashMap<>();
@@ -214,7 +498,7 @@ public class StanfordCoreNLPServer implements Runnable {
       }
     }
 
-    private Properties getProperties(HttpExchange httpExchange) throws UnsupportedEncodingException {
+    protected Properties getProperties(HttpExchange httpExchange) throws UnsupportedEncodingException {
       // Load the default properties
       Properties props = new Properties();
       defaultProps.entrySet().stream()
@@ -252,27 +536,347 @@ public class StanfordCoreNLPServer implements Runnable {
     }
   }
 
+  /**
+   * Annotates a plain text document which may be too large to hold in memory, either as
+   * text or as a single Annotation.
+   * The request body is read a chunk of about <code>-streamChunkSize</code> characters at a
+   * time; each chunk is cut at its last sentence boundary, annotated as a document of its own,
+   * and its sentences are written out before the next chunk is read.
+   * The response is sent with chunked transfer encoding, as either one JSON object per
+   * sentence per line (<code>outputFormat=json</code>), or length-delimited
+   * {@link CoreNLPProtos.Sentence} messages (<code>outputFormat=serialized</code>).
+   * Character offsets and sentence indices are relative to the whole document.
+   *
+   * <p>
+   *   As each chunk is a separate document, document level annotators (e.g., coreference)
+   *   only see the sentences of one chunk, and their document level output is not sent.
+   *   The request timeout does not apply, since a streamed document has no bound on its size.
+   * </p>
+   */
+  protected class StreamingAnnotateHandler extends SimpleAnnotateHandler {
+
+    public StreamingAnnotateHandler(Properties props) {
+      super(props);
+    }
+
+    @Override
+    public void handle(HttpExchange httpExchange) throws IOException {
+      httpExchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+      log("[" + httpExchange.getRemoteAddress() + "] Received stream");
+
+      final Properties props;
+      final Properties splitterProps;
+      final StanfordCoreNLP.OutputFormat of;
+      try {
+        props = getProperties(httpExchange);
+        of = StanfordCoreNLP.OutputFormat.valueOf(props.getProperty("outputFormat", "json").toUpperCase());
+        if (!"text".equals(props.getProperty("inputFormat"))) {
+          throw new IllegalArgumentException("Only text input can be streamed");
+        }
+        if (of != StanfordCoreNLP.OutputFormat.JSON && of != StanfordCoreNLP.OutputFormat.SERIALIZED) {
+          throw new IllegalArgumentException("Streamed output must be json or serialized: " + of);
+        }
+        splitterProps = splitterProperties(props);
+      } catch (Exception e) {
+        e.printStackTrace();
+        respondError(httpExchange, HTTP_BAD_INPUT, String.valueOf(e.getMessage()));
+        return;
+      }
+
+      final long admittedAt = System.nanoTime();
+      final long[] startedAt = new long[]{ admittedAt };
+      final boolean[] responding = new boolean[]{ false };
+      Future<?> result;
+      stats.inFlight.incrementAndGet();
+      try {
+        result = annotationExecutor.submit(() -> {
+          startedAt[0] = System.nanoTime();
+          StanfordCoreNLP pipeline = pipelineCache.get(props);
+          StanfordCoreNLP splitter = splitterCache.get(splitterProps);
+
+          httpExchange.getResponseHeaders().add("Content-Type",
+              of == StanfordCoreNLP.OutputFormat.JSON ? "application/x-ndjson" : "application/x-protobuf");
+          // A length of 0 means chunked transfer encoding
+          httpExchange.sendResponseHeaders(HTTP_OK, 0);
+          responding[0] = true;
+          OutputStream os = httpExchange.getResponseBody();
+          Consumer<CoreMap> writer = sentenceWriter(props, of, pipeline, os);
+          Reader reader = new InputStreamReader(httpExchange.getRequestBody(), "UTF-8");
+          annotateStream(reader, splitter, pipeline, streamChunkSize, sentences -> {
+            sentences.forEach(writer);
+            try {
+              os.flush();
+            } catch (IOException e) {
+              throw new RuntimeIOException(e);
+            }
+          });
+          os.close();
+          return null;
+        });
+      } catch (RejectedExecutionException e) {
+        stats.inFlight.decrementAndGet();
+        stats.rejected.incrementAndGet();
+        log("[" + httpExchange.getRemoteAddress() + "] Rejected: server is overloaded");
+        respondUnavailable(httpExchange, "CoreNLP server is overloaded; try again later\n");
+        return;
+      }
+
+      try {
+        result.get();
+        stats.recordServed(startedAt[0] - admittedAt, System.nanoTime() - admittedAt);
+      } catch (Exception e) {
+        Throwable cause = (e instanceof ExecutionException && e.getCause() != null) ? e.getCause() : e;
+        cause.printStackTrace();
+        stats.failed.incrementAndGet();
+        if (responding[0]) {
+          // The status has already been sent; all we can do is cut the response short
+          httpExchange.close();
+        } else {
+          respondError(httpExchange, HTTP_ERR, String.valueOf(cause.getMessage()));
+        }
+      } finally {
+        stats.inFlight.decrementAndGet();
+      }
+    }
+
+    /**
+     * Returns a function which writes a single sentence to the output stream, in the given format.
+     */
+    private Consumer<CoreMap> sentenceWriter(Properties props, StanfordCoreNLP.OutputFormat of,
+                                             StanfordCoreNLP pipeline, OutputStream os) {
+      if (of == StanfordCoreNLP.OutputFormat.JSON) {
+        AnnotationOutputter.Options options = AnnotationOutputter.getOptions(pipeline);
+        options.pretty = false;
+        JSONOutputter outputter = new JSONOutputter();
+        return sentence -> {
+          Annotation single = new Annotation(sentence.get(CoreAnnotations.TextAnnotation.class));
+          single.set(CoreAnnotations.TokensAnnotation.class, sentence.get(CoreAnnotations.TokensAnnotation.class));
+          single.set(CoreAnnotations.SentencesAnnotation.class, Collections.singletonList(sentence));
+          try {
+            outputter.print(single, os, options);
+            os.write('\n');
+          } catch (IOException e) {
+            throw new RuntimeIOException(e);
+          }
+        };
+      } else {
+        String serializerName = props.getProperty("outputSerializer", ProtobufAnnotationSerializer.class.getName());
+        if (!serializerName.equals(ProtobufAnnotationSerializer.class.getName())) {
+          throw new IllegalArgumentException("Only protobuf output can be streamed: " + serializerName);
+        }
+        ProtobufAnnotationSerializer serializer = new ProtobufAnnotationSerializer();
+        return sentence -> {
+          try {
+            serializer.toProto(sentence).writeDelimitedTo(os);
+          } catch (IOException e) {
+            throw new RuntimeIOException(e);
+          }
+        };
+      }
+    }
+  }
+
+  /**
+   * The properties of the pipeline which splits the text of a streaming request into sentences:
+   * the annotators of the request up to and including ssplit, with only the properties of those
+   * annotators, so that requests which differ only in their later annotators share a splitter.
+   *
+   * @param props The properties of the request, with the full list of annotators it needs
+   * @throws IllegalArgumentException If the annotators do not split sentences
+   */
+  protected static Properties splitterProperties(Properties props) {
+    List<String> annotators = Arrays.asList(props.getProperty("annotators").split("[, \t]+"));
+    int ssplit = annotators.indexOf(Annotator.STANFORD_SSPLIT);
+    if (ssplit < 0) {
+      throw new IllegalArgumentException("Only text which is split into sentences can be streamed: " + annotators);
+    }
+    List<String> splitterAnnotators = annotators.subList(0, ssplit + 1);
+    Properties splitterProps = new Properties();
+    splitterProps.setProperty("annotators", String.join(",", splitterAnnotators));
+    for (String key : props.stringPropertyNames()) {
+      for (String annotator : splitterAnnotators) {
+        // cleanxml takes its options as clean.*
+        String prefix = annotator.equals(Annotator.STANFORD_CLEAN_XML) ? "clean." : annotator + '.';
+        if (key.startsWith(prefix)) {
+          splitterProps.setProperty(key, props.getProperty(key));
+        }
+      }
+    }
+    return splitterProps;
+  }
+
+  /**
+   * Annotates a plain text document read from the given reader, a chunk at a time.
+   * Roughly chunkSize characters are read, and split into sentences with the splitter
+   * pipeline; the sentences up to the last one are then annotated with the rest of the
+   * pipeline, while the last sentence, which may not be complete yet, is carried over
+   * to the next chunk.
+   * A chunk with no sentence boundary grows until it is four times chunkSize, at which point
+   * it is annotated as it is.
+   * The offsets and indices of the sentences of each chunk are shifted to be relative to the
+   * whole document before they are passed to the callback.
+   *
+   * @param reader The document text
+   * @param splitter A pipeline which runs the first annotators of the pipeline, up to and
+   *                 including the sentence splitter (see {@link #splitterProperties})
+   * @param pipeline The pipeline to annotate each chunk with; its annotators which the
+   *                 splitter stands in for are not run again
+   * @param chunkSize The approximate number of characters to annotate at a time
+   * @param callback Called with the annotated sentences of each chunk, in document order
+   * @throws IOException If the document could not be read
+   */
+  protected static void annotateStream(Reader reader, AnnotationPipeline splitter, AnnotationPipeline pipeline,
+                                       int chunkSize, Consumer<List<CoreMap>> callback) throws IOException {
+    int splitterSize = splitter.annotators().size();
+    StringBuilder buffer = new StringBuilder();
+    char[] chars = new char[8192];
+    boolean eof = false;
+    int target = chunkSize;
+    int charOffset = 0;
+    int tokenOffset = 0;
+    int sentenceOffset = 0;
+    while (!eof || buffer.length() > 0) {
+      while (!eof && buffer.length() < target) {
+        int n = reader.read(chars);
+        if (n < 0) {
+          eof = true;
+        } else {
+          buffer.append(chars, 0, n);
+        }
+      }
+      Annotation chunk = new Annotation(buffer.toString());
+      splitter.annotate(chunk);
+      List<CoreMap> sentences = chunk.get(CoreAnnotations.SentencesAnnotation.class);
+      List<CoreLabel> tokens = chunk.get(CoreAnnotations.TokensAnnotation.class);
+      int end = buffer.length();
+      if (!eof) {
+        if (sentences.size() >= 2) {
+          // Leave the last sentence, and its tokens, for the next chunk
+          end = sentences.get(sentences.size() - 1).get(CoreAnnotations.CharacterOffsetBeginAnnotation.class);
+          sentences = new ArrayList<>(sentences.subList(0, sentences.size() - 1));
+          int endToken = 0;
+          while (endToken < tokens.size() && tokens.get(endToken).beginPosition() < end) {
+            endToken++;
+          }
+          tokens = new ArrayList<>(tokens.subList(0, endToken));
+          chunk.set(CoreAnnotations.TextAnnotation.class, buffer.substring(0, end));
+          chunk.set(CoreAnnotations.SentencesAnnotation.class, sentences);
+          chunk.set(CoreAnnotations.TokensAnnotation.class, tokens);
+        } else if (target < 4 * chunkSize) {
+          // Read more, in the hope of finding the end of the sentence
+          target += chunkSize;
+          continue;
+        }
+      }
+
+      pipeline.annotateFrom(chunk, splitterSize);
+      sentences = chunk.get(CoreAnnotations.SentencesAnnotation.class);
+      if (sentences != null && !sentences.isEmpty()) {
+        for (CoreMap sentence : sentences) {
+          shiftOffsets(sentence, charOffset, tokenOffset, sentenceOffset);
+          for (CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class)) {
+            shiftOffsets(token, charOffset, tokenOffset, sentenceOffset);
+          }
+        }
+        // Count only the tokens in sentences, as the sentence token offsets do
+        tokenOffset = sentences.get(sentences.size() - 1).get(CoreAnnotations.TokenEndAnnotation.class);
+        sentenceOffset += sentences.size();
+        callback.accept(sentences);
+      }
+      buffer.delete(0, end);
+      charOffset += end;
+      target = chunkSize;
+    }
+  }
+
+  /** Makes the offsets of a sentence or token in a chunk relative to the start of the document. */
+  private static void shiftOffsets(CoreMap map, int charOffset, int tokenOffset, int sentenceOffset) {
+    shift(map, CoreAnnotations.CharacterOffsetBeginAnnotation.class, charOffset);
+    shift(map, CoreAnnotations.CharacterOffsetEndAnnotation.class, charOffset);
+    shift(map, CoreAnnotations.TokenBeginAnnotation.class, tokenOffset);
+    shift(map, CoreAnnotations.TokenEndAnnotation.class, tokenOffset);
+    shift(map, CoreAnnotations.SentenceIndexAnnotation.class, sentenceOffset);
+  }
+
+  private static void shift(CoreMap map, Class<? extends CoreAnnotation<Integer>> key, int offset) {
+    Integer value = map.get(key);
+    if (value != null) {
+      map.set(key, value + offset);
+    }
+  }
+
+  /**
+   * Create the bounded pool of worker threads which run the annotators.
+   * Submissions beyond the queue capacity are rejected, rather than blocking.
+   */
+  protected ThreadPoolExecutor mkAnnotationExecutor() {
+    AtomicInteger threadCount = new AtomicInteger(0);
+    return new ThreadPoolExecutor(serverThreads, serverThreads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(maxQueueSize),
+        runnable -> {
+          Thread t = new Thread(runnable, "corenlp-worker-" + threadCount.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        },
+        new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  /**
+   * Load the pipelines given by the <code>-preload</code> option, so that the first requests
+   * for them do not pay for loading their models.
+   */
+  protected void preloadPipelines() {
+    for (String annotators : preloadAnnotators.split(";")) {
+      annotators = annotators.trim();
+      if (annotators.isEmpty()) {
+        continue;
+      }
+      Properties props = new Properties();
+      props.putAll(defaultProps);
+      if (!annotators.equalsIgnoreCase("default")) {
+        props.setProperty("annotators", annotators);
+      }
+      props.setProperty("annotators", StanfordCoreNLP.ensurePrerequisiteAnnotators(props.getProperty("annotators").split("[, \t]+")));
+      log("Preloading pipeline: " + props.getProperty("annotators"));
+      pipelineCache.get(props);
+    }
+  }
+
   @Override
   public void run() {
     try {
+      preloadPipelines();
+      annotationExecutor = mkAnnotationExecutor();
       server = HttpServer.create(new InetSocketAddress(serverPort), 0); // 0 is the default 'backlog'
+      // Connections are read and written on their own threads; they only wait on the (bounded) annotation pool
+      server.setExecutor(Executors.newCachedThreadPool());
       server.createContext("/", new SimpleAnnotateHandler(defaultProps));
+      server.createContext("/stream", new StreamingAnnotateHandler(defaultProps));
+      server.createContext("/stats", new StatsHandler());
       server.createContext("/corenlp-brat.js", new FileHandler("edu/stanford/nlp/pipeline/demo/corenlp-brat.js"));
       server.createContext("/corenlp-brat.cs", new FileHandler("edu/stanford/nlp/pipeline/demo/corenlp-brat.css"));
       server.createContext("/ping", new PingHandler());
       server.start();
-      log("StanfordCoreNLPServer listening at " + server.getAddress());
+      log("StanfordCoreNLPServer listening at " + server.getAddress() + " with " + serverThreads + " worker threads");
     } catch (IOException e) {
       e.printStackTrace();
     }
   }
 
+  /**
+   * Run the server.
+   * For backwards compatibility, a lone numeric argument is taken to be the port;
+   * otherwise, options are given as e.g., <code>-port 9000 -threads 8 -queueSize 64 -timeout 60000</code>.
+   */
   public static void main(String[] args) throws IOException {
-    int port = DEFAULT_PORT;
-    if(args.length > 0) {
-      port = Integer.parseInt(args[0]);
+    Properties serverProperties;
+    if (args.length == 1 && !args[0].startsWith("-")) {
+      serverProperties = new Properties();
+      serverProperties.setProperty("port", args[0]);
+    } else {
+      serverProperties = StringUtils.argsToProperties(args);
     }
-    StanfordCoreNLPServer server = new StanfordCoreNLPServer(port);
+    StanfordCoreNLPServer server = new StanfordCoreNLPServer(serverProperties);
     server.run();
   }
 }
@@ -1,5 +1,6 @@
 package edu.stanford.nlp.pipeline;
 
+import edu.stanford.nlp.io.IOUtils;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.tokensregex.CoreMapExpressionExtractor;
 import edu.stanford.nlp.ling.tokensregex.Env;
@@ -8,7 +9,11 @@ import edu.stanford.nlp.ling.tokensregex.TokenSequencePattern;
 import edu.stanford.nlp.util.*;
 import edu.stanford.nlp.util.logging.Redwood;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
@@ -22,6 +27,9 @@ import java.util.Set;
  *   <ul>
  *     <li><code>rules</code> - Name of file containing extraction rules
  *        (see {@link CoreMapExpressionExtractor} and {@link edu.stanford.nlp.ling.tokensregex.SequenceMatchRules}</li>
+ *     <li><code>compiledRulesDir</code> - Directory in which to save the compiled rules, so that later annotators
+ *        (in this or another process) with the same rules and properties read them instead of parsing the rules again.
+ *        The saved rules are keyed by the contents of the rule files, so an edited rule file is compiled afresh.</li>
  *   </ul>
  *   Other options (can be set in rules file using <code>options.xxx = ...</code>)
  *   <ul>
@@ -40,12 +48,13 @@ public class TokensRegexAnnotator implements Annotator {
 
   private final Env env;
   private final CoreMapExpressionExtractor extractor;
-  private final Options options = new Options();
+  private final Options options;
   private final boolean verbose;
 
-
   // Make public so can be accessed and set via reflection
-  public static class Options {
+  public static class Options implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     public Class matchedExpressionsAnnotationKey;
     public boolean setTokenOffsets;
     public boolean extractWithTokens;
@@ -56,6 +65,7 @@ public class TokensRegexAnnotator implements Annotator {
   public TokensRegexAnnotator(String... files) {
     env = TokenSequencePattern.getNewEnv();
     extractor = CoreMapExpressionExtractor.createExtractorFromFiles(env, files);
+    options = new Options();
     verbose = false;
   }
 
@@ -65,9 +75,27 @@ public class TokensRegexAnnotator implements Annotator {
     if (files == null || files.length == 0) {
       throw new RuntimeException("No rules specified for TokensRegexAnnotator " + name + ", check " + prefix + "rules property");
     }
-    env = TokenSequencePattern.getNewEnv();
-    env.bind("options", options);
-    extractor = CoreMapExpressionExtractor.createExtractorFromFiles(env, files);
+    String compiledRulesDir = props.getProperty(prefix + "compiledRulesDir");
+    CoreMapExpressionExtractor compiled = null;
+    File compiledRules = null;
+    if (compiledRulesDir != null) {
+      String configuration = PropertiesUtils.getSortedEntries(PropertiesUtils.extractPrefixedProperties(props, prefix)).toString();
+      compiledRules = new File(compiledRulesDir, CoreMapExpressionExtractor.rulesKey(configuration, Arrays.asList(files)) + ".ser.gz");
+      compiled = readCompiledRules(compiledRules);
+    }
+    if (compiled != null) {
+      extractor = compiled;
+      env = extractor.getEnv();
+      options = (Options) env.get("options");
+    } else {
+      options = new Options();
+      env = TokenSequencePattern.getNewEnv();
+      env.bind("options", options);
+      extractor = CoreMapExpressionExtractor.createExtractorFromFiles(env, files);
+      if (compiledRules != null) {
+        writeCompiledRules(extractor, compiledRules);
+      }
+    }
     verbose = PropertiesUtils.getBool(props, prefix + "verbose", false);
     options.setTokenOffsets = PropertiesUtils.getBool(props, prefix + "setTokenOffsets", options.setTokenOffsets);
     options.extractWithTokens = PropertiesUtils.getBool(props, prefix + "extractWithTokens", options.extractWithTokens);
@@ -82,6 +110,43 @@ public class TokensRegexAnnotator implements Annotator {
     }
   }
 
+  /**
+   * Reads rules compiled by an earlier annotator with the same rules and properties,
+   * or returns null if there are none (or they cannot be read, e.g. because the classes have changed).
+   */
+  private static CoreMapExpressionExtractor readCompiledRules(File file) {
+    if (!file.exists()) {
+      return null;
+    }
+    try {
+      CoreMapExpressionExtractor extractor = IOUtils.readObjectFromFile(file);
+      System.err.println("Read compiled TokensRegex rules from " + file);
+      return extractor;
+    } catch (IOException | ClassNotFoundException | ClassCastException ex) {
+      System.err.println("Ignoring compiled TokensRegex rules in " + file + ": " + ex);
+      return null;
+    }
+  }
+
+  /**
+   * Saves the compiled rules for later annotators.
+   * Rules which cannot be serialized (e.g. ones using custom Java functions) are left uncompiled on disk.
+   */
+  private static void writeCompiledRules(CoreMapExpressionExtractor extractor, File file) {
+    // Write to a temporary file first, so that other processes never read a partly written file
+    File temp = new File(file.getParentFile(), file.getName() + ".tmp" + Thread.currentThread().getId());
+    try {
+      file.getParentFile().mkdirs();
+      IOUtils.writeObjectToFile(extractor, temp);
+      if (!temp.renameTo(file)) {
+        temp.delete();
+      }
+    } catch (IOException ex) {
+      System.err.println("Cannot save compiled TokensRegex rules to " + file + ": " + ex);
+      temp.delete();
+    }
+  }
+
   public TokensRegexAnnotator(Properties props) {
     this(null, props);
   }
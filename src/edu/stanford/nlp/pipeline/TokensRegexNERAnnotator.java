@@ -5,6 +5,8 @@ import edu.stanford.nlp.io.RuntimeIOException;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.tokensregex.*;
+import edu.stanford.nlp.ling.tokensregex.matcher.AhoCorasickMatcher;
+import edu.stanford.nlp.ling.tokensregex.matcher.Match;
 import edu.stanford.nlp.ling.tokensregex.matcher.TrieMap;
 import edu.stanford.nlp.sequences.SeqClassifierFlags;
 import edu.stanford.nlp.util.*;
@@ -12,6 +14,7 @@ import edu.stanford.nlp.util.logging.Redwood;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.*;
 import java.util.regex.Pattern;
 
@@ -57,6 +60,15 @@ import java.util.regex.Pattern;
  * </p>
  *
  * <p>
+ * Entries which are sequences of literal words (such as <code>Stanford University</code>, or
+ * <code>St\.</code> when case is not ignored) are not compiled into TokensRegex patterns, but are
+ * all matched together by an {@link AhoCorasickMatcher}, in time linear in the number of tokens.
+ * Only the other entries are matched with TokensRegex.  The result is the same either way.
+ * Big mappings can be compiled once with {@link #main}; a mapping file ending in
+ * <code>.ser.gz</code> is read as such a compiled mapping, and must be the only mapping.
+ * </p>
+ *
+ * <p>
  * This annotator is similar to {@link RegexNERAnnotator} but uses TokensRegex as the underlying library for matching
  * regular expressions.  This allows for more flexibility in the types of expressions matched as well as utilizing
  * any optimization that is included in the TokensRegex library.
@@ -116,8 +128,12 @@ public class TokensRegexNERAnnotator implements Annotator {
 
   private final boolean ignoreCase;
   private final List<Entry> entries;
-  private final Map<SequencePattern<CoreMap>,Entry> patternToEntry;
+  /** The index in entries of the entry of each TokensRegex pattern */
+  private final Map<SequencePattern<CoreMap>,Integer> patternToEntry;
   private final MultiPatternMatcher<CoreMap>  multiPatternMatcher;
+  /** Matches the entries which are sequences of literal words; the values are indices in entries */
+  private final AhoCorasickMatcher<String,Integer> literalMatcher;
+  private final NodePattern<String> posTagPattern;
 
   private final Set<String> myLabels;  // set of labels to always overwrite
   private final Pattern validPosPattern;
@@ -198,8 +214,23 @@ public class TokensRegexNERAnnotator implements Annotator {
     } else {
       validPosPattern = null;
     }
-    entries = Collections.unmodifiableList(readEntries(name, noDefaultOverwriteLabels, ignoreCase, verbose, mappings));
-    IdentityHashMap<SequencePattern<CoreMap>, Entry> patternToEntry = new IdentityHashMap<SequencePattern<CoreMap>, Entry>();
+    posTagPattern = (validPosPattern != null && PosMatchType.MATCH_ALL_TOKENS.equals(posMatchType))?
+            new CoreMapNodePattern.StringAnnotationRegexPattern(validPosPattern):null;
+    CompiledMapping compiled = (mappings.length == 1 && mappings[0].endsWith(COMPILED_SUFFIX)) ?
+            readCompiledMapping(name, mappings[0], ignoreCase) : null;
+    if (compiled != null) {
+      entries = compiled.entries;
+      literalMatcher = compiled.literalMatcher;
+    } else {
+      for (String mapping : mappings) {
+        if (mapping.endsWith(COMPILED_SUFFIX)) {
+          throw new IllegalArgumentException("TokensRegexNERAnnotator " + name + ": Compiled mapping " + mapping + " must be the only mapping");
+        }
+      }
+      entries = Collections.unmodifiableList(readEntries(name, noDefaultOverwriteLabels, ignoreCase, verbose, mappings));
+      literalMatcher = createLiteralMatcher(entries, ignoreCase);
+    }
+    IdentityHashMap<SequencePattern<CoreMap>, Integer> patternToEntry = new IdentityHashMap<SequencePattern<CoreMap>, Integer>();
     multiPatternMatcher = createPatternMatcher(patternToEntry);
     this.patternToEntry = Collections.unmodifiableMap(patternToEntry);
     Set<String> myLabels = Generics.newHashSet();
@@ -236,17 +267,20 @@ public class TokensRegexNERAnnotator implements Annotator {
       System.err.println("done.");
   }
 
-  private MultiPatternMatcher<CoreMap> createPatternMatcher(Map<SequencePattern<CoreMap>, Entry> patternToEntry) {
+  private MultiPatternMatcher<CoreMap> createPatternMatcher(Map<SequencePattern<CoreMap>, Integer> patternToEntry) {
     // Convert to tokensregex pattern
     int patternFlags = ignoreCase? Pattern.CASE_INSENSITIVE:0;
     int stringMatchFlags = ignoreCase? NodePattern.CASE_INSENSITIVE:0;
     Env env = TokenSequencePattern.getNewEnv();
     env.setDefaultStringPatternFlags(patternFlags);
     env.setDefaultStringMatchFlags(stringMatchFlags);
-    NodePattern<String> posTagPattern = (validPosPattern != null && PosMatchType.MATCH_ALL_TOKENS.equals(posMatchType))?
-            new CoreMapNodePattern.StringAnnotationRegexPattern(validPosPattern):null;
-    List<TokenSequencePattern> patterns = new ArrayList<TokenSequencePattern>(entries.size());
-    for (Entry entry:entries) {
+    List<TokenSequencePattern> patterns = new ArrayList<TokenSequencePattern>();
+    for (int i = 0; i < entries.size(); i++) {
+      Entry entry = entries.get(i);
+      if (literalKey(entry, ignoreCase) != null) {
+        // matched by the literalMatcher
+        continue;
+      }
       TokenSequencePattern pattern;
       if (entry.tokensRegex != null) {
         // TODO: posTagPatterns...
@@ -268,20 +302,163 @@ public class TokensRegexNERAnnotator implements Annotator {
       }
       pattern.setPriority(entry.priority);
       patterns.add(pattern);
-      patternToEntry.put(pattern, entry);
+      patternToEntry.put(pattern, i);
     }
     return TokenSequencePattern.getMultiPatternMatcher(patterns);
   }
 
+  /** Regexes which TokensRegex itself matches as literal strings (see {@link CoreMapNodePattern#newStringRegexPattern}) */
+  private static final Pattern LITERAL_PATTERN = Pattern.compile("[A-Za-z0-9_\\-']*");
+  /** Regexes which are literal strings with some punctuation escaped */
+  private static final Pattern ESCAPED_LITERAL_PATTERN = Pattern.compile("(?:[A-Za-z0-9_\\-']|\\\\\\p{Punct})*");
+
+  /**
+   * The words an entry matches, normalized as by {@link #literalWord}, if it matches a sequence of literal
+   * words, and null otherwise.  When case is ignored, only regexes which TokensRegex matches as literal
+   * strings count, as Java regexes and String.equalsIgnoreCase ignore case in different ways.
+   */
+  private static String[] literalKey(Entry entry, boolean ignoreCase) {
+    if (entry.regex == null || entry.annotateGroup != 0) {
+      return null;
+    }
+    String[] key = new String[entry.regex.length];
+    for (int i = 0; i < key.length; i++) {
+      String regex = entry.regex[i];
+      if (LITERAL_PATTERN.matcher(regex).matches()) {
+        key[i] = ignoreCase ? foldCase(regex) : regex;
+      } else if (!ignoreCase && ESCAPED_LITERAL_PATTERN.matcher(regex).matches()) {
+        key[i] = regex.replaceAll("\\\\(\\p{Punct})", "$1");
+      } else {
+        return null;
+      }
+    }
+    return key;
+  }
+
+  /**
+   * Two strings are equal ignoring case exactly when their folded forms are equal; this follows
+   * String.equalsIgnoreCase, which TokensRegex uses for literal strings.
+   */
+  private static String foldCase(String s) {
+    char[] chars = new char[s.length()];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+    }
+    return new String(chars);
+  }
+
+  /** The word of the token as it appears in literal keys, or null if the token cannot be part of a match */
+  private String literalWord(CoreLabel token) {
+    if (posTagPattern != null && !posTagPattern.match(token.get(CoreAnnotations.PartOfSpeechAnnotation.class))) {
+      return null;
+    }
+    String word = token.get(CoreAnnotations.TextAnnotation.class);
+    return (word != null && ignoreCase) ? foldCase(word) : word;
+  }
+
+  private static AhoCorasickMatcher<String,Integer> createLiteralMatcher(List<Entry> entries, boolean ignoreCase) {
+    TrieMap<String,Integer> literals = new TrieMap<String,Integer>();
+    for (int i = 0; i < entries.size(); i++) {
+      String[] key = literalKey(entries.get(i), ignoreCase);
+      if (key != null) {
+        // Of several entries with the same words, keep the one TokensRegex would choose:
+        // the highest priority, and then the first
+        Integer old = literals.get(key);
+        if (old == null || entries.get(i).priority > entries.get(old).priority) {
+          literals.put(key, i);
+        }
+      }
+    }
+    return new AhoCorasickMatcher<String,Integer>(literals);
+  }
+
+  /** A match of an entry, from either TokensRegex or the literalMatcher */
+  private static class EntryMatch {
+    final int entryIndex;
+    final Entry entry;
+    final int start;
+    final int end;
+    /** The span of the annotateGroup */
+    final int groupStart;
+    final int groupEnd;
+    final double score;
+
+    EntryMatch(int entryIndex, Entry entry, int start, int end, int groupStart, int groupEnd, double score) {
+      this.entryIndex = entryIndex;
+      this.entry = entry;
+      this.start = start;
+      this.end = end;
+      this.groupStart = groupStart;
+      this.groupEnd = groupEnd;
+      this.score = score;
+    }
+  }
+
+  /** The order in which overlapping matches are chosen; the same as {@link SequenceMatchResult#DEFAULT_COMPARATOR} */
+  private static final Comparator<EntryMatch> MATCH_COMPARATOR = (m1, m2) -> {
+    if (m1.entry.priority != m2.entry.priority) {
+      return (m1.entry.priority > m2.entry.priority) ? -1 : 1;
+    }
+    if (m1.score != m2.score) {
+      return (m1.score > m2.score) ? -1 : 1;
+    }
+    if (m1.end - m1.start != m2.end - m2.start) {
+      return (m1.end - m1.start > m2.end - m2.start) ? -1 : 1;
+    }
+    if (m1.entryIndex != m2.entryIndex) {
+      return (m1.entryIndex < m2.entryIndex) ? -1 : 1;
+    }
+    if (m1.start != m2.start) {
+      return (m1.start < m2.start) ? -1 : 1;
+    }
+    return Integer.compare(m1.end, m2.end);
+  };
+
+  /** Finds the matches of all the entries, and chooses the best ones which do not overlap */
+  private List<EntryMatch> findNonOverlapping(List<CoreLabel> tokens) {
+    List<EntryMatch> all = new ArrayList<EntryMatch>();
+    if (literalMatcher.size() > 0) {
+      List<String> words = new ArrayList<String>(tokens.size());
+      for (CoreLabel token : tokens) {
+        words.add(literalWord(token));
+      }
+      // Like TokensRegex, don't let a match of an entry overlap an earlier match of the same entry
+      Map<Integer,Integer> lastEnd = null;
+      for (Match<String,Integer> m : literalMatcher.findAllMatches(words)) {
+        int i = m.getValue();
+        if (lastEnd == null) {
+          lastEnd = Generics.newHashMap();
+        }
+        Integer end = lastEnd.get(i);
+        if (end != null && end > m.getBegin()) {
+          continue;
+        }
+        lastEnd.put(i, m.getEnd());
+        all.add(new EntryMatch(i, entries.get(i), m.getBegin(), m.getEnd(), m.getBegin(), m.getEnd(), 0.0));
+      }
+    }
+    for (SequencePattern<CoreMap> p : multiPatternMatcher.getTriggeredPatterns(tokens)) {
+      SequenceMatcher<CoreMap> m = p.getMatcher(tokens);
+      int i = patternToEntry.get(p);
+      Entry entry = entries.get(i);
+      while (m.find()) {
+        all.add(new EntryMatch(i, entry, m.start(), m.end(), m.start(entry.annotateGroup), m.end(entry.annotateGroup), m.score()));
+      }
+    }
+    List<EntryMatch> matched = IntervalTree.getNonOverlapping(all,
+        m -> Interval.toInterval(m.start, m.end, Interval.INTERVAL_OPEN_END), MATCH_COMPARATOR);
+    Collections.sort(matched, (m1, m2) -> (m1.start != m2.start) ? Integer.compare(m1.start, m2.start) : Integer.compare(m1.end, m2.end));
+    return matched;
+  }
+
   private void annotateMatched(List<CoreLabel> tokens) {
-    List<SequenceMatchResult<CoreMap>> matched = multiPatternMatcher.findNonOverlapping(tokens);
-    for (SequenceMatchResult<CoreMap> m:matched) {
-      Entry entry = patternToEntry.get(m.pattern());
+    List<EntryMatch> matched = findNonOverlapping(tokens);
+    for (EntryMatch m:matched) {
+      Entry entry = m.entry;
 
       // Check if we will overwrite the existing annotation with this annotation
-      int g = entry.annotateGroup;
-      int start = m.start(g);
-      int end = m.end(g);
+      int start = m.groupStart;
+      int end = m.groupEnd;
 
       boolean overwriteOriginalNer = checkPosTags(tokens, start, end);
       if (overwriteOriginalNer) {
@@ -293,8 +470,8 @@ public class TokensRegexNERAnnotator implements Annotator {
         }
       } else {
         if (verbose) {
-          System.err.println("Not annotating  '" + m.group(g) + "': " +
-                  StringUtils.joinFields(m.groupNodes(g), CoreAnnotations.NamedEntityTagAnnotation.class)
+          System.err.println("Not annotating  '" + StringUtils.joinWords(tokens.subList(start, end), " ") + "': " +
+                  StringUtils.joinFields(tokens.subList(start, end), CoreAnnotations.NamedEntityTagAnnotation.class)
                   + " with " + entry.type + ", sentence is '" + StringUtils.joinWords(tokens, " ") + "'");
         }
       }
@@ -394,7 +571,9 @@ public class TokensRegexNERAnnotator implements Annotator {
     return overwriteOriginalNer;
   }
 
-  private static class Entry {
+  private static class Entry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     public final String tokensRegex;
     public final String[] regex; // the regex, tokenized by splitting on white space
     public final String type; // the associated type
@@ -416,6 +595,71 @@ public class TokensRegexNERAnnotator implements Annotator {
     }
   }
 
+  /** Mapping files with this suffix are read as compiled mappings */
+  public static final String COMPILED_SUFFIX = ".ser.gz";
+
+  /** The entries of some mapping files, with the literalMatcher for them already built */
+  private static class CompiledMapping implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final boolean ignoreCase;
+    final List<Entry> entries;
+    final AhoCorasickMatcher<String,Integer> literalMatcher;
+
+    CompiledMapping(boolean ignoreCase, List<Entry> entries, AhoCorasickMatcher<String,Integer> literalMatcher) {
+      this.ignoreCase = ignoreCase;
+      this.entries = entries;
+      this.literalMatcher = literalMatcher;
+    }
+  }
+
+  private static CompiledMapping readCompiledMapping(String annotatorName, String mapping, boolean ignoreCase) {
+    CompiledMapping compiled;
+    try {
+      compiled = IOUtils.readObjectFromURLOrClasspathOrFileSystem(mapping);
+    } catch (IOException e) {
+      throw new RuntimeIOException("Couldn't read TokensRegexNER from " + mapping, e);
+    } catch (ClassNotFoundException e) {
+      throw new RuntimeException("Couldn't read TokensRegexNER from " + mapping, e);
+    }
+    if (compiled.ignoreCase != ignoreCase) {
+      throw new IllegalArgumentException("TokensRegexNERAnnotator " + annotatorName + ": Compiled mapping " + mapping +
+              " was compiled with ignorecase=" + compiled.ignoreCase);
+    }
+    logger.log("TokensRegexNERAnnotator " + annotatorName +
+            ": Read " + compiled.entries.size() + " unique entries from compiled mapping " + mapping);
+    return compiled;
+  }
+
+  /**
+   * Writes the entries of this annotator as a compiled mapping, which can then be given as its
+   * only mapping file to an annotator with the same ignorecase setting.  The file name should end
+   * in {@link #COMPILED_SUFFIX}.
+   */
+  public void writeCompiledMapping(String filename) throws IOException {
+    IOUtils.writeObjectToFile(new CompiledMapping(ignoreCase, entries, literalMatcher), filename);
+  }
+
+  /**
+   * Compiles mapping files.  Usage:
+   * <pre>
+   *   java edu.stanford.nlp.pipeline.TokensRegexNERAnnotator -mapping file1,file2 [-ignorecase true] -output mapping.ser.gz
+   * </pre>
+   * Any other annotator properties which affect the entries, such as noDefaultOverwriteLabels, may be given too.
+   */
+  public static void main(String[] args) throws IOException {
+    Properties props = StringUtils.argsToProperties(args);
+    String output = props.getProperty("output");
+    if (output == null || !props.containsKey("mapping")) {
+      System.err.println("Usage: java " + TokensRegexNERAnnotator.class.getName() +
+              " -mapping file1,file2 [-ignorecase true] -output mapping" + COMPILED_SUFFIX);
+      System.exit(1);
+    }
+    TokensRegexNERAnnotator annotator = new TokensRegexNERAnnotator("", props);
+    annotator.writeCompiledMapping(output);
+    System.err.println("Wrote " + annotator.entries.size() + " entries to " + output);
+  }
+
   /**
    *  Creates a combined list of Entries using the provided mapping files.
    *
@@ -432,12 +676,14 @@ public class TokensRegexNERAnnotator implements Annotator {
     //       we don't know how many tokens are matched until after the matching is done)
     List<Entry> entries = new ArrayList<Entry>();
     TrieMap<String,Entry> seenRegexes = new TrieMap<String,Entry>();
+    // Most entries share a few sets of overwritable types
+    Map<Set<String>,Set<String>> overwritableTypeSets = Generics.newHashMap();
     Arrays.sort(mappings);
     for (String mapping:mappings) {
       BufferedReader rd = null;
       try {
         rd = IOUtils.readerFromString(mapping);
-        readEntries(annotatorName, entries, seenRegexes, mapping, rd, noDefaultOverwriteLabels, ignoreCase, verbose);
+        readEntries(annotatorName, entries, seenRegexes, overwritableTypeSets, mapping, rd, noDefaultOverwriteLabels, ignoreCase, verbose);
       } catch (IOException e) {
         throw new RuntimeIOException("Couldn't read TokensRegexNER from " + mapping, e);
       } finally {
@@ -461,6 +707,7 @@ public class TokensRegexNERAnnotator implements Annotator {
   private static List<Entry> readEntries(String annotatorName,
                                          List<Entry> entries,
                                          TrieMap<String,Entry> seenRegexes,
+                                         Map<Set<String>,Set<String>> overwritableTypeSets,
                                          String mappingFilename,
                                          BufferedReader mapping,
                                          Set<String> noDefaultOverwriteLabels,
@@ -530,6 +777,13 @@ public class TokensRegexNERAnnotator implements Annotator {
         type = newType;
       }
 
+      Set<String> sharedOverwritableTypes = overwritableTypeSets.get(overwritableTypes);
+      if (sharedOverwritableTypes == null) {
+        sharedOverwritableTypes = Collections.unmodifiableSet(overwritableTypes);
+        overwritableTypeSets.put(sharedOverwritableTypes, sharedOverwritableTypes);
+      }
+      overwritableTypes = sharedOverwritableTypes;
+
       Entry entry = new Entry(tokensRegex, regexes, type, overwritableTypes, priority, annotateGroup);
 
       if (seenRegexes.containsKey(key)) {
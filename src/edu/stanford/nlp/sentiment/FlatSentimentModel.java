@@ -0,0 +1,297 @@
+package edu.stanford.nlp.sentiment;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.ejml.simple.SimpleMatrix;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.neural.SimpleTensor;
+import edu.stanford.nlp.neural.rnn.RNNCoreAnnotations;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.TwoDimensionalMap;
+
+/**
+ * The weights of a {@link SentimentModel}, as flat arrays, for labelling
+ * trees with sentiment.  This does the same thing as
+ * {@link SentimentCostAndGradient#forwardPropagateTree}, and gives
+ * exactly the same vectors and predictions, but it is meant for
+ * annotating text rather than for training.
+ * <br>
+ * The matrix products, the tensor's bilinear products and the softmax
+ * are computed in place in a few buffers per tree, rather than by
+ * chaining SimpleMatrix operations which each make a new matrix.  Only
+ * the node vector and the predictions attached to each node are
+ * allocated.  The weights of each pair of categories are found through
+ * an array indexed by the categories' numbers rather than through
+ * TwoDimensionalMap lookups.
+ * <br>
+ * The arrays are the model's own matrices' data, not copies, so this
+ * takes little memory beyond the model's.  It sees changes made to the
+ * matrices in place, as by {@link SentimentModel#vectorToParams}, but not
+ * matrices the model replaces or adds, so it is meant for a model which is
+ * no longer being trained.  It may then be used by several threads at
+ * once.
+ *
+ * @see edu.stanford.nlp.pipeline.SentimentAnnotator
+ */
+public class FlatSentimentModel {
+
+  private final SentimentModel model;
+  private final int numHid;
+  private final int numClasses;
+  private final boolean useTensors;
+  private final boolean combineClassification;
+
+  /** A number for each basic category the model has weights for */
+  private final Map<String, Integer> categories = Generics.newHashMap();
+  private final int numCategories;
+
+  /**
+   * The index of the binary weights of each pair of categories, at
+   * left * numCategories + right, or -1 if the model has none
+   */
+  private final int[] binaryIndex;
+  /** The index of the unary classification weights of each category, or -1 */
+  private final int[] unaryIndex;
+
+  /** A numHid x (2 numHid + 1) transform matrix per binary index, row-major */
+  private final double[][] transforms;
+  /** numHid slices of 2 numHid x 2 numHid per binary index, row-major; null without tensors */
+  private final double[][][] tensors;
+  /** A numClasses x (numHid + 1) classification matrix per binary index; null if classification is combined */
+  private final double[][] binaryClassifications;
+  /** A numClasses x (numHid + 1) classification matrix per unary index */
+  private final double[][] unaryClassifications;
+  /** The classification matrix shared by all the nodes if classification is combined, or null */
+  private final double[] combinedClassification;
+
+  public FlatSentimentModel(SentimentModel model) {
+    this.model = model;
+    this.numHid = model.numHid;
+    this.numClasses = model.numClasses;
+    this.useTensors = model.op.useTensors;
+    this.combineClassification = model.op.combineClassification;
+
+    for (TwoDimensionalMap.Entry<String, String, SimpleMatrix> entry : model.binaryTransform) {
+      addCategory(entry.getFirstKey());
+      addCategory(entry.getSecondKey());
+    }
+    for (String category : model.unaryClassification.keySet()) {
+      addCategory(category);
+    }
+    numCategories = categories.size();
+
+    binaryIndex = new int[numCategories * numCategories];
+    Arrays.fill(binaryIndex, -1);
+    int numBinary = model.binaryTransform.size();
+    transforms = new double[numBinary][];
+    tensors = useTensors ? new double[numBinary][numHid][] : null;
+    binaryClassifications = combineClassification ? null : new double[numBinary][];
+    int binary = 0;
+    for (TwoDimensionalMap.Entry<String, String, SimpleMatrix> entry : model.binaryTransform) {
+      String left = entry.getFirstKey();
+      String right = entry.getSecondKey();
+      binaryIndex[categories.get(left) * numCategories + categories.get(right)] = binary;
+      transforms[binary] = data(entry.getValue());
+      if (useTensors) {
+        SimpleTensor tensor = model.binaryTensors.get(left, right);
+        for (int slice = 0; slice < numHid; ++slice) {
+          tensors[binary][slice] = data(tensor.getSlice(slice));
+        }
+      }
+      if (!combineClassification) {
+        binaryClassifications[binary] = data(model.binaryClassification.get(left, right));
+      }
+      ++binary;
+    }
+
+    unaryIndex = new int[numCategories];
+    Arrays.fill(unaryIndex, -1);
+    unaryClassifications = new double[model.unaryClassification.size()][];
+    int unary = 0;
+    for (Map.Entry<String, SimpleMatrix> entry : model.unaryClassification.entrySet()) {
+      unaryIndex[categories.get(entry.getKey())] = unary;
+      unaryClassifications[unary] = data(entry.getValue());
+      ++unary;
+    }
+    Integer combined = categories.get("");
+    combinedClassification = (combined != null && unaryIndex[combined] >= 0) ? unaryClassifications[unaryIndex[combined]] : null;
+  }
+
+  private void addCategory(String category) {
+    if (!categories.containsKey(category)) {
+      categories.put(category, categories.size());
+    }
+  }
+
+  /** The matrix's elements, row-major, which EJML keeps in one array */
+  private static double[] data(SimpleMatrix matrix) {
+    return matrix.getMatrix().data;
+  }
+
+  private int category(String label) {
+    Integer category = categories.get(model.basicCategory(label));
+    if (category == null) {
+      throw new IllegalArgumentException("No weights for the category of " + label);
+    }
+    return category;
+  }
+
+  /** The unary classification matrix for a node label */
+  private double[] unaryClassification(String label) {
+    int unary = unaryIndex[category(label)];
+    if (unary < 0) {
+      throw new IllegalArgumentException("No unary classification for " + label);
+    }
+    return unaryClassifications[unary];
+  }
+
+  /** The index of the binary weights for the labels of two children */
+  private int binaryIndex(String left, String right) {
+    int binary = binaryIndex[category(left) * numCategories + category(right)];
+    if (binary < 0) {
+      throw new IllegalArgumentException("No binary weights for " + left + " " + right);
+    }
+    return binary;
+  }
+
+  /**
+   * Attaches node vectors and predictions to each of the non-leaf nodes
+   * of the tree, which must be binarized, with its unary chains
+   * collapsed, and have CoreLabels.  This fills in the same annotations
+   * as {@link SentimentCostAndGradient#forwardPropagateTree}:
+   * RNNCoreAnnotations.NodeVector, Predictions and PredictedClass.
+   */
+  public void forwardPropagateTree(Tree tree) {
+    forwardPropagateTree(tree, new double[2 * numHid + 1], new double[2 * numHid], new double[numClasses]);
+  }
+
+  /**
+   * The buffers are only used while computing a node's own vector, after
+   * its children are done with them, so one set serves the whole tree.
+   *
+   * @param childrenVector The children's vectors and a bias, 2 numHid + 1 long
+   * @param tensorRow The product of the children's vector and a tensor slice, 2 numHid long
+   * @param scores The scores of the classes, numClasses long
+   */
+  private void forwardPropagateTree(Tree tree, double[] childrenVector, double[] tensorRow, double[] scores) {
+    SimpleMatrix nodeVector = new SimpleMatrix(numHid, 1);
+    double[] node = nodeVector.getMatrix().data;
+    double[] classification;
+
+    if (tree.isLeaf()) {
+      throw new AssertionError("We should not have reached leaves in forwardPropagate");
+    } else if (tree.isPreTerminal()) {
+      classification = unaryClassification(tree.label().value());
+      String word = tree.children()[0].label().value();
+      double[] wordVector = model.getWordVector(word).getMatrix().data;
+      for (int i = 0; i < numHid; ++i) {
+        node[i] = Math.tanh(wordVector[i]);
+      }
+    } else if (tree.children().length == 1) {
+      throw new AssertionError("Non-preterminal nodes of size 1 should have already been collapsed");
+    } else if (tree.children().length == 2) {
+      Tree leftChild = tree.children()[0];
+      Tree rightChild = tree.children()[1];
+      forwardPropagateTree(leftChild, childrenVector, tensorRow, scores);
+      forwardPropagateTree(rightChild, childrenVector, tensorRow, scores);
+
+      int binary = binaryIndex(leftChild.label().value(), rightChild.label().value());
+      if (combineClassification) {
+        if (combinedClassification == null) {
+          throw new IllegalArgumentException("No combined classification matrix");
+        }
+        classification = combinedClassification;
+      } else {
+        classification = binaryClassifications[binary];
+      }
+
+      System.arraycopy(RNNCoreAnnotations.getNodeVector(leftChild).getMatrix().data, 0, childrenVector, 0, numHid);
+      System.arraycopy(RNNCoreAnnotations.getNodeVector(rightChild).getMatrix().data, 0, childrenVector, numHid, numHid);
+      childrenVector[2 * numHid] = 1.0;
+
+      multiply(transforms[binary], numHid, childrenVector, 2 * numHid + 1, node);
+      if (useTensors) {
+        int size = 2 * numHid;
+        for (int slice = 0; slice < numHid; ++slice) {
+          // in^T S in, summed in the same order as SimpleTensor.bilinearProducts:
+          // first the row vector in^T S, then its product with in
+          double[] tensor = tensors[binary][slice];
+          double in = childrenVector[0];
+          for (int j = 0; j < size; ++j) {
+            tensorRow[j] = in * tensor[j];
+          }
+          for (int k = 1; k < size; ++k) {
+            in = childrenVector[k];
+            int rowOffset = k * size;
+            for (int j = 0; j < size; ++j) {
+              tensorRow[j] += in * tensor[rowOffset + j];
+            }
+          }
+          double product = tensorRow[0] * childrenVector[0];
+          for (int j = 1; j < size; ++j) {
+            product += tensorRow[j] * childrenVector[j];
+          }
+          node[slice] = node[slice] + product;
+        }
+      }
+      for (int i = 0; i < numHid; ++i) {
+        node[i] = Math.tanh(node[i]);
+      }
+    } else {
+      throw new AssertionError("Tree not correctly binarized");
+    }
+
+    // the classification matrix's last column is the bias
+    for (int i = 0; i < numClasses; ++i) {
+      int rowOffset = i * (numHid + 1);
+      double total = classification[rowOffset] * node[0];
+      for (int j = 1; j < numHid; ++j) {
+        total += classification[rowOffset + j] * node[j];
+      }
+      total += classification[rowOffset + numHid];
+      scores[i] = total;
+    }
+    SimpleMatrix predictions = new SimpleMatrix(numClasses, 1);
+    double[] probabilities = predictions.getMatrix().data;
+    double sum = 0.0;
+    for (int i = 0; i < numClasses; ++i) {
+      probabilities[i] = Math.exp(scores[i]);
+      sum += probabilities[i];
+    }
+    double scale = 1.0 / sum;
+    int index = 0;
+    for (int i = 0; i < numClasses; ++i) {
+      probabilities[i] = probabilities[i] * scale;
+      if (probabilities[i] > probabilities[index]) {
+        index = i;
+      }
+    }
+
+    if (!(tree.label() instanceof CoreLabel)) {
+      throw new AssertionError("Expected CoreLabels in the nodes");
+    }
+    CoreLabel label = (CoreLabel) tree.label();
+    label.set(RNNCoreAnnotations.Predictions.class, predictions);
+    label.set(RNNCoreAnnotations.PredictedClass.class, index);
+    label.set(RNNCoreAnnotations.NodeVector.class, nodeVector);
+  }
+
+  /**
+   * Multiplies a rows x cols matrix, stored row-major, by a vector,
+   * summing each row in the same order as EJML does.
+   */
+  private static void multiply(double[] matrix, int rows, double[] vector, int cols, double[] result) {
+    for (int i = 0; i < rows; ++i) {
+      int rowOffset = i * cols;
+      double total = matrix[rowOffset] * vector[0];
+      for (int j = 1; j < cols; ++j) {
+        total += matrix[rowOffset + j] * vector[j];
+      }
+      result[i] = total;
+    }
+  }
+
+}
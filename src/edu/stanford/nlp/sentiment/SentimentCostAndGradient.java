@@ -3,6 +3,8 @@ package edu.stanford.nlp.sentiment;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import org.ejml.simple.SimpleMatrix;
 
@@ -12,11 +14,8 @@ import edu.stanford.nlp.neural.SimpleTensor;
 import edu.stanford.nlp.neural.rnn.RNNCoreAnnotations;
 import edu.stanford.nlp.optimization.AbstractCachingDiffFunction;
 import edu.stanford.nlp.trees.Tree;
-import edu.stanford.nlp.util.CollectionUtils;
 import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.TwoDimensionalMap;
-import edu.stanford.nlp.util.concurrent.MulticoreWrapper;
-import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
 
 // TODO: get rid of the word Sentiment everywhere
 public class SentimentCostAndGradient extends AbstractCachingDiffFunction {
@@ -225,17 +224,55 @@ public class SentimentCostAndGradient extends AbstractCachingDiffFunction {
     return derivatives;
   }
 
-  class ScoringProcessor implements ThreadsafeProcessor<List<Tree>, ModelDerivatives> {
-    @Override
-    public ModelDerivatives process(List<Tree> trainingBatch) {
-      return scoreDerivatives(trainingBatch);
+  /**
+   * Scores part of a training batch.  Parts which are too big for one
+   * thread are split in half, and the halves are scored in parallel, each
+   * into its own ModelDerivatives.  The derivatives of the halves are then
+   * merged, left before right, so the sums are the same whichever threads
+   * ran the parts.
+   */
+  private class ScoringTask extends RecursiveTask<ModelDerivatives> {
+    private static final long serialVersionUID = 1L;
+
+    private final List<Tree> trees;
+    /** The most trees which one thread scores without splitting them */
+    private final int maxTrees;
+
+    ScoringTask(List<Tree> trees, int maxTrees) {
+      this.trees = trees;
+      this.maxTrees = maxTrees;
     }
 
     @Override
-    public ThreadsafeProcessor<List<Tree>, ModelDerivatives> newInstance() {
-      // should be threadsafe
-      return this;
+    protected ModelDerivatives compute() {
+      if (trees.size() <= maxTrees) {
+        return scoreDerivatives(trees);
+      }
+      int middle = trees.size() / 2;
+      ScoringTask left = new ScoringTask(trees.subList(0, middle), maxTrees);
+      left.fork();
+      ModelDerivatives right = new ScoringTask(trees.subList(middle, trees.size()), maxTrees).compute();
+      ModelDerivatives derivatives = left.join();
+      derivatives.add(right);
+      return derivatives;
+    }
+  }
+
+  /**
+   * The pools which score batches when training with several threads,
+   * one for each number of threads asked for.  Each batch gets a new
+   * SentimentCostAndGradient, so the pools are shared by all of them
+   * rather than started again for every batch.  A pool is never shut
+   * down, since another training run may be scoring a batch in it; its
+   * threads are daemon threads, so they do not keep the JVM running.
+   */
+  private static final Map<Integer, ForkJoinPool> scoringPools = Generics.newConcurrentHashMap();
+
+  private static ForkJoinPool scoringPool(int nThreads) {
+    if (nThreads <= 0) {
+      nThreads = Runtime.getRuntime().availableProcessors();
     }
+    return scoringPools.computeIfAbsent(nThreads, ForkJoinPool::new);
   }
 
   @Override
@@ -246,29 +283,17 @@ public class SentimentCostAndGradient extends AbstractCachingDiffFunction {
     if (model.op.trainOptions.nThreads == 1) {
       derivatives = scoreDerivatives(trainingBatch);
     } else {
-      // TODO: because some addition operations happen in different
-      // orders now, this results in slightly different values, which
-      // over time add up to significantly different models even when
-      // given the same random seed.  Probably not a big deal.
-      // To be more specific, for trees T1, T2, T3, ... Tn,
-      // when using one thread, we sum the derivatives T1 + T2 ...
-      // When using multiple threads, we first sum T1 + ... + Tk,
-      // then sum Tk+1 + ... + T2k, etc, for split size k.
-      // The splits are then summed in order.
-      // This different sum order results in slightly different numbers.
-      MulticoreWrapper<List<Tree>, ModelDerivatives> wrapper =
-        new MulticoreWrapper<List<Tree>, ModelDerivatives>(model.op.trainOptions.nThreads, new ScoringProcessor());
-      // use wrapper.nThreads in case the number of threads was automatically changed
-      for (List<Tree> chunk : CollectionUtils.partitionIntoFolds(trainingBatch, wrapper.nThreads())) {
-        wrapper.put(chunk);
-      }
-      wrapper.join();
-
-      derivatives = new ModelDerivatives(model);
-      while (wrapper.peek()) {
-        ModelDerivatives batchDerivatives = wrapper.poll();
-        derivatives.add(batchDerivatives);
-      }
+      // Because the derivatives of each part of the batch are summed
+      // separately and then added together, the sums are in a
+      // slightly different order than with one thread, which over
+      // time adds up to somewhat different models even when given
+      // the same random seed.  Probably not a big deal.  The order
+      // does not depend on the scheduling of the threads, though, so
+      // training with the same number of threads is repeatable.
+      ForkJoinPool pool = scoringPool(model.op.trainOptions.nThreads);
+      int nThreads = pool.getParallelism();
+      int maxTrees = (trainingBatch.size() + nThreads - 1) / nThreads;
+      derivatives = pool.invoke(new ScoringTask(trainingBatch, Math.max(maxTrees, 1)));
     }
 
     // scale the error by the number of sentences so that the
@@ -432,6 +432,10 @@ public class SeqClassifierFlags implements Serializable {
   public transient String loadAuxClassifier = null;
   public transient String serializeTo = null;
   public transient String serializeToText = null;
+  /** Write the CRF in the compact, memory-mappable format to this file */
+  public transient String serializeToCompact = null;
+  /** How to store weights with serializeToCompact: FLOAT32, FLOAT16 or INT8 */
+  public transient String compactWeightEncoding = "FLOAT32";
   public transient int interimOutputFreq = 0;
   public transient String initialWeights = null;
   public transient List<String> gazettes = new ArrayList<String>();
@@ -1542,6 +1546,10 @@ public class SeqClassifierFlags implements Serializable {
         serializeTo = val;
       } else if (key.equalsIgnoreCase("serializeToText")) {
         serializeToText = val;
+      } else if (key.equalsIgnoreCase("serializeToCompact")) {
+        serializeToCompact = val;
+      } else if (key.equalsIgnoreCase("compactWeightEncoding")) {
+        compactWeightEncoding = val;
       } else if (key.equalsIgnoreCase("serializeDatasetsDir")) {
         serializeDatasetsDir = val;
       } else if (key.equalsIgnoreCase("loadDatasetsDir")) {
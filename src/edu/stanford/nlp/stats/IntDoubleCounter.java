@@ -0,0 +1,519 @@
+package edu.stanford.nlp.stats;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.*;
+
+import edu.stanford.nlp.math.SloppyMath;
+import edu.stanford.nlp.util.Factory;
+import edu.stanford.nlp.util.logging.PrettyLogger;
+import edu.stanford.nlp.util.logging.Redwood.RedwoodChannels;
+
+/**
+ * A {@link Counter} over int keys, such as feature or label indices,
+ * which keeps both keys and counts in primitive arrays in an open
+ * addressing hash table.  The int versions of the methods
+ * ({@link #getCount(int)}, {@link #incrementCount(int, double)}, ...)
+ * and {@link #keyAt}/{@link #valueAt} iteration never box; the
+ * Counter&lt;Integer&gt; methods are there so it can be used anywhere
+ * a Counter is expected.
+ * <br>
+ * This class is not threadsafe.
+ */
+public class IntDoubleCounter extends AbstractCounter<Integer> implements Serializable, Iterable<Integer> {
+
+  private static final float LOAD_FACTOR = 0.5f;
+
+  private static final byte EMPTY = 0;
+  private static final byte FULL = 1;
+  private static final byte REMOVED = 2;
+
+  private transient int[] keys;
+  private transient double[] values;
+  private transient byte[] states;
+  private transient int size;
+  /** size plus the REMOVED slots */
+  private transient int used;
+  private transient int modCount;
+
+  private double totalCount; // = 0.0
+  private double defaultValue; // = 0.0
+
+  public IntDoubleCounter() {
+    this(8);
+  }
+
+  public IntDoubleCounter(int initialCapacity) {
+    int capacity = 16;
+    while (capacity * LOAD_FACTOR < initialCapacity) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+  /** Copies the keys and counts of another Counter */
+  public IntDoubleCounter(Counter<Integer> c) {
+    this(c.size());
+    for (Map.Entry<Integer, Double> entry : c.entrySet()) {
+      setCount(entry.getKey().intValue(), entry.getValue().doubleValue());
+    }
+    setDefaultReturnValue(c.defaultReturnValue());
+  }
+
+  private void allocate(int capacity) {
+    keys = new int[capacity];
+    values = new double[capacity];
+    states = new byte[capacity];
+    size = 0;
+    used = 0;
+  }
+
+  private static int hash(int key) {
+    key *= 0x9e3779b9;
+    return key ^ (key >>> 16);
+  }
+
+  /** Returns the slot holding key, or -1 */
+  private int find(int key) {
+    int mask = keys.length - 1;
+    for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+      byte state = states[i];
+      if (state == EMPTY) {
+        return -1;
+      }
+      if (state == FULL && keys[i] == key) {
+        return i;
+      }
+    }
+  }
+
+  /** Returns the slot holding key, adding it with a count of 0 if it isn't there */
+  private int findOrInsert(int key) {
+    int mask = keys.length - 1;
+    int firstRemoved = -1;
+    int i = hash(key) & mask;
+    for ( ; ; i = (i + 1) & mask) {
+      byte state = states[i];
+      if (state == EMPTY) {
+        break;
+      }
+      if (state == REMOVED) {
+        if (firstRemoved < 0) {
+          firstRemoved = i;
+        }
+      } else if (keys[i] == key) {
+        return i;
+      }
+    }
+    if (firstRemoved >= 0) {
+      i = firstRemoved;
+    } else if (used + 1 > keys.length * LOAD_FACTOR) {
+      rehash((size + 1 > keys.length * LOAD_FACTOR / 2) ? keys.length * 2 : keys.length);
+      return findOrInsert(key);
+    } else {
+      ++used;
+    }
+    keys[i] = key;
+    values[i] = 0.0;
+    states[i] = FULL;
+    ++size;
+    ++modCount;
+    return i;
+  }
+
+  private void rehash(int capacity) {
+    int[] oldKeys = keys;
+    double[] oldValues = values;
+    byte[] oldStates = states;
+    allocate(capacity);
+    int mask = capacity - 1;
+    for (int j = 0; j < oldKeys.length; ++j) {
+      if (oldStates[j] != FULL) {
+        continue;
+      }
+      int i = hash(oldKeys[j]) & mask;
+      while (states[i] != EMPTY) {
+        i = (i + 1) & mask;
+      }
+      keys[i] = oldKeys[j];
+      values[i] = oldValues[j];
+      states[i] = FULL;
+      ++size;
+      ++used;
+    }
+    ++modCount;
+  }
+
+  private void removeSlot(int i) {
+    totalCount -= values[i];
+    states[i] = REMOVED;
+    values[i] = 0.0;
+    --size;
+    ++modCount;
+  }
+
+  // PRIMITIVE METHODS
+
+  public double getCount(int key) {
+    int i = find(key);
+    return (i < 0) ? defaultValue : values[i];
+  }
+
+  public void setCount(int key, double value) {
+    int i = findOrInsert(key);
+    totalCount += value - values[i];
+    values[i] = value;
+  }
+
+  public double incrementCount(int key, double value) {
+    int i = findOrInsert(key);
+    totalCount += value;
+    values[i] += value;
+    return values[i];
+  }
+
+  public double incrementCount(int key) {
+    return incrementCount(key, 1.0);
+  }
+
+  public double remove(int key) {
+    int i = find(key);
+    if (i < 0) {
+      return defaultValue;
+    }
+    double value = values[i];
+    removeSlot(i);
+    return value;
+  }
+
+  public boolean containsKey(int key) {
+    return find(key) >= 0;
+  }
+
+  /**
+   * The number of slots in the table.  Together with {@link #isSlotUsed},
+   * {@link #keyAt} and {@link #valueAt}, this allows iterating over the
+   * counter without boxing:
+   * <pre>
+   * for (int i = 0; i &lt; counter.slots(); ++i) {
+   *   if (counter.isSlotUsed(i)) { ... counter.keyAt(i) ... counter.valueAt(i) ... }
+   * }
+   * </pre>
+   */
+  public int slots() {
+    return keys.length;
+  }
+
+  public boolean isSlotUsed(int slot) {
+    return states[slot] == FULL;
+  }
+
+  public int keyAt(int slot) {
+    return keys[slot];
+  }
+
+  public double valueAt(int slot) {
+    return values[slot];
+  }
+
+  // COUNTER METHODS
+
+  @Override
+  public Factory<Counter<Integer>> getFactory() {
+    return new IntDoubleCounterFactory();
+  }
+
+  private static class IntDoubleCounterFactory implements Factory<Counter<Integer>> {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Counter<Integer> create() {
+      return new IntDoubleCounter();
+    }
+  }
+
+  @Override
+  public final void setDefaultReturnValue(double rv) { defaultValue = rv; }
+
+  @Override
+  public double defaultReturnValue() { return defaultValue; }
+
+  @Override
+  public double getCount(Object key) {
+    if ( ! (key instanceof Integer)) {
+      return defaultValue;
+    }
+    return getCount(((Integer) key).intValue());
+  }
+
+  @Override
+  public void setCount(Integer key, double value) {
+    setCount(key.intValue(), value);
+  }
+
+  @Override
+  public double incrementCount(Integer key, double value) {
+    return incrementCount(key.intValue(), value);
+  }
+
+  @Override
+  public double logIncrementCount(Integer key, double value) {
+    int i = find(key);
+    if (i < 0) {
+      setCount(key.intValue(), value);
+      return value;
+    }
+    double count = SloppyMath.logAdd(value, values[i]);
+    totalCount += count - values[i];
+    values[i] = count;
+    return count;
+  }
+
+  @Override
+  public double remove(Integer key) {
+    return remove(key.intValue());
+  }
+
+  @Override
+  public boolean containsKey(Integer key) {
+    return containsKey(key.intValue());
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(states, EMPTY);
+    Arrays.fill(values, 0.0);
+    size = 0;
+    used = 0;
+    totalCount = 0.0;
+    ++modCount;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public double totalCount() {
+    return totalCount;
+  }
+
+  /** Iterates over the occupied slots */
+  private abstract class SlotIterator<T> implements Iterator<T> {
+    private int next = advance(0);
+    private int last = -1;
+    private int expectedModCount = modCount;
+
+    private int advance(int i) {
+      while (i < states.length && states[i] != FULL) {
+        ++i;
+      }
+      return i;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next < states.length;
+    }
+
+    int nextSlot() {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (next >= states.length) {
+        throw new NoSuchElementException();
+      }
+      last = next;
+      next = advance(next + 1);
+      return last;
+    }
+
+    @Override
+    public void remove() {
+      if (last < 0) {
+        throw new IllegalStateException();
+      }
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      removeSlot(last);
+      last = -1;
+      expectedModCount = modCount;
+    }
+  }
+
+  @Override
+  public Set<Integer> keySet() {
+    return new AbstractSet<Integer>() {
+      @Override
+      public Iterator<Integer> iterator() {
+        return new SlotIterator<Integer>() {
+          @Override
+          public Integer next() {
+            return keys[nextSlot()];
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        return (o instanceof Integer) && containsKey(((Integer) o).intValue());
+      }
+
+      @Override
+      public boolean remove(Object o) {
+        if ( ! (o instanceof Integer)) {
+          return false;
+        }
+        int i = find(((Integer) o).intValue());
+        if (i < 0) {
+          return false;
+        }
+        removeSlot(i);
+        return true;
+      }
+    };
+  }
+
+  @Override
+  public Collection<Double> values() {
+    return new AbstractCollection<Double>() {
+      @Override
+      public Iterator<Double> iterator() {
+        return new SlotIterator<Double>() {
+          @Override
+          public Double next() {
+            return values[nextSlot()];
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  @Override
+  public Set<Map.Entry<Integer,Double>> entrySet() {
+    return new AbstractSet<Map.Entry<Integer,Double>>() {
+      @Override
+      public Iterator<Map.Entry<Integer,Double>> iterator() {
+        return new SlotIterator<Map.Entry<Integer,Double>>() {
+          @Override
+          public Map.Entry<Integer,Double> next() {
+            final int slot = nextSlot();
+            return new AbstractMap.SimpleEntry<Integer,Double>(keys[slot], values[slot]) {
+              @Override
+              public Double setValue(Double value) {
+                Double old = super.setValue(value);
+                totalCount += value - values[slot];
+                values[slot] = value;
+                return old;
+              }
+              private static final long serialVersionUID = 1L;
+            };
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  @Override
+  public Iterator<Integer> iterator() {
+    return keySet().iterator();
+  }
+
+  /** Equality is defined over all Counter implementations, as in ClassicCounter */
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if ( ! (o instanceof Counter)) {
+      return false;
+    }
+    return Counters.equals(this, (Counter<Integer>) o);
+  }
+
+  /** The same hashCode a ClassicCounter with these counts would have */
+  @Override
+  public int hashCode() {
+    int hash = 0;
+    for (int i = 0; i < keys.length; ++i) {
+      if (states[i] == FULL) {
+        hash += Integer.hashCode(keys[i]) ^ Double.hashCode(values[i]);
+      }
+    }
+    return hash;
+  }
+
+  /** Formatted like a ClassicCounter, which is to say like a Map */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    boolean first = true;
+    for (int i = 0; i < keys.length; ++i) {
+      if (states[i] != FULL) {
+        continue;
+      }
+      if ( ! first) {
+        sb.append(", ");
+      }
+      first = false;
+      sb.append(keys[i]).append('=').append(values[i]);
+    }
+    return sb.append('}').toString();
+  }
+
+  @Override
+  public void prettyLog(RedwoodChannels channels, String description) {
+    PrettyLogger.log(channels, description, Counters.asMap(this));
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    out.writeInt(size);
+    for (int i = 0; i < keys.length; ++i) {
+      if (states[i] == FULL) {
+        out.writeInt(keys[i]);
+        out.writeDouble(values[i]);
+      }
+    }
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    int n = in.readInt();
+    int capacity = 16;
+    while (capacity * LOAD_FACTOR < n) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+    for (int j = 0; j < n; ++j) {
+      int key = in.readInt();
+      values[findOrInsert(key)] = in.readDouble();
+    }
+  }
+
+  private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,482 @@
+package edu.stanford.nlp.stats;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.*;
+
+import edu.stanford.nlp.math.SloppyMath;
+import edu.stanford.nlp.util.Factory;
+import edu.stanford.nlp.util.logging.PrettyLogger;
+import edu.stanford.nlp.util.logging.Redwood.RedwoodChannels;
+
+/**
+ * A {@link Counter} which keeps its counts in a primitive double
+ * array, in an open addressing hash table, rather than as
+ * {@link edu.stanford.nlp.util.MutableDouble} values in a HashMap as
+ * {@link ClassicCounter} does.  Incrementing a count is one hash
+ * and a probe, with no allocation, and there are no entry or value
+ * objects to chase.  Suited to counters which are filled and read in
+ * inner loops, such as classifier scores.
+ * <br>
+ * The keySet(), values() and entrySet() views are live and support
+ * removal through their iterators, as ClassicCounter's do.  Entries
+ * are made as they are iterated over, so iterating over entrySet()
+ * does allocate.
+ * <br>
+ * This class is not threadsafe.
+ */
+public class ObjectDoubleCounter<E> extends AbstractCounter<E> implements Serializable, Iterable<E> {
+
+  private static final float LOAD_FACTOR = 0.5f;
+
+  /** Stands in for null keys */
+  private static final Object NULL_KEY = new Object();
+  /** Marks a slot whose key was removed, so that probe sequences still work */
+  private static final Object REMOVED = new Object();
+
+  private transient Object[] keys;
+  private transient double[] values;
+  private transient int size;
+  /** size plus the REMOVED slots */
+  private transient int used;
+  private transient int modCount;
+
+  private double totalCount; // = 0.0
+  private double defaultValue; // = 0.0
+
+  public ObjectDoubleCounter() {
+    this(8);
+  }
+
+  public ObjectDoubleCounter(int initialCapacity) {
+    int capacity = 16;
+    while (capacity * LOAD_FACTOR < initialCapacity) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+  /** Copies the keys and counts of another Counter */
+  public ObjectDoubleCounter(Counter<E> c) {
+    this(c.size());
+    for (E key : c.keySet()) {
+      setCount(key, c.getCount(key));
+    }
+    setDefaultReturnValue(c.defaultReturnValue());
+  }
+
+  private void allocate(int capacity) {
+    keys = new Object[capacity];
+    values = new double[capacity];
+    size = 0;
+    used = 0;
+  }
+
+  private static int hash(Object key) {
+    int h = key.hashCode();
+    h ^= (h >>> 16);
+    h *= 0x85ebca6b;
+    return h ^ (h >>> 13);
+  }
+
+  private static Object maskNull(Object key) {
+    return (key == null) ? NULL_KEY : key;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <E> E unmaskNull(Object key) {
+    return (key == NULL_KEY) ? null : (E) key;
+  }
+
+  /** Returns the slot holding key, or -1 */
+  private int find(Object key) {
+    key = maskNull(key);
+    int mask = keys.length - 1;
+    for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+      Object k = keys[i];
+      if (k == null) {
+        return -1;
+      }
+      if (k != REMOVED && (k == key || k.equals(key))) {
+        return i;
+      }
+    }
+  }
+
+  /** Returns the slot holding key, adding it with a count of 0 if it isn't there */
+  private int findOrInsert(Object key) {
+    key = maskNull(key);
+    int mask = keys.length - 1;
+    int firstRemoved = -1;
+    int i = hash(key) & mask;
+    for ( ; ; i = (i + 1) & mask) {
+      Object k = keys[i];
+      if (k == null) {
+        break;
+      }
+      if (k == REMOVED) {
+        if (firstRemoved < 0) {
+          firstRemoved = i;
+        }
+      } else if (k == key || k.equals(key)) {
+        return i;
+      }
+    }
+    if (firstRemoved >= 0) {
+      i = firstRemoved;
+    } else if (used + 1 > keys.length * LOAD_FACTOR) {
+      rehash((size + 1 > keys.length * LOAD_FACTOR / 2) ? keys.length * 2 : keys.length);
+      return findOrInsert(key);
+    } else {
+      ++used;
+    }
+    keys[i] = key;
+    values[i] = 0.0;
+    ++size;
+    ++modCount;
+    return i;
+  }
+
+  private void rehash(int capacity) {
+    Object[] oldKeys = keys;
+    double[] oldValues = values;
+    allocate(capacity);
+    int mask = capacity - 1;
+    for (int j = 0; j < oldKeys.length; ++j) {
+      Object key = oldKeys[j];
+      if (key == null || key == REMOVED) {
+        continue;
+      }
+      int i = hash(key) & mask;
+      while (keys[i] != null) {
+        i = (i + 1) & mask;
+      }
+      keys[i] = key;
+      values[i] = oldValues[j];
+      ++size;
+      ++used;
+    }
+    ++modCount;
+  }
+
+  private void removeSlot(int i) {
+    totalCount -= values[i];
+    keys[i] = REMOVED;
+    values[i] = 0.0;
+    --size;
+    ++modCount;
+  }
+
+  @Override
+  public Factory<Counter<E>> getFactory() {
+    return new ObjectDoubleCounterFactory<E>();
+  }
+
+  private static class ObjectDoubleCounterFactory<E> implements Factory<Counter<E>> {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Counter<E> create() {
+      return new ObjectDoubleCounter<E>();
+    }
+  }
+
+  @Override
+  public final void setDefaultReturnValue(double rv) { defaultValue = rv; }
+
+  @Override
+  public double defaultReturnValue() { return defaultValue; }
+
+  @Override
+  public double getCount(Object key) {
+    int i = find(key);
+    return (i < 0) ? defaultValue : values[i];
+  }
+
+  @Override
+  public void setCount(E key, double value) {
+    int i = findOrInsert(key);
+    totalCount += value - values[i];
+    values[i] = value;
+  }
+
+  @Override
+  public double incrementCount(E key, double value) {
+    int i = findOrInsert(key);
+    totalCount += value;
+    values[i] += value;
+    return values[i];
+  }
+
+  @Override
+  public double logIncrementCount(E key, double value) {
+    int i = find(key);
+    if (i < 0) {
+      setCount(key, value);
+      return value;
+    }
+    double count = SloppyMath.logAdd(value, values[i]);
+    totalCount += count - values[i];
+    values[i] = count;
+    return count;
+  }
+
+  @Override
+  public double remove(E key) {
+    int i = find(key);
+    if (i < 0) {
+      return defaultValue;
+    }
+    double value = values[i];
+    removeSlot(i);
+    return value;
+  }
+
+  @Override
+  public boolean containsKey(E key) {
+    return find(key) >= 0;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(keys, null);
+    Arrays.fill(values, 0.0);
+    size = 0;
+    used = 0;
+    totalCount = 0.0;
+    ++modCount;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public double totalCount() {
+    return totalCount;
+  }
+
+  /** Iterates over the occupied slots */
+  private abstract class SlotIterator<T> implements Iterator<T> {
+    private int next = advance(0);
+    private int last = -1;
+    private int expectedModCount = modCount;
+
+    private int advance(int i) {
+      while (i < keys.length && (keys[i] == null || keys[i] == REMOVED)) {
+        ++i;
+      }
+      return i;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next < keys.length;
+    }
+
+    int nextSlot() {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (next >= keys.length) {
+        throw new NoSuchElementException();
+      }
+      last = next;
+      next = advance(next + 1);
+      return last;
+    }
+
+    @Override
+    public void remove() {
+      if (last < 0) {
+        throw new IllegalStateException();
+      }
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      removeSlot(last);
+      last = -1;
+      expectedModCount = modCount;
+    }
+  }
+
+  @Override
+  public Set<E> keySet() {
+    return new AbstractSet<E>() {
+      @Override
+      public Iterator<E> iterator() {
+        return new SlotIterator<E>() {
+          @Override
+          public E next() {
+            return unmaskNull(keys[nextSlot()]);
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @SuppressWarnings("unchecked")
+      @Override
+      public boolean contains(Object o) {
+        return containsKey((E) o);
+      }
+
+      @SuppressWarnings("unchecked")
+      @Override
+      public boolean remove(Object o) {
+        int i = find(o);
+        if (i < 0) {
+          return false;
+        }
+        removeSlot(i);
+        return true;
+      }
+    };
+  }
+
+  @Override
+  public Collection<Double> values() {
+    return new AbstractCollection<Double>() {
+      @Override
+      public Iterator<Double> iterator() {
+        return new SlotIterator<Double>() {
+          @Override
+          public Double next() {
+            return values[nextSlot()];
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  @Override
+  public Set<Map.Entry<E,Double>> entrySet() {
+    return new AbstractSet<Map.Entry<E,Double>>() {
+      @Override
+      public Iterator<Map.Entry<E,Double>> iterator() {
+        return new SlotIterator<Map.Entry<E,Double>>() {
+          @Override
+          public Map.Entry<E,Double> next() {
+            final int slot = nextSlot();
+            return new AbstractMap.SimpleEntry<E,Double>(ObjectDoubleCounter.<E>unmaskNull(keys[slot]), values[slot]) {
+              @Override
+              public Double setValue(Double value) {
+                Double old = super.setValue(value);
+                totalCount += value - values[slot];
+                values[slot] = value;
+                return old;
+              }
+              private static final long serialVersionUID = 1L;
+            };
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return keySet().iterator();
+  }
+
+  /** Equality is defined over all Counter implementations, as in ClassicCounter */
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if ( ! (o instanceof Counter)) {
+      return false;
+    }
+    return Counters.equals(this, (Counter<E>) o);
+  }
+
+  /** The same hashCode a ClassicCounter with these counts would have */
+  @Override
+  public int hashCode() {
+    int hash = 0;
+    for (int i = 0; i < keys.length; ++i) {
+      Object key = keys[i];
+      if (key != null && key != REMOVED) {
+        hash += (key == NULL_KEY ? 0 : key.hashCode()) ^ Double.hashCode(values[i]);
+      }
+    }
+    return hash;
+  }
+
+  /** Formatted like a ClassicCounter, which is to say like a Map */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    boolean first = true;
+    for (int i = 0; i < keys.length; ++i) {
+      Object key = keys[i];
+      if (key == null || key == REMOVED) {
+        continue;
+      }
+      if ( ! first) {
+        sb.append(", ");
+      }
+      first = false;
+      sb.append(ObjectDoubleCounter.<Object>unmaskNull(key));
+      sb.append('=').append(values[i]);
+    }
+    return sb.append('}').toString();
+  }
+
+  @Override
+  public void prettyLog(RedwoodChannels channels, String description) {
+    PrettyLogger.log(channels, description, Counters.asMap(this));
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    out.writeInt(size);
+    for (int i = 0; i < keys.length; ++i) {
+      if (keys[i] != null && keys[i] != REMOVED) {
+        out.writeObject(unmaskNull(keys[i]));
+        out.writeDouble(values[i]);
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    int n = in.readInt();
+    int capacity = 16;
+    while (capacity * LOAD_FACTOR < n) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+    double total = totalCount;
+    for (int j = 0; j < n; ++j) {
+      E key = (E) in.readObject();
+      values[findOrInsert(key)] = in.readDouble();
+    }
+    totalCount = total;
+  }
+
+  private static final long serialVersionUID = 1L;
+}
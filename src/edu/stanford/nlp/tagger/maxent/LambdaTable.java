@@ -0,0 +1,140 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The feature weights of a tagger, compiled from its fAssociations and
+ * lambdas for tagging.
+ * <br>
+ * The values of each extractor are interned to row numbers, which are
+ * looked up in an open-addressed table of the values rather than in a
+ * HashMap.  A row holds only the tags which the feature has a weight for,
+ * each with the weight itself, so scoring a feature neither walks all the
+ * tags nor goes through the lambda array.  The weights are added in
+ * tag order, just as when scoring from fAssociations, so the scores are
+ * exactly the same.
+ * <br>
+ * A table is immutable, and is shared by all the threads tagging with a
+ * tagger.
+ *
+ * @see MaxentTagger#lambdaTable()
+ */
+class LambdaTable {
+
+  /** The values of each extractor, by slot; null for an empty slot */
+  private final String[][] values;
+  /** The row of the value in each slot */
+  private final int[][] valueRows;
+  /** The row of each extractor's null value, which a HashMap may also hold, or -1 */
+  private final int[] nullValueRows;
+
+  /** The entries of row r are rowStarts[r] up to rowStarts[r + 1] */
+  private final int[] rowStarts;
+  private final int[] entryTags;
+  private final double[] entryWeights;
+
+  LambdaTable(List<Map<String, int[]>> fAssociations, double[] lambda, int ySize) {
+    int numExtractors = fAssociations.size();
+    values = new String[numExtractors][];
+    valueRows = new int[numExtractors][];
+    nullValueRows = new int[numExtractors];
+
+    int numRows = 0;
+    int numEntries = 0;
+    for (Map<String, int[]> fAssociation : fAssociations) {
+      numRows += fAssociation.size();
+      for (int[] fNums : fAssociation.values()) {
+        for (int tag = 0; tag < ySize; tag++) {
+          if (fNums[tag] > -1) {
+            numEntries++;
+          }
+        }
+      }
+    }
+    rowStarts = new int[numRows + 1];
+    entryTags = new int[numEntries];
+    entryWeights = new double[numEntries];
+
+    int row = 0;
+    int entry = 0;
+    for (int kf = 0; kf < numExtractors; kf++) {
+      Map<String, int[]> fAssociation = fAssociations.get(kf);
+      int capacity = Integer.highestOneBit(Math.max(2 * fAssociation.size(), 1)) << 1;
+      values[kf] = new String[capacity];
+      valueRows[kf] = new int[capacity];
+      nullValueRows[kf] = -1;
+      for (Map.Entry<String, int[]> association : fAssociation.entrySet()) {
+        String value = association.getKey();
+        if (value == null) {
+          nullValueRows[kf] = row;
+        } else {
+          int slot = slot(kf, value);
+          values[kf][slot] = value;
+          valueRows[kf][slot] = row;
+        }
+        rowStarts[row] = entry;
+        int[] fNums = association.getValue();
+        for (int tag = 0; tag < ySize; tag++) {
+          if (fNums[tag] > -1) {
+            entryTags[entry] = tag;
+            entryWeights[entry] = lambda[fNums[tag]];
+            entry++;
+          }
+        }
+        row++;
+      }
+    }
+    rowStarts[numRows] = entry;
+  }
+
+  /**
+   * The slot which holds the value, or the empty slot where it would go.
+   * The tables are never more than half full, so there always is one.
+   */
+  private int slot(int kf, String value) {
+    String[] kfValues = values[kf];
+    int mask = kfValues.length - 1;
+    int h = value.hashCode();
+    int slot = (h ^ (h >>> 16)) & mask;
+    while (kfValues[slot] != null && ! kfValues[slot].equals(value)) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /**
+   * The row of the feature with the given extractor and value, or -1 if
+   * the tagger has no such feature.
+   */
+  int row(int kf, String value) {
+    if (value == null) {
+      return nullValueRows[kf];
+    }
+    int slot = slot(kf, value);
+    return (values[kf][slot] == null) ? -1 : valueRows[kf][slot];
+  }
+
+  /** Adds the weights of the feature in the row to the scores of each tag. */
+  void addWeights(int row, double[] scores) {
+    for (int entry = rowStarts[row], end = rowStarts[row + 1]; entry < end; entry++) {
+      scores[entryTags[entry]] += entryWeights[entry];
+    }
+  }
+
+  /**
+   * Adds the weights of the feature in the row to the scores of some of the
+   * tags only.
+   *
+   * @param tagPositions For each tag, the index of its score, or -1 if it has none
+   */
+  void addWeights(int row, int[] tagPositions, double[] scores) {
+    for (int entry = rowStarts[row], end = rowStarts[row + 1]; entry < end; entry++) {
+      int position = tagPositions[entryTags[entry]];
+      if (position >= 0) {
+        scores[position] += entryWeights[entry];
+      }
+    }
+  }
+
+}
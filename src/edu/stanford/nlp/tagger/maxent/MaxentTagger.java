@@ -57,6 +57,7 @@ import edu.stanford.nlp.util.StringUtils;
 import edu.stanford.nlp.util.XMLUtils;
 import edu.stanford.nlp.util.concurrent.MulticoreWrapper;
 import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
+import edu.stanford.nlp.util.concurrent.WorkspacePool;
 
 import java.io.*;
 import java.util.*;
@@ -404,6 +405,11 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
 
   private boolean initted = false;
 
+  /** TestSentences to tag single sentences with, each used by one thread at a time */
+  private transient WorkspacePool<TestSentence> testSentences; // = null; made on first use, and again after reading a model
+
+  private transient LambdaTable lambdaTable; // = null; made on first use, and again after the weights change
+
   boolean VERBOSE = false;
 
   /**
@@ -431,6 +437,29 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
     return prob;
   }
 
+  /**
+   * The weights of the features, compiled from fAssociations and the
+   * lambdas for scoring tags.  This is made when it is first needed,
+   * which is after the model has been read or trained.
+   */
+  synchronized LambdaTable lambdaTable() {
+    if (lambdaTable == null) {
+      lambdaTable = new LambdaTable(fAssociations, getLambdaSolve().lambda, ySize);
+    }
+    return lambdaTable;
+  }
+
+  /**
+   * Forgets the LambdaTable and the pooled TestSentences after the
+   * features or weights change.  A TestSentence keeps the LambdaTable
+   * it fetched, and the scores it cached with it, so it must not
+   * outlive the table.
+   */
+  private synchronized void weightsChanged() {
+    testSentences = null;
+    lambdaTable = null;
+  }
+
   // TODO: make these constructors instead of init methods?
   void init(TaggerConfig config) {
     if (initted) return;  // TODO: why not reinit?
@@ -649,6 +678,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
         fAssociation.remove(rule);
       }
     }
+    weightsChanged();
   }
 
   /**
@@ -692,6 +722,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
     }
 
     prob = new LambdaSolveTagger(condensedLambda);
+    weightsChanged();
   }
 
   protected void saveModel(String filename) {
@@ -864,6 +895,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
       if (VERBOSE) {
         System.err.println(" prob read ");
       }
+      weightsChanged(); // TestSentences made for an earlier model would also use its extractors
       if (printLoading) t.done();
     } catch (IOException | ClassNotFoundException e) {
       throw new RuntimeIOException("Error while loading a tagger model (probably missing model file)", e);
@@ -911,9 +943,40 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
    */
   public String tagTokenizedString(String toTag) {
     List<Word> sent = Sentence.toUntaggedList(Arrays.asList(toTag.split("\\s+")));
-    TestSentence testSentence = new TestSentence(this);
-    testSentence.tagSentence(sent, false);
-    return testSentence.getTaggedNice();
+    WorkspacePool<TestSentence> pool = testSentences();
+    TestSentence testSentence = pool.acquire();
+    try {
+      testSentence.tagSentence(sent, false);
+      return testSentence.getTaggedNice();
+    } finally {
+      testSentence.reset();
+      pool.release(testSentence);
+    }
+  }
+
+  /**
+   * The pool of TestSentences used to tag single sentences.  A TestSentence
+   * keeps its buffers and the local scores of the words it has seen, so
+   * reusing one for many sentences, from any thread, saves recomputing and
+   * reallocating them for each.
+   */
+  private synchronized WorkspacePool<TestSentence> testSentences() {
+    if (testSentences == null) {
+      testSentences = new WorkspacePool<TestSentence>(() -> new TestSentence(this));
+    }
+    return testSentences;
+  }
+
+  /** Tags the sentence with a pooled TestSentence */
+  private List<TaggedWord> tagWithPooledTestSentence(List<? extends HasWord> sentence, boolean reuseTags) {
+    WorkspacePool<TestSentence> pool = testSentences();
+    TestSentence testSentence = pool.acquire();
+    try {
+      return testSentence.tagSentence(sentence, reuseTags);
+    } finally {
+      testSentence.reset();
+      pool.release(testSentence);
+    }
   }
 
 
@@ -939,8 +1002,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
    */
   @Override
   public List<TaggedWord> apply(List<? extends HasWord> in) {
-    TestSentence testSentence = new TestSentence(this);
-    return testSentence.tagSentence(in, false);
+    return tagWithPooledTestSentence(in, false);
   }
 
 
@@ -975,8 +1037,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
    * @return tagged sentence
    */
   public List<TaggedWord> tagSentence(List<? extends HasWord> sentence) {
-    TestSentence testSentence = new TestSentence(this);
-    return testSentence.tagSentence(sentence, false);
+    return tagWithPooledTestSentence(sentence, false);
   }
 
   /**
@@ -992,8 +1053,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
    */
   public List<TaggedWord> tagSentence(List<? extends HasWord> sentence,
                                            boolean reuseTags) {
-    TestSentence testSentence = new TestSentence(this);
-    return testSentence.tagSentence(sentence, reuseTags);
+    return tagWithPooledTestSentence(sentence, reuseTags);
   }
 
   /**
@@ -1145,6 +1205,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
     Problem p = new Problem(samples, feats);
     LambdaSolveTagger prob = new LambdaSolveTagger(p, 0.0001, fnumArr);
     maxentTagger.prob = prob;
+    maxentTagger.weightsChanged();
 
     if (config.getSearch().equals("owlqn")) {
       CGRunner runner = new CGRunner(prob, config.getModel(), config.getSigmaSquared());
@@ -69,6 +69,7 @@ public class TestSentence implements SequenceModel {
   private volatile History history;
   protected volatile Map<String,double[]> localScores = Generics.newHashMap();
   protected volatile double[][] localContextScores;
+  private LambdaTable lambdaTable; // = null; the tagger's, fetched when first needed
 
   protected final MaxentTagger maxentTagger;
 
@@ -142,6 +143,32 @@ public class TestSentence implements SequenceModel {
   }
 
 
+  /**
+   * The most words whose local scores a reused TestSentence keeps; past
+   * this, {@link #reset} drops them, so that a long-lived TestSentence
+   * doesn't end up holding scores for the whole vocabulary.
+   */
+  private static final int MAX_REUSED_LOCAL_SCORES = 10000;
+
+  /**
+   * Drops this TestSentence's references to the last sentence it tagged,
+   * before it is kept for reuse.  The local scores of the words seen so far
+   * are kept, as they only depend on the word, unless there are too many.
+   */
+  void reset() {
+    if (localScores.size() > MAX_REUSED_LOCAL_SCORES) {
+      localScores.clear();
+    }
+    sent = null;
+    originalTags = null;
+    origWords = null;
+    correctTags = null;
+    finalTags = null;
+    result = null;
+    localContextScores = null;
+    lambdaTable = null;
+  }
+
   protected void revert(int prevSize) {
     endSizePairs = prevSize;
   }
@@ -435,6 +462,9 @@ public class TestSentence implements SequenceModel {
   }
 
   private double[] getHistories(String[] tags, History h, List<Pair<Integer,Extractor>> extractors, List<Pair<Integer,Extractor>> extractorsRare) {
+    if (lambdaTable == null) {
+      lambdaTable = maxentTagger.lambdaTable();
+    }
     if(maxentTagger.hasApproximateScoring())
       return getApproximateHistories(tags, h, extractors, extractorsRare);
     return getExactHistories(h, extractors, extractorsRare);
@@ -447,30 +477,18 @@ public class TestSentence implements SequenceModel {
     for (Pair<Integer,Extractor> e : extractors) {
       int kf = e.first();
       Extractor ex = e.second();
-      String val = ex.extract(h);
-      int[] fAssociations = maxentTagger.fAssociations.get(kf).get(val);
-      if (fAssociations != null) {
-        for (int i = 0; i < maxentTagger.ySize; i++) {
-          int fNum = fAssociations[i];
-          if (fNum > -1) {
-            scores[i] += maxentTagger.getLambdaSolve().lambda[fNum];
-          }
-        }
+      int row = lambdaTable.row(kf, ex.extract(h));
+      if (row >= 0) {
+        lambdaTable.addWeights(row, scores);
       }
     }
     if (extractorsRare != null) {
       for (Pair<Integer,Extractor> e : extractorsRare) {
         int kf = e.first();
         Extractor ex = e.second();
-        String val = ex.extract(h);
-        int[] fAssociations = maxentTagger.fAssociations.get(kf+szCommon).get(val);
-        if (fAssociations != null) {
-          for (int i = 0; i < maxentTagger.ySize; i++) {
-            int fNum = fAssociations[i];
-            if (fNum > -1) {
-              scores[i] += maxentTagger.getLambdaSolve().lambda[fNum];
-            }
-          }
+        int row = lambdaTable.row(kf + szCommon, ex.extract(h));
+        if (row >= 0) {
+          lambdaTable.addWeights(row, scores);
         }
       }
     }
@@ -483,37 +501,28 @@ public class TestSentence implements SequenceModel {
     double[] scores = new double[tags.length];
     int szCommon = maxentTagger.extractors.size();
 
+    // where the score of each tag goes, if it is among those scored
+    int[] tagPositions = new int[maxentTagger.ySize];
+    Arrays.fill(tagPositions, -1);
+    for (int j = 0; j < tags.length; j++) {
+      tagPositions[maxentTagger.tags.getIndex(tags[j])] = j;
+    }
+
     for (Pair<Integer,Extractor> e : extractors) {
       int kf = e.first();
       Extractor ex = e.second();
-      String val = ex.extract(h);
-      int[] fAssociations = maxentTagger.fAssociations.get(kf).get(val);
-      if (fAssociations != null) {
-        for (int j = 0; j < tags.length; j++) {
-          String tag = tags[j];
-          int tagIndex = maxentTagger.tags.getIndex(tag);
-          int fNum = fAssociations[tagIndex];
-          if (fNum > -1) {
-            scores[j] += maxentTagger.getLambdaSolve().lambda[fNum];
-          }
-        }
+      int row = lambdaTable.row(kf, ex.extract(h));
+      if (row >= 0) {
+        lambdaTable.addWeights(row, tagPositions, scores);
       }
     }
     if (extractorsRare != null) {
       for (Pair<Integer,Extractor> e : extractorsRare) {
         int kf = e.first();
         Extractor ex = e.second();
-        String val = ex.extract(h);
-        int[] fAssociations = maxentTagger.fAssociations.get(szCommon+kf).get(val);
-        if (fAssociations != null) {
-          for (int j = 0; j < tags.length; j++) {
-            String tag = tags[j];
-            int tagIndex = maxentTagger.tags.getIndex(tag);
-            int fNum = fAssociations[tagIndex];
-            if (fNum > -1) {
-              scores[j] += maxentTagger.getLambdaSolve().lambda[fNum];
-            }
-          }
+        int row = lambdaTable.row(szCommon + kf, ex.extract(h));
+        if (row >= 0) {
+          lambdaTable.addWeights(row, tagPositions, scores);
         }
       }
     }
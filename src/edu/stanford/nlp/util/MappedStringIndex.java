@@ -0,0 +1,338 @@
+package edu.stanford.nlp.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import edu.stanford.nlp.io.RuntimeIOException;
+
+/**
+ * A read-only {@link Index} of Strings which lives in a {@link ByteBuffer},
+ * typically a memory-mapped region of a model file, instead of on the heap.
+ * The strings are stored once, as UTF-8, together with an open addressing
+ * hash table over them; {@link #indexOf} hashes the query, probes the table
+ * and compares the query against the stored bytes, so no String is created
+ * for a lookup.  Only {@link #get} decodes a String.
+ * <br>
+ * Because the buffer can be mapped read-only from a file, several
+ * processes which load the same model share the physical memory for its
+ * feature strings.
+ * <br>
+ * The index is always locked: {@link #addToIndex} returns the index of
+ * objects already present and -1 for anything else, as a locked
+ * {@link HashIndex} does.  Use {@link #toBytes(List)} to build the
+ * buffer contents.
+ * <br>
+ * A buffer cannot be serialized, so a MappedStringIndex is written to an
+ * ObjectOutputStream as a {@link HashIndex} of the same strings, and is
+ * read back as one.
+ */
+public class MappedStringIndex extends AbstractCollection<String> implements Index<String>, RandomAccess {
+
+  private static final long serialVersionUID = -3064618720411598187L;
+
+  private final int size;
+
+  /** Byte offset of string i in {@link #data}; there are size + 1 of them */
+  private final IntBuffer offsets;
+
+  /** Hash table slots, each holding a string's index plus one, or 0 for empty */
+  private final IntBuffer table;
+
+  private final int mask;
+
+  private final ByteBuffer data;
+
+  /**
+   * Reads an index from the given buffer, starting at its current
+   * position, in the layout written by {@link #toBytes(List)}.  The
+   * buffer's position is advanced past the index.  The index keeps
+   * views of the buffer rather than copying it.
+   */
+  public MappedStringIndex(ByteBuffer buffer) {
+    ByteBuffer in = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    size = in.getInt();
+    int tableSize = in.getInt();
+    int dataSize = in.getInt();
+    if (size < 0 || Integer.bitCount(tableSize) != 1 || dataSize < 0) {
+      throw new IllegalArgumentException("Malformed string index: size=" + size + " tableSize=" + tableSize);
+    }
+    mask = tableSize - 1;
+    offsets = slice(in, 4 * (size + 1)).asIntBuffer();
+    table = slice(in, 4 * tableSize).asIntBuffer();
+    data = slice(in, dataSize);
+    in.position(in.position() + padding(dataSize));
+    buffer.position(buffer.position() + in.position());
+  }
+
+  /** Returns a little-endian view of the next length bytes, and skips them */
+  private static ByteBuffer slice(ByteBuffer in, int length) {
+    ByteBuffer region = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+    region.limit(length);
+    in.position(in.position() + length);
+    return region;
+  }
+
+  private static int padding(int length) {
+    return (4 - length % 4) % 4;
+  }
+
+  private static int tableSize(int size) {
+    int tableSize = 16;
+    while (tableSize / 2 < size) {
+      tableSize <<= 1;
+    }
+    return tableSize;
+  }
+
+  private static int hash(String s) {
+    int h = s.hashCode();
+    h ^= (h >>> 16);
+    h *= 0x85ebca6b;
+    return h ^ (h >>> 13);
+  }
+
+  /**
+   * Encodes the given strings in the little-endian layout read by
+   * {@link #MappedStringIndex(ByteBuffer)}: the number of strings, the
+   * hash table size and the number of string bytes, followed by the
+   * string offsets, the hash table, the UTF-8 string bytes, and padding
+   * to a multiple of four bytes.  The strings must be distinct and not
+   * null; string i of the list gets index i.
+   */
+  public static byte[] toBytes(List<String> strings) {
+    int size = strings.size();
+    int tableSize = tableSize(size);
+    int[] offsets = new int[size + 1];
+    int[] table = new int[tableSize];
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    for (int i = 0; i < size; ++i) {
+      String s = strings.get(i);
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      data.write(bytes, 0, bytes.length);
+      offsets[i + 1] = data.size();
+      int slot = hash(s) & (tableSize - 1);
+      while (table[slot] != 0) {
+        if (strings.get(table[slot] - 1).equals(s)) {
+          throw new IllegalArgumentException("Duplicate string in index: " + s);
+        }
+        slot = (slot + 1) & (tableSize - 1);
+      }
+      table[slot] = i + 1;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(4 * (3 + size + 1 + tableSize) + data.size() + padding(data.size()))
+        .order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(size);
+    buffer.putInt(tableSize);
+    buffer.putInt(data.size());
+    buffer.asIntBuffer().put(offsets).put(table);
+    buffer.position(buffer.position() + 4 * (offsets.length + table.length));
+    buffer.put(data.toByteArray());
+    return buffer.array();
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public String get(int i) {
+    if (i < 0 || i >= size)
+      throw new ArrayIndexOutOfBoundsException("Index " + i +
+                                               " outside the bounds [0," +
+                                               size + ")");
+    int start = offsets.get(i);
+    byte[] bytes = new byte[offsets.get(i + 1) - start];
+    for (int k = 0; k < bytes.length; ++k) {
+      bytes[k] = data.get(start + k);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public int indexOf(String o) {
+    if (o == null) {
+      return -1;
+    }
+    for (int slot = hash(o) & mask; ; slot = (slot + 1) & mask) {
+      int entry = table.get(slot);
+      if (entry == 0) {
+        return -1;
+      }
+      if (matches(entry - 1, o)) {
+        return entry - 1;
+      }
+    }
+  }
+
+  /**
+   * Compares the stored bytes of string i to the UTF-8 encoding of s,
+   * encoding s a character at a time.  Unpaired surrogates compare as
+   * '?', which is what {@link String#getBytes} replaces them with.
+   */
+  private boolean matches(int i, String s) {
+    int pos = offsets.get(i);
+    int end = offsets.get(i + 1);
+    for (int k = 0, len = s.length(); k < len; ++k) {
+      int c = s.charAt(k);
+      if (c < 0x80) {
+        if (pos >= end || data.get(pos++) != (byte) c) {
+          return false;
+        }
+        continue;
+      }
+      if (Character.isSurrogate((char) c)) {
+        if (Character.isHighSurrogate((char) c) && k + 1 < len && Character.isLowSurrogate(s.charAt(k + 1))) {
+          c = Character.toCodePoint((char) c, s.charAt(++k));
+        } else {
+          c = '?';
+        }
+      }
+      int length = (c < 0x80) ? 1 : (c < 0x800) ? 2 : (c < 0x10000) ? 3 : 4;
+      if (end - pos < length) {
+        return false;
+      }
+      switch (length) {
+      case 1:
+        if (data.get(pos) != (byte) c) return false;
+        break;
+      case 2:
+        if (data.get(pos) != (byte) (0xc0 | (c >> 6)) ||
+            data.get(pos + 1) != (byte) (0x80 | (c & 0x3f))) return false;
+        break;
+      case 3:
+        if (data.get(pos) != (byte) (0xe0 | (c >> 12)) ||
+            data.get(pos + 1) != (byte) (0x80 | ((c >> 6) & 0x3f)) ||
+            data.get(pos + 2) != (byte) (0x80 | (c & 0x3f))) return false;
+        break;
+      default:
+        if (data.get(pos) != (byte) (0xf0 | (c >> 18)) ||
+            data.get(pos + 1) != (byte) (0x80 | ((c >> 12) & 0x3f)) ||
+            data.get(pos + 2) != (byte) (0x80 | ((c >> 6) & 0x3f)) ||
+            data.get(pos + 3) != (byte) (0x80 | (c & 0x3f))) return false;
+      }
+      pos += length;
+    }
+    return pos == end;
+  }
+
+  /** The index is read-only, so this only finds strings already present */
+  @Override
+  public int addToIndex(String o) {
+    return indexOf(o);
+  }
+
+  @Override
+  @Deprecated
+  public int indexOf(String o, boolean add) {
+    return indexOf(o);
+  }
+
+  @Override
+  public boolean add(String o) {
+    return false;
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends String> c) {
+    return false;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return (o instanceof String) && indexOf((String) o) >= 0;
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException("MappedStringIndex is read-only");
+  }
+
+  /** A view which decodes each string as it is requested */
+  @Override
+  public List<String> objectsList() {
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        return MappedStringIndex.this.get(index);
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  @Override
+  public Collection<String> objects(final int[] indices) {
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        return MappedStringIndex.this.get(indices[index]);
+      }
+
+      @Override
+      public int size() {
+        return indices.length;
+      }
+    };
+  }
+
+  @Override
+  public boolean isLocked() {
+    return true;
+  }
+
+  @Override
+  public void lock() {
+  }
+
+  @Override
+  public void unlock() {
+    throw new UnsupportedOperationException("MappedStringIndex is read-only");
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return objectsList().iterator();
+  }
+
+  @Override
+  public void saveToWriter(Writer bw) throws IOException {
+    for (int i = 0; i < size; i++) {
+      bw.write(i + "=" + get(i) + '\n');
+    }
+  }
+
+  @Override
+  public void saveToFilename(String file) {
+    try (Writer bw = new BufferedWriter(new FileWriter(file))) {
+      saveToWriter(bw);
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
+  /** Serializes the strings as a {@link HashIndex}, in the same order */
+  private Object writeReplace() throws ObjectStreamException {
+    return new HashIndex<String>(objectsList());
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder buff = new StringBuilder("[");
+    for (int i = 0; i < size; i++) {
+      if (i > 0) buff.append(',');
+      buff.append(i).append('=').append(get(i));
+    }
+    buff.append(']');
+    return buff.toString();
+  }
+
+}
@@ -0,0 +1,325 @@
+package edu.stanford.nlp.util;
+
+import java.io.*;
+import java.util.*;
+
+import edu.stanford.nlp.io.RuntimeIOException;
+
+/**
+ * An {@link Index} which looks up objects in an open addressing hash
+ * table of primitive ints, rather than in a {@code Map<E,Integer>} as
+ * {@link HashIndex} does.  A lookup hashes the object once, probes
+ * the table, and compares against the stored objects, without
+ * touching any Map.Entry or Integer objects.  This also takes much
+ * less memory per entry, which matters for the multi-million entry
+ * feature indices of the CRF and LinearClassifier models.
+ * <br>
+ * Behaves like a HashIndex in every other way: objects are numbered in
+ * the order they are added, there is no deletion, and a locked index
+ * silently refuses new objects.  Additions are synchronized, so several
+ * threads may add to the same index.  A lookup which races with an
+ * addition of the same object may report it as absent.
+ */
+public class ObjectIntIndex<E> extends AbstractCollection<E> implements Index<E>, RandomAccess {
+
+  private static final float LOAD_FACTOR = 0.5f;
+
+  /** Stands in for null, so that null can be indexed like any other object */
+  private static final Object NULL_KEY = new Object();
+
+  /**
+   * The hash table.  Replaced as a whole when it grows, so a lookup
+   * always sees slots and indices which belong together.
+   */
+  private static class Table {
+    /** Slot i holds either null (empty) or an indexed object */
+    final Object[] slots;
+    /** The index of the object in slot i, plus one, so that 0 means "not yet published" */
+    final int[] indices;
+    final int mask;
+
+    Table(int size) {
+      slots = new Object[size];
+      indices = new int[size];
+      mask = size - 1;
+    }
+
+    void place(Object key, int index) {
+      int i = hash(key) & mask;
+      while (slots[i] != null) {
+        i = (i + 1) & mask;
+      }
+      indices[i] = index + 1;
+      slots[i] = key;
+    }
+  }
+
+  private final List<E> objects;
+
+  private transient volatile Table table;
+
+  private boolean locked; // = false;
+
+  public ObjectIntIndex() {
+    this(16);
+  }
+
+  public ObjectIntIndex(int capacity) {
+    objects = new ArrayList<E>(capacity);
+    allocate(tableSize(capacity));
+  }
+
+  /**
+   * Creates a new Index and adds every member of c to it.
+   */
+  public ObjectIntIndex(Collection<? extends E> c) {
+    this(c.size());
+    addAll(c);
+  }
+
+  /**
+   * Creates a copy of the given index, with every object at the same index
+   */
+  public ObjectIntIndex(Index<? extends E> index) {
+    this(index.objectsList());
+  }
+
+  private static int tableSize(int capacity) {
+    int size = 16;
+    while (size * LOAD_FACTOR < capacity) {
+      size <<= 1;
+    }
+    return size;
+  }
+
+  private void allocate(int size) {
+    table = new Table(size);
+  }
+
+  private static int hash(Object key) {
+    int h = key.hashCode();
+    // spread the high bits down, as HashMap does, since we index with the low bits
+    h ^= (h >>> 16);
+    h *= 0x85ebca6b;
+    return h ^ (h >>> 13);
+  }
+
+  @Override
+  public int size() {
+    return objects.size();
+  }
+
+  @Override
+  public E get(int i) {
+    if (i < 0 || i >= objects.size())
+      throw new ArrayIndexOutOfBoundsException("Index " + i +
+                                               " outside the bounds [0," +
+                                               size() + ")");
+    return objects.get(i);
+  }
+
+  @Override
+  public int indexOf(E o) {
+    Object key = (o == null) ? NULL_KEY : o;
+    Table table = this.table;
+    Object[] slots = table.slots;
+    int mask = table.mask;
+    for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+      Object slot = slots[i];
+      if (slot == null) {
+        return -1;
+      }
+      if (slot == key || slot.equals(key)) {
+        return table.indices[i] - 1;
+      }
+    }
+  }
+
+  @Override
+  public int addToIndex(E o) {
+    int index = indexOf(o);
+    if (index >= 0 || locked) {
+      return index;
+    }
+    synchronized (this) {
+      index = indexOf(o);
+      if (index < 0 && !locked) {
+        index = objects.size();
+        objects.add(o);
+        insert((o == null) ? NULL_KEY : o, index);
+      }
+    }
+    return index;
+  }
+
+  /** Must be called holding the lock, with a key known not to be present */
+  private void insert(Object key, int index) {
+    Table table = this.table;
+    if (objects.size() > table.slots.length * LOAD_FACTOR) {
+      Table bigger = new Table(table.slots.length * 2);
+      for (int i = 0; i < table.slots.length; ++i) {
+        if (table.slots[i] != null) {
+          bigger.place(table.slots[i], table.indices[i] - 1);
+        }
+      }
+      this.table = bigger;
+      table = bigger;
+    }
+    table.place(key, index);
+  }
+
+  @Override
+  @Deprecated
+  public int indexOf(E o, boolean add) {
+    if (add) {
+      return addToIndex(o);
+    } else {
+      return indexOf(o);
+    }
+  }
+
+  /**
+   * Adds an object to the Index. If it was already in the Index,
+   * then nothing is done.  If it is not in the Index, then it is
+   * added iff the Index hasn't been locked.
+   *
+   * @return true if the item was added to the index and false if the
+   *         item was already in the index or if the index is locked
+   */
+  @Override
+  public boolean add(E o) {
+    if (locked || indexOf(o) >= 0) {
+      return false;
+    }
+    int size = objects.size();
+    return addToIndex(o) == size;
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends E> c) {
+    boolean changed = false;
+    for (E element: c) {
+      changed |= add(element);
+    }
+    return changed;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public boolean contains(Object o) {
+    return indexOf((E) o) >= 0;
+  }
+
+  @Override
+  public synchronized void clear() {
+    objects.clear();
+    allocate(16);
+  }
+
+  @Override
+  public List<E> objectsList() {
+    return Collections.unmodifiableList(objects);
+  }
+
+  @Override
+  public Collection<E> objects(final int[] indices) {
+    return new AbstractList<E>() {
+      @Override
+      public E get(int index) {
+        return objects.get(indices[index]);
+      }
+
+      @Override
+      public int size() {
+        return indices.length;
+      }
+    };
+  }
+
+  @Override
+  public boolean isLocked() {
+    return locked;
+  }
+
+  @Override
+  public void lock() {
+    locked = true;
+  }
+
+  @Override
+  public void unlock() {
+    locked = false;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return objectsList().iterator();
+  }
+
+  @Override
+  public void saveToWriter(Writer bw) throws IOException {
+    for (int i = 0, sz = size(); i < sz; i++) {
+      bw.write(i + "=" + get(i) + '\n');
+    }
+  }
+
+  @Override
+  public void saveToFilename(String file) {
+    try (Writer bw = new BufferedWriter(new FileWriter(file))) {
+      saveToWriter(bw);
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
+  /** Two indices are equal if they hold the same objects at the same indices */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof ObjectIntIndex)) return false;
+    return objects.equals(((ObjectIntIndex<?>) o).objects);
+  }
+
+  @Override
+  public int hashCode() {
+    return objects.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder buff = new StringBuilder("[");
+    for (int i = 0, sz = objects.size(); i < sz; i++) {
+      if (i > 0) buff.append(',');
+      buff.append(i).append('=').append(objects.get(i));
+    }
+    buff.append(']');
+    return buff.toString();
+  }
+
+  /**
+   * Serializes the objects as a {@link HashIndex}, in the same order, so
+   * that models saved with this index can still be loaded by releases
+   * which do not have this class.  Reading one back therefore gives a
+   * HashIndex; code which wants the faster lookups converts it on load.
+   */
+  private Object writeReplace() throws ObjectStreamException {
+    HashIndex<E> index = new HashIndex<E>(objects);
+    if (locked) {
+      index.lock();
+    }
+    return index;
+  }
+
+  /** Reads an index written before it was saved as a HashIndex, rebuilding the table */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    Table table = new Table(tableSize(objects.size()));
+    for (int i = 0; i < objects.size(); ++i) {
+      E o = objects.get(i);
+      table.place((o == null) ? NULL_KEY : o, i);
+    }
+    this.table = table;
+  }
+
+  private static final long serialVersionUID = 1L;
+}
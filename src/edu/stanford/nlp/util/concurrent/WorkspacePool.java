@@ -0,0 +1,63 @@
+package edu.stanford.nlp.util.concurrent;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.function.Supplier;
+
+/**
+ * A pool of reusable workspaces: objects such as parser queries, tagger
+ * sentences or CRF decoders, which hold buffers that are expensive to
+ * allocate for every sentence, and which one thread at a time may use.
+ * <br>
+ * A thread takes a workspace with {@link #acquire()} and gives it back with
+ * {@link #release} when it is done with it.  Unlike a ThreadLocal, the pool
+ * keeps its workspaces when the threads that used them finish, so that they
+ * are also reused by the worker threads which a
+ * {@link edu.stanford.nlp.pipeline.SentenceAnnotator} starts for each
+ * document.  The pool never holds more workspaces than were in use at one
+ * time.  A workspace which has grown too large to be worth keeping is
+ * simply not released.
+ *
+ * @param <T> The type of the workspaces
+ */
+public class WorkspacePool<T> {
+
+  private final Supplier<? extends T> factory;
+
+  /** Used as a stack, so the most recently used workspace is reused first */
+  private final ConcurrentLinkedDeque<T> idle = new ConcurrentLinkedDeque<T>();
+
+  /**
+   * @param factory Makes a new workspace when none is idle
+   */
+  public WorkspacePool(Supplier<? extends T> factory) {
+    this.factory = factory;
+  }
+
+  /**
+   * Returns an idle workspace, or a new one if there is none.  The
+   * calling thread has it to itself until it releases it.
+   */
+  public T acquire() {
+    T workspace = idle.pollFirst();
+    return (workspace != null) ? workspace : factory.get();
+  }
+
+  /**
+   * Returns a workspace taken with {@link #acquire()} to the pool.  The
+   * caller must not use it afterwards.
+   */
+  public void release(T workspace) {
+    idle.offerFirst(workspace);
+  }
+
+  /** Drops all the idle workspaces, for instance to free their memory. */
+  public void clear() {
+    idle.clear();
+  }
+
+  /** The number of idle workspaces. */
+  public int size() {
+    return idle.size();
+  }
+
+}
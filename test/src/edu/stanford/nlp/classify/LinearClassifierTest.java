@@ -0,0 +1,79 @@
+package edu.stanford.nlp.classify;
+
+import edu.stanford.nlp.ling.BasicDatum;
+import edu.stanford.nlp.ling.RVFDatum;
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+public class LinearClassifierTest extends TestCase {
+
+  private Index<String> labelIndex;
+  private Index<String> featureIndex;
+  private LinearClassifier<String, String> classifier;
+
+  @Override
+  protected void setUp() {
+    labelIndex = new HashIndex<String>(Arrays.asList("A", "B", "C"));
+    featureIndex = new HashIndex<String>(Arrays.asList("f0", "f1", "f2"));
+    double[][] weights = {
+        { 0.5, -1.0, 0.25 },
+        { 1.5, 2.0, -0.5 },
+        { -3.0, 0.125, 1.0 },
+    };
+    classifier = new LinearClassifier<String, String>(weights, featureIndex, labelIndex);
+  }
+
+  public void testBatchScoresMatchCounters() {
+    int[][] data = { { 0, 1 }, { 2 }, { 1, -1, 2 }, { } };
+    double[] scores = new double[data.length * labelIndex.size()];
+    classifier.scoresOf(data, data.length, scores);
+    for (int d = 0; d < data.length; d++) {
+      Counter<String> expected = classifier.scoresOf(data[d]);
+      for (int l = 0; l < labelIndex.size(); l++) {
+        assertEquals(expected.getCount(labelIndex.get(l)), scores[d * labelIndex.size() + l], 0.0);
+      }
+    }
+    assertEquals(2.0, scores[0], 0.0);
+    assertEquals(1.0, scores[1], 0.0);
+  }
+
+  public void testBatchRVFScoresMatchCounters() {
+    int[][] data = { { 0, 2 }, { 1 } };
+    double[][] values = { { 2.0, -1.0 }, { 0.5 } };
+    double[] scores = new double[data.length * labelIndex.size()];
+    classifier.scoresOf(data, values, data.length, scores);
+    for (int d = 0; d < data.length; d++) {
+      Counter<String> features = new ClassicCounter<String>();
+      for (int i = 0; i < data[d].length; i++) {
+        features.setCount(featureIndex.get(data[d][i]), values[d][i]);
+      }
+      Counter<String> expected = classifier.scoresOf(new RVFDatum<String, String>(features));
+      for (int l = 0; l < labelIndex.size(); l++) {
+        assertEquals(expected.getCount(labelIndex.get(l)), scores[d * labelIndex.size() + l], 0.0);
+      }
+    }
+  }
+
+  public void testArgmax() {
+    assertEquals(0, classifier.argmaxOf(new int[] { 0, 1 }));
+    assertEquals(2, classifier.argmaxOf(new int[] { 2 }));
+    // all the scores are 0, and the tie goes to the first label
+    assertEquals(0, classifier.argmaxOf(new int[] { -1 }));
+    assertEquals("A", classifier.classOf(new BasicDatum<String, String>(Arrays.asList("f0", "f1"))));
+
+    int[][] data = { { 0, 1 }, { 2 }, { 0 } };
+    int[] labels = new int[data.length];
+    classifier.argmaxOf(data, data.length, labels);
+    assertTrue(Arrays.equals(new int[] { 0, 2, 0 }, labels));
+
+    double[][] values = { { 1.0, -1.0 }, { -1.0 }, { 1.0 } };
+    classifier.argmaxOf(data, values, data.length, labels);
+    assertTrue(Arrays.equals(new int[] { 2, 0, 0 }, labels));
+  }
+
+}
@@ -0,0 +1,97 @@
+package edu.stanford.nlp.ie.crf;
+
+import edu.stanford.nlp.sequences.ExactBestSequenceFinder;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class CRFDecoderTest extends TestCase {
+
+  private static final int NUM_FEATURES = 50;
+
+  /** All label assignments of each clique size, except a few unseen ones */
+  private static List<Index<CRFLabel>> labelIndices(int numClasses, int windowSize, Random random) {
+    List<Index<CRFLabel>> labelIndices = new ArrayList<Index<CRFLabel>>();
+    int size = 1;
+    for (int j = 0; j < windowSize; j++) {
+      size *= numClasses;
+      Index<CRFLabel> labelIndex = new HashIndex<CRFLabel>();
+      for (int k = 0; k < size; k++) {
+        if (j > 0 && random.nextInt(5) == 0) {
+          continue;
+        }
+        int[] label = new int[j + 1];
+        for (int p = j, rest = k; p >= 0; p--, rest /= numClasses) {
+          label[p] = rest % numClasses;
+        }
+        labelIndex.add(new CRFLabel(label));
+      }
+      labelIndices.add(labelIndex);
+    }
+    return labelIndices;
+  }
+
+  private static void checkDecoder(int numClasses, int windowSize, int length, long seed) {
+    Random random = new Random(seed);
+    List<Index<CRFLabel>> labelIndices = labelIndices(numClasses, windowSize, random);
+    Index<String> classIndex = new HashIndex<String>();
+    for (int i = 0; i < numClasses; i++) {
+      classIndex.add("C" + i);
+    }
+    double[][] weights = new double[NUM_FEATURES * windowSize][];
+    for (int f = 0; f < weights.length; f++) {
+      weights[f] = new double[labelIndices.get(f / NUM_FEATURES).size()];
+      for (int k = 0; k < weights[f].length; k++) {
+        weights[f][k] = random.nextGaussian();
+      }
+    }
+    int[][][] data = new int[length][windowSize][];
+    for (int i = 0; i < length; i++) {
+      for (int j = 0; j < windowSize; j++) {
+        data[i][j] = new int[1 + random.nextInt(4)];
+        for (int m = 0; m < data[i][j].length; m++) {
+          data[i][j][m] = j * NUM_FEATURES + random.nextInt(NUM_FEATURES);
+        }
+      }
+    }
+    CliquePotentialFunction potentials = new LinearCliquePotentialFunction(weights);
+
+    CRFCliqueTree<String> cliqueTree = CRFCliqueTree.getCalibratedCliqueTree(data, labelIndices, numClasses,
+        classIndex, "C1", potentials, null);
+    int[] expected = new ExactBestSequenceFinder().bestSequence(new TestSequenceModel(cliqueTree));
+
+    CRFDecoder decoder = new CRFDecoder(labelIndices, numClasses);
+    // decode something else first, to check that the buffers are reset
+    decoder.calibrate(Arrays.copyOf(data, Math.max(1, length / 2)), null, potentials);
+    decoder.bestSequence(1);
+    decoder.calibrate(data, null, potentials);
+    assertEquals(length, decoder.length());
+    assertTrue(Arrays.equals(expected, decoder.bestSequence(1)));
+    for (int i = 0; i < length; i++) {
+      for (int label = 0; label < numClasses; label++) {
+        assertEquals(cliqueTree.logProb(i, label), decoder.logProb(i, label), 0.0);
+      }
+    }
+  }
+
+  public void testFirstOrder() {
+    for (int seed = 0; seed < 20; seed++) {
+      checkDecoder(4, 2, 1 + seed, seed);
+    }
+  }
+
+  public void testSecondOrder() {
+    for (int seed = 0; seed < 20; seed++) {
+      checkDecoder(3, 3, 1 + seed, seed);
+    }
+  }
+
+  public void testNoEdges() {
+    checkDecoder(5, 1, 12, 7);
+  }
+}
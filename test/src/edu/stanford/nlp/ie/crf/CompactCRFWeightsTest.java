@@ -0,0 +1,82 @@
+package edu.stanford.nlp.ie.crf;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class CompactCRFWeightsTest extends TestCase {
+
+  private static double[][] randomWeights() {
+    Random random = new Random(1234);
+    double[][] weights = new double[500][];
+    for (int i = 0; i < weights.length; ++i) {
+      // node and edge cliques have rows of different lengths
+      weights[i] = new double[(i % 3 == 0) ? 81 : 9];
+      for (int j = 0; j < weights[i].length; ++j) {
+        weights[i][j] = random.nextGaussian() * 2.0;
+      }
+    }
+    weights[7] = new double[9];
+    return weights;
+  }
+
+  private static void checkEncoding(CompactCRFWeights.Encoding encoding, double tolerance) {
+    double[][] weights = randomWeights();
+    CompactCRFWeights compact = new CompactCRFWeights(ByteBuffer.wrap(CompactCRFWeights.toBytes(weights, encoding)));
+    assertEquals(encoding, compact.encoding());
+    assertEquals(weights.length, compact.numFeatures());
+    for (int i = 0; i < weights.length; ++i) {
+      assertEquals(weights[i].length, compact.rowLength(i));
+      double max = 0.0;
+      for (double w : weights[i]) {
+        max = Math.max(max, Math.abs(w));
+      }
+      for (int j = 0; j < weights[i].length; ++j) {
+        assertEquals(weights[i][j], compact.get(i, j), tolerance * Math.max(max, 1e-10));
+      }
+    }
+  }
+
+  public void testFloat32() {
+    checkEncoding(CompactCRFWeights.Encoding.FLOAT32, 1e-7);
+  }
+
+  public void testFloat16() {
+    checkEncoding(CompactCRFWeights.Encoding.FLOAT16, 1e-3);
+  }
+
+  public void testInt8() {
+    checkEncoding(CompactCRFWeights.Encoding.INT8, 0.5 / 127 + 1e-7);
+  }
+
+  public void testHalfConversion() {
+    float[] exact = { 0.0f, -0.0f, 1.0f, -2.5f, 65504.0f, 6.1035156e-5f, 5.9604645e-8f, 0.099975586f };
+    for (float f : exact) {
+      assertEquals(f, CompactCRFWeights.fromHalf(CompactCRFWeights.toHalf(f)));
+    }
+    assertEquals(Float.POSITIVE_INFINITY, CompactCRFWeights.fromHalf(CompactCRFWeights.toHalf(1e6f)));
+    assertTrue(Float.isNaN(CompactCRFWeights.fromHalf(CompactCRFWeights.toHalf(Float.NaN))));
+    // 1 + 2^-11 is halfway between two halves, and rounds to the even one
+    assertEquals(1.0f, CompactCRFWeights.fromHalf(CompactCRFWeights.toHalf(1.00048828125f)));
+    for (int bits = 0; bits < 0x7c00; ++bits) {
+      float f = CompactCRFWeights.fromHalf((short) bits);
+      assertEquals(bits, CompactCRFWeights.toHalf(f));
+    }
+  }
+
+  public void testPotentials() {
+    double[][] weights = randomWeights();
+    CompactCRFWeights compact = new CompactCRFWeights(ByteBuffer.wrap(CompactCRFWeights.toBytes(weights, CompactCRFWeights.Encoding.FLOAT32)));
+    CliquePotentialFunction expected = new LinearCliquePotentialFunction(weights);
+    CliquePotentialFunction actual = new CompactLinearCliquePotentialFunction(compact);
+    int[] features = { 1, 2, 4, 5, 499 };
+    double[] values = { 1.0, 0.5, 2.0, 1.0, -1.0 };
+    for (int label = 0; label < 9; ++label) {
+      assertEquals(expected.computeCliquePotential(1, label, features, null, 0),
+                   actual.computeCliquePotential(1, label, features, null, 0), 1e-5);
+      assertEquals(expected.computeCliquePotential(1, label, features, values, 0),
+                   actual.computeCliquePotential(1, label, features, values, 0), 1e-5);
+    }
+  }
+}
@@ -207,4 +207,56 @@ public class RegexNERSequenceClassifierTest extends TestCase {
     }
   }
 
+  /**
+   * Entries of plain words are matched differently from other entries, so check that
+   * they give the same answers as the same words written as real regexes.
+   */
+  public void testPlainWordsSameAsRegexes() {
+    String[] vocabulary = { "the", "The", "big", "cat", "CAT", "sat", "mat" };
+    String[] types = { "ANIMAL", "THING", "LOCATION" };
+    Random random = new Random(7);
+    for (boolean ignoreCase : new boolean[] { false, true }) {
+      for (int round = 0; round < 20; round++) {
+        StringBuilder plain = new StringBuilder();
+        StringBuilder regexes = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+          int length = 1 + random.nextInt(3);
+          StringBuilder plainWords = new StringBuilder();
+          StringBuilder regexWords = new StringBuilder();
+          for (int j = 0; j < length; j++) {
+            String word = vocabulary[random.nextInt(vocabulary.length)];
+            plainWords.append(j == 0 ? "" : " ").append(word);
+            regexWords.append(j == 0 ? "" : " ").append("(?:").append(word).append(')');
+          }
+          String rest = "\t" + types[random.nextInt(types.length)] + "\tLOCATION\t" + random.nextInt(3) + "\n";
+          plain.append(plainWords).append(rest);
+          regexes.append(regexWords).append(rest);
+        }
+        boolean overwriteMyLabels = random.nextBoolean();
+        RegexNERSequenceClassifier plainClassifier =
+          new RegexNERSequenceClassifier(new BufferedReader(new StringReader(plain.toString())), ignoreCase, overwriteMyLabels, null);
+        RegexNERSequenceClassifier regexClassifier =
+          new RegexNERSequenceClassifier(new BufferedReader(new StringReader(regexes.toString())), ignoreCase, overwriteMyLabels, null);
+
+        for (int k = 0; k < 5; k++) {
+          List<CoreLabel> sentence = new ArrayList<CoreLabel>();
+          for (int i = 0; i < 15; i++) {
+            CoreLabel token = new CoreLabel();
+            token.setWord(vocabulary[random.nextInt(vocabulary.length)]);
+            token.setNER(random.nextInt(4) == 0 ? "LOCATION" : "O");
+            sentence.add(token);
+          }
+          List<CoreLabel> expected = deepCopy(sentence);
+          regexClassifier.classify(expected);
+          plainClassifier.classify(sentence);
+          for (int i = 0; i < sentence.size(); i++) {
+            assertEquals(plain + " on " + listToString(sentence),
+                         expected.get(i).get(CoreAnnotations.AnswerAnnotation.class),
+                         sentence.get(i).get(CoreAnnotations.AnswerAnnotation.class));
+          }
+        }
+      }
+    }
+  }
+
 }
@@ -0,0 +1,94 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.CoreMap;
+import junit.framework.TestCase;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+public class CoreMapSequencePatternTriggerTest extends TestCase {
+
+  private static final String[] WORDS = { "the", "The", "cat", "CAT", "sat", "on", "mat", "mats" };
+  private static final String[] TAGS = { "DT", "NN", "NNS", "VBD", "IN" };
+  private static final String[] NODES = {
+      "/cat/", "/the/", "/m.*/", "/sat|on/", "[ { word:\"mat\" } ]", "[ { word:/ma.*/ } & { tag:\"NN\" } ]",
+      "[ { tag:NNS } | { word:on } ]", "[ !{ word:cat } ]", "[]", "[ { word::IS_NIL } ]", "( /the/ | [] /on/ )",
+  };
+  private static final String[] SUFFIXES = { "", "", "", "?", "*", "+", "{2}" };
+
+  private static List<CoreMap> tokens(Random random) {
+    List<CoreMap> tokens = new ArrayList<CoreMap>();
+    int n = random.nextInt(6);
+    for (int i = 0; i < n; i++) {
+      CoreLabel token = new CoreLabel();
+      token.setWord(WORDS[random.nextInt(WORDS.length)]);
+      token.setTag(TAGS[random.nextInt(TAGS.length)]);
+      tokens.add(token);
+    }
+    return tokens;
+  }
+
+  private static String pattern(Random random) {
+    StringBuilder sb = new StringBuilder("( ");
+    int n = 1 + random.nextInt(3);
+    for (int i = 0; i < n; i++) {
+      if (i > 0 && random.nextInt(5) == 0) {
+        sb.append("| ");
+      }
+      sb.append(NODES[random.nextInt(NODES.length)]).append(SUFFIXES[random.nextInt(SUFFIXES.length)]).append(' ');
+    }
+    return sb.append(')').toString();
+  }
+
+  public void testTriggersAllMatches() {
+    Random random = new Random(31);
+    for (int round = 0; round < 50; round++) {
+      Env env = TokenSequencePattern.getNewEnv();
+      if (random.nextBoolean()) {
+        env.setDefaultStringPatternFlags(Pattern.CASE_INSENSITIVE);
+        env.setDefaultStringMatchFlags(NodePattern.CASE_INSENSITIVE);
+      }
+      List<TokenSequencePattern> patterns = new ArrayList<TokenSequencePattern>();
+      for (int i = 0; i < 20; i++) {
+        patterns.add(TokenSequencePattern.compile(env, pattern(random)));
+      }
+      CoreMapSequencePatternTrigger trigger = new CoreMapSequencePatternTrigger(patterns);
+      assertTrue(trigger.getAlwaysTriggeredCount() < patterns.size());
+      for (int i = 0; i < 50; i++) {
+        List<CoreMap> tokens = tokens(random);
+        BitSet triggered = trigger.getTriggered(tokens);
+        for (int j = 0; j < patterns.size(); j++) {
+          if (patterns.get(j).getMatcher(tokens).find()) {
+            assertTrue(patterns.get(j) + " matches " + tokens, triggered.get(j));
+          }
+        }
+      }
+    }
+  }
+
+  public void testTriggered() {
+    Env env = TokenSequencePattern.getNewEnv();
+    env.setDefaultStringPatternFlags(Pattern.CASE_INSENSITIVE);
+    List<TokenSequencePattern> patterns = Arrays.asList(
+        TokenSequencePattern.compile(env, "( /the/? /cat/ )"),
+        TokenSequencePattern.compile(env, "( /dog/ | /cat/ /sat/ )"),
+        TokenSequencePattern.compile(env, "( [ { word:/m.*/ } & { tag:NN } ] )"),
+        TokenSequencePattern.compile(env, "( /a/* )"));
+    CoreMapSequencePatternTrigger trigger = new CoreMapSequencePatternTrigger(patterns);
+    assertEquals(1, trigger.getAlwaysTriggeredCount());
+
+    List<CoreMap> tokens = new ArrayList<CoreMap>();
+    for (String word : new String[]{ "The", "CAT", "sat", "on", "mats" }) {
+      CoreLabel token = new CoreLabel();
+      token.setWord(word);
+      token.setTag(word.startsWith("m") ? "NN" : "DT");
+      tokens.add(token);
+    }
+    assertEquals(Arrays.asList(patterns.get(0), patterns.get(1), patterns.get(2), patterns.get(3)), trigger.apply(tokens));
+    assertEquals(Arrays.asList(patterns.get(0), patterns.get(1), patterns.get(3)), trigger.apply(tokens.subList(1, 3)));
+    // only one of /cat/ and /sat/ is needed to trigger the second pattern
+    assertEquals(Collections.singletonList(patterns.get(3)), trigger.apply(tokens.subList(2, 4)));
+  }
+
+}
@@ -0,0 +1,84 @@
+package edu.stanford.nlp.ling.tokensregex.matcher;
+
+import junit.framework.TestCase;
+
+import java.io.*;
+import java.util.*;
+
+public class AhoCorasickMatcherTest extends TestCase {
+
+  private static TrieMap<String,Integer> trie(String... keys) {
+    TrieMap<String,Integer> trieMap = new TrieMap<String,Integer>();
+    for (int i = 0; i < keys.length; i++) {
+      trieMap.put(keys[i].split(" "), i);
+    }
+    return trieMap;
+  }
+
+  private static Set<String> describe(List<Match<String,Integer>> matches) {
+    Set<String> descriptions = new TreeSet<String>();
+    for (Match<String,Integer> m : matches) {
+      assertEquals(m.getEnd() - m.getBegin(), m.getMatchedLength());
+      descriptions.add(m.getBegin() + "-" + m.getEnd() + ":" + m.getValue());
+    }
+    return descriptions;
+  }
+
+  public void testFindAll() {
+    AhoCorasickMatcher<String,Integer> matcher = new AhoCorasickMatcher<String,Integer>(
+        trie("a white cat", "a white hat", "a black cat", "a black cat climbed on the sofa", "white", "cat is"));
+    assertEquals(6, matcher.size());
+    List<Match<String,Integer>> matches =
+        matcher.findAllMatches(Arrays.asList("a", "white", "cat", "is", "wearing", "a", "white", "hat"));
+    assertEquals(new TreeSet<String>(Arrays.asList("0-3:0", "1-2:4", "2-4:5", "5-8:1", "6-7:4")), describe(matches));
+    // in order of their end, longest first
+    assertEquals(2, matches.get(0).getEnd());
+    assertEquals(3, matches.get(1).getEnd());
+
+    // null and unknown elements break matches
+    assertTrue(matcher.findAllMatches(Arrays.asList("a", null, "white", "dog")).size() == 1);
+    assertTrue(matcher.findAllMatches(Arrays.asList("a", "green", "cat", "is")).size() == 1);
+  }
+
+  public void testSameAsTrieMapMatcher() {
+    Random random = new Random(1234);
+    String[] vocabulary = { "a", "b", "c", "d" };
+    for (int round = 0; round < 50; round++) {
+      TrieMap<String,Integer> trieMap = new TrieMap<String,Integer>();
+      for (int i = 0; i < 20; i++) {
+        String[] key = new String[1 + random.nextInt(4)];
+        for (int j = 0; j < key.length; j++) {
+          key[j] = vocabulary[random.nextInt(vocabulary.length)];
+        }
+        trieMap.put(key, i);
+      }
+      List<String> sequence = new ArrayList<String>();
+      for (int i = 0; i < 30; i++) {
+        sequence.add(vocabulary[random.nextInt(vocabulary.length)]);
+      }
+      assertEquals(describe(new TrieMapMatcher<String,Integer>(trieMap).findAllMatches(sequence)),
+          describe(new AhoCorasickMatcher<String,Integer>(trieMap).findAllMatches(sequence)));
+    }
+  }
+
+  public void testSerialization() throws IOException, ClassNotFoundException {
+    AhoCorasickMatcher<String,Integer> matcher = new AhoCorasickMatcher<String,Integer>(trie("New York", "York", "New York City"));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(matcher);
+    out.close();
+    @SuppressWarnings("unchecked")
+    AhoCorasickMatcher<String,Integer> read = (AhoCorasickMatcher<String,Integer>)
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    List<String> sequence = Arrays.asList("in", "New", "York", "City", "and", "York");
+    assertEquals(describe(matcher.findAllMatches(sequence)), describe(read.findAllMatches(sequence)));
+    assertEquals(4, read.findAllMatches(sequence).size());
+  }
+
+  public void testEmpty() {
+    AhoCorasickMatcher<String,Integer> matcher = new AhoCorasickMatcher<String,Integer>(new TrieMap<String,Integer>());
+    assertEquals(0, matcher.size());
+    assertTrue(matcher.findAllMatches(Arrays.asList("a", "b")).isEmpty());
+  }
+
+}
@@ -0,0 +1,76 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.stanford.nlp.trees.MemoryTreebank;
+import edu.stanford.nlp.trees.Tree;
+import junit.framework.TestCase;
+
+public class CompactParserModelTest extends TestCase {
+
+  private static final String[] TREES = {
+    "(ROOT (S (NP (DT The) (NN cat)) (VP (VBD sat) (PP (IN on) (NP (DT the) (NN mat)))) (. .)))",
+    "(ROOT (S (NP (DT The) (NN dog)) (VP (VBD saw) (NP (DT a) (JJ big) (NN cat))) (. .)))",
+    "(ROOT (S (NP (PRP I)) (VP (VBD saw) (NP (DT the) (NN book))) (. .)))",
+    "(ROOT (S (NP (DT A) (NN man)) (VP (VBD walked) (PP (IN near) (NP (DT the) (NN park)))) (. .)))",
+    "(ROOT (S (NP (PRP She)) (VP (VBZ likes) (NP (JJ red) (NNS apples))) (. .)))",
+    "(ROOT (S (NP (DT The) (NNS dogs)) (VP (VBP run) (ADVP (RB quickly))) (. .)))",
+  };
+
+  private LexicalizedParser serialized;
+  private LexicalizedParser compact;
+
+  @Override
+  protected void setUp() throws Exception {
+    MemoryTreebank treebank = new MemoryTreebank();
+    for (String tree : TREES) {
+      treebank.add(Tree.valueOf(tree));
+    }
+    Options op = new Options();
+    LexicalizedParser parser = LexicalizedParser.trainFromTreebank(treebank, op);
+
+    File serializedFile = File.createTempFile("parser", ".ser.gz");
+    serializedFile.deleteOnExit();
+    parser.saveParserToSerialized(serializedFile.getPath());
+    serialized = LexicalizedParser.getParserFromSerializedFile(serializedFile.getPath());
+
+    File compactFile = File.createTempFile("parser", ".lpc");
+    compactFile.deleteOnExit();
+    parser.saveParserToCompactFile(compactFile.getPath());
+    compact = LexicalizedParser.getParserFromCompactFile(compactFile.getPath());
+  }
+
+  public void testUnknownWordsParseTheSame() {
+    List<String> sentence = Arrays.asList("The", "zorbly", "cat", "glimmered", "near", "the", "frumptious", "mat", ".");
+    Tree expected = serialized.parseStrings(sentence);
+    Tree tree = compact.parseStrings(sentence);
+    assertEquals(expected.toString(), tree.toString());
+    assertEquals(expected.score(), tree.score(), 1e-9);
+  }
+
+  public void testCompactToSerialized() throws Exception {
+    List<String> sentence = Arrays.asList("The", "zorbly", "dog", "saw", "the", "cat", ".");
+    Tree expected = compact.parseStrings(sentence);
+
+    File serializedFile = File.createTempFile("parser", ".ser.gz");
+    serializedFile.deleteOnExit();
+    compact.saveParserToSerialized(serializedFile.getPath());
+    LexicalizedParser reloaded = LexicalizedParser.getParserFromSerializedFile(serializedFile.getPath());
+    assertEquals(compact.wordIndex.objectsList(), reloaded.wordIndex.objectsList());
+    Tree tree = reloaded.parseStrings(sentence);
+    assertEquals(expected.toString(), tree.toString());
+    assertEquals(expected.score(), tree.score(), 1e-9);
+  }
+
+  public void testUnknownWordsGetNewIndices() {
+    int size = compact.wordIndex.size();
+    int index = compact.wordIndex.addToIndex("zorbly");
+    assertTrue(index >= size);
+    assertEquals("zorbly", compact.wordIndex.get(index));
+    assertEquals(index, compact.wordIndex.addToIndex("zorbly"));
+    assertEquals(compact.wordIndex.indexOf("cat"), compact.wordIndex.addToIndex("cat"));
+  }
+
+}
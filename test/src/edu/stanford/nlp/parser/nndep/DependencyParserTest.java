@@ -0,0 +1,94 @@
+package edu.stanford.nlp.parser.nndep;
+
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.ling.TaggedWord;
+import edu.stanford.nlp.trees.GrammaticalStructure;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Checks that a small, randomly initialized model parses the same way
+ * from the text and the binary model formats.
+ */
+public class DependencyParserTest extends TestCase {
+
+  private static final int EMBEDDING_SIZE = 2;
+  private static final int HIDDEN_SIZE = 3;
+
+  private static final List<String> WORDS = Arrays.asList(Config.NULL, Config.UNKNOWN, Config.ROOT, "dogs", "bark", "loudly");
+  private static final List<String> POS = Arrays.asList(Config.NULL, Config.UNKNOWN, Config.ROOT, "NNS", "VBP", "RB");
+  private static final List<String> LABELS = Arrays.asList(Config.NULL, "root", "nsubj", "advmod");
+
+  private static String writeTextModel() throws IOException {
+    Random random = new Random(1234);
+    File file = File.createTempFile("nndep", ".txt");
+    file.deleteOnExit();
+    try (PrintWriter output = new PrintWriter(file, "UTF-8")) {
+      output.println("dict=" + WORDS.size());
+      output.println("pos=" + POS.size());
+      output.println("label=" + LABELS.size());
+      output.println("embeddingSize=" + EMBEDDING_SIZE);
+      output.println("hiddenSize=" + HIDDEN_SIZE);
+      output.println("numTokens=" + Config.numTokens);
+      output.println("preComputed=4");
+      for (List<String> table : Arrays.asList(WORDS, POS, LABELS)) {
+        for (String entry : table) {
+          output.print(entry);
+          for (int k = 0; k < EMBEDDING_SIZE; ++k)
+            output.print(" " + (random.nextDouble() - 0.5));
+          output.println();
+        }
+      }
+      // W1, one line per input unit
+      for (int j = 0; j < EMBEDDING_SIZE * Config.numTokens; ++j)
+        output.println(randomLine(random, HIDDEN_SIZE));
+      // b1
+      output.println(randomLine(random, HIDDEN_SIZE));
+      // W2, one line per hidden unit
+      for (int j = 0; j < HIDDEN_SIZE; ++j)
+        output.println(randomLine(random, LABELS.size() * 2 - 1));
+      output.println("0 49 98 147");
+    }
+    return file.getPath();
+  }
+
+  private static String randomLine(Random random, int length) {
+    StringBuilder line = new StringBuilder();
+    for (int i = 0; i < length; ++i) {
+      if (i > 0)
+        line.append(' ');
+      line.append(random.nextDouble() - 0.5);
+    }
+    return line.toString();
+  }
+
+  public void testBinaryModelRoundTrip() throws IOException {
+    String textModel = writeTextModel();
+    Properties props = new Properties();
+    props.setProperty("embeddingSize", Integer.toString(EMBEDDING_SIZE));
+    props.setProperty("hiddenSize", Integer.toString(HIDDEN_SIZE));
+    DependencyParser textParser = DependencyParser.loadFromModelFile(textModel, props);
+
+    File binaryModel = File.createTempFile("nndep", ".bin");
+    binaryModel.deleteOnExit();
+    textParser.writeBinaryModelFile(binaryModel.getPath());
+    DependencyParser binaryParser = DependencyParser.loadFromModelFile(binaryModel.getPath(), props);
+
+    List<HasWord> sentence = Arrays.asList(new TaggedWord("dogs", "NNS"), new TaggedWord("bark", "VBP"),
+        new TaggedWord("loudly", "RB"), new TaggedWord("unseen", "RB"));
+    GrammaticalStructure fromText = textParser.predict(sentence);
+    GrammaticalStructure fromBinary = binaryParser.predict(sentence);
+    assertEquals(fromText.typedDependencies().toString(), fromBinary.typedDependencies().toString());
+    assertEquals(textParser.getWordID("bark"), binaryParser.getWordID("bark"));
+    assertEquals(textParser.getPosID("RB"), binaryParser.getPosID("RB"));
+    assertEquals(textParser.getLabelID("advmod"), binaryParser.getLabelID("advmod"));
+  }
+
+}
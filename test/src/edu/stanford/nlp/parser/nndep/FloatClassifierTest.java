@@ -0,0 +1,170 @@
+package edu.stanford.nlp.parser.nndep;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Checks that the batched forward pass of the classifier agrees with
+ * scoring one feature vector at a time, and that its float weights score
+ * almost exactly as the double weights they were copied from.
+ */
+public class FloatClassifierTest extends TestCase {
+
+  private static final int NUM_EMBEDDINGS = 30;
+  private static final int NUM_LABELS = 7;
+
+  private Config config;
+  private FloatClassifier classifier;
+  private double[][] E, W1, W2;
+  private double[] b1;
+  private Random random;
+
+  @Override
+  public void setUp() {
+    Properties props = new Properties();
+    props.setProperty("hiddenSize", "10");
+    props.setProperty("embeddingSize", "4");
+    config = new Config(props);
+
+    random = new Random(42);
+    E = randomMatrix(NUM_EMBEDDINGS, config.embeddingSize);
+    W1 = randomMatrix(config.hiddenSize, config.embeddingSize * Config.numTokens);
+    b1 = randomMatrix(1, config.hiddenSize)[0];
+    W2 = randomMatrix(NUM_LABELS, config.hiddenSize);
+
+    // Precompute only some of the features, so that both paths are exercised
+    List<Integer> preComputed = new ArrayList<>();
+    for (int i = 0; i < NUM_EMBEDDINGS * Config.numTokens; i += 3)
+      preComputed.add(i);
+
+    classifier = new FloatClassifier(config, E, W1, b1, W2, preComputed);
+  }
+
+  private double[][] randomMatrix(int rows, int cols) {
+    double[][] m = new double[rows][cols];
+    for (int i = 0; i < rows; ++i)
+      for (int j = 0; j < cols; ++j)
+        m[i][j] = random.nextDouble() - 0.5;
+    return m;
+  }
+
+  private int[][] randomFeatures(int n) {
+    int[][] features = new int[n][Config.numTokens];
+    for (int[] feature : features)
+      for (int j = 0; j < feature.length; ++j)
+        feature[j] = random.nextInt(NUM_EMBEDDINGS);
+    return features;
+  }
+
+  public void testBatchedScoresMatchSingle() {
+    int batchSize = 5;
+    int[][] features = randomFeatures(batchSize + 2);
+
+    double[][] hidden = new double[batchSize + 2][config.hiddenSize];
+    double[][] scores = new double[batchSize + 2][NUM_LABELS];
+    // Run twice, to make sure the scratch space is reset between calls
+    classifier.computeScores(features, batchSize + 2, hidden, scores);
+    classifier.computeScores(features, batchSize, hidden, scores);
+
+    for (int b = 0; b < batchSize; ++b) {
+      double[] expected = classifier.computeScores(features[b]);
+      assertEquals(expected.length, classifier.numLabels());
+      for (int i = 0; i < expected.length; ++i)
+        assertEquals(expected[i], scores[b][i], 0.0);
+    }
+  }
+
+  public void testScoresMatchDoubleWeights() {
+    for (int[] feature : randomFeatures(10)) {
+      double[] hidden = new double[config.hiddenSize];
+      for (int i = 0; i < hidden.length; ++i) {
+        hidden[i] = b1[i];
+        for (int j = 0; j < feature.length; ++j)
+          for (int k = 0; k < config.embeddingSize; ++k)
+            hidden[i] += W1[i][j * config.embeddingSize + k] * E[feature[j]][k];
+        hidden[i] = hidden[i] * hidden[i] * hidden[i];
+      }
+      double[] scores = classifier.computeScores(feature);
+      for (int i = 0; i < NUM_LABELS; ++i) {
+        double expected = 0.0;
+        for (int j = 0; j < hidden.length; ++j)
+          expected += W2[i][j] * hidden[j];
+        assertEquals(expected, scores[i], 1e-4 * Math.max(1.0, Math.abs(expected)));
+      }
+    }
+  }
+
+  /** Copies the matrix, rounded to floats, into a little-endian direct buffer, as a mapped model file is */
+  private static FloatBuffer directBuffer(double[][] matrix) {
+    ByteBuffer bytes = ByteBuffer.allocateDirect(4 * matrix.length * matrix[0].length).order(ByteOrder.LITTLE_ENDIAN);
+    for (double[] row : matrix)
+      for (double x : row)
+        bytes.putFloat((float) x);
+    bytes.flip();
+    return bytes.asFloatBuffer();
+  }
+
+  private static double[][] roundToFloats(double[][] matrix) {
+    double[][] rounded = new double[matrix.length][matrix[0].length];
+    for (int i = 0; i < matrix.length; ++i)
+      for (int j = 0; j < matrix[i].length; ++j)
+        rounded[i][j] = (float) matrix[i][j];
+    return rounded;
+  }
+
+  public void testDirectBuffersScoreAsArrays() {
+    List<Integer> preComputed = new ArrayList<>();
+    for (int i = 0; i < NUM_EMBEDDINGS * Config.numTokens; i += 2)
+      preComputed.add(i);
+    // With weights which are floats already, the precomputed activations
+    // are the same whether summed from the doubles or from the buffers
+    double[][] E = roundToFloats(this.E);
+    double[][] W1 = roundToFloats(this.W1);
+    double[] b1 = roundToFloats(new double[][] { this.b1 })[0];
+    double[][] W2 = roundToFloats(this.W2);
+    FloatClassifier fromArrays = new FloatClassifier(config, E, W1, b1, W2, preComputed);
+    FloatClassifier fromBuffers = new FloatClassifier(config, directBuffer(E), directBuffer(W1),
+        directBuffer(new double[][] { b1 }), directBuffer(W2), config.embeddingSize, preComputed);
+    assertEquals(fromArrays.hiddenSize(), fromBuffers.hiddenSize());
+    assertEquals(fromArrays.numLabels(), fromBuffers.numLabels());
+
+    for (int[] feature : randomFeatures(10)) {
+      double[] expected = fromArrays.computeScores(feature);
+      double[] scores = fromBuffers.computeScores(feature);
+      for (int i = 0; i < expected.length; ++i)
+        assertEquals(expected[i], scores[i], 0.0);
+    }
+    assertTrue(Arrays.deepEquals(fromArrays.getW1(), fromBuffers.getW1()));
+  }
+
+  public void testHiddenSizeComesFromWeights() {
+    // A hidden layer smaller than the configured one, as when a model was
+    // trained with a different hiddenSize than the current properties
+    int hiddenSize = config.hiddenSize - 4;
+    double[][] W1 = randomMatrix(hiddenSize, config.embeddingSize * Config.numTokens);
+    double[] b1 = randomMatrix(1, hiddenSize)[0];
+    double[][] W2 = randomMatrix(NUM_LABELS, hiddenSize);
+    FloatClassifier small = new FloatClassifier(config, E, W1, b1, W2, new ArrayList<Integer>());
+    assertEquals(hiddenSize, small.hiddenSize());
+    assertEquals(config.hiddenSize, classifier.hiddenSize());
+
+    int[][] features = randomFeatures(3);
+    double[][] hidden = new double[features.length][small.hiddenSize()];
+    double[][] scores = new double[features.length][small.numLabels()];
+    small.computeScores(features, features.length, hidden, scores);
+    for (int b = 0; b < features.length; ++b) {
+      double[] expected = small.computeScores(features[b]);
+      for (int i = 0; i < expected.length; ++i)
+        assertEquals(expected[i], scores[b][i], 0.0);
+    }
+  }
+
+}
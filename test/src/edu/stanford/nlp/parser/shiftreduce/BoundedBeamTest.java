@@ -0,0 +1,48 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import edu.stanford.nlp.util.ScoredObject;
+
+public class BoundedBeamTest extends TestCase {
+  public void testKeepsHighestScores() {
+    BoundedBeam<ScoredObject<Integer>> beam = new BoundedBeam<ScoredObject<Integer>>(5);
+    Random random = new Random(1234);
+    double[] scores = new double[100];
+    for (int i = 0; i < scores.length; ++i) {
+      scores[i] = random.nextDouble();
+      beam.add(new ScoredObject<Integer>(i, scores[i]));
+    }
+    assertTrue(beam.isFull());
+
+    double[] sorted = scores.clone();
+    Arrays.sort(sorted);
+    List<ScoredObject<Integer>> best = beam.sortedDescending();
+    assertEquals(5, best.size());
+    for (int i = 0; i < 5; ++i) {
+      assertEquals(sorted[sorted.length - 1 - i], best.get(i).score());
+    }
+    assertFalse(beam.accepts(sorted[sorted.length - 6]));
+    assertTrue(beam.accepts(sorted[sorted.length - 1]));
+  }
+
+  public void testRemoveBelowAndClear() {
+    BoundedBeam<ScoredObject<Integer>> beam = new BoundedBeam<ScoredObject<Integer>>(4);
+    for (int i = 0; i < 4; ++i) {
+      beam.add(new ScoredObject<Integer>(i, i));
+    }
+    beam.removeBelow(2.0);
+    assertEquals(2, beam.size());
+    assertEquals(2.0, beam.sortedDescending().get(1).score());
+    assertTrue(beam.accepts(-1.0));
+    beam.add(new ScoredObject<Integer>(5, 0.5));
+    assertEquals(0.5, beam.sortedDescending().get(2).score());
+
+    beam.clear();
+    assertTrue(beam.isEmpty());
+  }
+}
@@ -0,0 +1,77 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import junit.framework.TestCase;
+
+import java.util.Collections;
+import java.util.List;
+
+import edu.stanford.nlp.parser.lexparser.BinaryHeadFinder;
+import edu.stanford.nlp.parser.lexparser.Options;
+import edu.stanford.nlp.trees.HeadFinder;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.Trees;
+
+public class HashedFeaturesTest extends TestCase {
+  String treeString = "(ROOT (FRAG (NP (DT A) (@NP (ADJP (JJ short) (@ADJP (, ,) (JJ simple))) (NN test)))))";
+
+  public void testPiecesMatchConcatenation() {
+    HashedFeatures features = new HashedFeatures(1);
+    features.add("S0WT-", "word", "-", "NN");
+    features.add("S0C-", null);
+    features.add("S0cS1cS2c-", "NP", "-", "VP", "-", "S");
+    features.add("S0", "W", "S1", "C", "-", "word", "-", "VP");
+    assertEquals(4, features.size());
+    assertEquals(HashedFeatures.hash("S0WT-word-NN"), features.get(0));
+    assertEquals(HashedFeatures.hash("S0C-null"), features.get(1));
+    assertEquals(HashedFeatures.hash("S0cS1cS2c-NP-VP-S"), features.get(2));
+    assertEquals(HashedFeatures.hash("S0WS1C-word-VP"), features.get(3));
+    assertFalse(HashedFeatures.hash("S0WT-word-NN") == HashedFeatures.hash("S0WT-word-NNS"));
+  }
+
+  /**
+   * Hashed featurization of every state along a parse should give
+   * exactly the hashes of the string features
+   */
+  public void testFeaturizeHashed() {
+    Options op = new Options();
+    HeadFinder binaryHeadFinder = new BinaryHeadFinder(op.tlpParams.headFinder());
+    Tree tree = Tree.valueOf(treeString);
+    Trees.convertToCoreLabels(tree);
+    tree.percolateHeadAnnotations(binaryHeadFinder);
+
+    FeatureFactory factory = new BasicFeatureFactory();
+    List<Transition> transitions = CreateTransitionSequence.createTransitionSequence(tree, true, Collections.singleton("ROOT"), Collections.singleton("ROOT"));
+    State state = ShiftReduceParser.initialStateFromGoldTagTree(tree);
+    for (Transition transition : transitions) {
+      List<String> features = factory.featurize(state);
+      HashedFeatures hashed = factory.featurizeHashed(state);
+      assertEquals(features.size(), hashed.size());
+      for (int i = 0; i < features.size(); ++i) {
+        assertEquals(HashedFeatures.hash(features.get(i)), hashed.get(i));
+      }
+      state = transition.apply(state);
+    }
+  }
+
+  public void testHashedWeights() {
+    HashedWeights weights = new HashedWeights(4);
+    for (long key = 1; key <= 1000; ++key) {
+      weights.getOrCreate(key).updateWeight((int) (key % 3), key % 2 == 0 ? 1.0f : 0.0f);
+    }
+    assertEquals(1000, weights.size());
+    assertNull(weights.get(1001));
+    float[] scores = new float[3];
+    weights.get(10).score(scores);
+    assertEquals(1.0f, scores[1]);
+
+    weights.condense();
+    assertEquals(500, weights.size());
+    assertNull(weights.get(11));
+    assertNotNull(weights.get(12));
+
+    weights.retainAll(key -> key < 100);
+    assertEquals(49, weights.size());
+    assertNotNull(weights.get(98));
+    assertNull(weights.get(102));
+  }
+}
@@ -0,0 +1,169 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.CoreMap;
+
+import junit.framework.TestCase;
+
+public class AnnotationCacheTest extends TestCase {
+
+  private static final String TEXT = "Dr. Smith saw the cats.  They were asleep on the mat.";
+
+  private File directory;
+  private int annotated;
+
+  @Override
+  public void setUp() throws IOException {
+    directory = File.createTempFile("annotationCache", "");
+    assertTrue(directory.delete());
+    assertTrue(directory.mkdir());
+    annotated = 0;
+  }
+
+  @Override
+  public void tearDown() {
+    IOUtils.deleteRecursively(directory);
+  }
+
+  private static StanfordCoreNLP pipeline(Properties props) {
+    props.setProperty("annotators", "tokenize, ssplit");
+    return new StanfordCoreNLP(props);
+  }
+
+  /** The annotation function for the cache; counts how often it is actually called */
+  private void annotate(Annotation annotation) {
+    annotated++;
+    pipeline(new Properties()).annotate(annotation);
+  }
+
+  private static List<String> sentences(Annotation annotation) {
+    List<String> sentences = new ArrayList<>();
+    for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
+      StringBuilder b = new StringBuilder();
+      for (CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class)) {
+        b.append(token.word()).append('@').append(token.beginPosition()).append(' ');
+      }
+      sentences.add(b.toString());
+    }
+    return sentences;
+  }
+
+  public void testHitsAndMisses() {
+    AnnotationCache cache = new AnnotationCache(directory, 1 << 20, 10);
+    Annotation first = new Annotation(TEXT);
+    cache.annotate(first, "sig", this::annotate);
+    assertEquals(1, annotated);
+    assertEquals(1, cache.misses.get());
+    assertEquals(1, cache.size());
+
+    Annotation second = new Annotation(TEXT);
+    cache.annotate(second, "sig", this::annotate);
+    assertEquals(1, annotated);
+    assertEquals(1, cache.memoryHits.get());
+    assertEquals(sentences(first), sentences(second));
+    assertEquals(first.get(CoreAnnotations.TokensAnnotation.class).size(), second.get(CoreAnnotations.TokensAnnotation.class).size());
+
+    // A different pipeline signature or text is a different document
+    cache.annotate(new Annotation(TEXT), "other", this::annotate);
+    cache.annotate(new Annotation(TEXT + " "), "sig", this::annotate);
+    assertEquals(3, annotated);
+    assertEquals(3, cache.size());
+
+    // The disk tier survives the cache
+    AnnotationCache reopened = new AnnotationCache(directory, 1 << 20, 10);
+    assertEquals(3, reopened.size());
+    Annotation third = new Annotation(TEXT);
+    reopened.annotate(third, "sig", this::annotate);
+    assertEquals(3, annotated);
+    assertEquals(1, reopened.diskHits.get());
+    assertEquals(sentences(first), sentences(third));
+    assertEquals(0.25, cache.hitRate(), 1e-9);
+  }
+
+  public void testUncacheable() {
+    AnnotationCache cache = new AnnotationCache(directory, 1 << 20, 10);
+    Annotation annotation = new Annotation(TEXT);
+    annotate(annotation);
+    annotated = 0;
+    // Already has tokens, so the cache cannot know what the result would be
+    assertNull(AnnotationCache.key("sig", annotation));
+    cache.annotate(annotation, "sig", this::annotate);
+    assertEquals(1, annotated);
+    assertEquals(1, cache.uncacheable.get());
+    assertEquals(0, cache.size());
+
+    Annotation dated = new Annotation(TEXT);
+    dated.set(CoreAnnotations.DocDateAnnotation.class, "2015-01-01");
+    assertFalse(AnnotationCache.key("sig", dated).equals(AnnotationCache.key("sig", new Annotation(TEXT))));
+  }
+
+  public void testEviction() {
+    AnnotationCache cache = new AnnotationCache(directory, 1 << 20, 0);
+    cache.annotate(new Annotation(TEXT), "sig", this::annotate);
+    long size = cache.diskBytes();
+    assertTrue(size > 0);
+
+    // Room for two documents of about this size
+    AnnotationCache small = new AnnotationCache(directory, 2 * size + size / 2, 0);
+    for (int i = 0; i < 4; i++) {
+      small.annotate(new Annotation(TEXT.replace("Smith", "Smyth" + i)), "sig", this::annotate);
+    }
+    assertEquals(2, small.size());
+    assertTrue(small.evictions.get() >= 2);
+    assertEquals(2, directory.list().length);
+    // the most recent documents are still there
+    small.annotate(new Annotation(TEXT.replace("Smith", "Smyth3")), "sig", this::annotate);
+    assertEquals(1, small.diskHits.get());
+  }
+
+  public void testMemoryHitsKeepDocumentsOnDisk() {
+    byte[] document = new byte[100];
+    // Room for two documents, and memory for all of them
+    AnnotationCache cache = new AnnotationCache(directory, 250, 10);
+    cache.put("a", document);
+    cache.put("b", document);
+    for (int i = 0; i < 3; i++) {
+      assertNotNull(cache.get("a"));
+    }
+    assertEquals(3, cache.memoryHits.get());
+    cache.put("c", document);
+    assertEquals(1, cache.evictions.get());
+    assertNull(cache.get("b"));
+    assertNotNull(cache.get("a"));
+    assertNotNull(cache.get("c"));
+    assertEquals(2, directory.list().length);
+  }
+
+  public void testUnreadable() {
+    AnnotationCache cache = new AnnotationCache(directory, 1 << 20, 10);
+    Annotation first = new Annotation(TEXT);
+    cache.put(AnnotationCache.key("sig", first), new byte[] { 1, 2, 3 });
+    cache.annotate(first, "sig", this::annotate);
+    assertEquals(1, annotated);
+    assertEquals(1, cache.unreadable.get());
+    Annotation second = new Annotation(TEXT);
+    cache.annotate(second, "sig", this::annotate);
+    assertEquals(1, annotated);
+    assertEquals(sentences(first), sentences(second));
+  }
+
+  public void testPipeline() {
+    Properties props = new Properties();
+    props.setProperty("annotationCache.dir", directory.getPath());
+    StanfordCoreNLP pipeline = pipeline(props);
+    Annotation first = new Annotation(TEXT);
+    pipeline.annotate(first);
+    Annotation second = new Annotation(TEXT);
+    pipeline.annotate(second);
+    assertEquals(sentences(first), sentences(second));
+    assertEquals(1, directory.list().length);
+    assertTrue(pipeline.timingInformation().contains("hit rate 50.0%"));
+  }
+
+}
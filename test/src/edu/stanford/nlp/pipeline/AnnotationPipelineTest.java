@@ -0,0 +1,221 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.*;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.CoreMap;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that annotating the sentences of a document on several threads
+ * gives the same result as annotating it sequentially, and that annotators
+ * which are not sentence annotators only see finished sentences.
+ */
+public class AnnotationPipelineTest extends TestCase {
+
+  private static final String TEXT = "The dogs were barking at the cats.  Then the cats ran up the trees.  " +
+      "Nobody saw where the birds went.  It was raining.  The houses stood empty.  " +
+      "She walked home.  They are eating apples.";
+
+  /** Tags every token as a noun, or as a verb if it ends in "ing" */
+  private static class FakeTagger extends SentenceAnnotator {
+    int finished = 0;
+
+    @Override
+    protected int nThreads() {
+      return 1;
+    }
+
+    @Override
+    protected long maxTime() {
+      return -1;
+    }
+
+    @Override
+    protected boolean isThreadSafe() {
+      return true;
+    }
+
+    @Override
+    protected void doOneSentence(Annotation annotation, CoreMap sentence) {
+      for (CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class)) {
+        token.set(CoreAnnotations.PartOfSpeechAnnotation.class, token.word().endsWith("ing") ? "VBG" : "NNS");
+      }
+    }
+
+    @Override
+    protected void doOneFailedSentence(Annotation annotation, CoreMap sentence) {
+      throw new AssertionError("no sentence should fail");
+    }
+
+    @Override
+    protected void finishDocument(Annotation annotation) {
+      finished++;
+    }
+
+    @Override
+    public Set<Requirement> requires() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Requirement> requirementsSatisfied() {
+      return Collections.singleton(POS_REQUIREMENT);
+    }
+  }
+
+  /** A document level annotator which checks that every token has a lemma, and counts them */
+  private static class LemmaCounter implements Annotator {
+    int count = 0;
+
+    @Override
+    public void annotate(Annotation annotation) {
+      for (CoreLabel token : annotation.get(CoreAnnotations.TokensAnnotation.class)) {
+        assertNotNull(token.lemma());
+        count++;
+      }
+    }
+
+    @Override
+    public Set<Requirement> requires() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Requirement> requirementsSatisfied() {
+      return Collections.emptySet();
+    }
+  }
+
+  /**
+   * A sentence annotator which is not thread safe: it numbers the
+   * sentences with a counter of its own, and notes if it is ever called
+   * for two sentences at once.
+   */
+  private static class SentenceNumberer extends SentenceAnnotator {
+    int next = 0;
+    boolean busy = false;
+    boolean overlapped = false;
+    int documents = 0;
+
+    @Override
+    public void annotate(Annotation annotation) {
+      documents++;
+      super.annotate(annotation);
+    }
+
+    @Override
+    protected int nThreads() {
+      return 1;
+    }
+
+    @Override
+    protected long maxTime() {
+      return -1;
+    }
+
+    @Override
+    protected void doOneSentence(Annotation annotation, CoreMap sentence) {
+      if (busy) {
+        overlapped = true;
+      }
+      busy = true;
+      try {
+        Thread.sleep(5);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      sentence.set(CoreAnnotations.SentenceIndexAnnotation.class, next++);
+      busy = false;
+    }
+
+    @Override
+    protected void doOneFailedSentence(Annotation annotation, CoreMap sentence) {
+      throw new AssertionError("no sentence should fail");
+    }
+
+    @Override
+    public Set<Requirement> requires() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Requirement> requirementsSatisfied() {
+      return Collections.emptySet();
+    }
+  }
+
+  private static List<String> annotate(int sentenceThreads, FakeTagger tagger) {
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new TokenizerAnnotator(false, "en"));
+    pipeline.addAnnotator(new WordsToSentencesAnnotator(false));
+    pipeline.addAnnotator(tagger);
+    pipeline.addAnnotator(new MorphaAnnotator(false));
+    LemmaCounter counter = new LemmaCounter();
+    pipeline.addAnnotator(counter);
+    pipeline.setSentenceThreads(sentenceThreads);
+
+    Annotation annotation = new Annotation(TEXT);
+    pipeline.annotate(annotation);
+    List<String> lemmas = new ArrayList<>();
+    for (CoreLabel token : annotation.get(CoreAnnotations.TokensAnnotation.class)) {
+      lemmas.add(token.tag() + '/' + token.lemma());
+    }
+    assertEquals(lemmas.size(), counter.count);
+    return lemmas;
+  }
+
+  public void testSentenceThreads() {
+    FakeTagger sequentialTagger = new FakeTagger();
+    List<String> expected = annotate(1, sequentialTagger);
+    assertEquals(1, sequentialTagger.finished);
+    assertTrue(expected.contains("NNS/cat"));
+    assertTrue(expected.contains("VBG/eat"));
+
+    for (int threads = 2; threads <= 4; threads++) {
+      FakeTagger tagger = new FakeTagger();
+      assertEquals(expected, annotate(threads, tagger));
+      assertEquals(1, tagger.finished);
+    }
+  }
+
+  public void testNotThreadSafe() {
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new TokenizerAnnotator(false, "en"));
+    pipeline.addAnnotator(new WordsToSentencesAnnotator(false));
+    pipeline.addAnnotator(new FakeTagger());
+    SentenceNumberer numberer = new SentenceNumberer();
+    pipeline.addAnnotator(numberer);
+    pipeline.addAnnotator(new MorphaAnnotator(false));
+    pipeline.setSentenceThreads(4);
+
+    Annotation annotation = new Annotation(TEXT);
+    pipeline.annotate(annotation);
+    assertEquals(1, numberer.documents);
+    assertFalse(numberer.overlapped);
+    List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+    for (int i = 0; i < sentences.size(); i++) {
+      assertEquals(Integer.valueOf(i), sentences.get(i).get(CoreAnnotations.SentenceIndexAnnotation.class));
+    }
+    for (CoreLabel token : annotation.get(CoreAnnotations.TokensAnnotation.class)) {
+      assertNotNull(token.tag());
+      assertNotNull(token.lemma());
+    }
+  }
+
+  public void testNoSentences() {
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new TokenizerAnnotator(false, "en"));
+    pipeline.addAnnotator(new MorphaAnnotator(false));
+    pipeline.setSentenceThreads(2);
+    try {
+      pipeline.annotate(new Annotation(TEXT));
+      fail("lemmatizing without sentences should fail");
+    } catch (RuntimeException e) {
+      // expected
+    }
+  }
+
+}
@@ -68,4 +68,41 @@ public class AnnotatorPoolTest extends TestCase {
     System.out.println("Third annotator: " + a3);
     Assert.assertTrue(a1 != a3);
   }
+
+  public void testReuseBySignature() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("sample.prop", "v1");
+    AnnotatorPool pool = new AnnotatorPool();
+    pool.register("sample", new SampleAnnotatorFactory(props));
+    Annotator a1 = pool.get("sample");
+
+    props.setProperty("sample.prop", "v2");
+    pool.register("sample", new SampleAnnotatorFactory(props));
+    Annotator a2 = pool.get("sample");
+    Assert.assertTrue(a1 != a2);
+
+    // a1 is still alive, so switching back should not create a new annotator
+    props.setProperty("sample.prop", "v1");
+    pool.register("sample", new SampleAnnotatorFactory(props));
+    Annotator a3 = pool.get("sample");
+    Assert.assertTrue(a1 == a3);
+  }
+
+  public void testRelease() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("sample.prop", "v1");
+    AnnotatorPool pool = new AnnotatorPool();
+    pool.register("sample", new SampleAnnotatorFactory(props));
+    Annotator a1 = pool.get("sample");
+
+    // a1 is still alive, so the pool hands it out again
+    pool.release(a1);
+    Annotator a2 = pool.get("sample");
+    Assert.assertTrue(a1 == a2);
+
+    // releasing an annotator which is not the pool's leaves the pool alone
+    props.setProperty("sample.prop", "v2");
+    pool.release(new SampleAnnotatorFactory(props).create());
+    Assert.assertTrue(a1 == pool.get("sample"));
+  }
 }
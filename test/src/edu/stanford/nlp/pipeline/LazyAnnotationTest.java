@@ -0,0 +1,116 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeCoreAnnotations;
+import edu.stanford.nlp.util.CoreMap;
+
+import junit.framework.TestCase;
+
+public class LazyAnnotationTest extends TestCase {
+
+  private static final String TEXT = "The cats slept.  Dogs barked loudly.";
+
+  private static final String[] TREES = {
+      "(ROOT (S (NP (DT The) (NNS cats)) (VP (VBD slept)) (. .)))",
+      "(ROOT (S (NP (NNS Dogs)) (VP (VBD barked) (ADVP (RB loudly))) (. .)))",
+  };
+
+  public void testSupplierRunsOnce() {
+    LazyAnnotation annotation = new LazyAnnotation(TEXT);
+    AtomicInteger calls = new AtomicInteger(0);
+    annotation.setLazily(CoreAnnotations.DocIDAnnotation.class, () -> "doc" + calls.incrementAndGet());
+
+    assertTrue(annotation.isPending(CoreAnnotations.DocIDAnnotation.class));
+    assertTrue(annotation.containsKey(CoreAnnotations.DocIDAnnotation.class));
+    assertEquals(2, annotation.size());
+    assertEquals(0, calls.get());
+
+    assertEquals("doc1", annotation.get(CoreAnnotations.DocIDAnnotation.class));
+    assertEquals("doc1", annotation.get(CoreAnnotations.DocIDAnnotation.class));
+    assertEquals(1, calls.get());
+    assertFalse(annotation.isPending(CoreAnnotations.DocIDAnnotation.class));
+    assertEquals(2, annotation.size());
+  }
+
+  public void testSetAndRemove() {
+    LazyAnnotation annotation = new LazyAnnotation(TEXT);
+    AtomicInteger calls = new AtomicInteger(0);
+    annotation.setLazily(CoreAnnotations.DocIDAnnotation.class, () -> "doc" + calls.incrementAndGet());
+    annotation.setLazily(CoreAnnotations.DocDateAnnotation.class, () -> "2015-01-01");
+
+    assertEquals("doc1", annotation.set(CoreAnnotations.DocIDAnnotation.class, "other"));
+    assertEquals("other", annotation.get(CoreAnnotations.DocIDAnnotation.class));
+    assertEquals("2015-01-01", annotation.remove(CoreAnnotations.DocDateAnnotation.class));
+    assertFalse(annotation.containsKey(CoreAnnotations.DocDateAnnotation.class));
+    assertEquals(new HashSet<>(Arrays.asList(CoreAnnotations.TextAnnotation.class, CoreAnnotations.DocIDAnnotation.class)),
+        annotation.keySet());
+    assertEquals(1, calls.get());
+  }
+
+  public void testKeySetMaterializes() {
+    LazyAnnotation annotation = new LazyAnnotation(TEXT);
+    annotation.setLazily(CoreAnnotations.DocIDAnnotation.class, () -> "doc");
+    assertTrue(annotation.keySet().contains(CoreAnnotations.DocIDAnnotation.class));
+    assertFalse(annotation.isPending(CoreAnnotations.DocIDAnnotation.class));
+
+    LazyAnnotation other = new LazyAnnotation(TEXT);
+    other.setLazily(CoreAnnotations.DocIDAnnotation.class, () -> "doc");
+    assertEquals(annotation, other);
+    assertEquals(annotation.hashCode(), other.hashCode());
+    assertEquals(annotation, other.copy());
+  }
+
+  private static byte[] serializedDocument() throws IOException {
+    Properties props = new Properties();
+    props.setProperty("annotators", "tokenize, ssplit");
+    Annotation annotation = new Annotation(TEXT);
+    new StanfordCoreNLP(props).annotate(annotation);
+    List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+    for (int i = 0; i < sentences.size(); i++) {
+      sentences.get(i).set(TreeCoreAnnotations.TreeAnnotation.class, Tree.valueOf(TREES[i]));
+    }
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    new ProtobufAnnotationSerializer().write(annotation, os);
+    return os.toByteArray();
+  }
+
+  public void testReadLazily() throws IOException, ClassNotFoundException {
+    byte[] bytes = serializedDocument();
+    ProtobufAnnotationSerializer serializer = new ProtobufAnnotationSerializer();
+    Annotation eager = serializer.read(new ByteArrayInputStream(bytes)).first;
+    Annotation lazy = serializer.readLazily(new ByteArrayInputStream(bytes)).first;
+    assertTrue(lazy instanceof LazyAnnotation);
+
+    List<CoreMap> eagerSentences = eager.get(CoreAnnotations.SentencesAnnotation.class);
+    List<CoreMap> lazySentences = lazy.get(CoreAnnotations.SentencesAnnotation.class);
+    assertEquals(2, lazySentences.size());
+    for (int i = 0; i < lazySentences.size(); i++) {
+      LazyAnnotation sentence = (LazyAnnotation) lazySentences.get(i);
+      assertTrue(sentence.isPending(TreeCoreAnnotations.TreeAnnotation.class));
+      assertTrue(sentence.containsKey(TreeCoreAnnotations.TreeAnnotation.class));
+      // tokens are read right away
+      assertFalse(sentence.isPending(CoreAnnotations.TokensAnnotation.class));
+      List<String> words = new ArrayList<>();
+      for (CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class)) {
+        words.add(token.word());
+      }
+      assertEquals(Tree.valueOf(TREES[i]).yieldWords().size(), words.size());
+
+      Tree tree = sentence.get(TreeCoreAnnotations.TreeAnnotation.class);
+      assertEquals(eagerSentences.get(i).get(TreeCoreAnnotations.TreeAnnotation.class), tree);
+      assertEquals(TREES[i], tree.toString());
+      assertSame(tree, sentence.get(TreeCoreAnnotations.TreeAnnotation.class));
+      assertFalse(sentence.isPending(TreeCoreAnnotations.TreeAnnotation.class));
+    }
+    assertEquals(eager.keySet(), lazy.keySet());
+  }
+
+}
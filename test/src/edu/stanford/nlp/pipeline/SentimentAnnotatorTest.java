@@ -0,0 +1,97 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.neural.rnn.RNNCoreAnnotations;
+import edu.stanford.nlp.sentiment.SentimentCoreAnnotations;
+import edu.stanford.nlp.sentiment.SentimentModel;
+import edu.stanford.nlp.sentiment.SentimentTestUtils;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeCoreAnnotations;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.Generics;
+import junit.framework.TestCase;
+
+/**
+ * Checks that the SentimentAnnotator labels a document the same way
+ * whether it scores the sentences with one thread or several.
+ */
+public class SentimentAnnotatorTest extends TestCase {
+
+  private File modelFile;
+
+  @Override
+  protected void setUp() throws IOException {
+    SentimentModel model = SentimentTestUtils.model(SentimentTestUtils.trees());
+    modelFile = File.createTempFile("sentiment", ".ser.gz");
+    model.saveSerialized(modelFile.getPath());
+  }
+
+  @Override
+  protected void tearDown() {
+    if (modelFile != null) {
+      modelFile.delete();
+    }
+  }
+
+  /** A document of many sentences, each with the binarized tree the parser would attach */
+  private static Annotation document() {
+    List<CoreMap> sentences = Generics.newArrayList();
+    for (int i = 0; i < 10; ++i) {
+      for (Tree tree : SentimentTestUtils.trees()) {
+        CoreMap sentence = new ArrayCoreMap();
+        sentence.set(TreeCoreAnnotations.TreeAnnotation.class, tree.deepCopy());
+        sentence.set(TreeCoreAnnotations.BinarizedTreeAnnotation.class, tree);
+        sentences.add(sentence);
+      }
+    }
+    Annotation annotation = new Annotation("");
+    annotation.set(CoreAnnotations.SentencesAnnotation.class, sentences);
+    return annotation;
+  }
+
+  private Annotation annotate(int nThreads) {
+    Properties props = new Properties();
+    props.setProperty("sentiment.model", modelFile.getPath());
+    props.setProperty("sentiment.nthreads", Integer.toString(nThreads));
+    Annotation annotation = document();
+    new SentimentAnnotator("sentiment", props).annotate(annotation);
+    return annotation;
+  }
+
+  public void testThreadsGiveSameLabels() {
+    List<CoreMap> expected = annotate(1).get(CoreAnnotations.SentencesAnnotation.class);
+    List<CoreMap> actual = annotate(4).get(CoreAnnotations.SentencesAnnotation.class);
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); ++i) {
+      CoreMap expectedSentence = expected.get(i);
+      CoreMap actualSentence = actual.get(i);
+      assertEquals(expectedSentence.get(SentimentCoreAnnotations.SentimentClass.class),
+                   actualSentence.get(SentimentCoreAnnotations.SentimentClass.class));
+      assertEquals(expectedSentence.get(TreeCoreAnnotations.TreeAnnotation.class).toString(),
+                   actualSentence.get(TreeCoreAnnotations.TreeAnnotation.class).toString());
+
+      Tree expectedTree = expectedSentence.get(SentimentCoreAnnotations.SentimentAnnotatedTree.class);
+      Tree actualTree = actualSentence.get(SentimentCoreAnnotations.SentimentAnnotatedTree.class);
+      Iterator<Tree> actualNodes = actualTree.iterator();
+      for (Tree expectedNode : expectedTree) {
+        Tree actualNode = actualNodes.next();
+        if (expectedNode.isLeaf()) {
+          continue;
+        }
+        assertTrue(Arrays.equals(RNNCoreAnnotations.getPredictions(expectedNode).getMatrix().data,
+                                 RNNCoreAnnotations.getPredictions(actualNode).getMatrix().data));
+        assertEquals(RNNCoreAnnotations.getPredictedClass(expectedNode), RNNCoreAnnotations.getPredictedClass(actualNode));
+      }
+      assertFalse(actualNodes.hasNext());
+    }
+  }
+
+}
@@ -0,0 +1,152 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.*;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.CoreMap;
+
+import junit.framework.TestCase;
+
+public class StanfordCoreNLPServerTest extends TestCase {
+
+  private static StanfordCoreNLP pipeline;
+
+  @Override
+  public void setUp() {
+    synchronized (StanfordCoreNLPServerTest.class) {
+      if (pipeline == null) {
+        Properties props = new Properties();
+        props.setProperty("annotators", "tokenize, ssplit");
+        pipeline = new StanfordCoreNLP(props);
+      }
+    }
+  }
+
+  private static String document() {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 40; i++) {
+      text.append("Sentence number ").append(i).append(" talks about Dr. Smith's ").append(i % 7).append(" cats.  ");
+      if (i % 9 == 0) {
+        text.append("\n\nA new paragraph starts here, with a rather longer sentence than the others in this document.  ");
+      }
+    }
+    return text.toString();
+  }
+
+  private static List<String> describe(List<CoreMap> sentences, String text) {
+    List<String> descriptions = new ArrayList<>();
+    for (CoreMap sentence : sentences) {
+      int begin = sentence.get(CoreAnnotations.CharacterOffsetBeginAnnotation.class);
+      int end = sentence.get(CoreAnnotations.CharacterOffsetEndAnnotation.class);
+      assertEquals(text.substring(begin, end), sentence.get(CoreAnnotations.TextAnnotation.class));
+      StringBuilder description = new StringBuilder();
+      description.append(sentence.get(CoreAnnotations.SentenceIndexAnnotation.class)).append(' ')
+          .append(sentence.get(CoreAnnotations.TokenBeginAnnotation.class)).append(' ')
+          .append(sentence.get(CoreAnnotations.TokenEndAnnotation.class)).append(':');
+      for (CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class)) {
+        assertEquals(token.originalText(), text.substring(token.beginPosition(), token.endPosition()));
+        description.append(' ').append(token.word()).append('@').append(token.beginPosition());
+      }
+      descriptions.add(description.toString());
+    }
+    return descriptions;
+  }
+
+  public void testAnnotateStream() throws IOException {
+    String text = document();
+    Annotation whole = new Annotation(text);
+    pipeline.annotate(whole);
+    List<String> expected = describe(whole.get(CoreAnnotations.SentencesAnnotation.class), text);
+
+    for (int chunkSize : new int[]{ 10, 100, 1000, 100000 }) {
+      List<CoreMap> streamed = new ArrayList<>();
+      List<Integer> chunkSizes = new ArrayList<>();
+      StanfordCoreNLPServer.annotateStream(new StringReader(text), pipeline, pipeline, chunkSize, sentences -> {
+        streamed.addAll(sentences);
+        chunkSizes.add(sentences.size());
+      });
+      assertEquals("chunk size " + chunkSize, expected, describe(streamed, text));
+      if (chunkSize < text.length() / 4) {
+        assertTrue(chunkSizes.size() > 1);
+      }
+    }
+  }
+
+  /** Stands in for an annotator which the splitter has already run, so should not be run again */
+  private static class NotRunAnnotator implements Annotator {
+    @Override
+    public void annotate(Annotation annotation) {
+      fail("Streamed text was tokenized or split again");
+    }
+
+    @Override
+    public Set<Requirement> requires() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Requirement> requirementsSatisfied() {
+      return Collections.emptySet();
+    }
+  }
+
+  public void testStreamIsNotTokenizedAgain() throws IOException {
+    String text = document();
+    Annotation whole = new Annotation(text);
+    pipeline.annotate(whole);
+    List<String> expected = describe(whole.get(CoreAnnotations.SentencesAnnotation.class), text);
+
+    List<CoreLabel> annotated = new ArrayList<>();
+    AnnotationPipeline rest = new AnnotationPipeline();
+    rest.addAnnotator(new NotRunAnnotator());
+    rest.addAnnotator(new NotRunAnnotator());
+    rest.addAnnotator(new NotRunAnnotator() {
+      @Override
+      public void annotate(Annotation annotation) {
+        annotated.addAll(annotation.get(CoreAnnotations.TokensAnnotation.class));
+      }
+    });
+    List<CoreMap> streamed = new ArrayList<>();
+    StanfordCoreNLPServer.annotateStream(new StringReader(text), pipeline, rest, 100, streamed::addAll);
+    assertEquals(expected, describe(streamed, text));
+    List<CoreLabel> tokens = new ArrayList<>();
+    for (CoreMap sentence : streamed) {
+      tokens.addAll(sentence.get(CoreAnnotations.TokensAnnotation.class));
+    }
+    assertEquals(tokens, annotated);
+  }
+
+  public void testSplitterProperties() {
+    Properties props = new Properties();
+    props.setProperty("annotators", "tokenize,cleanxml,ssplit,pos,lemma");
+    props.setProperty("tokenize.options", "americanize=false");
+    props.setProperty("clean.xmltags", "p");
+    props.setProperty("ssplit.eolonly", "true");
+    props.setProperty("pos.model", "tagger.model");
+    props.setProperty("outputFormat", "json");
+    Properties expected = new Properties();
+    expected.setProperty("annotators", "tokenize,cleanxml,ssplit");
+    expected.setProperty("tokenize.options", "americanize=false");
+    expected.setProperty("clean.xmltags", "p");
+    expected.setProperty("ssplit.eolonly", "true");
+    assertEquals(expected, StanfordCoreNLPServer.splitterProperties(props));
+
+    props.setProperty("annotators", "tokenize");
+    try {
+      StanfordCoreNLPServer.splitterProperties(props);
+      fail("Text which is not split into sentences cannot be streamed");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testEmptyStream() throws IOException {
+    List<CoreMap> streamed = new ArrayList<>();
+    StanfordCoreNLPServer.annotateStream(new StringReader("  \n "), pipeline, pipeline, 100, streamed::addAll);
+    assertTrue(streamed.isEmpty());
+  }
+
+}
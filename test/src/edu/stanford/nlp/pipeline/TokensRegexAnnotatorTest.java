@@ -0,0 +1,131 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.*;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.tokensregex.CoreMapExpressionExtractor;
+
+import junit.framework.TestCase;
+
+public class TokensRegexAnnotatorTest extends TestCase {
+
+  private File rules;
+
+  @Override
+  public void setUp() throws IOException {
+    rules = File.createTempFile("tokensregex", ".rules.txt");
+    writeRules("cat", "ANIMAL");
+  }
+
+  @Override
+  public void tearDown() {
+    rules.delete();
+  }
+
+  private void writeRules(String word, String type) throws IOException {
+    PrintWriter pw = IOUtils.getPrintWriter(rules.getPath());
+    pw.println("ner = { type: \"CLASS\", value: \"edu.stanford.nlp.ling.CoreAnnotations$NamedEntityTagAnnotation\" }");
+    pw.println("{ ruleType: \"tokens\", pattern: ( /" + word + "/ ), action: Annotate($0, ner, \"" + type + "\") }");
+    pw.close();
+  }
+
+  private Properties props() {
+    Properties props = new Properties();
+    props.setProperty("tokensregex.rules", rules.getPath());
+    return props;
+  }
+
+  private static List<String> annotate(Annotator annotator, String... words) {
+    List<CoreLabel> tokens = new ArrayList<>();
+    int offset = 0;
+    for (String word : words) {
+      CoreLabel token = new CoreLabel();
+      token.setWord(word);
+      token.setNER("O");
+      token.setBeginPosition(offset);
+      token.setEndPosition(offset + word.length());
+      offset += word.length() + 1;
+      tokens.add(token);
+    }
+    Annotation annotation = new Annotation(String.join(" ", words));
+    annotation.set(CoreAnnotations.TokensAnnotation.class, tokens);
+    annotator.annotate(annotation);
+    List<String> tags = new ArrayList<>();
+    for (CoreLabel token : tokens) {
+      tags.add(token.ner());
+    }
+    return tags;
+  }
+
+  public void testRulesKey() throws IOException {
+    List<String> files = Collections.singletonList(rules.getPath());
+    String key = CoreMapExpressionExtractor.rulesKey("a=b", files);
+    assertEquals(key, CoreMapExpressionExtractor.rulesKey("a=b", files));
+    assertFalse(key.equals(CoreMapExpressionExtractor.rulesKey("a=c", files)));
+    writeRules("dog", "ANIMAL");
+    assertFalse(key.equals(CoreMapExpressionExtractor.rulesKey("a=b", files)));
+  }
+
+  private static File[] compiledRules(File dir) {
+    File[] files = dir.listFiles();
+    Arrays.sort(files);
+    return files;
+  }
+
+  public void testCompiledRulesFollowFileContents() throws IOException {
+    File dir = Files.createTempDirectory("tokensregex").toFile();
+    try {
+      Properties props = props();
+      props.setProperty("tokensregex.compiledRulesDir", dir.getPath());
+      TokensRegexAnnotator first = new TokensRegexAnnotator("tokensregex", props);
+      assertEquals(1, compiledRules(dir).length);
+      // read from disk instead of being compiled again
+      TokensRegexAnnotator second = new TokensRegexAnnotator("tokensregex", props);
+      assertEquals(1, compiledRules(dir).length);
+      assertEquals(Arrays.asList("O", "ANIMAL"), annotate(first, "the", "cat"));
+      assertEquals(Arrays.asList("O", "ANIMAL"), annotate(second, "the", "cat"));
+
+      // the same file with new rules is compiled again
+      writeRules("dog", "PET");
+      TokensRegexAnnotator third = new TokensRegexAnnotator("tokensregex", props);
+      assertEquals(2, compiledRules(dir).length);
+      assertEquals(Arrays.asList("O", "O", "PET"), annotate(third, "the", "cat", "dog"));
+      assertEquals(Arrays.asList("O", "ANIMAL", "O"), annotate(first, "the", "cat", "dog"));
+      assertEquals(Arrays.asList("O", "ANIMAL", "O"), annotate(second, "the", "cat", "dog"));
+    } finally {
+      for (File file : compiledRules(dir)) {
+        file.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  public void testUnreadableCompiledRules() throws IOException {
+    File dir = Files.createTempDirectory("tokensregex").toFile();
+    try {
+      Properties props = props();
+      props.setProperty("tokensregex.compiledRulesDir", dir.getPath());
+      new TokensRegexAnnotator("tokensregex", props);
+      File compiled = compiledRules(dir)[0];
+      try (OutputStream os = new FileOutputStream(compiled)) {
+        os.write(new byte[] { 1, 2, 3 });
+      }
+      TokensRegexAnnotator annotator = new TokensRegexAnnotator("tokensregex", props);
+      assertEquals(Arrays.asList("O", "ANIMAL"), annotate(annotator, "the", "cat"));
+    } finally {
+      for (File file : compiledRules(dir)) {
+        file.delete();
+      }
+      dir.delete();
+    }
+  }
+
+}
@@ -0,0 +1,124 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.*;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that entries which are literal words, which are matched without TokensRegex,
+ * are matched just as TokensRegex would match them.
+ */
+public class TokensRegexNERAnnotatorTest extends TestCase {
+
+  private static final String[] WORDS = { "the", "big", "Big", "cat", "CAT", "sat", "on", "mat", "St.", "Stx" };
+  private static final String[] REGEXES = { "the", "big", "Big", "cat", "Cat", "sat", "on", "mat", "St\\.", "St." };
+  private static final String[] TYPES = { "ANIMAL", "THING", "PLACE" };
+
+  private final List<File> files = new ArrayList<>();
+
+  @Override
+  public void tearDown() {
+    for (File file : files) {
+      file.delete();
+    }
+  }
+
+  private File tempFile(String suffix) throws IOException {
+    File file = File.createTempFile("tokensregexner", suffix);
+    files.add(file);
+    return file;
+  }
+
+  private TokensRegexNERAnnotator annotator(List<String> lines, boolean ignoreCase) throws IOException {
+    File mapping = tempFile(".txt");
+    PrintWriter pw = IOUtils.getPrintWriter(mapping.getPath());
+    for (String line : lines) {
+      pw.println(line);
+    }
+    pw.close();
+    return new TokensRegexNERAnnotator(mapping.getPath(), ignoreCase);
+  }
+
+  private static List<String> annotate(Annotator annotator, List<String> words, List<String> ner) {
+    List<CoreLabel> tokens = new ArrayList<>();
+    for (int i = 0; i < words.size(); i++) {
+      CoreLabel token = new CoreLabel();
+      token.setWord(words.get(i));
+      token.setNER(ner.get(i));
+      tokens.add(token);
+    }
+    Annotation annotation = new Annotation(String.join(" ", words));
+    annotation.set(CoreAnnotations.TokensAnnotation.class, tokens);
+    annotator.annotate(annotation);
+    List<String> tags = new ArrayList<>();
+    for (CoreLabel token : tokens) {
+      tags.add(token.ner());
+    }
+    return tags;
+  }
+
+  public void testSameAsTokensRegex() throws IOException {
+    Random random = new Random(42);
+    for (boolean ignoreCase : new boolean[]{ false, true }) {
+      for (int round = 0; round < 20; round++) {
+        // The same entries, as words and as TokensRegex patterns
+        List<String> literal = new ArrayList<>();
+        List<String> tokensRegex = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+          String[] regexes = new String[1 + random.nextInt(3)];
+          StringBuilder pattern = new StringBuilder("( ");
+          for (int j = 0; j < regexes.length; j++) {
+            regexes[j] = REGEXES[random.nextInt(REGEXES.length)];
+            pattern.append('/').append(regexes[j]).append("/ ");
+          }
+          pattern.append(')');
+          String rest = '\t' + TYPES[random.nextInt(TYPES.length)] + "\tPERSON\t" + random.nextInt(3);
+          literal.add(String.join(" ", regexes) + rest);
+          tokensRegex.add(pattern + rest);
+        }
+        TokensRegexNERAnnotator literalAnnotator = annotator(literal, ignoreCase);
+        TokensRegexNERAnnotator tokensRegexAnnotator = annotator(tokensRegex, ignoreCase);
+
+        for (int sentence = 0; sentence < 10; sentence++) {
+          List<String> words = new ArrayList<>();
+          List<String> ner = new ArrayList<>();
+          for (int i = 0; i < 15; i++) {
+            words.add(WORDS[random.nextInt(WORDS.length)]);
+            ner.add(random.nextInt(4) == 0 ? "PERSON" : "O");
+          }
+          assertEquals(literal + " on " + words,
+              annotate(tokensRegexAnnotator, words, ner), annotate(literalAnnotator, words, ner));
+        }
+      }
+    }
+  }
+
+  public void testCompiledMapping() throws IOException {
+    List<String> lines = Arrays.asList("big cat\tANIMAL", "cat\tANIMAL\tO\t1", "St\\. mat\tPLACE", "( /s.t/ )\tTHING");
+    TokensRegexNERAnnotator annotator = annotator(lines, false);
+    File compiled = tempFile(TokensRegexNERAnnotator.COMPILED_SUFFIX);
+    annotator.writeCompiledMapping(compiled.getPath());
+    TokensRegexNERAnnotator read = new TokensRegexNERAnnotator(compiled.getPath(), false);
+
+    List<String> words = Arrays.asList("the", "big", "cat", "sat", "on", "St.", "mat");
+    List<String> ner = Collections.nCopies(words.size(), "O");
+    List<String> expected = Arrays.asList("O", "O", "ANIMAL", "THING", "O", "PLACE", "PLACE");
+    assertEquals(expected, annotate(annotator, words, ner));
+    assertEquals(expected, annotate(read, words, ner));
+
+    try {
+      new TokensRegexNERAnnotator(compiled.getPath(), true);
+      fail("A mapping compiled with case should not be used to ignore case");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+}
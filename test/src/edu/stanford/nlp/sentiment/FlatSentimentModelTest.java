@@ -0,0 +1,55 @@
+package edu.stanford.nlp.sentiment;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import edu.stanford.nlp.neural.rnn.RNNCoreAnnotations;
+import edu.stanford.nlp.trees.Tree;
+import junit.framework.TestCase;
+
+/**
+ * Checks that a FlatSentimentModel labels trees exactly as
+ * SentimentCostAndGradient does with the model it was made from.
+ */
+public class FlatSentimentModelTest extends TestCase {
+
+  private static void checkSameLabels(String... args) {
+    List<Tree> trees = SentimentTestUtils.trees();
+    SentimentModel model = SentimentTestUtils.model(trees, args);
+    SentimentCostAndGradient scorer = new SentimentCostAndGradient(model, null);
+    FlatSentimentModel flat = new FlatSentimentModel(model);
+    for (Tree tree : trees) {
+      Tree expected = tree.deepCopy();
+      Tree actual = tree.deepCopy();
+      scorer.forwardPropagateTree(expected);
+      flat.forwardPropagateTree(actual);
+      Iterator<Tree> actualNodes = actual.iterator();
+      for (Tree expectedNode : expected) {
+        Tree actualNode = actualNodes.next();
+        if (expectedNode.isLeaf()) {
+          continue;
+        }
+        String message = Arrays.toString(args) + ' ' + expectedNode;
+        assertTrue(message, Arrays.equals(RNNCoreAnnotations.getNodeVector(expectedNode).getMatrix().data,
+                                          RNNCoreAnnotations.getNodeVector(actualNode).getMatrix().data));
+        assertTrue(message, Arrays.equals(RNNCoreAnnotations.getPredictions(expectedNode).getMatrix().data,
+                                          RNNCoreAnnotations.getPredictions(actualNode).getMatrix().data));
+        assertEquals(message, RNNCoreAnnotations.getPredictedClass(expectedNode), RNNCoreAnnotations.getPredictedClass(actualNode));
+      }
+    }
+  }
+
+  public void testTensors() {
+    checkSameLabels("-useTensors", "-nocombineClassification");
+  }
+
+  public void testNoTensors() {
+    checkSameLabels("-nouseTensors", "-nocombineClassification");
+  }
+
+  public void testCombineClassification() {
+    checkSameLabels("-useTensors", "-combineClassification");
+  }
+
+}
@@ -0,0 +1,55 @@
+package edu.stanford.nlp.sentiment;
+
+import java.util.List;
+
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.util.Generics;
+import junit.framework.TestCase;
+
+/**
+ * Checks that scoring a training batch with several threads gives the
+ * same value and gradient as scoring it with one.
+ */
+public class SentimentCostAndGradientTest extends TestCase {
+
+  private static final double TOLERANCE = 1e-10;
+
+  private static void checkSameGradient(String... args) {
+    List<Tree> trees = SentimentTestUtils.trees();
+    // a batch big enough to be split between all the threads
+    List<Tree> batch = Generics.newArrayList();
+    for (int i = 0; i < 4; ++i) {
+      for (Tree tree : trees) {
+        batch.add(tree.deepCopy());
+      }
+    }
+    SentimentModel model = SentimentTestUtils.model(trees, args);
+    double[] theta = model.paramsToVector();
+
+    model.op.trainOptions.nThreads = 1;
+    SentimentCostAndGradient single = new SentimentCostAndGradient(model, batch);
+    double expectedValue = single.valueAt(theta);
+    double[] expectedGradient = single.derivativeAt(theta);
+
+    for (int nThreads : new int[] { 2, 3, 4 }) {
+      model.op.trainOptions.nThreads = nThreads;
+      SentimentCostAndGradient multi = new SentimentCostAndGradient(model, batch);
+      double value = multi.valueAt(theta);
+      double[] gradient = multi.derivativeAt(theta);
+      assertEquals("nThreads=" + nThreads, expectedValue, value, TOLERANCE * Math.abs(expectedValue));
+      assertEquals(expectedGradient.length, gradient.length);
+      for (int i = 0; i < gradient.length; ++i) {
+        assertEquals("nThreads=" + nThreads + " element " + i, expectedGradient[i], gradient[i], TOLERANCE);
+      }
+    }
+  }
+
+  public void testTensors() {
+    checkSameGradient("-useTensors", "-nocombineClassification");
+  }
+
+  public void testCombineClassification() {
+    checkSameGradient("-useTensors", "-combineClassification");
+  }
+
+}
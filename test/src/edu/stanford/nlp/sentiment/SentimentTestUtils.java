@@ -0,0 +1,48 @@
+package edu.stanford.nlp.sentiment;
+
+import java.io.StringReader;
+import java.util.List;
+
+import edu.stanford.nlp.neural.rnn.RNNCoreAnnotations;
+import edu.stanford.nlp.trees.MemoryTreebank;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.util.Generics;
+
+/**
+ * A few small sentiment treebank trees, and a model built from them,
+ * shared by the sentiment tests.
+ */
+public class SentimentTestUtils {
+
+  private static final String TREES =
+    "(3 (2 The) (3 (3 (3 good) (2 movie)) (2 .)))\n" +
+    "(1 (2 (2 A) (1 (0 dreadful) (2 plot))) (1 (2 was) (1 (1 (2 not) (3 funny)) (2 .))))\n" +
+    "(2 (2 It) (2 (2 (2 is) (2 (2 a) (2 movie))) (2 .)))\n" +
+    "(4 (4 (3 Very) (4 good)) (2 (2 and) (3 (3 funny) (2 .))))\n";
+
+  private SentimentTestUtils() {} // static methods
+
+  /** Returns new copies of the trees, with their gold classes attached */
+  public static List<Tree> trees() {
+    MemoryTreebank treebank = new MemoryTreebank("utf-8");
+    treebank.load(new StringReader(TREES));
+    List<Tree> trees = Generics.newArrayList();
+    for (Tree tree : treebank) {
+      SentimentUtils.attachLabels(tree, RNNCoreAnnotations.GoldClass.class);
+      trees.add(tree);
+    }
+    return trees;
+  }
+
+  /** Returns a small, randomly initialized model for the given trees and RNNOptions flags */
+  public static SentimentModel model(List<Tree> trees, String... args) {
+    RNNOptions op = new RNNOptions();
+    op.randomSeed = 1234;
+    op.numHid = 6;
+    for (int i = 0; i < args.length; ) {
+      i = op.setOption(args, i);
+    }
+    return new SentimentModel(op, trees);
+  }
+
+}
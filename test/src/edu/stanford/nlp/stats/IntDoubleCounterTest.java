@@ -0,0 +1,60 @@
+package edu.stanford.nlp.stats;
+
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+public class IntDoubleCounterTest extends TestCase {
+
+  public void testPrimitiveCounts() {
+    IntDoubleCounter c = new IntDoubleCounter();
+    for (int i = -500; i < 500; ++i) {
+      c.incrementCount(i, 2.0);
+      c.incrementCount(i);
+    }
+    assertEquals(1000, c.size());
+    assertEquals(3000.0, c.totalCount());
+    assertEquals(3.0, c.getCount(-500));
+    assertEquals(0.0, c.getCount(500));
+    assertFalse(c.containsKey(500));
+
+    assertEquals(3.0, c.remove(7));
+    assertEquals(999, c.size());
+    assertEquals(2997.0, c.totalCount());
+
+    double total = 0.0;
+    int keys = 0;
+    for (int slot = 0; slot < c.slots(); ++slot) {
+      if (c.isSlotUsed(slot)) {
+        total += c.valueAt(slot);
+        ++keys;
+      }
+    }
+    assertEquals(999, keys);
+    assertEquals(c.totalCount(), total);
+  }
+
+  public void testCounterInterface() {
+    IntDoubleCounter c = new IntDoubleCounter();
+    ClassicCounter<Integer> classic = new ClassicCounter<Integer>();
+    for (int i = 0; i < 100; ++i) {
+      c.setCount(Integer.valueOf(i * 7), i);
+      classic.setCount(i * 7, i);
+    }
+    assertEquals(classic, c);
+    assertEquals(c, classic);
+    assertEquals(classic.hashCode(), c.hashCode());
+    assertEquals(Counters.max(classic), Counters.max(c));
+
+    Iterator<Integer> it = c.keySet().iterator();
+    while (it.hasNext()) {
+      if (it.next() % 2 == 0) {
+        it.remove();
+      }
+    }
+    assertEquals(50, c.size());
+    assertEquals(0.0, c.getCount(14));
+    assertEquals(3.0, c.getCount(21));
+    assertEquals(c, new IntDoubleCounter(c));
+  }
+}
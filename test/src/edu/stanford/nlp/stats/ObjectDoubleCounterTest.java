@@ -0,0 +1,33 @@
+package edu.stanford.nlp.stats;
+
+/**
+ * Tests for the ObjectDoubleCounter.
+ */
+public class ObjectDoubleCounterTest extends CounterTestBase {
+  public ObjectDoubleCounterTest() {
+    super(new ObjectDoubleCounter<String>());
+  }
+
+  public void testRemoveAndReinsert() {
+    ObjectDoubleCounter<Integer> c = new ObjectDoubleCounter<Integer>();
+    for (int i = 0; i < 1000; ++i) {
+      c.incrementCount(i, i);
+    }
+    for (int i = 0; i < 1000; i += 2) {
+      c.remove(i);
+    }
+    assertEquals(500, c.size());
+    assertEquals(250000.0, c.totalCount());
+    for (int i = 0; i < 1000; ++i) {
+      assertEquals(i % 2 == 0 ? 0.0 : (double) i, c.getCount(i));
+    }
+    c.setCount(null, 3.0);
+    assertEquals(3.0, c.getCount(null));
+    assertTrue(c.keySet().contains(null));
+
+    ClassicCounter<Integer> classic = new ClassicCounter<Integer>(c);
+    assertEquals(classic, c);
+    assertEquals(c, classic);
+    assertEquals(classic.hashCode(), c.hashCode());
+  }
+}
@@ -0,0 +1,60 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import edu.stanford.nlp.util.Generics;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+
+public class LambdaTableTest extends TestCase {
+
+  private static final int Y_SIZE = 4;
+
+  private final double[] lambda = { 0.5, -1.0, 2.0, 0.25, -0.75, 3.0 };
+  private LambdaTable table;
+
+  @Override
+  protected void setUp() {
+    List<Map<String, int[]>> fAssociations = new ArrayList<Map<String, int[]>>();
+    Map<String, int[]> words = Generics.newHashMap();
+    words.put("dog", new int[] { 0, -1, 1, -1 });
+    words.put("barks", new int[] { -1, 2, -1, 3 });
+    words.put(null, new int[] { 4, -1, -1, -1 });
+    fAssociations.add(words);
+    Map<String, int[]> suffixes = Generics.newHashMap();
+    suffixes.put("dog", new int[] { -1, -1, -1, 5 });
+    fAssociations.add(suffixes);
+    table = new LambdaTable(fAssociations, lambda, Y_SIZE);
+  }
+
+  public void testMissingValues() {
+    assertEquals(-1, table.row(0, "cat"));
+    assertEquals(-1, table.row(1, "barks"));
+    assertEquals(-1, table.row(1, null));
+  }
+
+  public void testAddWeights() {
+    double[] scores = new double[Y_SIZE];
+    table.addWeights(table.row(0, "dog"), scores);
+    table.addWeights(table.row(0, "barks"), scores);
+    table.addWeights(table.row(0, null), scores);
+    table.addWeights(table.row(1, "dog"), scores);
+    assertEquals(0.5 - 0.75, scores[0], 0.0);
+    assertEquals(2.0, scores[1], 0.0);
+    assertEquals(-1.0, scores[2], 0.0);
+    assertEquals(0.25 + 3.0, scores[3], 0.0);
+  }
+
+  public void testAddWeightsOfSomeTags() {
+    // score only tags 3 and 0, in that order
+    int[] tagPositions = { 1, -1, -1, 0 };
+    double[] scores = new double[2];
+    table.addWeights(table.row(0, "dog"), tagPositions, scores);
+    table.addWeights(table.row(1, "dog"), tagPositions, scores);
+    assertEquals(3.0, scores[0], 0.0);
+    assertEquals(0.5, scores[1], 0.0);
+  }
+
+}
@@ -0,0 +1,86 @@
+package edu.stanford.nlp.util;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MappedStringIndexTest extends TestCase {
+
+  private static MappedStringIndex index(List<String> strings) {
+    return new MappedStringIndex(ByteBuffer.wrap(MappedStringIndex.toBytes(strings)));
+  }
+
+  public void testLookup() {
+    List<String> strings = new ArrayList<String>();
+    for (int i = 0; i < 3000; ++i) {
+      strings.add("WORD-" + i + "|C");
+    }
+    MappedStringIndex index = index(strings);
+    assertEquals(3000, index.size());
+    for (int i = 0; i < 3000; ++i) {
+      assertEquals(i, index.indexOf("WORD-" + i + "|C"));
+      assertEquals(strings.get(i), index.get(i));
+    }
+    assertEquals(-1, index.indexOf("WORD-3000|C"));
+    assertEquals(-1, index.indexOf("WORD-1|"));
+    assertEquals(-1, index.indexOf("WORD-1|CC"));
+    assertEquals(-1, index.indexOf(null));
+    assertEquals(strings, index.objectsList());
+    assertEquals(strings, new HashIndex<String>((Index<String>) index).objectsList());
+  }
+
+  public void testNonAscii() {
+    // two, three and four byte UTF-8, plus an unpaired surrogate
+    List<String> strings = Arrays.asList("café", "北京", "😀-smile", "bad\uD800", "");
+    MappedStringIndex index = index(strings);
+    for (int i = 0; i < strings.size(); ++i) {
+      assertEquals(i, index.indexOf(strings.get(i)));
+    }
+    assertEquals(strings.get(2), index.get(2));
+    assertEquals(-1, index.indexOf("cafe"));
+    assertEquals(-1, index.indexOf("北"));
+    assertEquals(-1, index.indexOf("😁-smile"));
+  }
+
+  public void testReadOnly() {
+    MappedStringIndex index = index(Arrays.asList("a", "b"));
+    assertTrue(index.isLocked());
+    assertEquals(1, index.addToIndex("b"));
+    assertEquals(-1, index.addToIndex("c"));
+    assertFalse(index.add("c"));
+    assertEquals(2, index.size());
+  }
+
+  public void testBufferPosition() {
+    byte[] first = MappedStringIndex.toBytes(Arrays.asList("x", "yy"));
+    byte[] second = MappedStringIndex.toBytes(Arrays.asList("zzz"));
+    ByteBuffer buffer = ByteBuffer.allocate(first.length + second.length);
+    buffer.put(first).put(second).flip();
+    assertEquals(1, new MappedStringIndex(buffer).indexOf("yy"));
+    assertEquals(first.length, buffer.position());
+    assertEquals(0, new MappedStringIndex(buffer).indexOf("zzz"));
+    assertFalse(buffer.hasRemaining());
+  }
+
+  public void testSerializesAsHashIndex() throws Exception {
+    List<String> strings = Arrays.asList("a", "b|C", "café");
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(index(strings));
+    }
+    Object read;
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      read = in.readObject();
+    }
+    assertTrue(read instanceof HashIndex);
+    assertEquals(strings, ((HashIndex<?>) read).objectsList());
+  }
+
+}
@@ -0,0 +1,60 @@
+package edu.stanford.nlp.util;
+
+import junit.framework.TestCase;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.List;
+
+public class ObjectIntIndexTest extends TestCase {
+
+  public void testMatchesHashIndex() {
+    HashIndex<String> hashIndex = new HashIndex<String>();
+    ObjectIntIndex<String> index = new ObjectIntIndex<String>();
+    for (int i = 0; i < 5000; ++i) {
+      String s = Integer.toString(i % 3000);
+      assertEquals(hashIndex.addToIndex(s), index.addToIndex(s));
+    }
+    assertEquals(hashIndex.size(), index.size());
+    assertEquals(hashIndex.objectsList(), index.objectsList());
+    assertEquals(-1, index.indexOf("foo"));
+    assertFalse(index.contains("foo"));
+    assertFalse(index.add("7"));
+    assertTrue(index.add("foo"));
+    assertEquals(3000, index.indexOf("foo"));
+  }
+
+  public void testLockAndNull() {
+    List<String> list = Arrays.asList("A", "B", "A", null, "C");
+    ObjectIntIndex<String> index = new ObjectIntIndex<String>(list);
+    assertEquals(4, index.size());
+    assertEquals(2, index.indexOf(null));
+    assertEquals(3, index.indexOf("C"));
+    index.lock();
+    assertEquals(-1, index.addToIndex("D"));
+    assertFalse(index.add("D"));
+    index.unlock();
+    assertEquals(4, index.addToIndex("D"));
+    assertEquals(new ObjectIntIndex<String>((Index<String>) index), index);
+  }
+
+  /** Saved as a HashIndex, so that older releases can read models with this index */
+  public void testSerialization() throws IOException, ClassNotFoundException {
+    ObjectIntIndex<String> index = new ObjectIntIndex<String>();
+    for (int i = 0; i < 100; ++i) {
+      index.add("feature" + i);
+    }
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bout);
+    out.writeObject(index);
+    out.close();
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bout.toByteArray()));
+    Object read = in.readObject();
+    assertTrue(read instanceof HashIndex);
+    @SuppressWarnings("unchecked")
+    Index<String> copy = (Index<String>) read;
+    assertEquals(index.objectsList(), copy.objectsList());
+    assertEquals(42, copy.indexOf("feature42"));
+    assertEquals(100, copy.addToIndex("new"));
+  }
+}
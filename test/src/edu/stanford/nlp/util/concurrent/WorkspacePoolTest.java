@@ -0,0 +1,48 @@
+package edu.stanford.nlp.util.concurrent;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WorkspacePoolTest extends TestCase {
+
+  private AtomicInteger made;
+  private WorkspacePool<int[]> pool;
+
+  @Override
+  protected void setUp() {
+    made = new AtomicInteger();
+    pool = new WorkspacePool<int[]>(() -> new int[] { made.incrementAndGet() });
+  }
+
+  public void testAcquireMakesWorkspaceWhenNoneIdle() {
+    int[] first = pool.acquire();
+    int[] second = pool.acquire();
+    assertNotSame(first, second);
+    assertEquals(2, made.get());
+    assertEquals(0, pool.size());
+  }
+
+  public void testReleasedWorkspaceIsReused() {
+    int[] first = pool.acquire();
+    int[] second = pool.acquire();
+    pool.release(first);
+    pool.release(second);
+    assertEquals(2, pool.size());
+    // the most recently released workspace comes back first
+    assertSame(second, pool.acquire());
+    assertSame(first, pool.acquire());
+    assertEquals(2, made.get());
+    assertEquals(0, pool.size());
+  }
+
+  public void testClear() {
+    int[] first = pool.acquire();
+    pool.release(first);
+    pool.clear();
+    assertEquals(0, pool.size());
+    assertNotSame(first, pool.acquire());
+    assertEquals(2, made.get());
+  }
+
+}